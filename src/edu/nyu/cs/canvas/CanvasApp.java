@@ -1,7 +1,15 @@
 package edu.nyu.cs.canvas;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import javax.swing.SwingUtilities;
 import edu.nyu.cs.canvas.controller.CanvasController;
 import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasModelSnapshot;
+import edu.nyu.cs.canvas.persist.CanvasAutosave;
+import edu.nyu.cs.canvas.server.CanvasSnapshotServer;
 import edu.nyu.cs.canvas.view.CanvasView;
 
 /**
@@ -19,23 +27,109 @@ import edu.nyu.cs.canvas.view.CanvasView;
  * the normal window close button will close the application and all the views.
  *
  * A singleton controller manages the application logic and data flow between
- * a singleton model and a variable number of views
+ * a singleton model and a variable number of views. Pen input goes through the
+ * staged pipeline of the controller, so the event dispatch thread never waits on
+ * the model or on rasterization
+ *
+ * The drawing is autosaved in the background and recovered on the next launch, e.g.
+ * after a crash. Recovery reads the autosave files off the event dispatch thread, the
+ * views show up right away and the recovered drawing is put underneath whatever was drawn
+ * in the meantime. With the canvas.snapshotPort property set, the drawing is also served
+ * read only over HTTP as /boards/main.svg and /boards/main.png
+ *
+ * Settings, e.g. the rendering mode, caches and buffers, are read once at startup from
+ * system properties, the environment or a settings file, and profiles such as
+ * low-latency and low-memory tune several of them at once. The application also reads
+ * the settings of the user in ~/.canvas/canvas.properties unless canvas.userSettings is
+ * set to false
+ * @see CanvasSettings
+ * @see CanvasAutosave
+ * @see CanvasSnapshotServer
  *
  * @author abhishek
  */
 public class CanvasApp {
   /**
-  * Main method for creating the singleton controller and model and two default views
+  * Main method for creating the singleton controller and model and two default views,
+  * the views are built on the event dispatch thread
   * @param argv
   */
   public static void main(String[] argv) {
+    //before the configuration is loaded, only the application reads the user settings
+    if(System.getProperty("canvas.userSettings") == null) {
+      System.setProperty("canvas.userSettings", "true");
+    }
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        launch();
+      }
+    });
+  }
+
+  /**
+  * Creates the singleton controller and model, starts the input pipeline, displays the
+  * two default views and starts recovering the autosaved drawing in the background,
+  * followed by the autosave. Must be called on the event dispatch thread
+  * @return returns the displayed views
+  */
+  public static CanvasView[] launch() {
     CanvasModel model = CanvasModel.getInstance();
     CanvasController controller = CanvasController.getInstance(model);
+    controller.startPipeline(CanvasConfig.pipelineCapacity);
+    if(CanvasConfig.snapshotServerPort >= 0) {
+      try {
+        CanvasSnapshotServer.start(new InetSocketAddress(CanvasConfig.snapshotServerPort)).
+          addBoard("main", controller, model);
+      } catch (IOException e) {
+        System.err.println("Snapshot service is disabled: " + e.getMessage());
+      }
+    }
     CanvasView view1 = new CanvasView(controller);
     CanvasView view2 = new CanvasView(controller);
     controller.registerView(view1);
     controller.registerView(view2);
     view1.displayView();
     view2.displayView();
+    startRecovery(controller, model);
+    return new CanvasView[] {view1, view2};
+  }
+
+  /**
+  * reads the autosaved drawing on a background thread, hands it to the views on the event
+  * dispatch thread, then starts the autosave, whose first snapshot must hold it
+  */
+  private static void startRecovery(final CanvasController controller, final CanvasModel model) {
+    Thread recovery = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        File autosaveDirectory = new File(CanvasConfig.autosaveDirectory);
+        try {
+          final CanvasModelSnapshot snapshot = CanvasAutosave.recover(autosaveDirectory);
+          if(snapshot != null) {
+            SwingUtilities.invokeAndWait(new Runnable() {
+              @Override
+              public void run() {
+                controller.viewRecover(snapshot);
+              }
+            });
+          }
+        } catch (IOException e) {
+          System.err.println("Autosaved drawing could not be recovered: " + e.getMessage());
+        } catch (InvocationTargetException e) {
+          System.err.println("Autosaved drawing could not be recovered: " + e.getCause());
+        } catch (InterruptedException e) {
+          return;
+        }
+        try {
+          CanvasAutosave.start(controller, model, autosaveDirectory,
+            CanvasConfig.autosaveInterval, CanvasConfig.autosaveJournalLimit);
+        } catch (IOException e) {
+          System.err.println("Autosave is disabled: " + e.getMessage());
+        }
+      }
+    }, "canvas-recovery");
+    recovery.setDaemon(true);
+    recovery.start();
   }
 }
\ No newline at end of file
@@ -1,21 +1,97 @@
 package edu.nyu.cs.canvas;
 import java.awt.Color;
+import java.io.File;
 import edu.nyu.cs.canvas.model.CanvasPoint;
 
 /**
- * This class represents the default configuration items for the Canvas application items
+ * This class represents the default configuration items for the Canvas application items.
+ * Every item can be changed at startup through the runtime settings, under the key given
+ * next to it, and is read once when this class is loaded
+ * @see CanvasSettings
  * @author abhishek
  */
 public class CanvasConfig {
-  //default start location for a view UI
-  static public final int startX = 100;
-  static public final int startY = 100;
-  //default paint settings
-  static public final int defaultStroke = 2;
-  static public final Color defaultColor = Color.BLUE;
-  //default windw settings
-  static public final int defaultHeight = 600;
-  static public final int defaultWidth = 800;
+  //runtime settings, loaded before any configuration item, numeric items are checked
+  //against their range as they are read
+  static public final CanvasSettings settings = CanvasSettings.load();
+  //default start location for a view UI (startX, startY)
+  static public final int startX = settings.getInt("startX", 100);
+  static public final int startY = settings.getInt("startY", 100);
+  //default paint settings (defaultStroke, defaultColor as #RRGGBB)
+  static public final int defaultStroke = settings.getInt("defaultStroke", 2, 1, 0xffff);
+  static public final Color defaultColor = settings.getColor("defaultColor", Color.BLUE);
+  //default windw settings (height, width)
+  static public final int defaultHeight = settings.getInt("height", 600, 1, Integer.MAX_VALUE);
+  static public final int defaultWidth = settings.getInt("width", 800, 1, Integer.MAX_VALUE);
+  //default rendering settings (renderMode, frameRate): retained canvases queue segments
+  //and flush them at most once per frame, immediate canvases rasterize every segment as
+  //it arrives, trading throughput for latency
+  static public final String RETAINED_RENDERING = "retained";
+  static public final String IMMEDIATE_RENDERING = "immediate";
+  static public final String renderMode = settings.getChoice("renderMode", RETAINED_RENDERING,
+    RETAINED_RENDERING, IMMEDIATE_RENDERING);
+  static public final int frameRate = settings.getInt("frameRate", 60, 1, 1000);
+  //default heap budget for resident model entities in bytes, 0 keeps the whole drawing in
+  //heap (heapBudget)
+  static public final long heapBudget = settings.getLong("heapBudget", 0, 0, Long.MAX_VALUE);
+  //default side of a spatial index cell in pixels, the tiling of the board by which
+  //segments are looked up (indexCellSize)
+  static public final int indexCellSize = settings.getInt("indexCellSize", 32, 1,
+    Integer.MAX_VALUE);
+  //default maximum number of cached stroke outlines of each view
+  //(outlineCacheCapacity)
+  static public final int outlineCacheCapacity = settings.getInt("outlineCacheCapacity", 4096, 0,
+    Integer.MAX_VALUE);
+  //default curve fitting settings for sealed strokes, tolerance in pixels (curveTolerance,
+  //retainRawSamples)
+  static public final double curveTolerance = settings.getDouble("curveTolerance", 1.5, 0,
+    Double.MAX_VALUE);
+  static public final boolean retainRawSamples = settings.getBoolean("retainRawSamples", false);
+  //default number of pen events the input pipeline of the application can hold
+  //(pipelineCapacity)
+  static public final int pipelineCapacity = settings.getInt("pipelineCapacity", 4096, 1,
+    Integer.MAX_VALUE);
+  //default number of model changes a hidden view may miss before it redraws all of its
+  //canvas (catchUpLimit)
+  static public final int catchUpLimit = settings.getInt("catchUpLimit", 4096, 0,
+    Integer.MAX_VALUE);
+  //default autosave settings: directory, journal sync period in milliseconds, and number of
+  //journal records after which a fresh snapshot bounds the replay on recovery
+  //(autosaveDirectory, autosaveInterval, autosaveJournalLimit)
+  static public final String autosaveDirectory = settings.getString("autosaveDirectory",
+    System.getProperty("user.home") + File.separator + ".canvas" + File.separator + "autosave");
+  static public final long autosaveInterval = settings.getLong("autosaveInterval", 1000, 1,
+    Long.MAX_VALUE);
+  static public final long autosaveJournalLimit = settings.getLong("autosaveJournalLimit", 100000,
+    1, Long.MAX_VALUE);
+  //default size in bytes of a codec frame payload above which it is compressed
+  //(codecCompressThreshold)
+  static public final int codecCompressThreshold = settings.getInt("codecCompressThreshold",
+    16384, 0, Integer.MAX_VALUE);
+  //default snapshot service settings: port, -1 to disable the service, number of threads
+  //and milliseconds to wait for a session to hand over its model (snapshotPort,
+  //snapshotServerThreads, snapshotServerTimeout)
+  static public final int snapshotServerPort = settings.getInt("snapshotPort", -1, -1, 65535);
+  static public final int snapshotServerThreads = settings.getInt("snapshotServerThreads", 2, 1,
+    Integer.MAX_VALUE);
+  static public final long snapshotServerTimeout = settings.getLong("snapshotServerTimeout",
+    5000, 0, Long.MAX_VALUE);
+  //default smoothing of live pen input: whether views smooth it, One Euro cutoff at rest
+  //in Hz, cutoff increase per pixel per second of speed, cutoff of the speed estimate in Hz
+  //and longest step in pixels of the interpolated curve (inputSmoothing,
+  //smoothingMinCutoff, smoothingBeta, smoothingDerivativeCutoff, smoothingSpacing)
+  static public final boolean inputSmoothing = settings.getBoolean("inputSmoothing", true);
+  static public final double smoothingMinCutoff = settings.getDouble("smoothingMinCutoff", 1.0,
+    Double.MIN_VALUE, Double.MAX_VALUE);
+  static public final double smoothingBeta = settings.getDouble("smoothingBeta", 0.007, 0,
+    Double.MAX_VALUE);
+  static public final double smoothingDerivativeCutoff =
+    settings.getDouble("smoothingDerivativeCutoff", 1.0, Double.MIN_VALUE, Double.MAX_VALUE);
+  static public final float smoothingSpacing = (float) settings.getDouble("smoothingSpacing", 2,
+    Double.MIN_VALUE, Float.MAX_VALUE);
+  //default metrics setting: whether the input pipeline keeps its backpressure metrics
+  //(metricsEnabled)
+  static public final boolean metricsEnabled = settings.getBoolean("metricsEnabled", true);
   //default method for returning an end marker
   static public CanvasPoint getEndMarker() {
     return new CanvasPoint.Builder(-1, -1).build();
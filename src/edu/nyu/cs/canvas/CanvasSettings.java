@@ -0,0 +1,376 @@
+package edu.nyu.cs.canvas;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Runtime settings of the Canvas application, read once when the configuration is
+ * loaded so that no component looks a setting up on a hot path. Every setting has a key,
+ * e.g. frameRate, and is looked up in order of precedence:
+ * 1. the system property canvas.{key}, e.g. -Dcanvas.frameRate=120
+ * 2. the environment variable CANVAS_{KEY}, e.g. CANVAS_FRAME_RATE=120
+ * 3. the settings file, a properties file named by canvas.settings or CANVAS_SETTINGS,
+ *    else ~/.canvas/canvas.properties if it exists and canvas.userSettings or
+ *    CANVAS_USER_SETTINGS is true, as the application sets it. Tests and benchmarks do
+ *    not, so they never pick up the settings of whoever runs them
+ * 4. the profile, a named set of settings chosen by the profile key
+ * 5. the default of the configuration
+ *
+ * Profiles tune several settings at once: low-latency renders every segment as it
+ * arrives at a higher frame rate with a smaller input ring, low-memory bounds the heap
+ * held by the drawing and shrinks caches and buffers
+ *
+ * Numeric settings may be given a range, values out of it are rejected when read, naming
+ * the key and source, instead of failing later where the setting is used
+ * @see CanvasConfig
+ * @author abhishek
+ */
+public final class CanvasSettings {
+  static public final String DEFAULT_PROFILE = "default";
+  static public final String LOW_LATENCY_PROFILE = "low-latency";
+  static public final String LOW_MEMORY_PROFILE = "low-memory";
+  private static final Map<String, Map<String, String>> profiles = createProfiles();
+  private final Properties system;
+  private final Map<String, String> environment;
+  private final Properties file;
+  private final String fileName;
+  private final String profile;
+  private final Map<String, String> profileSettings;
+
+  private CanvasSettings(Properties system, Map<String, String> environment, Properties file,
+    String fileName) {
+    this.system = system;
+    this.environment = environment;
+    this.file = file;
+    this.fileName = fileName;
+    //the profile is chosen before its settings are in place, no profile sets it anyway
+    String name = lookup("profile");
+    this.profile = (name == null) ? DEFAULT_PROFILE : name.trim();
+    if(!profiles.containsKey(this.profile)) {
+      throw new IllegalArgumentException("Unknown profile " + this.profile + " from " +
+        describe("profile") + ", expected one of " + profiles.keySet());
+    }
+    this.profileSettings = profiles.get(this.profile);
+  }
+
+  /**
+  * Loads the settings of the running application from the system properties, the
+  * environment and the settings file
+  * @return returns the settings
+  * @throws IllegalArgumentException if a settings file is named but can not be read, or
+  * if the profile is unknown
+  */
+  public static CanvasSettings load() {
+    return load(System.getProperties(), System.getenv());
+  }
+
+  /**
+  * Loads settings from the given system properties and environment, e.g. to check a
+  * deployment without starting it. The settings file is found as for the application
+  * @param system is the system properties
+  * @param environment is the environment variables
+  * @return returns the settings
+  * @throws IllegalArgumentException if a settings file is named but can not be read, or
+  * if the profile is unknown
+  */
+  public static CanvasSettings load(Properties system, Map<String, String> environment) {
+    String name = system.getProperty("canvas.settings");
+    if(name == null) {
+      name = environment.get("CANVAS_SETTINGS");
+    }
+    Properties file = new Properties();
+    if(name != null) {
+      readFile(new File(name), file);
+    }
+    else if(Boolean.parseBoolean(system.getProperty("canvas.userSettings",
+      environment.get("CANVAS_USER_SETTINGS")))) {
+      File standard = new File(system.getProperty("user.home", "."),
+        ".canvas" + File.separator + "canvas.properties");
+      if(standard.isFile()) {
+        name = standard.getPath();
+        readFile(standard, file);
+      }
+    }
+    return new CanvasSettings(system, environment, file, name);
+  }
+
+  /**
+  * @return returns the name of the profile in use
+  */
+  public String getProfile() {
+    return this.profile;
+  }
+
+  /**
+  * @param key is the key of the setting
+  * @param defaultValue is the value used when the setting is not set
+  * @return returns the value of a text setting
+  */
+  public String getString(String key, String defaultValue) {
+    String value = lookup(key);
+    return (value == null) ? defaultValue : value.trim();
+  }
+
+  /**
+  * @param key is the key of the setting
+  * @param defaultValue is the value used when the setting is not set
+  * @param choices is the accepted values
+  * @return returns the value of a setting taking one of a few values
+  * @throws IllegalArgumentException if the value is not one of the choices
+  */
+  public String getChoice(String key, String defaultValue, String... choices) {
+    String value = getString(key, defaultValue);
+    for(String choice : choices) {
+      if(choice.equalsIgnoreCase(value)) {
+        return choice;
+      }
+    }
+    throw new IllegalArgumentException("Bad value " + value + " for " + describe(key) +
+      ", expected one of " + Arrays.toString(choices));
+  }
+
+  /**
+  * @param key is the key of the setting
+  * @param defaultValue is the value used when the setting is not set
+  * @return returns the value of an integer setting
+  * @throws IllegalArgumentException if the value is not an integer
+  */
+  public int getInt(String key, int defaultValue) {
+    String value = lookup(key);
+    if(value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw badValue(key, value, "an integer");
+    }
+  }
+
+  /**
+  * @param key is the key of the setting
+  * @param defaultValue is the value used when the setting is not set
+  * @param min is the smallest value accepted
+  * @param max is the largest value accepted
+  * @return returns the value of an integer setting within a range
+  * @throws IllegalArgumentException if the value is not an integer within the range
+  */
+  public int getInt(String key, int defaultValue, int min, int max) {
+    int value = getInt(key, defaultValue);
+    if(value < min || value > max) {
+      throw badValue(key, lookup(key), "an integer from " + min + " to " + max);
+    }
+    return value;
+  }
+
+  /**
+  * @param key is the key of the setting
+  * @param defaultValue is the value used when the setting is not set
+  * @return returns the value of a long integer setting
+  * @throws IllegalArgumentException if the value is not an integer
+  */
+  public long getLong(String key, long defaultValue) {
+    String value = lookup(key);
+    if(value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw badValue(key, value, "an integer");
+    }
+  }
+
+  /**
+  * @param key is the key of the setting
+  * @param defaultValue is the value used when the setting is not set
+  * @param min is the smallest value accepted
+  * @param max is the largest value accepted
+  * @return returns the value of a long integer setting within a range
+  * @throws IllegalArgumentException if the value is not an integer within the range
+  */
+  public long getLong(String key, long defaultValue, long min, long max) {
+    long value = getLong(key, defaultValue);
+    if(value < min || value > max) {
+      throw badValue(key, lookup(key), "an integer from " + min + " to " + max);
+    }
+    return value;
+  }
+
+  /**
+  * @param key is the key of the setting
+  * @param defaultValue is the value used when the setting is not set
+  * @return returns the value of a decimal setting
+  * @throws IllegalArgumentException if the value is not a finite number
+  */
+  public double getDouble(String key, double defaultValue) {
+    String value = lookup(key);
+    if(value == null) {
+      return defaultValue;
+    }
+    try {
+      double parsed = Double.parseDouble(value.trim());
+      if(!Double.isNaN(parsed) && !Double.isInfinite(parsed)) {
+        return parsed;
+      }
+    } catch (NumberFormatException e) {
+      //reported below
+    }
+    throw badValue(key, value, "a number");
+  }
+
+  /**
+  * @param key is the key of the setting
+  * @param defaultValue is the value used when the setting is not set
+  * @param min is the smallest value accepted
+  * @param max is the largest value accepted
+  * @return returns the value of a decimal setting within a range
+  * @throws IllegalArgumentException if the value is not a number within the range
+  */
+  public double getDouble(String key, double defaultValue, double min, double max) {
+    double value = getDouble(key, defaultValue);
+    if(value < min || value > max) {
+      throw badValue(key, lookup(key), "a number from " + min + " to " + max);
+    }
+    return value;
+  }
+
+  /**
+  * @param key is the key of the setting
+  * @param defaultValue is the value used when the setting is not set
+  * @return returns the value of a flag, true or false
+  * @throws IllegalArgumentException if the value is neither true nor false
+  */
+  public boolean getBoolean(String key, boolean defaultValue) {
+    String value = lookup(key);
+    if(value == null) {
+      return defaultValue;
+    }
+    if(value.trim().equalsIgnoreCase("true")) {
+      return true;
+    }
+    if(value.trim().equalsIgnoreCase("false")) {
+      return false;
+    }
+    throw badValue(key, value, "true or false");
+  }
+
+  /**
+  * @param key is the key of the setting
+  * @param defaultValue is the value used when the setting is not set
+  * @return returns the value of a color setting, given as #RRGGBB
+  * @throws IllegalArgumentException if the value is not a color
+  */
+  public Color getColor(String key, Color defaultValue) {
+    String value = lookup(key);
+    if(value == null) {
+      return defaultValue;
+    }
+    try {
+      return Color.decode(value.trim());
+    } catch (NumberFormatException e) {
+      throw badValue(key, value, "a color as #RRGGBB");
+    }
+  }
+
+  /**
+  * @return returns the raw value of a setting from the source of highest precedence
+  * setting it, null if none does
+  */
+  private String lookup(String key) {
+    String value = this.system.getProperty("canvas." + key);
+    if(value == null) {
+      value = this.environment.get(environmentName(key));
+    }
+    if(value == null) {
+      value = this.file.getProperty(key);
+    }
+    if(value == null && this.profileSettings != null) {
+      value = this.profileSettings.get(key);
+    }
+    return value;
+  }
+
+  /**
+  * @return returns the source a setting was read from, for error messages
+  */
+  private String describe(String key) {
+    if(this.system.getProperty("canvas." + key) != null) {
+      return "system property canvas." + key;
+    }
+    if(this.environment.get(environmentName(key)) != null) {
+      return "environment variable " + environmentName(key);
+    }
+    if(this.file.getProperty(key) != null) {
+      return key + " in " + this.fileName;
+    }
+    return key + " of profile " + this.profile;
+  }
+
+  private IllegalArgumentException badValue(String key, String value, String expected) {
+    return new IllegalArgumentException("Bad value " + value + " for " + describe(key) +
+      ", expected " + expected);
+  }
+
+  /**
+  * @return returns the environment variable of a key, e.g. CANVAS_FRAME_RATE for frameRate
+  */
+  static String environmentName(String key) {
+    StringBuilder name = new StringBuilder("CANVAS_");
+    for(int i = 0; i < key.length(); ++i) {
+      char c = key.charAt(i);
+      if(Character.isUpperCase(c) && i > 0) {
+        name.append('_');
+      }
+      name.append(Character.isLetterOrDigit(c) ? Character.toUpperCase(c) : '_');
+    }
+    return name.toString();
+  }
+
+  private static void readFile(File source, Properties file) {
+    try {
+      InputStream in = new FileInputStream(source);
+      try {
+        file.load(in);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Settings file " + source + " can not be read", e);
+    }
+  }
+
+  /**
+  * @return returns the settings of every profile by profile name
+  */
+  private static Map<String, Map<String, String>> createProfiles() {
+    Map<String, Map<String, String>> all = new HashMap<String, Map<String, String>>();
+    all.put(DEFAULT_PROFILE, Collections.<String, String>emptyMap());
+    Map<String, String> lowLatency = new HashMap<String, String>();
+    lowLatency.put("renderMode", "immediate");
+    lowLatency.put("frameRate", "120");
+    lowLatency.put("pipelineCapacity", "512");
+    lowLatency.put("smoothingBeta", "0.02");
+    lowLatency.put("metricsEnabled", "false");
+    all.put(LOW_LATENCY_PROFILE, Collections.unmodifiableMap(lowLatency));
+    Map<String, String> lowMemory = new HashMap<String, String>();
+    lowMemory.put("heapBudget", String.valueOf(64L << 20));
+    lowMemory.put("outlineCacheCapacity", "512");
+    lowMemory.put("pipelineCapacity", "1024");
+    lowMemory.put("catchUpLimit", "1024");
+    lowMemory.put("retainRawSamples", "false");
+    lowMemory.put("autosaveJournalLimit", "20000");
+    lowMemory.put("codecCompressThreshold", "4096");
+    lowMemory.put("snapshotServerThreads", "1");
+    all.put(LOW_MEMORY_PROFILE, Collections.unmodifiableMap(lowMemory));
+    return Collections.unmodifiableMap(all);
+  }
+}
\ No newline at end of file
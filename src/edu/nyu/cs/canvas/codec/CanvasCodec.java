@@ -0,0 +1,509 @@
+package edu.nyu.cs.canvas.codec;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasStrokeBatch;
+import edu.nyu.cs.canvas.replica.CanvasOperation;
+import edu.nyu.cs.canvas.replica.CanvasStrokeId;
+
+/**
+ * Versioned binary codec of 'model entities' and stroke batches, for the wire and for
+ * files. Every message is a frame: a fixed header (magic, format version, frame type,
+ * flags, item count, raw and stored payload length) followed by the payload, all big
+ * endian. Entities use the layout of CanvasEntityFormat, shared with the autosave files;
+ * a batch stores per stroke its color, stroke and point count followed by its x and then
+ * its y coordinates; an operation on a replicated drawing stores its kind, target and
+ * timestamp followed by its entities or its paint properties.
+ *
+ * Frames are encoded in place into a ByteBuffer and decoded straight from one, heap or
+ * direct. Payloads larger than a threshold are compressed with the fastest deflate level
+ * when that makes them smaller. Decoding a batch goes into the primitive arrays of a batch
+ * reused across frames, so that once buffers have grown it allocates nothing.
+ *
+ * A codec keeps scratch buffers, so it must not be shared between threads
+ * @see CanvasStrokeBatch
+ * @author abhishek
+ */
+public final class CanvasCodec {
+  public static final int MAGIC = 0x434e5646;
+  public static final int FORMAT_VERSION = 1;
+  public static final int HEADER_SIZE = 20;
+  //frame types
+  public static final int POINTS = 1;
+  public static final int BATCH = 2;
+  public static final int OPERATION = 3;
+  //frame flags
+  private static final int COMPRESSED = 1;
+  //largest payload accepted once inflated, and the largest ratio deflate can reach
+  public static final int MAX_PAYLOAD = 1 << 28;
+  private static final int MAX_RATIO = 1032;
+
+  private final int compressThreshold;
+  private final Deflater deflater;
+  private final Inflater inflater;
+  //compressed bytes being produced or read
+  private byte[] packed;
+  //uncompressed payload of the frame being decoded, and a buffer over it
+  private byte[] unpacked;
+  private ByteBuffer unpackedBuffer;
+
+  /**
+  * Constructor for a codec compressing payloads above the default threshold
+  * @see CanvasConfig#codecCompressThreshold
+  */
+  public CanvasCodec() {
+    this(CanvasConfig.codecCompressThreshold);
+  }
+
+  /**
+  * Constructor for a codec
+  * @param compressThreshold is the payload size in bytes from which frames are compressed,
+  * Integer.MAX_VALUE to never compress
+  */
+  public CanvasCodec(int compressThreshold) {
+    this.compressThreshold = compressThreshold;
+    this.deflater = new Deflater(Deflater.BEST_SPEED);
+    this.inflater = new Inflater();
+    this.packed = new byte[0];
+    this.unpacked = new byte[0];
+    this.unpackedBuffer = ByteBuffer.wrap(this.unpacked);
+  }
+
+  /**
+  * @param points is the entities to encode
+  * @return returns the largest size of the frame encoding them
+  */
+  public static int maxFrameSize(List<CanvasPoint> points) {
+    long size = HEADER_SIZE;
+    for(CanvasPoint point : points) {
+      size += CanvasEntityFormat.size(point);
+    }
+    return (int) Math.min(Integer.MAX_VALUE, size);
+  }
+
+  /**
+  * @param batch is the batch to encode
+  * @return returns the largest size of the frame encoding it
+  */
+  public static int maxFrameSize(CanvasStrokeBatch batch) {
+    return (int) Math.min(Integer.MAX_VALUE, HEADER_SIZE + 12L * batch.getStrokeCount() +
+      8L * batch.getPointCount());
+  }
+
+  /**
+  * @param operation is the operation to encode
+  * @return returns the largest size of the frame encoding it
+  */
+  public static int maxFrameSize(CanvasOperation operation) {
+    //kind, target and timestamp, then the paint properties or the entities
+    long size = ((operation.getPoints() == null) ? HEADER_SIZE :
+      maxFrameSize(operation.getPoints())) + 36L;
+    return (int) Math.min(Integer.MAX_VALUE, size);
+  }
+
+  /**
+  * Encodes entities, end markers included, as a frame
+  * @param points is the entities to encode
+  * @param out is the buffer receiving the frame at its position, which is advanced past it
+  * @throws java.nio.BufferOverflowException if the buffer is too small
+  * @see #maxFrameSize(List)
+  */
+  public void writePoints(List<CanvasPoint> points, ByteBuffer out) {
+    ByteOrder order = out.order();
+    out.order(ByteOrder.BIG_ENDIAN);
+    try {
+      int start = beginFrame(out);
+      for(CanvasPoint point : points) {
+        CanvasEntityFormat.write(out, point);
+      }
+      endFrame(out, start, POINTS, points.size());
+    } finally {
+      out.order(order);
+    }
+  }
+
+  /**
+  * Encodes a stroke batch as a frame
+  * @param batch is the batch to encode
+  * @param out is the buffer receiving the frame at its position, which is advanced past it
+  * @throws java.nio.BufferOverflowException if the buffer is too small
+  * @see #maxFrameSize(CanvasStrokeBatch)
+  */
+  public void writeBatch(CanvasStrokeBatch batch, ByteBuffer out) {
+    ByteOrder order = out.order();
+    out.order(ByteOrder.BIG_ENDIAN);
+    try {
+      int start = beginFrame(out);
+      for(int i = 0; i < batch.getStrokeCount(); ++i) {
+        int first = batch.getStrokeStart(i);
+        int count = batch.getStrokeLength(i);
+        out.putInt(batch.getStrokeColor(i));
+        out.putInt(batch.getStrokeWidth(i));
+        out.putInt(count);
+        for(int j = first; j < first + count; ++j) {
+          out.putInt(batch.getX(j));
+        }
+        for(int j = first; j < first + count; ++j) {
+          out.putInt(batch.getY(j));
+        }
+      }
+      endFrame(out, start, BATCH, batch.getStrokeCount());
+    } finally {
+      out.order(order);
+    }
+  }
+
+  /**
+  * Encodes an operation on a replicated drawing as a frame
+  * @param operation is the operation to encode
+  * @param out is the buffer receiving the frame at its position, which is advanced past it
+  * @throws java.nio.BufferOverflowException if the buffer is too small
+  * @see #maxFrameSize(CanvasOperation)
+  */
+  public void writeOperation(CanvasOperation operation, ByteBuffer out) {
+    ByteOrder order = out.order();
+    out.order(ByteOrder.BIG_ENDIAN);
+    try {
+      int start = beginFrame(out);
+      out.putInt(operation.getKind().ordinal());
+      putId(out, operation.getTarget());
+      putId(out, operation.getStamp());
+      int count = 0;
+      switch(operation.getKind()) {
+      case ADD:
+        for(CanvasPoint point : operation.getPoints()) {
+          CanvasEntityFormat.write(out, point);
+        }
+        count = operation.getPoints().size();
+        break;
+      case STYLE:
+        out.putInt(operation.getColor().getRGB());
+        out.putInt(operation.getStroke());
+        break;
+      default:
+        break;
+      }
+      endFrame(out, start, OPERATION, count);
+    } finally {
+      out.order(order);
+    }
+  }
+
+  /**
+  * Tells whether a whole frame is available, e.g. when reading frames off a stream
+  * @param in is the buffer, its position at the start of a frame, which is not moved
+  * @return returns the size of the frame, -1 if not even its header is available yet
+  * @throws IOException if the buffer does not hold a frame of a supported version
+  */
+  public static int frameSize(ByteBuffer in) throws IOException {
+    if(in.remaining() < HEADER_SIZE) {
+      return -1;
+    }
+    ByteOrder order = in.order();
+    in.order(ByteOrder.BIG_ENDIAN);
+    try {
+      int start = in.position();
+      if(in.getInt(start) != MAGIC) {
+        throw new IOException("Not a canvas frame");
+      }
+      if(in.get(start + 4) != FORMAT_VERSION) {
+        throw new IOException("Unsupported frame version " + in.get(start + 4));
+      }
+      int length = in.getInt(start + 16);
+      if(length < 0 || length > Integer.MAX_VALUE - HEADER_SIZE) {
+        throw new IOException("Invalid frame length " + length);
+      }
+      return HEADER_SIZE + length;
+    } finally {
+      in.order(order);
+    }
+  }
+
+  /**
+  * @param in is the buffer, its position at the start of a whole frame, which is not moved
+  * @return returns the type of the frame
+  * @throws IOException if the buffer does not hold a frame of a supported version
+  */
+  public static int frameType(ByteBuffer in) throws IOException {
+    if(frameSize(in) == -1) {
+      throw new IOException("Incomplete frame header");
+    }
+    return in.get(in.position() + 5);
+  }
+
+  /**
+  * Decodes a frame of entities
+  * @param in is the buffer, its position at the start of a whole frame, which is advanced
+  * past it
+  * @return returns the entities
+  * @throws IOException if the frame is incomplete, of another type or corrupt
+  */
+  public ArrayList<CanvasPoint> readPoints(ByteBuffer in) throws IOException {
+    int end = checkFrame(in, POINTS);
+    ByteOrder order = in.order();
+    in.order(ByteOrder.BIG_ENDIAN);
+    try {
+      int count = in.getInt(in.position() + 8);
+      ByteBuffer payload = openPayload(in);
+      if(count < 0 || count > payload.remaining() / 8) {
+        throw new IOException("Invalid entity count " + count);
+      }
+      ArrayList<CanvasPoint> points = getPoints(payload, count);
+      closePayload(in, payload, end);
+      return points;
+    } catch (RuntimeException e) {
+      //underflow or invalid values of a frame corrupted in transit
+      throw new IOException("Corrupt entity frame", e);
+    } finally {
+      in.order(order);
+    }
+  }
+
+  /**
+  * Decodes a frame of a stroke batch into the arrays of an existing batch
+  * @param in is the buffer, its position at the start of a whole frame, which is advanced
+  * past it
+  * @param into is the batch receiving the strokes, it is cleared first
+  * @return returns the batch
+  * @throws IOException if the frame is incomplete, of another type or corrupt
+  */
+  public CanvasStrokeBatch readBatch(ByteBuffer in, CanvasStrokeBatch into) throws IOException {
+    int end = checkFrame(in, BATCH);
+    ByteOrder order = in.order();
+    in.order(ByteOrder.BIG_ENDIAN);
+    try {
+      int count = in.getInt(in.position() + 8);
+      ByteBuffer payload = openPayload(in);
+      if(count < 0 || count > payload.remaining() / 12) {
+        throw new IOException("Invalid stroke count " + count);
+      }
+      into.clear();
+      for(int i = 0; i < count; ++i) {
+        int color = payload.getInt();
+        int stroke = payload.getInt();
+        into.addStroke(payload, payload.getInt(), color, stroke);
+      }
+      closePayload(in, payload, end);
+      return into;
+    } catch (RuntimeException e) {
+      throw new IOException("Corrupt batch frame", e);
+    } finally {
+      in.order(order);
+    }
+  }
+
+  /**
+  * Decodes a frame of an operation on a replicated drawing
+  * @param in is the buffer, its position at the start of a whole frame, which is advanced
+  * past it
+  * @return returns the operation
+  * @throws IOException if the frame is incomplete, of another type or corrupt
+  */
+  public CanvasOperation readOperation(ByteBuffer in) throws IOException {
+    int end = checkFrame(in, OPERATION);
+    ByteOrder order = in.order();
+    in.order(ByteOrder.BIG_ENDIAN);
+    try {
+      int count = in.getInt(in.position() + 8);
+      ByteBuffer payload = openPayload(in);
+      int kind = payload.getInt();
+      if(kind < 0 || kind >= CanvasOperation.Kind.values().length) {
+        throw new IOException("Invalid operation kind " + kind);
+      }
+      CanvasStrokeId target = getId(payload);
+      CanvasStrokeId stamp = getId(payload);
+      CanvasOperation operation;
+      switch(CanvasOperation.Kind.values()[kind]) {
+      case ADD:
+        if(!target.equals(stamp) || count < 0 || count > payload.remaining() / 8) {
+          throw new IOException("Invalid entity count " + count);
+        }
+        operation = CanvasOperation.add(target, getPoints(payload, count));
+        break;
+      case STYLE:
+        operation = CanvasOperation.style(target, stamp, new Color(payload.getInt(), true),
+          payload.getInt());
+        break;
+      default:
+        operation = CanvasOperation.remove(target, stamp);
+        break;
+      }
+      closePayload(in, payload, end);
+      return operation;
+    } catch (RuntimeException e) {
+      throw new IOException("Corrupt operation frame", e);
+    } finally {
+      in.order(order);
+    }
+  }
+
+  private static ArrayList<CanvasPoint> getPoints(ByteBuffer payload, int count) {
+    ArrayList<CanvasPoint> points = new ArrayList<CanvasPoint>(count);
+    CanvasPoint endMarker = CanvasConfig.getEndMarker();
+    for(int i = 0; i < count; ++i) {
+      points.add(CanvasEntityFormat.read(payload, endMarker));
+    }
+    return points;
+  }
+
+  private static void putId(ByteBuffer out, CanvasStrokeId id) {
+    out.putLong(id.getCounter());
+    out.putInt(id.getActor());
+  }
+
+  private static CanvasStrokeId getId(ByteBuffer payload) {
+    return new CanvasStrokeId(payload.getLong(), payload.getInt());
+  }
+
+  /**
+  * leaves room for the header, which is only known once the payload is written
+  */
+  private static int beginFrame(ByteBuffer out) {
+    int start = out.position();
+    out.position(start + HEADER_SIZE);
+    return start;
+  }
+
+  /**
+  * compresses the payload just written if worth it, then writes the header
+  */
+  private void endFrame(ByteBuffer out, int start, int type, int count) {
+    int rawLength = out.position() - start - HEADER_SIZE;
+    int length = rawLength;
+    int flags = 0;
+    if(rawLength >= this.compressThreshold) {
+      int compressed = deflate(out, start + HEADER_SIZE, rawLength);
+      if(compressed > 0) {
+        out.position(start + HEADER_SIZE);
+        out.put(this.packed, 0, compressed);
+        length = compressed;
+        flags = COMPRESSED;
+      }
+    }
+    out.putInt(start, MAGIC);
+    out.put(start + 4, (byte) FORMAT_VERSION);
+    out.put(start + 5, (byte) type);
+    out.put(start + 6, (byte) flags);
+    out.put(start + 7, (byte) 0);
+    out.putInt(start + 8, count);
+    out.putInt(start + 12, rawLength);
+    out.putInt(start + 16, length);
+    out.position(start + HEADER_SIZE + length);
+  }
+
+  /**
+  * @return returns the size of the compressed bytes left in packed, 0 if not smaller
+  */
+  private int deflate(ByteBuffer buffer, int from, int length) {
+    if(this.packed.length < length) {
+      this.packed = new byte[length];
+    }
+    this.deflater.reset();
+    if(buffer.hasArray()) {
+      this.deflater.setInput(buffer.array(), buffer.arrayOffset() + from, length);
+    }
+    else {
+      byte[] raw = new byte[length];
+      ByteBuffer view = buffer.duplicate();
+      view.position(from);
+      view.get(raw);
+      this.deflater.setInput(raw);
+    }
+    this.deflater.finish();
+    int size = 0;
+    while(!this.deflater.finished() && size < length) {
+      size += this.deflater.deflate(this.packed, size, length - size);
+    }
+    return (this.deflater.finished() && size < length) ? size : 0;
+  }
+
+  /**
+  * @return returns the end of the whole frame at the position of the buffer
+  */
+  private static int checkFrame(ByteBuffer in, int type) throws IOException {
+    int size = frameSize(in);
+    if(size == -1 || size > in.remaining()) {
+      throw new IOException("Incomplete frame");
+    }
+    if(in.get(in.position() + 5) != type) {
+      throw new IOException("Expected frame type " + type + " but got " +
+        in.get(in.position() + 5));
+    }
+    return in.position() + size;
+  }
+
+  /**
+  * @return returns the buffer to read the payload from: the frame buffer itself, positioned
+  * on the payload, or the scratch buffer holding the inflated payload
+  */
+  private ByteBuffer openPayload(ByteBuffer in) throws IOException {
+    int start = in.position();
+    int rawLength = in.getInt(start + 12);
+    int length = in.getInt(start + 16);
+    in.position(start + HEADER_SIZE);
+    if((in.get(start + 6) & COMPRESSED) == 0) {
+      if(rawLength != length) {
+        throw new IOException("Invalid frame lengths");
+      }
+      return in;
+    }
+    //lengths come from an untrusted header, check them before allocating
+    if(rawLength < 0 || rawLength > MAX_PAYLOAD || rawLength > (long) length * MAX_RATIO) {
+      throw new IOException("Invalid inflated frame length " + rawLength + " for " + length +
+        " stored bytes");
+    }
+    if(this.unpacked.length < rawLength) {
+      this.unpacked = new byte[rawLength];
+      this.unpackedBuffer = ByteBuffer.wrap(this.unpacked);
+    }
+    this.inflater.reset();
+    if(in.hasArray()) {
+      this.inflater.setInput(in.array(), in.arrayOffset() + in.position(), length);
+    }
+    else {
+      if(this.packed.length < length) {
+        this.packed = new byte[length];
+      }
+      in.duplicate().get(this.packed, 0, length);
+      this.inflater.setInput(this.packed, 0, length);
+    }
+    try {
+      int size = 0;
+      while(size < rawLength && !this.inflater.finished()) {
+        int inflated = this.inflater.inflate(this.unpacked, size, rawLength - size);
+        if(inflated == 0 && (this.inflater.needsInput() || this.inflater.needsDictionary())) {
+          break;
+        }
+        size += inflated;
+      }
+      if(size != rawLength || !this.inflater.finished()) {
+        throw new IOException("Corrupt compressed frame");
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt compressed frame", e);
+    }
+    this.unpackedBuffer.clear();
+    this.unpackedBuffer.limit(rawLength);
+    return this.unpackedBuffer;
+  }
+
+  /**
+  * checks the payload was read exactly and moves the frame buffer past the frame
+  */
+  private static void closePayload(ByteBuffer in, ByteBuffer payload, int end)
+    throws IOException {
+    if((payload == in) ? in.position() != end : payload.hasRemaining()) {
+      throw new IOException("Frame payload does not match its count");
+    }
+    in.position(end);
+  }
+}
\ No newline at end of file
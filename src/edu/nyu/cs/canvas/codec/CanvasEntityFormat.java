@@ -0,0 +1,137 @@
+package edu.nyu.cs.canvas.codec;
+
+import java.awt.Color;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+
+/**
+ * Binary layout of a 'model entity', the one layout used by codec frames, autosave
+ * snapshots and journals. An end marker is just its coordinates, a drawn entity adds its
+ * argb color, its stroke and layer packed in one int, and the control points of its
+ * incoming segment when it is curved, all big endian.
+ *
+ * Entities are encoded into and decoded from a ByteBuffer; streams go through a small
+ * scratch buffer kept by the caller, so that no entity allocates more than itself
+ * @see CanvasCodec
+ * @author abhishek
+ */
+public final class CanvasEntityFormat {
+  //encoded sizes of an end marker, a drawn entity and a curved one
+  public static final int MARKER_SIZE = 8;
+  public static final int POINT_SIZE = 16;
+  public static final int CURVED_SIZE = 32;
+  private static final int CONTROLS = 1 << 31;
+
+  private CanvasEntityFormat() {
+  }
+
+  /**
+  * @param point is the entity
+  * @return returns the size in bytes of the encoded entity
+  */
+  public static int size(CanvasPoint point) {
+    if(point.isEndMarker()) {
+      return MARKER_SIZE;
+    }
+    return point.hasControls() ? CURVED_SIZE : POINT_SIZE;
+  }
+
+  /**
+  * @return returns a scratch buffer for encoding entities to streams, one per stream
+  */
+  public static ByteBuffer createScratch() {
+    return ByteBuffer.allocate(CURVED_SIZE);
+  }
+
+  /**
+  * Encodes an entity
+  * @param out is the big endian buffer receiving the entity at its position
+  * @param point is the entity
+  * @throws java.nio.BufferOverflowException if the buffer is too small
+  */
+  public static void write(ByteBuffer out, CanvasPoint point) {
+    out.putInt(point.getX());
+    out.putInt(point.getY());
+    if(point.isEndMarker()) {
+      return;
+    }
+    out.putInt(point.getColor().getRGB());
+    int packed = ((point.getLayer() & 0x7fff) << 16) | (point.getStroke() & 0xffff);
+    if(!point.hasControls()) {
+      out.putInt(packed);
+      return;
+    }
+    out.putInt(packed | CONTROLS);
+    out.putFloat(point.getControlX1());
+    out.putFloat(point.getControlY1());
+    out.putFloat(point.getControlX2());
+    out.putFloat(point.getControlY2());
+  }
+
+  /**
+  * Decodes an entity
+  * @param in is the big endian buffer holding the entity at its position
+  * @param endMarker is the end marker returned for markers, null for a new one each time
+  * @return returns the entity
+  * @throws java.nio.BufferUnderflowException if the buffer holds only part of the entity
+  */
+  public static CanvasPoint read(ByteBuffer in, CanvasPoint endMarker) {
+    int x = in.getInt();
+    int y = in.getInt();
+    if(x == -1 && y == -1) {
+      return (endMarker == null) ? CanvasConfig.getEndMarker() : endMarker;
+    }
+    Color color = new Color(in.getInt(), true);
+    int packed = in.getInt();
+    CanvasPoint.Builder builder = new CanvasPoint.Builder(x, y).pointWithColor(color).
+      pointWithStroke(packed & 0xffff).pointWithLayer((packed >>> 16) & 0x7fff);
+    if((packed & CONTROLS) != 0) {
+      builder.pointWithControls(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+    }
+    return builder.build();
+  }
+
+  /**
+  * Encodes an entity to a stream
+  * @param out is the stream
+  * @param point is the entity
+  * @param scratch is a buffer made by createScratch
+  * @throws IOException if writing fails
+  */
+  public static void write(DataOutput out, CanvasPoint point, ByteBuffer scratch)
+    throws IOException {
+    scratch.clear();
+    write(scratch, point);
+    out.write(scratch.array(), scratch.arrayOffset(), scratch.position());
+  }
+
+  /**
+  * Decodes an entity from a stream
+  * @param in is the stream
+  * @param scratch is a buffer made by createScratch
+  * @return returns the entity, a new end marker for markers
+  * @throws IOException if reading fails
+  */
+  public static CanvasPoint read(DataInput in, ByteBuffer scratch) throws IOException {
+    scratch.clear();
+    byte[] bytes = scratch.array();
+    int offset = scratch.arrayOffset();
+    //the coordinates tell a marker, the flags whether control points follow
+    in.readFully(bytes, offset, MARKER_SIZE);
+    int size = MARKER_SIZE;
+    if(scratch.getInt(0) != -1 || scratch.getInt(4) != -1) {
+      in.readFully(bytes, offset + MARKER_SIZE, POINT_SIZE - MARKER_SIZE);
+      size = POINT_SIZE;
+      if((scratch.getInt(12) & CONTROLS) != 0) {
+        in.readFully(bytes, offset + POINT_SIZE, CURVED_SIZE - POINT_SIZE);
+        size = CURVED_SIZE;
+      }
+    }
+    scratch.limit(size);
+    return read(scratch, null);
+  }
+}
\ No newline at end of file
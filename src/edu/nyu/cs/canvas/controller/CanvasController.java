@@ -1,11 +1,27 @@
 package edu.nyu.cs.canvas.controller;
 
 import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.export.CanvasSvgExporter;
+import edu.nyu.cs.canvas.merge.CanvasDrawingDiff;
+import edu.nyu.cs.canvas.merge.CanvasMerger;
+import edu.nyu.cs.canvas.model.CanvasLayer;
 import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasModelSnapshot;
 import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasSelection;
+import edu.nyu.cs.canvas.model.CanvasShape;
+import edu.nyu.cs.canvas.model.CanvasStrokeBatch;
+import edu.nyu.cs.canvas.model.CanvasStrokeHit;
 import edu.nyu.cs.canvas.view.CanvasObserver;
 import edu.nyu.cs.canvas.view.CanvasView;
 
@@ -15,14 +31,36 @@ import edu.nyu.cs.canvas.view.CanvasView;
  *
  * It is designed to follow a singleton pattern as only one controller
  * object is required an application. It acts along with a singleton model
- * and multiple observers(views)
+ * and multiple observers(views). Independent documents hosted in the same
+ * process create their own controller for their own model
+ * @see edu.nyu.cs.canvas.session.CanvasSessionManager
+ *
+ * Pen input is either committed inline or, once the pipeline is started, queued and
+ * committed in batches by a writer thread. Either way the model is only mutated while
+ * holding the commit lock, and every other operation first commits the queued input
+ * @see CanvasPipeline
+ *
+ * Views declare whether they are visible. Hidden views keep receiving paint settings and
+ * layers but are not asked to draw, the controller only records what they missed and
+ * brings them up to date once they are shown again
+ * @see #viewSetVisible(CanvasObserver, boolean)
  *
  * @author abhishek
  */
 public final class CanvasController {
+  //registered views, only changed under the commit lock as commits iterate over them
   private List<CanvasObserver> observers;
   private CanvasModel model;
+  //stores the number of views created for this controller, goes to zero when all observers are released
+  private int canvasCount;
   private static CanvasController controller = null;
+  //guards the model: taken for every commit, inline or from the pipeline
+  private final Object commitLock = new Object();
+  //staged input pipeline, null while pen input is committed inline
+  private volatile CanvasPipeline pipeline;
+  //what every hidden view has missed, guarded by the commit lock
+  private final Map<CanvasObserver, CanvasViewBacklog> backlogs =
+    new IdentityHashMap<CanvasObserver, CanvasViewBacklog>();
   public ArrayList<CanvasObserver> getObservers() {
     return (ArrayList<CanvasObserver>) this.observers;
   }
@@ -32,13 +70,22 @@ public final class CanvasController {
   * @param model (singleton) model object
   * @return a (singleton) controller object
   */
-  public static CanvasController getInstance(CanvasModel model) {
+  public static synchronized CanvasController getInstance(CanvasModel model) {
     if(controller == null && model != null) {
       controller = new CanvasController(model);
     }
     return (model == null) ? null : controller;
   }
 
+  /**
+  * Creates a controller independent of the shared one, for hosting a separate document
+  * @param model is the model of the document
+  * @return a new controller object, null if the model is null
+  */
+  public static CanvasController createInstance(CanvasModel model) {
+    return (model == null) ? null : new CanvasController(model);
+  }
+
   /**
   * Private constructor to enforce Singleton pattern
   * @param model (singleton) object representing the model
@@ -48,15 +95,27 @@ public final class CanvasController {
     this.observers = new ArrayList<CanvasObserver>();
   }
 
+  /**
+  * Assigns the next view ID, IDs are strictly increasing until observers are released
+  * @return returns the ID for a newly created view
+  */
+  public int nextViewID() {
+    return ++this.canvasCount;
+  }
+
   /**
   * Registers a newly created view with the controller
   * @param observer is the newly created view/observer
   */
   public void registerView(CanvasObserver observer) {
-    if(observer instanceof CanvasObserver) {
-      observers.add(observer);
-      observer.changeColor(this.model.getColor());
-      observer.changeStroke(this.model.getStroke());
+    synchronized(this.commitLock) {
+      commitQueued();
+      if(observer instanceof CanvasObserver) {
+        observers.add(observer);
+        observer.changeColor(this.model.getColor());
+        observer.changeStroke(this.model.getStroke());
+        observer.changeLayers(this.model.getLayers(), this.model.getActiveLayer());
+      }
     }
   }
 
@@ -69,7 +128,10 @@ public final class CanvasController {
     CanvasView newView = new CanvasView(this);
     this.registerView(newView);
     newView.displayView();
-    newView.copyContent(this.model.getAllPoints());
+    synchronized(this.commitLock) {
+      commitQueued();
+      newView.copyContent(this.model.loadAllPoints());
+    }
   }
 
   /**
@@ -81,24 +143,46 @@ public final class CanvasController {
     newView.displayView();
   }
 
+  /**
+  * Exports the drawing held by the model as an SVG document
+  * @param out is the stream receiving the document, it is not closed
+  * @throws IOException if writing to the stream fails
+  */
+  public void viewExport(OutputStream out) throws IOException {
+    synchronized(this.commitLock) {
+      commitQueued();
+      new CanvasSvgExporter(CanvasConfig.defaultWidth, CanvasConfig.defaultHeight).
+        export(this.model, out);
+    }
+  }
+
   /**
   * De-registers a view
   * @param ID is the ID of the view
   * @return returns the reference to the view being released
   */
   public CanvasObserver deregisterObserver(int ID) {
-    CanvasObserver toRemoveObserver = null;
-    int toRemoveID = -1;
-    for(int i = 0; i < observers.size(); ++i) {
-      if(((CanvasView) observers.get(i)).getID() == ID) {
-        toRemoveID = i;
+    synchronized(this.commitLock) {
+      for(CanvasObserver observer : observers) {
+        if(observer instanceof CanvasView && ((CanvasView) observer).getID() == ID) {
+          deregisterObserver(observer);
+          return observer;
+        }
       }
     }
-    if(toRemoveID != -1) {
-      toRemoveObserver = observers.get(toRemoveID);
-      observers.remove(toRemoveID);
+    return null;
+  }
+
+  /**
+  * De-registers an observer, also while pen input is being committed
+  * @param observer is the observer to release
+  * @return returns true if the observer was registered
+  */
+  public boolean deregisterObserver(CanvasObserver observer) {
+    synchronized(this.commitLock) {
+      this.backlogs.remove(observer);
+      return observers.remove(observer);
     }
-    return toRemoveObserver;
   }
 
   /**
@@ -116,10 +200,13 @@ public final class CanvasController {
   * Updates newly created views about the model state
   */
   public void viewUpdate() {
-    for(CanvasObserver observer : observers) {
-      if(observer instanceof CanvasObserver) {
-        observer.changeColor(this.model.getColor());
-        observer.changeStroke(this.model.getStroke());
+    synchronized(this.commitLock) {
+      commitQueued();
+      for(CanvasObserver observer : observers) {
+        if(observer instanceof CanvasObserver) {
+          observer.changeColor(this.model.getColor());
+          observer.changeStroke(this.model.getStroke());
+        }
       }
     }
   }
@@ -128,21 +215,129 @@ public final class CanvasController {
   * Releases all observers and resets total canvas count to 0
   */
   public void releaseObservers() {
-    this.observers.clear();
-    CanvasView.canvasCount = 0;
+    synchronized(this.commitLock) {
+      this.observers.clear();
+      this.canvasCount = 0;
+      this.backlogs.clear();
+    }
   }
 
   /**
   * When a reset is requested by user, it resets the model as
-  * well as the canvas and paint settings state of all views
+  * well as the canvas and paint settings state of all views. The reset takes constant
+  * time and can be undone
+  * @see #viewUndoReset()
   */
   public void viewReset() {
-    this.model.resetModel();
+    synchronized(this.commitLock) {
+      commitQueued();
+      this.model.resetModel();
+      for(CanvasObserver observer : observers) {
+        if(observer instanceof CanvasObserver) {
+          observer.reset();
+        }
+      }
+      for(CanvasViewBacklog backlog : this.backlogs.values()) {
+        backlog.clear();
+      }
+      updateLayers();
+    }
+  }
+
+  /**
+  * Merges a copy of the drawing edited apart, e.g. offline, into the model and redraws
+  * every view from the merged drawing
+  * @see CanvasMerger
+  * @param base is the state both copies started from
+  * @param theirs is the state of the other copy
+  * @return returns the merged state, the new base for both copies
+  */
+  public CanvasModelSnapshot viewMerge(CanvasModelSnapshot base, CanvasModelSnapshot theirs) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      CanvasModelSnapshot merged = CanvasMerger.merge(base, this.model.snapshot(), theirs);
+      replaceDrawing(merged);
+      return merged;
+    }
+  }
+
+  /**
+  * Applies the changes made to another copy of the drawing, computed against the ids of
+  * the elements of this one, and redraws every view
+  * @see CanvasDrawingDiff#compute(long[], CanvasModelSnapshot)
+  * @param diff is the changes to apply
+  * @throws IllegalArgumentException if the diff was computed from another state
+  */
+  public void viewApplyDiff(CanvasDrawingDiff diff) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      replaceDrawing(diff.applyTo(this.model.snapshot()));
+    }
+  }
+
+  /**
+  * Undoes the last reset, swapping the drawing it replaced back into the model, and
+  * redraws every view from it. Anything drawn since the reset is dropped
+  * @return true if there was a reset to undo
+  */
+  public boolean viewUndoReset() {
+    synchronized(this.commitLock) {
+      commitQueued();
+      if(!this.model.undoReset()) {
+        return false;
+      }
+      redrawViews();
+      return true;
+    }
+  }
+
+  /**
+  * Puts a drawing recovered from an autosave underneath whatever was drawn since the views
+  * were displayed, and redraws every view. The recovered layers and paint properties
+  * replace the current ones
+  * @param snapshot is the recovered drawing
+  */
+  public void viewRecover(CanvasModelSnapshot snapshot) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      ArrayList<CanvasPoint> drawn = new ArrayList<CanvasPoint>(this.model.loadAllPoints());
+      this.model.restore(snapshot);
+      if(!drawn.isEmpty()) {
+        //keep the recovered elements apart from the ones drawn since
+        this.model.addPoint(CanvasConfig.getEndMarker());
+        this.model.addPoint(CanvasConfig.getEndMarker());
+        for(CanvasPoint point : drawn) {
+          this.model.addPoint(point);
+        }
+      }
+      redrawViews();
+    }
+  }
+
+  /**
+  * replaces the drawing held by the model and redraws every view from scratch
+  */
+  private void replaceDrawing(CanvasModelSnapshot snapshot) {
+    this.model.restore(snapshot);
+    redrawViews();
+  }
+
+  /**
+  * redraws every view from scratch from the drawing held by the model
+  */
+  private void redrawViews() {
     for(CanvasObserver observer : observers) {
       if(observer instanceof CanvasObserver) {
         observer.reset();
+        observer.changeColor(this.model.getColor());
+        observer.changeStroke(this.model.getStroke());
       }
     }
+    for(CanvasViewBacklog backlog : this.backlogs.values()) {
+      backlog.clear();
+    }
+    updateLayers();
+    copyContent(this.model.loadAllPoints());
   }
 
   /**
@@ -151,10 +346,13 @@ public final class CanvasController {
   * @param color is the color selected by the user in the requesting view
   */
   public void viewUpdate(Color color) {
-    this.model.setColor(color);
-    for(CanvasObserver observer : observers) {
-      if(observer instanceof CanvasObserver) {
-        observer.changeColor(color);
+    synchronized(this.commitLock) {
+      commitQueued();
+      this.model.setColor(color);
+      for(CanvasObserver observer : observers) {
+        if(observer instanceof CanvasObserver) {
+          observer.changeColor(color);
+        }
       }
     }
   }
@@ -165,7 +363,13 @@ public final class CanvasController {
   * @param point
   */
   public void viewUpdate(CanvasPoint point) {
-    this.model.addPoint(point);
+    if(this.pipeline != null) {
+      this.pipeline.submit(CanvasPipeline.POINT, null, point);
+      return;
+    }
+    synchronized(this.commitLock) {
+      this.model.addPoint(point);
+    }
   }
 
   /**
@@ -174,10 +378,13 @@ public final class CanvasController {
   * @param stroke is the stroke selected by the user in the requesting view
   */
   public void viewUpdate(int stroke) {
-    this.model.setStroke(stroke);
-    for(CanvasObserver observer : observers) {
-      if(observer instanceof CanvasObserver) {
-        observer.changeStroke(stroke);
+    synchronized(this.commitLock) {
+      commitQueued();
+      this.model.setStroke(stroke);
+      for(CanvasObserver observer : observers) {
+        if(observer instanceof CanvasObserver) {
+          observer.changeStroke(stroke);
+        }
       }
     }
   }
@@ -188,7 +395,336 @@ public final class CanvasController {
   * @see edu.nyu.cs.canvas.model.CanvasModel
   */
   public void segmentEnd() {
-    this.model.addPoint(CanvasConfig.getEndMarker());
+    if(this.pipeline != null) {
+      this.pipeline.submit(CanvasPipeline.MARKER, null, null);
+      return;
+    }
+    synchronized(this.commitLock) {
+      this.model.addPoint(CanvasConfig.getEndMarker());
+    }
+  }
+
+  /**
+  * Imports a batch of strokes into the model and notifies every view once with
+  * all the imported elements, instead of once per segment
+  * @param batch is the batch of strokes coming from a file, a replay or a peer
+  */
+  public void viewImport(CanvasStrokeBatch batch) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      ArrayList<CanvasPoint> added = this.model.addStrokes(batch);
+      if(added.isEmpty()) {
+        return;
+      }
+      copyContent(added);
+    }
+  }
+
+  /**
+  * Adds a shape primitive dragged in a view to the model and notifies every view once
+  * with the entities of the primitive
+  * @param shape is the kind of primitive
+  * @param x1 is the x coordinate of the corner where the drag started
+  * @param y1 is the y coordinate of the corner where the drag started
+  * @param x2 is the x coordinate of the corner where the drag ended
+  * @param y2 is the y coordinate of the corner where the drag ended
+  * @param color is the color of the primitive
+  * @param stroke is the stroke of the primitive
+  */
+  public void viewAddShape(CanvasShape shape, int x1, int y1, int x2, int y2, Color color,
+    int stroke) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      ArrayList<CanvasPoint> added = this.model.addShape(shape, x1, y1, x2, y2, color, stroke);
+      copyContent(added);
+    }
+  }
+
+  /**
+  * Erases the ink under the eraser of a view and asks every view to redraw
+  * only the affected area
+  * @param x is the x coordinate of the eraser center
+  * @param y is the y coordinate of the eraser center
+  * @param radius is the radius of the eraser
+  */
+  public void viewErase(int x, int y, int radius) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      Rectangle area = this.model.erase(x, y, radius);
+      if(area == null) {
+        return;
+      }
+      repaintArea(area, this.model.getActiveLayer());
+    }
+  }
+
+  /**
+  * Seals the drawing element a view has just finished, letting the model store it as
+  * a fitted curve, and asks every view to redraw the area of the element
+  */
+  public void viewStrokeEnd() {
+    if(this.pipeline != null) {
+      this.pipeline.submit(CanvasPipeline.SEAL, null, null);
+      return;
+    }
+    synchronized(this.commitLock) {
+      sealStroke();
+    }
+  }
+
+  /**
+  * lets the model fit the drawing element just finished and redraws its area
+  */
+  private void sealStroke() {
+    Rectangle area = this.model.sealStroke(CanvasConfig.curveTolerance);
+    if(area != null) {
+      repaintArea(area, this.model.getActiveLayer());
+    }
+  }
+
+  /**
+  * Selects the drawing elements caught by a lasso drawn in a view
+  * @param lasso is the closed lasso outline
+  * @return returns the selection, possibly empty
+  */
+  public CanvasSelection viewSelect(Shape lasso) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      return this.model.select(lasso);
+    }
+  }
+
+  /**
+  * Finds the drawing element under a point of a view, e.g. to select or describe it
+  * @param x is the x coordinate of the point
+  * @param y is the y coordinate of the point
+  * @param tolerance is the maximum distance from the point to the painted element
+  * @return returns the nearest element of a visible layer, null if none is close enough
+  */
+  public CanvasStrokeHit viewFindStroke(int x, int y, double tolerance) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      return this.model.findStroke(x, y, tolerance);
+    }
+  }
+
+  /**
+  * Looks up the segments of a layer intersecting an area
+  * @param area is the area of interest
+  * @param layer is the id of the layer
+  * @return returns the segments as consecutive start/end pairs
+  */
+  public ArrayList<CanvasPoint> viewSegments(Rectangle area, int layer) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      return this.model.getSegments(area, layer);
+    }
+  }
+
+  /**
+  * Applies the transform a view has interactively chosen to a selection and asks
+  * every view to redraw the affected area
+  * @param selection is the selection to transform
+  * @param transform is the move, scale or rotation to apply
+  * @return true if the drawing was changed
+  */
+  public boolean viewTransform(CanvasSelection selection, AffineTransform transform) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      Rectangle area = this.model.transform(selection, transform);
+      if(area == null) {
+        return false;
+      }
+      repaintArea(area, selection.getLayer());
+      return true;
+    }
+  }
+
+  /**
+  * Adds a new layer on top of the others, makes it active and notifies every view
+  */
+  public void viewAddLayer() {
+    synchronized(this.commitLock) {
+      commitQueued();
+      this.model.addLayer(null);
+      updateLayers();
+    }
+  }
+
+  /**
+  * Makes a layer the one new drawing elements go to and notifies every view
+  * @param id is the id of the layer
+  */
+  public void viewSelectLayer(int id) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      if(this.model.setActiveLayer(id)) {
+        updateLayers();
+      }
+    }
+  }
+
+  /**
+  * Shows or hides a layer, views only need to composite their layers again
+  * @param id is the id of the layer
+  * @param visible is the new visibility
+  */
+  public void viewSetLayerVisible(int id, boolean visible) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      if(this.model.setLayerVisible(id, visible)) {
+        updateLayers();
+      }
+    }
+  }
+
+  /**
+  * Moves a layer in the stacking order, views only need to composite their layers again
+  * @param id is the id of the layer
+  * @param position is the new position, 0 being the bottom
+  */
+  public void viewMoveLayer(int id, int position) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      if(this.model.moveLayer(id, position)) {
+        updateLayers();
+      }
+    }
+  }
+
+  /**
+  * notifies every view of the current layers of the model
+  */
+  private void updateLayers() {
+    List<CanvasLayer> layers = this.model.getLayers();
+    for(CanvasObserver observer : observers) {
+      if(observer instanceof CanvasObserver) {
+        observer.changeLayers(layers, this.model.getActiveLayer());
+      }
+    }
+  }
+
+  /**
+  * asks every view to redraw an area of a layer after its ink changed
+  * @param area is the area affected by the change
+  * @param layer is the id of the layer affected by the change
+  */
+  private void repaintArea(Rectangle area, int layer) {
+    ArrayList<CanvasPoint> segments = this.model.getSegments(area, layer);
+    for(CanvasObserver observer : observers) {
+      if(observer instanceof CanvasObserver) {
+        CanvasViewBacklog backlog = this.backlogs.get(observer);
+        if(backlog != null) {
+          backlog.addArea(area, layer);
+        }
+        else {
+          observer.repaintArea(area, layer, segments);
+        }
+      }
+    }
+  }
+
+  /**
+  * Redraws an area of every layer of one view from the model, e.g. an area the view
+  * uncovered by growing. A hidden view redraws it when shown again
+  * @param observer is the view
+  * @param area is the area to redraw
+  */
+  public void viewRedraw(CanvasObserver observer, Rectangle area) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      CanvasViewBacklog backlog = this.backlogs.get(observer);
+      for(CanvasLayer layer : this.model.getLayers()) {
+        if(backlog != null) {
+          backlog.addArea(area, layer.getId());
+        }
+        else {
+          observer.repaintArea(area, layer.getId(), this.model.getSegments(area, layer.getId()));
+        }
+      }
+    }
+  }
+
+  /**
+  * sends every visible view drawing elements just added to the model
+  * @param added is the drawing elements added
+  */
+  private void copyContent(ArrayList<CanvasPoint> added) {
+    for(CanvasObserver observer : observers) {
+      if(observer instanceof CanvasObserver) {
+        CanvasViewBacklog backlog = this.backlogs.get(observer);
+        if(backlog != null) {
+          backlog.addPoints(added);
+        }
+        else {
+          observer.copyContent(added);
+        }
+      }
+    }
+  }
+
+  /**
+  * Declares whether a view can be seen. A hidden view, e.g. a minimized window, is not
+  * asked to draw anything, only the sequence number of the model is recorded along with
+  * the areas whose ink changed. When the view is shown again it redraws those areas in
+  * one batch per layer, or the whole canvas if the model moved on too far meanwhile
+  * @see CanvasConfig#catchUpLimit
+  * @param observer is the view
+  * @param visible is true if the view can be seen
+  */
+  public void viewSetVisible(CanvasObserver observer, boolean visible) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      if(!observers.contains(observer)) {
+        return;
+      }
+      if(!visible) {
+        if(!this.backlogs.containsKey(observer)) {
+          this.backlogs.put(observer, new CanvasViewBacklog(this.model.getVersion()));
+        }
+        return;
+      }
+      CanvasViewBacklog backlog = this.backlogs.remove(observer);
+      if(backlog != null) {
+        catchUp(observer, backlog);
+      }
+    }
+  }
+
+  /**
+  * @param observer is a registered view
+  * @return returns true unless the view declared itself hidden
+  */
+  public boolean isViewVisible(CanvasObserver observer) {
+    synchronized(this.commitLock) {
+      return !this.backlogs.containsKey(observer);
+    }
+  }
+
+  /**
+  * brings a view shown again up to date with what it missed while hidden
+  */
+  private void catchUp(CanvasObserver observer, CanvasViewBacklog backlog) {
+    if(this.model.getVersion() - backlog.getSequence() > CanvasConfig.catchUpLimit) {
+      //snapshot: redraw every layer over the whole canvas, grown to cover every change,
+      //a canvas may have grown past its default size
+      Rectangle all = new Rectangle(0, 0, CanvasConfig.defaultWidth, CanvasConfig.defaultHeight);
+      for(Rectangle area : backlog.getDirty().values()) {
+        all.add(area);
+      }
+      for(CanvasLayer layer : this.model.getLayers()) {
+        observer.repaintArea(all, layer.getId(), this.model.getSegments(all, layer.getId()));
+      }
+    }
+    else {
+      for(Map.Entry<Integer, Rectangle> entry : backlog.getDirty().entrySet()) {
+        observer.repaintArea(entry.getValue(), entry.getKey(),
+          this.model.getSegments(entry.getValue(), entry.getKey()));
+      }
+    }
+    if(backlog.getLastEnd() != null) {
+      observer.setStartPoint(backlog.getLastEnd());
+    }
   }
 
   /**
@@ -198,12 +734,125 @@ public final class CanvasController {
   * @param endPoint
   */
   public void viewUpdate(CanvasPoint startPoint, CanvasPoint endPoint) {
+    if(this.pipeline != null) {
+      this.pipeline.submit(CanvasPipeline.SEGMENT, startPoint, endPoint);
+      return;
+    }
+    synchronized(this.commitLock) {
+      addSegment(startPoint, endPoint, true);
+    }
+  }
+
+  /**
+  * adds the end of a segment to the model and asks every view to draw the segment
+  * @param inline is true when committed by the thread of the view drawing the segment,
+  * which may then move the start point of the views on. The pipeline writer leaves the
+  * start points alone, a view keeps track of its own start point as it queues its input
+  */
+  private void addSegment(CanvasPoint startPoint, CanvasPoint endPoint, boolean inline) {
     this.model.addPoint(endPoint);
     for(CanvasObserver observer : observers) {
       if(observer instanceof CanvasObserver) {
-        observer.drawLine(startPoint, endPoint);
-        observer.setStartPoint(endPoint);
+        CanvasViewBacklog backlog = this.backlogs.get(observer);
+        if(backlog != null) {
+          backlog.addSegment(startPoint, endPoint);
+        }
+        else {
+          observer.drawLine(startPoint, endPoint);
+          if(inline) {
+            observer.setStartPoint(endPoint);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+  * Runs a task against the model while no input is being committed, after committing the
+  * input queued so far. Used by background services that need a consistent model, e.g.
+  * to take a snapshot, the task must be short
+  * @param task is the task to run
+  */
+  public void runCommitted(Runnable task) {
+    synchronized(this.commitLock) {
+      commitQueued();
+      task.run();
+    }
+  }
+
+  /**
+  * Starts committing pen input through a staged pipeline: views only queue their input
+  * in a bounded ring buffer, and a writer thread commits it to the model in batches and
+  * notifies the views. Does nothing if the pipeline is already running
+  * @param capacity is the number of events the ring can hold
+  * @return returns the running pipeline, which exposes the backpressure metrics
+  */
+  public synchronized CanvasPipeline startPipeline(int capacity) {
+    if(this.pipeline == null) {
+      this.pipeline = new CanvasPipeline(this, this.commitLock, capacity);
+    }
+    return this.pipeline;
+  }
+
+  /**
+  * Stops the pipeline once the queued input is committed, pen input is committed
+  * inline again afterwards
+  * @throws InterruptedException if interrupted while waiting for the writer thread
+  */
+  public synchronized void stopPipeline() throws InterruptedException {
+    CanvasPipeline stopped = this.pipeline;
+    if(stopped == null) {
+      return;
+    }
+    stopped.stop(1000);
+    synchronized(this.commitLock) {
+      this.pipeline = null;
+      stopped.commitQueued();
+    }
+  }
+
+  /**
+  * @return returns the running pipeline, null when pen input is committed inline
+  */
+  public CanvasPipeline getPipeline() {
+    return this.pipeline;
+  }
+
+  /**
+  * Commits a batch of pen input taken off the pipeline, in submission order. Called
+  * with the commit lock held
+  * @param kinds is the kinds of the events
+  * @param starts is the start points of segment events
+  * @param ends is the points added by the events
+  * @param count is the number of events
+  */
+  void commitEvents(int[] kinds, CanvasPoint[] starts, CanvasPoint[] ends, int count) {
+    for(int i = 0; i < count; ++i) {
+      switch(kinds[i]) {
+      case CanvasPipeline.POINT:
+        this.model.addPoint(ends[i]);
+        break;
+      case CanvasPipeline.SEGMENT:
+        addSegment(starts[i], ends[i], false);
+        break;
+      case CanvasPipeline.MARKER:
+        this.model.addPoint(CanvasConfig.getEndMarker());
+        break;
+      default:
+        sealStroke();
+        break;
       }
     }
   }
+
+  /**
+  * commits the pen input still queued in the pipeline, if any, so that an operation
+  * sees all the input submitted before it. Called with the commit lock held
+  */
+  private void commitQueued() {
+    CanvasPipeline running = this.pipeline;
+    if(running != null) {
+      running.commitQueued();
+    }
+  }
 }
\ No newline at end of file
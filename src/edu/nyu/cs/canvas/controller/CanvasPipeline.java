@@ -0,0 +1,317 @@
+package edu.nyu.cs.canvas.controller;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+
+/**
+ * Staged input pipeline of a controller. Pen input from the views goes into a bounded
+ * ring buffer and a single writer thread commits it to the model in batches, notifying
+ * the views once a batch is in. Producers never touch the model: when the ring is full
+ * they wait for the writer, and the time they spent waiting is counted as backpressure.
+ *
+ * Every batch is committed while holding the commit lock of the controller, which the
+ * other controller operations also take after committing whatever is still queued, so
+ * the model is only ever mutated by one thread at a time and in submission order
+ *
+ * Metrics are kept unless turned off in the configuration
+ * @see CanvasConfig#metricsEnabled
+ * @see CanvasController#startPipeline(int)
+ * @author abhishek
+ */
+public final class CanvasPipeline {
+  //kinds of pen input carried by the ring
+  static final int POINT = 0;
+  static final int SEGMENT = 1;
+  static final int MARKER = 2;
+  static final int SEAL = 3;
+
+  private final CanvasController controller;
+  private final Object commitLock;
+  //ring slots, the same index in every array forms one event
+  private final int[] kinds;
+  private final CanvasPoint[] starts;
+  private final CanvasPoint[] ends;
+  private int head;
+  private int size;
+  //batch taken off the ring, reused from one commit to the next under the commit lock
+  private final int[] batchKinds;
+  private final CanvasPoint[] batchStarts;
+  private final CanvasPoint[] batchEnds;
+  //true while a batch is being committed, a nested commit gets arrays of its own
+  private boolean committing;
+  private final ReentrantLock lock;
+  private final Condition notEmpty;
+  private final Condition notFull;
+  private final Thread writer;
+  private volatile boolean running;
+  //metrics, written under the ring lock when enabled, left at 0 otherwise
+  private final boolean metrics;
+  private int highWaterMark;
+  private long stalls;
+  private long stallNanos;
+  private long committedEvents;
+  private long committedBatches;
+  private int largestBatch;
+
+  /**
+  * Constructor for the pipeline, only the controller creates pipelines
+  * @param controller is the controller committing the events
+  * @param commitLock is the lock guarding the model of the controller
+  * @param capacity is the number of events the ring can hold
+  */
+  CanvasPipeline(CanvasController controller, Object commitLock, int capacity) {
+    if(capacity < 1) {
+      throw new IllegalArgumentException("Pipeline capacity must be positive, got " + capacity);
+    }
+    this.controller = controller;
+    this.commitLock = commitLock;
+    this.metrics = CanvasConfig.metricsEnabled;
+    this.kinds = new int[capacity];
+    this.starts = new CanvasPoint[capacity];
+    this.ends = new CanvasPoint[capacity];
+    this.batchKinds = new int[capacity];
+    this.batchStarts = new CanvasPoint[capacity];
+    this.batchEnds = new CanvasPoint[capacity];
+    this.lock = new ReentrantLock();
+    this.notEmpty = this.lock.newCondition();
+    this.notFull = this.lock.newCondition();
+    this.running = true;
+    this.writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        writeLoop();
+      }
+    }, "canvas-pipeline-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+  * queues a pen event, waiting while the ring is full
+  * @param kind is the kind of event
+  * @param startPoint is the start point of a segment, null otherwise
+  * @param endPoint is the point added to the model, null for markers and seals
+  */
+  void submit(int kind, CanvasPoint startPoint, CanvasPoint endPoint) {
+    this.lock.lock();
+    try {
+      if(this.size == this.kinds.length) {
+        long waitStart = this.metrics ? System.nanoTime() : 0;
+        while(this.size == this.kinds.length) {
+          this.notFull.awaitUninterruptibly();
+        }
+        if(this.metrics) {
+          this.stalls++;
+          this.stallNanos += System.nanoTime() - waitStart;
+        }
+      }
+      int tail = (this.head + this.size) % this.kinds.length;
+      this.kinds[tail] = kind;
+      this.starts[tail] = startPoint;
+      this.ends[tail] = endPoint;
+      this.size++;
+      if(this.metrics) {
+        this.highWaterMark = Math.max(this.highWaterMark, this.size);
+      }
+      this.notEmpty.signal();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+  * commits every event queued so far on the calling thread, the caller must hold the
+  * commit lock. The batch is copied into arrays kept for the purpose, unless a view
+  * notified of the batch commits again from within the commit
+  */
+  void commitQueued() {
+    boolean nested = this.committing;
+    int[] kinds = this.batchKinds;
+    CanvasPoint[] starts = this.batchStarts;
+    CanvasPoint[] ends = this.batchEnds;
+    int count;
+    this.lock.lock();
+    try {
+      count = this.size;
+      if(count == 0) {
+        return;
+      }
+      if(nested) {
+        kinds = new int[count];
+        starts = new CanvasPoint[count];
+        ends = new CanvasPoint[count];
+      }
+      for(int i = 0; i < count; ++i) {
+        int slot = (this.head + i) % this.kinds.length;
+        kinds[i] = this.kinds[slot];
+        starts[i] = this.starts[slot];
+        ends[i] = this.ends[slot];
+        this.starts[slot] = null;
+        this.ends[slot] = null;
+      }
+      this.head = (this.head + count) % this.kinds.length;
+      this.size = 0;
+      if(this.metrics) {
+        this.committedEvents += count;
+        this.committedBatches++;
+        this.largestBatch = Math.max(this.largestBatch, count);
+      }
+      this.notFull.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+    this.committing = true;
+    try {
+      this.controller.commitEvents(kinds, starts, ends, count);
+    } finally {
+      this.committing = nested;
+      //do not keep the committed entities reachable from the batch
+      Arrays.fill(starts, 0, count, null);
+      Arrays.fill(ends, 0, count, null);
+    }
+  }
+
+  /**
+  * stops the writer thread once the events queued so far are committed
+  * @param timeoutMillis is the maximum time to wait for the writer
+  * @return true if the writer terminated within the timeout
+  * @throws InterruptedException if interrupted while waiting
+  */
+  boolean stop(long timeoutMillis) throws InterruptedException {
+    this.running = false;
+    this.lock.lock();
+    try {
+      this.notEmpty.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+    this.writer.join(timeoutMillis);
+    return !this.writer.isAlive();
+  }
+
+  /**
+  * body of the writer thread: waits for events and commits them in batches
+  */
+  private void writeLoop() {
+    while(true) {
+      this.lock.lock();
+      try {
+        while(this.size == 0 && this.running) {
+          try {
+            this.notEmpty.await(100, TimeUnit.MILLISECONDS);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if(this.size == 0) {
+          return;
+        }
+      } finally {
+        this.lock.unlock();
+      }
+      synchronized(this.commitLock) {
+        try {
+          commitQueued();
+        } catch (RuntimeException e) {
+          //the failed batch is lost, but the ring keeps draining so producers never block
+          System.err.println("Pipeline commit failed: " + e);
+        }
+      }
+    }
+  }
+
+  /**
+  * @return returns the number of events the ring can hold
+  */
+  public int getCapacity() {
+    return this.kinds.length;
+  }
+
+  /**
+  * @return returns the number of events waiting to be committed
+  */
+  public int getDepth() {
+    this.lock.lock();
+    try {
+      return this.size;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+  * @return returns the largest number of events ever waiting at once
+  */
+  public int getHighWaterMark() {
+    this.lock.lock();
+    try {
+      return this.highWaterMark;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+  * @return returns the number of times a producer found the ring full and had to wait
+  */
+  public long getStalls() {
+    this.lock.lock();
+    try {
+      return this.stalls;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+  * @return returns the total time producers spent waiting on a full ring, in nanoseconds
+  */
+  public long getStallNanos() {
+    this.lock.lock();
+    try {
+      return this.stallNanos;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+  * @return returns the number of events committed to the model
+  */
+  public long getCommittedEvents() {
+    this.lock.lock();
+    try {
+      return this.committedEvents;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+  * @return returns the number of batches committed to the model
+  */
+  public long getCommittedBatches() {
+    this.lock.lock();
+    try {
+      return this.committedBatches;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+  * @return returns the largest number of events committed in one batch
+  */
+  public int getLargestBatch() {
+    this.lock.lock();
+    try {
+      return this.largestBatch;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+}
\ No newline at end of file
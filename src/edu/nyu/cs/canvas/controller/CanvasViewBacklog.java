@@ -0,0 +1,94 @@
+package edu.nyu.cs.canvas.controller;
+
+import java.awt.Rectangle;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasSegmentVisitor;
+
+/**
+ * What a hidden view has missed: the sequence number of the model when the view was
+ * hidden and, per layer, the union of the areas whose ink changed since. Nothing is
+ * rasterized while the view is hidden, the backlog is replayed as one redraw per layer
+ * once it is shown again
+ * @see CanvasController#viewSetVisible(edu.nyu.cs.canvas.view.CanvasObserver, boolean)
+ * @author abhishek
+ */
+final class CanvasViewBacklog {
+  private final long sequence;
+  //dirty area per layer id, in order of first change
+  private final Map<Integer, Rectangle> dirty;
+  private CanvasPoint lastEnd;
+
+  /**
+  * @param sequence is the sequence number of the model when the view was hidden
+  */
+  CanvasViewBacklog(long sequence) {
+    this.sequence = sequence;
+    this.dirty = new LinkedHashMap<Integer, Rectangle>();
+  }
+
+  /**
+  * @return returns the sequence number of the model when the view was hidden
+  */
+  long getSequence() {
+    return this.sequence;
+  }
+
+  /**
+  * records a segment the view did not draw
+  */
+  void addSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+    addArea(CanvasModel.segmentBounds(startPoint, endPoint), endPoint.getLayer());
+    this.lastEnd = endPoint;
+  }
+
+  /**
+  * records drawing elements the view was not sent
+  */
+  void addPoints(List<CanvasPoint> points) {
+    CanvasModel.walkSegments(points, new CanvasSegmentVisitor() {
+      @Override
+      public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+        addArea(CanvasModel.segmentBounds(startPoint, endPoint), endPoint.getLayer());
+      }
+    });
+  }
+
+  /**
+  * records an area of a layer the view did not redraw
+  */
+  void addArea(Rectangle area, int layer) {
+    Rectangle union = this.dirty.get(layer);
+    if(union == null) {
+      this.dirty.put(layer, new Rectangle(area));
+    }
+    else {
+      union.add(area);
+    }
+  }
+
+  /**
+  * forgets the changes recorded so far, used once the view was cleared anyway
+  */
+  void clear() {
+    this.dirty.clear();
+    this.lastEnd = null;
+  }
+
+  /**
+  * @return returns the dirty area per layer id
+  */
+  Map<Integer, Rectangle> getDirty() {
+    return this.dirty;
+  }
+
+  /**
+  * @return returns the end of the last segment the view did not draw, null if none
+  */
+  CanvasPoint getLastEnd() {
+    return this.lastEnd;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,92 @@
+package edu.nyu.cs.canvas.export;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+import edu.nyu.cs.canvas.model.CanvasLayer;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasModelSnapshot;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasSegmentVisitor;
+import edu.nyu.cs.canvas.view.CanvasStrokeRenderer;
+
+/**
+ * PNG exporter for the Canvas drawing. The segments of a snapshot are rasterized off
+ * screen with the renderer of the canvases, visible layers bottom to top over a white
+ * background, so it works without a display
+ * @see CanvasStrokeRenderer
+ * @author abhishek
+ */
+public class CanvasPngExporter {
+  private final int width;
+  private final int height;
+
+  /**
+  * Constructor for the exporter
+  * @param width is the width of the exported image
+  * @param height is the height of the exported image
+  */
+  public CanvasPngExporter(int width, int height) {
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+  * writes a snapshot of a drawing as a PNG image. The stream is flushed but not closed
+  * @param snapshot is the snapshot to export
+  * @param out is the stream receiving the image
+  * @throws IOException if writing to the stream fails
+  */
+  public void export(CanvasModelSnapshot snapshot, OutputStream out) throws IOException {
+    BufferedImage image = render(snapshot);
+    if(!ImageIO.write(image, "png", out)) {
+      throw new IOException("No PNG writer available");
+    }
+    out.flush();
+  }
+
+  /**
+  * rasterizes a snapshot of a drawing
+  * @param snapshot is the snapshot to render
+  * @return returns the rendered image
+  */
+  public BufferedImage render(CanvasModelSnapshot snapshot) {
+    //segments are bucketed by layer in a single walk, then painted in stacking order
+    final Map<Integer, ArrayList<CanvasPoint>> segments =
+      new HashMap<Integer, ArrayList<CanvasPoint>>();
+    CanvasModel.walkSegments(snapshot.getPoints(), new CanvasSegmentVisitor() {
+      @Override
+      public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+        ArrayList<CanvasPoint> layer = segments.get(endPoint.getLayer());
+        if(layer == null) {
+          layer = new ArrayList<CanvasPoint>();
+          segments.put(endPoint.getLayer(), layer);
+        }
+        layer.add(startPoint);
+        layer.add(endPoint);
+      }
+    });
+    BufferedImage image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2 = image.createGraphics();
+    try {
+      g2.setColor(Color.WHITE);
+      g2.fillRect(0, 0, this.width, this.height);
+      CanvasStrokeRenderer.configure(g2);
+      for(CanvasLayer layer : snapshot.getLayers()) {
+        ArrayList<CanvasPoint> layerSegments = segments.get(layer.getId());
+        if(layer.isVisible() && layerSegments != null) {
+          CanvasStrokeRenderer.paintSegments(g2, layerSegments);
+        }
+      }
+    } finally {
+      g2.dispose();
+    }
+    return image;
+  }
+}
\ No newline at end of file
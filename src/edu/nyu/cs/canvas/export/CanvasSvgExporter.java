@@ -0,0 +1,250 @@
+package edu.nyu.cs.canvas.export;
+
+import java.awt.Color;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import edu.nyu.cs.canvas.model.CanvasLayer;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasModelSnapshot;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasSegmentVisitor;
+
+/**
+ * Streaming SVG exporter for the Canvas drawing. Segments are walked straight out
+ * of the model, once, and written as they are visited. Consecutive connected segments
+ * sharing the same paint properties are merged into a single path element, curved
+ * segments becoming cubic Bezier commands. Visible layers are written bottom to top,
+ * each as a group: the bottom visible layer goes straight to the stream, the paths of
+ * the layers above it are buffered until the walk is over, so memory use only depends
+ * on the size of the drawing when several layers are visible
+ * @see CanvasModel#walkSegments(CanvasSegmentVisitor)
+ * @author abhishek
+ */
+public class CanvasSvgExporter {
+  private final int width;
+  private final int height;
+
+  /**
+  * Constructor for the exporter
+  * @param width is the width of the exported document
+  * @param height is the height of the exported document
+  */
+  public CanvasSvgExporter(int width, int height) {
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+  * writes the drawing held by the model as an SVG document. The stream is flushed
+  * but not closed
+  * @param model is the model to export
+  * @param out is the stream receiving the document
+  * @throws IOException if writing to the stream fails
+  */
+  public void export(CanvasModel model, OutputStream out) throws IOException {
+    Writer writer = writeHeader(out);
+    LayerPaths paths = new LayerPaths(writer, model.getLayers());
+    model.walkSegments(paths);
+    paths.finish();
+    writeFooter(writer);
+  }
+
+  /**
+  * writes a snapshot of a drawing as an SVG document, e.g. on a thread other than the one
+  * mutating the model. The stream is flushed but not closed
+  * @param snapshot is the snapshot to export
+  * @param out is the stream receiving the document
+  * @throws IOException if writing to the stream fails
+  */
+  public void export(CanvasModelSnapshot snapshot, OutputStream out) throws IOException {
+    Writer writer = writeHeader(out);
+    LayerPaths paths = new LayerPaths(writer, snapshot.getLayers());
+    CanvasModel.walkSegments(snapshot.getPoints(), paths);
+    paths.finish();
+    writeFooter(writer);
+  }
+
+  private Writer writeHeader(OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + this.width +
+      "\" height=\"" + this.height + "\" viewBox=\"0 0 " + this.width + " " + this.height + "\">\n");
+    return writer;
+  }
+
+  private static void writeFooter(Writer writer) throws IOException {
+    writer.write("</svg>\n");
+    writer.flush();
+  }
+
+  /**
+  * formats a color as an SVG hex color
+  * @param color is the color to format
+  * @return returns the color in #rrggbb form
+  */
+  static String toHex(Color color) {
+    return String.format("#%06x", color.getRGB() & 0xffffff);
+  }
+
+  /**
+  * Segment visitor handing each segment to the path writer of its layer, skipping
+  * hidden layers
+  * @author abhishek
+  */
+  private static class LayerPaths implements CanvasSegmentVisitor {
+    private final Writer writer;
+    //visible layers bottom to top, and their path writers by layer id
+    private final List<CanvasLayer> visible;
+    private final HashMap<Integer, PathWriter> paths;
+    private IOException failure;
+
+    LayerPaths(Writer writer, List<CanvasLayer> layers) throws IOException {
+      this.writer = writer;
+      this.visible = new ArrayList<CanvasLayer>(layers.size());
+      this.paths = new HashMap<Integer, PathWriter>();
+      for(CanvasLayer layer : layers) {
+        if(layer.isVisible()) {
+          //the group of the bottom layer is open while walking, the others are buffered
+          if(this.visible.isEmpty()) {
+            beginGroup(layer);
+            this.paths.put(layer.getId(), new PathWriter(writer));
+          }
+          else {
+            this.paths.put(layer.getId(), new PathWriter(new StringWriter()));
+          }
+          this.visible.add(layer);
+        }
+      }
+    }
+
+    @Override
+    public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+      PathWriter path = this.paths.get(endPoint.getLayer());
+      if(this.failure != null || path == null) {
+        return;
+      }
+      try {
+        path.visitSegment(startPoint, endPoint);
+      } catch (IOException e) {
+        this.failure = e;
+      }
+    }
+
+    /**
+    * closes the open paths and writes the groups of the layers once the walk is over
+    * @throws IOException if writing failed during the walk or now
+    */
+    void finish() throws IOException {
+      if(this.failure != null) {
+        throw this.failure;
+      }
+      for(int i = 0; i < this.visible.size(); ++i) {
+        CanvasLayer layer = this.visible.get(i);
+        PathWriter path = this.paths.get(layer.getId());
+        path.closePath();
+        if(i > 0) {
+          beginGroup(layer);
+          this.writer.write(path.writer.toString());
+        }
+        this.writer.write("</g>\n");
+      }
+    }
+
+    private void beginGroup(CanvasLayer layer) throws IOException {
+      this.writer.write("<g id=\"layer-" + layer.getId() + "\">\n");
+    }
+  }
+
+  /**
+  * Writer of the paths of one layer, keeping a single path element open while
+  * segments continue it with the same paint properties
+  * @author abhishek
+  */
+  private static class PathWriter {
+    private final Writer writer;
+    //first point of the open path, carrying the paint properties of the path
+    private CanvasPoint style;
+    private CanvasPoint last;
+    //false while the open path is just a move to its first point
+    private boolean drawn;
+
+    PathWriter(Writer writer) {
+      this.writer = writer;
+    }
+
+    /**
+    * writes a segment, extending the open path or starting a new one. Segments that
+    * do not move, e.g. the one a stroke starts with, add no command
+    * @param startPoint is the staring point of the segment
+    * @param endPoint is the terminating point of the segment
+    * @throws IOException if writing fails
+    */
+    void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) throws IOException {
+      if(!continues(startPoint)) {
+        closePath();
+        int opacity = startPoint.getColor().getAlpha();
+        this.writer.write("<path fill=\"none\" stroke=\"" + toHex(startPoint.getColor()) +
+          "\" stroke-width=\"" + startPoint.getStroke() + "\"" +
+          ((opacity < 255) ? " stroke-opacity=\"" + (opacity / 255f) + "\"" : "") +
+          " stroke-linecap=\"round\" stroke-linejoin=\"round\" d=\"M" + startPoint.getX() +
+          " " + startPoint.getY());
+        this.style = startPoint;
+        this.last = startPoint;
+        this.drawn = false;
+      }
+      if(endPoint.hasControls() || endPoint.getX() != this.last.getX() ||
+        endPoint.getY() != this.last.getY()) {
+        this.writer.write(toCommand(endPoint));
+        this.drawn = true;
+      }
+      this.last = endPoint;
+    }
+
+    /**
+    * @param endPoint is the end of a segment
+    * @return returns the path command drawing the segment, a line or a cubic piece
+    */
+    private static String toCommand(CanvasPoint endPoint) {
+      if(endPoint.hasControls()) {
+        return " C" + endPoint.getControlX1() + " " + endPoint.getControlY1() + " " +
+          endPoint.getControlX2() + " " + endPoint.getControlY2() + " " +
+          endPoint.getX() + " " + endPoint.getY();
+      }
+      return " L" + endPoint.getX() + " " + endPoint.getY();
+    }
+
+    /**
+    * checks if a segment extends the open path
+    * @param startPoint is the start of the segment
+    * @return true if the open path can be extended with the segment
+    */
+    private boolean continues(CanvasPoint startPoint) {
+      return this.last != null && startPoint.getX() == this.last.getX() &&
+        startPoint.getY() == this.last.getY() && startPoint.getStroke() == this.style.getStroke() &&
+        startPoint.getColor().equals(this.style.getColor());
+    }
+
+    /**
+    * terminates the open path element, if any
+    * @throws IOException if writing fails
+    */
+    private void closePath() throws IOException {
+      if(this.last != null) {
+        //a lone point still needs a line to it for its round cap to be painted
+        if(!this.drawn) {
+          this.writer.write(toCommand(this.last));
+        }
+        this.writer.write("\"/>\n");
+        this.last = null;
+      }
+    }
+  }
+}
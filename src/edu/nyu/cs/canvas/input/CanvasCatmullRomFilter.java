@@ -0,0 +1,98 @@
+package edu.nyu.cs.canvas.input;
+
+/**
+ * Interpolates pen samples along a uniform Catmull-Rom spline, which passes through every
+ * sample, so that sparse samples of a fast stroke give a smooth curve instead of a
+ * polyline. The piece between two samples needs the sample after them, so the output
+ * lags one sample behind and the last piece is emitted when the element finishes. A
+ * piece is cut into steps of about a spacing, at most a fixed number of them, which keeps
+ * the work per sample constant
+ * @author abhishek
+ */
+public final class CanvasCatmullRomFilter implements CanvasInputFilter {
+  //most steps a piece is cut into
+  private static final int MAX_STEPS = 16;
+  private final float spacing;
+  //the last four samples, the piece emitted next runs from b to c
+  private float ax, ay, bx, by, cx, cy;
+  private long bTime, cTime;
+  private boolean started;
+
+  /**
+  * Constructor for the filter
+  * @param spacing is the length of a step between two emitted samples, in pixels
+  */
+  public CanvasCatmullRomFilter(float spacing) {
+    if(!(spacing > 0)) {
+      throw new IllegalArgumentException("Spacing must be positive, got " + spacing);
+    }
+    this.spacing = spacing;
+  }
+
+  @Override
+  public void start(float x, float y, long time, CanvasInputSink out) {
+    this.ax = this.bx = this.cx = x;
+    this.ay = this.by = this.cy = y;
+    this.bTime = this.cTime = time;
+    this.started = true;
+    out.emit(x, y, time);
+  }
+
+  @Override
+  public void sample(float x, float y, long time, CanvasInputSink out) {
+    if(!this.started) {
+      start(x, y, time, out);
+      return;
+    }
+    emitPiece(x, y, out);
+    this.ax = this.bx;
+    this.ay = this.by;
+    this.bx = this.cx;
+    this.by = this.cy;
+    this.bTime = this.cTime;
+    this.cx = x;
+    this.cy = y;
+    this.cTime = time;
+  }
+
+  @Override
+  public void finish(CanvasInputSink out) {
+    if(this.started) {
+      //the last sample stands in for the one after it
+      emitPiece(this.cx, this.cy, out);
+      this.started = false;
+    }
+  }
+
+  /**
+  * emits the piece from b to c, ending exactly at c
+  * @param dx is the x coordinate of the sample after c
+  * @param dy is the y coordinate of the sample after c
+  */
+  private void emitPiece(float dx, float dy, CanvasInputSink out) {
+    if(this.bx == this.cx && this.by == this.cy) {
+      return;
+    }
+    //the piece is the Bezier curve from b to c with inner controls a sixth of the tangents
+    //away, which is no longer than its control polygon
+    float x1 = this.bx + (this.cx - this.ax) / 6;
+    float y1 = this.by + (this.cy - this.ay) / 6;
+    float x2 = this.cx - (dx - this.bx) / 6;
+    float y2 = this.cy - (dy - this.by) / 6;
+    double length = Math.hypot(x1 - this.bx, y1 - this.by) + Math.hypot(x2 - x1, y2 - y1) +
+      Math.hypot(this.cx - x2, this.cy - y2);
+    int steps = Math.min(MAX_STEPS, Math.max(1, (int) Math.ceil(length / this.spacing)));
+    for(int i = 1; i <= steps; ++i) {
+      float t = (float) i / steps;
+      float t2 = t * t;
+      float t3 = t2 * t;
+      float x = 0.5f * (2 * this.bx + (this.cx - this.ax) * t +
+        (2 * this.ax - 5 * this.bx + 4 * this.cx - dx) * t2 +
+        (3 * this.bx - this.ax - 3 * this.cx + dx) * t3);
+      float y = 0.5f * (2 * this.by + (this.cy - this.ay) * t +
+        (2 * this.ay - 5 * this.by + 4 * this.cy - dy) * t2 +
+        (3 * this.by - this.ay - 3 * this.cy + dy) * t3);
+      out.emit(x, y, this.bTime + (long) ((this.cTime - this.bTime) * (double) t));
+    }
+  }
+}
\ No newline at end of file
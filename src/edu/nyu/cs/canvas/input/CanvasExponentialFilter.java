@@ -0,0 +1,41 @@
+package edu.nyu.cs.canvas.input;
+
+/**
+ * Exponential smoothing of pen samples: every sample moves the pen a fixed fraction of
+ * the way towards the raw position. Cheap and steady, but it lags behind fast strokes
+ * @author abhishek
+ */
+public final class CanvasExponentialFilter implements CanvasInputFilter {
+  private final float alpha;
+  private float x;
+  private float y;
+
+  /**
+  * Constructor for the filter
+  * @param alpha is the weight of a new sample, between 0 (frozen) and 1 (raw)
+  */
+  public CanvasExponentialFilter(float alpha) {
+    if(!(alpha > 0 && alpha <= 1)) {
+      throw new IllegalArgumentException("Smoothing weight must be in (0, 1], got " + alpha);
+    }
+    this.alpha = alpha;
+  }
+
+  @Override
+  public void start(float x, float y, long time, CanvasInputSink out) {
+    this.x = x;
+    this.y = y;
+    out.emit(x, y, time);
+  }
+
+  @Override
+  public void sample(float x, float y, long time, CanvasInputSink out) {
+    this.x += this.alpha * (x - this.x);
+    this.y += this.alpha * (y - this.y);
+    out.emit(this.x, this.y, time);
+  }
+
+  @Override
+  public void finish(CanvasInputSink out) {
+  }
+}
\ No newline at end of file
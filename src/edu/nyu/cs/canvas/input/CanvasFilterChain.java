@@ -0,0 +1,98 @@
+package edu.nyu.cs.canvas.input;
+
+import edu.nyu.cs.canvas.CanvasConfig;
+
+/**
+ * Runs pen samples through a sequence of filters, each feeding the next one. The links
+ * between filters are created once with the chain, so filtering does not allocate
+ * @author abhishek
+ */
+public final class CanvasFilterChain implements CanvasInputFilter {
+  private final CanvasInputFilter[] filters;
+  //links[i] feeds the output of filter i into filter i+1
+  private final Link[] links;
+  //sink of the samples coming out of the last filter
+  private CanvasInputSink out;
+
+  /**
+  * Feeds samples into the next filter of the chain, or out of the chain after the last one
+  */
+  private final class Link implements CanvasInputSink {
+    private final int next;
+    //true until the element has been started on the next filter
+    private boolean pending;
+
+    Link(int next) {
+      this.next = next;
+    }
+
+    @Override
+    public void emit(float x, float y, long time) {
+      if(this.next == filters.length) {
+        out.emit(x, y, time);
+      }
+      else if(this.pending) {
+        this.pending = false;
+        filters[this.next].start(x, y, time, links[this.next]);
+      }
+      else {
+        filters[this.next].sample(x, y, time, links[this.next]);
+      }
+    }
+  }
+
+  /**
+  * Constructor for a chain
+  * @param filters is the filters in the order samples go through them
+  */
+  public CanvasFilterChain(CanvasInputFilter... filters) {
+    this.filters = filters.clone();
+    this.links = new Link[filters.length];
+    for(int i = 0; i < filters.length; ++i) {
+      this.links[i] = new Link(i + 1);
+    }
+  }
+
+  /**
+  * creates the default smoothing of live input: a One Euro filter taking out the jitter,
+  * followed by Catmull-Rom interpolation of the smoothed samples
+  * @return returns a new chain, chains keep per element state and are not shared by views
+  */
+  public static CanvasFilterChain createSmoothing() {
+    return new CanvasFilterChain(new CanvasOneEuroFilter(CanvasConfig.smoothingMinCutoff,
+      CanvasConfig.smoothingBeta, CanvasConfig.smoothingDerivativeCutoff),
+      new CanvasCatmullRomFilter(CanvasConfig.smoothingSpacing));
+  }
+
+  @Override
+  public void start(float x, float y, long time, CanvasInputSink out) {
+    this.out = out;
+    if(this.filters.length == 0) {
+      out.emit(x, y, time);
+      return;
+    }
+    for(Link link : this.links) {
+      link.pending = true;
+    }
+    this.filters[0].start(x, y, time, this.links[0]);
+  }
+
+  @Override
+  public void sample(float x, float y, long time, CanvasInputSink out) {
+    this.out = out;
+    if(this.filters.length == 0) {
+      out.emit(x, y, time);
+      return;
+    }
+    this.filters[0].sample(x, y, time, this.links[0]);
+  }
+
+  @Override
+  public void finish(CanvasInputSink out) {
+    this.out = out;
+    //held back samples flow down the chain before the next filter finishes in turn
+    for(int i = 0; i < this.filters.length; ++i) {
+      this.filters[i].finish(this.links[i]);
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,36 @@
+package edu.nyu.cs.canvas.input;
+
+/**
+ * Filter of live pen samples, run between the mouse listeners of a view and its
+ * controller. A filter sees the samples of one drawing element at a time, from the press
+ * to the release of the pen, and emits any number of samples to a sink for each of them.
+ * Filters take constant time per sample and do not allocate, their state is kept in
+ * fields and reset when a new element starts
+ * @see CanvasFilterChain
+ * @author abhishek
+ */
+public interface CanvasInputFilter {
+  /**
+  * starts a new drawing element
+  * @param x is the x coordinate of the pen
+  * @param y is the y coordinate of the pen
+  * @param time is the time of the sample in nanoseconds
+  * @param out is the sink receiving the filtered samples
+  */
+  public void start(float x, float y, long time, CanvasInputSink out);
+
+  /**
+  * filters a sample of the element
+  * @param x is the x coordinate of the pen
+  * @param y is the y coordinate of the pen
+  * @param time is the time of the sample in nanoseconds
+  * @param out is the sink receiving the filtered samples
+  */
+  public void sample(float x, float y, long time, CanvasInputSink out);
+
+  /**
+  * ends the element, emitting any sample held back
+  * @param out is the sink receiving the filtered samples
+  */
+  public void finish(CanvasInputSink out);
+}
\ No newline at end of file
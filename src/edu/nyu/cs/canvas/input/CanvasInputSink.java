@@ -0,0 +1,17 @@
+package edu.nyu.cs.canvas.input;
+
+/**
+ * Receiver of the pen samples coming out of an input filter, e.g. the next filter of a
+ * chain or the view turning them into 'model entities'
+ * @see CanvasInputFilter
+ * @author abhishek
+ */
+public interface CanvasInputSink {
+  /**
+  * receives a sample
+  * @param x is the x coordinate of the sample
+  * @param y is the y coordinate of the sample
+  * @param time is the time of the sample in nanoseconds
+  */
+  public void emit(float x, float y, long time);
+}
\ No newline at end of file
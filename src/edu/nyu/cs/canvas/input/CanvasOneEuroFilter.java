@@ -0,0 +1,72 @@
+package edu.nyu.cs.canvas.input;
+
+/**
+ * One Euro filter (Casiez, Roussel and Vogel, CHI 2012): a low pass filter whose cutoff
+ * frequency rises with the speed of the pen. Slow strokes, where jitter shows, are
+ * smoothed heavily, while fast strokes, where lag shows, go through almost unfiltered.
+ * The speed is the magnitude of the filtered velocity, so both axes share the cutoff
+ * @author abhishek
+ */
+public final class CanvasOneEuroFilter implements CanvasInputFilter {
+  //shortest time step, for samples sharing a timestamp
+  private static final double MIN_STEP = 1e-3;
+  private final double minCutoff;
+  private final double beta;
+  private final double derivativeCutoff;
+  private double x;
+  private double y;
+  private double dx;
+  private double dy;
+  private long time;
+
+  /**
+  * Constructor for the filter
+  * @param minCutoff is the cutoff frequency at rest in Hz, lower smooths more
+  * @param beta is the increase of the cutoff per pixel per second of speed, higher lags less
+  * @param derivativeCutoff is the cutoff frequency in Hz of the velocity estimate
+  */
+  public CanvasOneEuroFilter(double minCutoff, double beta, double derivativeCutoff) {
+    if(!(minCutoff > 0 && beta >= 0 && derivativeCutoff > 0)) {
+      throw new IllegalArgumentException("Invalid One Euro settings");
+    }
+    this.minCutoff = minCutoff;
+    this.beta = beta;
+    this.derivativeCutoff = derivativeCutoff;
+  }
+
+  @Override
+  public void start(float x, float y, long time, CanvasInputSink out) {
+    this.x = x;
+    this.y = y;
+    this.dx = 0;
+    this.dy = 0;
+    this.time = time;
+    out.emit(x, y, time);
+  }
+
+  @Override
+  public void sample(float x, float y, long time, CanvasInputSink out) {
+    double step = Math.max(MIN_STEP, (time - this.time) / 1e9);
+    this.time = time;
+    double derivativeAlpha = alpha(this.derivativeCutoff, step);
+    this.dx += derivativeAlpha * ((x - this.x) / step - this.dx);
+    this.dy += derivativeAlpha * ((y - this.y) / step - this.dy);
+    double cutoff = this.minCutoff + this.beta * Math.sqrt(this.dx * this.dx + this.dy * this.dy);
+    double alpha = alpha(cutoff, step);
+    this.x += alpha * (x - this.x);
+    this.y += alpha * (y - this.y);
+    out.emit((float) this.x, (float) this.y, time);
+  }
+
+  @Override
+  public void finish(CanvasInputSink out) {
+  }
+
+  /**
+  * @return returns the smoothing weight of a first order low pass filter
+  */
+  private static double alpha(double cutoff, double step) {
+    double tau = 1 / (2 * Math.PI * cutoff);
+    return 1 / (1 + tau / step);
+  }
+}
\ No newline at end of file
@@ -0,0 +1,203 @@
+package edu.nyu.cs.canvas.load;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.codec.CanvasCodec;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasStrokeBatch;
+
+/**
+ * Measures the binary codec against Java serialization on the same random walk drawing:
+ * entities through the codec, stroke batches through the codec with and without
+ * compression, and the entity list through object streams. Every measure is the average
+ * time per point over a number of rounds, after as many rounds of warm up, along with the
+ * encoded size per point
+ * @see CanvasCodec
+ * @author abhishek
+ */
+public final class CanvasCodecBenchmark {
+  private final List<CanvasPoint> points;
+  private final CanvasStrokeBatch batch;
+  private final int pointCount;
+  private final int rounds;
+  //keeps decoded results reachable so that decoding is not optimized away
+  private long sink;
+
+  /**
+  * Constructor for a benchmark
+  * @param strokes is the number of strokes of the drawing
+  * @param length is the number of points per stroke
+  * @param rounds is the number of measured rounds
+  */
+  public CanvasCodecBenchmark(int strokes, int length, int rounds) {
+    Random random = new Random(42);
+    Color[] colors = {Color.BLACK, Color.RED, Color.BLUE, Color.GREEN};
+    this.points = new ArrayList<CanvasPoint>(strokes * (length + 2));
+    this.batch = new CanvasStrokeBatch(strokes, strokes * length);
+    int[] xs = new int[length];
+    int[] ys = new int[length];
+    CanvasPoint endMarker = CanvasConfig.getEndMarker();
+    for(int i = 0; i < strokes; ++i) {
+      Color color = colors[random.nextInt(colors.length)];
+      int stroke = 1 + random.nextInt(8);
+      xs[0] = random.nextInt(CanvasConfig.defaultWidth);
+      ys[0] = random.nextInt(CanvasConfig.defaultHeight);
+      for(int j = 1; j < length; ++j) {
+        xs[j] = xs[j-1] + random.nextInt(7) - 3;
+        ys[j] = ys[j-1] + random.nextInt(7) - 3;
+      }
+      this.points.add(endMarker);
+      for(int j = 0; j < length; ++j) {
+        this.points.add(new CanvasPoint.Builder(xs[j], ys[j]).pointWithColor(color).
+          pointWithStroke(stroke).build());
+      }
+      this.points.add(endMarker);
+      this.batch.addStroke(xs, ys, length, color, stroke);
+    }
+    this.pointCount = strokes * length;
+    this.rounds = rounds;
+  }
+
+  /**
+  * runs every measure
+  * @return returns the measures by name: times in nanoseconds per point, sizes in bytes
+  * per point
+  * @throws IOException if a round trip fails
+  */
+  public Map<String, Double> run() throws IOException {
+    Map<String, Double> results = new LinkedHashMap<String, Double>();
+    CanvasCodec plain = new CanvasCodec(Integer.MAX_VALUE);
+    CanvasCodec compressing = new CanvasCodec(0);
+    ByteBuffer buffer = ByteBuffer.allocate(Math.max(CanvasCodec.maxFrameSize(this.points),
+      CanvasCodec.maxFrameSize(this.batch)));
+    measurePoints(plain, buffer, results);
+    measureBatch("codec batch", plain, buffer, results);
+    measureBatch("codec compressed batch", compressing, buffer, results);
+    measureSerialization(results);
+    return results;
+  }
+
+  private void measurePoints(CanvasCodec codec, ByteBuffer buffer, Map<String, Double> results)
+    throws IOException {
+    long encode = 0;
+    long decode = 0;
+    for(int round = 0; round < 2 * this.rounds; ++round) {
+      buffer.clear();
+      long start = System.nanoTime();
+      codec.writePoints(this.points, buffer);
+      long encoded = System.nanoTime();
+      buffer.flip();
+      this.sink += codec.readPoints(buffer).size();
+      long decoded = System.nanoTime();
+      if(round >= this.rounds) {
+        encode += encoded - start;
+        decode += decoded - encoded;
+      }
+    }
+    results.put("codec points encode ns", perPoint(encode));
+    results.put("codec points decode ns", perPoint(decode));
+    results.put("codec points bytes", (double) buffer.limit() / this.pointCount);
+  }
+
+  private void measureBatch(String name, CanvasCodec codec, ByteBuffer buffer,
+    Map<String, Double> results) throws IOException {
+    CanvasStrokeBatch decodedBatch = new CanvasStrokeBatch();
+    long encode = 0;
+    long decode = 0;
+    for(int round = 0; round < 2 * this.rounds; ++round) {
+      buffer.clear();
+      long start = System.nanoTime();
+      codec.writeBatch(this.batch, buffer);
+      long encoded = System.nanoTime();
+      buffer.flip();
+      this.sink += codec.readBatch(buffer, decodedBatch).getPointCount();
+      long decoded = System.nanoTime();
+      if(round >= this.rounds) {
+        encode += encoded - start;
+        decode += decoded - encoded;
+      }
+    }
+    results.put(name + " encode ns", perPoint(encode));
+    results.put(name + " decode ns", perPoint(decode));
+    results.put(name + " bytes", (double) buffer.limit() / this.pointCount);
+  }
+
+  private void measureSerialization(Map<String, Double> results) throws IOException {
+    long write = 0;
+    long read = 0;
+    int size = 0;
+    for(int round = 0; round < 2 * this.rounds; ++round) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      long start = System.nanoTime();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(this.points);
+      out.close();
+      long written = System.nanoTime();
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+      try {
+        this.sink += ((List<?>) in.readObject()).size();
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      }
+      long readBack = System.nanoTime();
+      if(round >= this.rounds) {
+        write += written - start;
+        read += readBack - written;
+      }
+      size = bytes.size();
+    }
+    results.put("java serialization write ns", perPoint(write));
+    results.put("java serialization read ns", perPoint(read));
+    results.put("java serialization bytes", (double) size / this.pointCount);
+  }
+
+  private double perPoint(long nanos) {
+    return (double) nanos / this.rounds / this.pointCount;
+  }
+
+  /**
+  * Command line entry point, settings are passed as key=value: strokes, length and rounds
+  * @param argv is the settings
+  * @throws IOException if a round trip fails
+  */
+  public static void main(String[] argv) throws IOException {
+    int strokes = 2000;
+    int length = 100;
+    int rounds = 20;
+    for(String arg : argv) {
+      int split = arg.indexOf('=');
+      if(split <= 0) {
+        throw new IllegalArgumentException("Expected key=value, got " + arg);
+      }
+      String key = arg.substring(0, split);
+      int value = Integer.parseInt(arg.substring(split + 1));
+      if(key.equals("strokes")) {
+        strokes = value;
+      }
+      else if(key.equals("length")) {
+        length = value;
+      }
+      else if(key.equals("rounds")) {
+        rounds = value;
+      }
+      else {
+        throw new IllegalArgumentException("Unknown setting " + key);
+      }
+    }
+    CanvasCodecBenchmark benchmark = new CanvasCodecBenchmark(strokes, length, rounds);
+    for(Map.Entry<String, Double> result : benchmark.run().entrySet()) {
+      System.out.println(String.format("%-40s %10.2f", result.getKey(), result.getValue()));
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,152 @@
+package edu.nyu.cs.canvas.load;
+
+import java.awt.Color;
+import java.awt.geom.Line2D;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasSegmentVisitor;
+import edu.nyu.cs.canvas.model.CanvasStrokeBatch;
+import edu.nyu.cs.canvas.model.CanvasStrokeHit;
+
+/**
+ * Measures nearest stroke queries on a large drawing of short random walk strokes spread
+ * over a board sized to keep their density constant. Reports the time to build the
+ * hierarchy, which the first query pays for, the average time of a query, and the
+ * average time of a linear scan over all segments answering the same queries, which also
+ * checks that both agree on the distance
+ * @see CanvasModel#findStroke(int, int, double)
+ * @author abhishek
+ */
+public final class CanvasHitBenchmark {
+  private final CanvasModel model;
+  private final int side;
+  private final int queries;
+  private final double tolerance;
+
+  /**
+  * Constructor for a benchmark, builds the drawing
+  * @param strokes is the number of strokes of the drawing
+  * @param length is the number of points per stroke
+  * @param queries is the number of measured queries
+  */
+  public CanvasHitBenchmark(int strokes, int length, int queries) {
+    Random random = new Random(42);
+    Color[] colors = {Color.BLACK, Color.RED, Color.BLUE, Color.GREEN};
+    this.side = 16 * (int) Math.ceil(Math.sqrt(strokes));
+    this.queries = queries;
+    this.tolerance = 4;
+    this.model = CanvasModel.createInstance();
+    CanvasStrokeBatch batch = new CanvasStrokeBatch(strokes, strokes * length);
+    int[] xs = new int[length];
+    int[] ys = new int[length];
+    for(int i = 0; i < strokes; ++i) {
+      xs[0] = random.nextInt(this.side);
+      ys[0] = random.nextInt(this.side);
+      for(int j = 1; j < length; ++j) {
+        xs[j] = xs[j-1] + random.nextInt(9) - 4;
+        ys[j] = ys[j-1] + random.nextInt(9) - 4;
+      }
+      batch.addStroke(xs, ys, length, colors[random.nextInt(colors.length)],
+        1 + random.nextInt(4));
+    }
+    this.model.addStrokes(batch);
+  }
+
+  /**
+  * runs every measure
+  * @return returns the measures by name: times in microseconds, the number of queries
+  * that found a stroke and the number of queries on which the scan disagreed
+  */
+  public Map<String, Double> run() {
+    Map<String, Double> results = new LinkedHashMap<String, Double>();
+    Random random = new Random(7);
+    int[] xs = new int[this.queries];
+    int[] ys = new int[this.queries];
+    for(int i = 0; i < this.queries; ++i) {
+      xs[i] = random.nextInt(this.side);
+      ys[i] = random.nextInt(this.side);
+    }
+    long start = System.nanoTime();
+    this.model.findStroke(-this.side, -this.side, 0);
+    results.put("build us", (System.nanoTime() - start) / 1e3);
+    double[] distances = new double[this.queries];
+    int found = 0;
+    start = System.nanoTime();
+    for(int i = 0; i < this.queries; ++i) {
+      CanvasStrokeHit hit = this.model.findStroke(xs[i], ys[i], this.tolerance);
+      distances[i] = (hit == null) ? -1 : hit.getDistance();
+      found += (hit == null) ? 0 : 1;
+    }
+    results.put("query us", (System.nanoTime() - start) / 1e3 / this.queries);
+    results.put("hits", (double) found);
+    int scans = Math.min(this.queries, 20);
+    int mismatches = 0;
+    start = System.nanoTime();
+    for(int i = 0; i < scans; ++i) {
+      double distance = scan(xs[i], ys[i]);
+      if(Math.abs(distance - distances[i]) > 1e-9) {
+        mismatches++;
+      }
+    }
+    results.put("scan us", (System.nanoTime() - start) / 1e3 / scans);
+    results.put("mismatches", (double) mismatches);
+    return results;
+  }
+
+  /**
+  * @return returns the distance to the nearest painted segment within the tolerance, found
+  * by visiting every segment, -1 if there is none
+  */
+  private double scan(final int x, final int y) {
+    final double[] best = {-1};
+    this.model.walkSegments(new CanvasSegmentVisitor() {
+      @Override
+      public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+        double distance = Math.max(0, Line2D.ptSegDist(startPoint.getX(), startPoint.getY(),
+          endPoint.getX(), endPoint.getY(), x, y) -
+          Math.max(startPoint.getStroke(), endPoint.getStroke()) / 2.0);
+        if(distance <= CanvasHitBenchmark.this.tolerance && (best[0] < 0 || distance < best[0])) {
+          best[0] = distance;
+        }
+      }
+    });
+    return best[0];
+  }
+
+  /**
+  * Command line entry point, settings are passed as key=value: strokes, length and queries
+  * @param argv is the settings
+  */
+  public static void main(String[] argv) {
+    int strokes = 1000000;
+    int length = 4;
+    int queries = 10000;
+    for(String arg : argv) {
+      int split = arg.indexOf('=');
+      if(split <= 0) {
+        throw new IllegalArgumentException("Expected key=value, got " + arg);
+      }
+      String key = arg.substring(0, split);
+      int value = Integer.parseInt(arg.substring(split + 1));
+      if(key.equals("strokes")) {
+        strokes = value;
+      }
+      else if(key.equals("length")) {
+        length = value;
+      }
+      else if(key.equals("queries")) {
+        queries = value;
+      }
+      else {
+        throw new IllegalArgumentException("Unknown setting " + key);
+      }
+    }
+    CanvasHitBenchmark benchmark = new CanvasHitBenchmark(strokes, length, queries);
+    for(Map.Entry<String, Double> result : benchmark.run().entrySet()) {
+      System.out.println(String.format("%-40s %12.2f", result.getKey(), result.getValue()));
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,421 @@
+package edu.nyu.cs.canvas.load;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.controller.CanvasController;
+import edu.nyu.cs.canvas.controller.CanvasPipeline;
+import edu.nyu.cs.canvas.model.CanvasLayer;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.view.CanvasObserver;
+
+/**
+ * Synthetic workload for a controller. A number of virtual users draw concurrently, each
+ * on its own thread, at a given stroke rate and stroke length, changing color and stroke
+ * every few strokes, against a fresh model watched by headless observers. The controller
+ * keeps a single stroke in progress, as for the one mouse of a view, so users take turns
+ * drawing whole strokes and pace themselves outside their turn. One of the
+ * observers timestamps the delivery of every segment, which gives the latency from the
+ * moment a virtual user submitted it.
+ *
+ * The generator is run from the command line with key=value arguments, e.g.
+ * users=16 rate=30 length=40 change=5 duration=5000 observers=2 pipeline=4096
+ * @see CanvasLoadReport
+ * @author abhishek
+ */
+public final class CanvasLoadGenerator {
+  private static final Color[] palette = {Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW,
+    Color.ORANGE, Color.BLACK, Color.GRAY};
+  //upper bound of latency samples kept, further samples replace random ones
+  private static final int maxSamples = 1 << 20;
+  private final int users;
+  private final double strokeRate;
+  private final int strokeLength;
+  private final int changeEvery;
+  private final long durationMillis;
+  private final int observers;
+  private final int pipelineCapacity;
+
+  /**
+  * Builder class for the load generator
+  * @author abhishek
+  */
+  public static class Builder {
+    private int users = 4;
+    private double strokeRate = 10;
+    private int strokeLength = 30;
+    private int changeEvery = 10;
+    private long durationMillis = 2000;
+    private int observers = 2;
+    private int pipelineCapacity = 0;
+
+    /**
+    * @param users is the number of concurrent virtual users
+    * @return returns the builder
+    */
+    public Builder loadWithUsers(int users) {
+      this.users = users;
+      return this;
+    }
+
+    /**
+    * @param strokeRate is the number of strokes per second of each user, 0 for no pacing
+    * @return returns the builder
+    */
+    public Builder loadWithStrokeRate(double strokeRate) {
+      this.strokeRate = strokeRate;
+      return this;
+    }
+
+    /**
+    * @param strokeLength is the number of segments of every stroke
+    * @return returns the builder
+    */
+    public Builder loadWithStrokeLength(int strokeLength) {
+      this.strokeLength = strokeLength;
+      return this;
+    }
+
+    /**
+    * @param changeEvery is the number of strokes after which a user changes color and
+    * stroke, 0 to never change them
+    * @return returns the builder
+    */
+    public Builder loadWithChangeEvery(int changeEvery) {
+      this.changeEvery = changeEvery;
+      return this;
+    }
+
+    /**
+    * @param durationMillis is the duration of the run in milliseconds
+    * @return returns the builder
+    */
+    public Builder loadWithDuration(long durationMillis) {
+      this.durationMillis = durationMillis;
+      return this;
+    }
+
+    /**
+    * @param observers is the number of headless observers registered, at least one
+    * @return returns the builder
+    */
+    public Builder loadWithObservers(int observers) {
+      this.observers = observers;
+      return this;
+    }
+
+    /**
+    * @param pipelineCapacity is the capacity of the input pipeline, 0 commits inline
+    * @return returns the builder
+    */
+    public Builder loadWithPipeline(int pipelineCapacity) {
+      this.pipelineCapacity = pipelineCapacity;
+      return this;
+    }
+
+    /**
+    * @return returns the configured load generator
+    */
+    public CanvasLoadGenerator build() {
+      return new CanvasLoadGenerator(this);
+    }
+  }
+
+  private CanvasLoadGenerator(Builder builder) {
+    if(builder.users < 1 || builder.strokeLength < 1 || builder.durationMillis < 0) {
+      throw new IllegalArgumentException("Invalid load: users=" + builder.users + ", length=" +
+        builder.strokeLength + ", duration=" + builder.durationMillis);
+    }
+    this.users = builder.users;
+    this.strokeRate = builder.strokeRate;
+    this.strokeLength = builder.strokeLength;
+    this.changeEvery = builder.changeEvery;
+    this.durationMillis = builder.durationMillis;
+    this.observers = Math.max(1, builder.observers);
+    this.pipelineCapacity = builder.pipelineCapacity;
+  }
+
+  /**
+  * runs the workload against a fresh model and controller
+  * @return returns the measurements of the run
+  * @throws InterruptedException if interrupted while waiting for the virtual users
+  */
+  public CanvasLoadReport run() throws InterruptedException {
+    final CanvasController controller = CanvasController.createInstance(
+      CanvasModel.createInstance());
+    ConcurrentHashMap<CanvasPoint, Long> submitted = new ConcurrentHashMap<CanvasPoint, Long>();
+    Probe probe = new Probe(submitted);
+    controller.registerView(probe);
+    for(int i = 1; i < this.observers; ++i) {
+      controller.registerView(new HeadlessObserver());
+    }
+    CanvasPipeline pipeline = (this.pipelineCapacity > 0) ?
+      controller.startPipeline(this.pipelineCapacity) : null;
+    System.gc();
+    long heapBefore = usedHeap();
+    long[] gcBefore = gcTotals();
+    long start = System.nanoTime();
+    long deadline = start + TimeUnit.MILLISECONDS.toNanos(this.durationMillis);
+    Thread[] threads = new Thread[this.users];
+    Object turn = new Object();
+    for(int i = 0; i < this.users; ++i) {
+      threads[i] = new Thread(new VirtualUser(controller, turn, submitted, i, start, deadline),
+        "canvas-load-user-" + i);
+      threads[i].start();
+    }
+    for(Thread thread : threads) {
+      thread.join();
+    }
+    if(pipeline != null) {
+      controller.stopPipeline();
+    }
+    long elapsed = System.nanoTime() - start;
+    long heapGrowth = usedHeap() - heapBefore;
+    long[] gcAfter = gcTotals();
+    return new CanvasLoadReport(this.users, probe.getEvents(), elapsed, probe.getLatencies(),
+      heapGrowth, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1],
+      (pipeline == null) ? 0 : pipeline.getStalls(),
+      (pipeline == null) ? 0 : pipeline.getHighWaterMark());
+  }
+
+  private static long usedHeap() {
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  /**
+  * @return returns the total collection time in milliseconds and count of all collectors
+  */
+  private static long[] gcTotals() {
+    long[] totals = new long[2];
+    for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      totals[0] += Math.max(0, gc.getCollectionTime());
+      totals[1] += Math.max(0, gc.getCollectionCount());
+    }
+    return totals;
+  }
+
+  /**
+  * Command line entry point, prints the report of one run
+  * @param argv is the list of key=value settings
+  * @throws InterruptedException if interrupted while running
+  */
+  public static void main(String[] argv) throws InterruptedException {
+    Builder builder = new Builder();
+    for(String arg : argv) {
+      int split = arg.indexOf('=');
+      if(split <= 0) {
+        throw new IllegalArgumentException("Expected key=value, got " + arg);
+      }
+      String key = arg.substring(0, split);
+      String value = arg.substring(split + 1);
+      if(key.equals("users")) {
+        builder.loadWithUsers(Integer.parseInt(value));
+      }
+      else if(key.equals("rate")) {
+        builder.loadWithStrokeRate(Double.parseDouble(value));
+      }
+      else if(key.equals("length")) {
+        builder.loadWithStrokeLength(Integer.parseInt(value));
+      }
+      else if(key.equals("change")) {
+        builder.loadWithChangeEvery(Integer.parseInt(value));
+      }
+      else if(key.equals("duration")) {
+        builder.loadWithDuration(Long.parseLong(value));
+      }
+      else if(key.equals("observers")) {
+        builder.loadWithObservers(Integer.parseInt(value));
+      }
+      else if(key.equals("pipeline")) {
+        builder.loadWithPipeline(Integer.parseInt(value));
+      }
+      else {
+        throw new IllegalArgumentException("Unknown setting " + key);
+      }
+    }
+    System.out.println(builder.build().run());
+  }
+
+  /**
+  * A virtual user: draws random walk strokes until the deadline, paced at the stroke rate
+  * @author abhishek
+  */
+  private class VirtualUser implements Runnable {
+    private final CanvasController controller;
+    //held while drawing a stroke, so that strokes of different users do not join
+    private final Object turn;
+    private final ConcurrentHashMap<CanvasPoint, Long> submitted;
+    private final Random random;
+    private final long start;
+    private final long deadline;
+
+    VirtualUser(CanvasController controller, Object turn,
+      ConcurrentHashMap<CanvasPoint, Long> submitted, int index, long start, long deadline) {
+      this.controller = controller;
+      this.turn = turn;
+      this.submitted = submitted;
+      this.random = new Random(31L * index + 7);
+      this.start = start;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public void run() {
+      Color color = CanvasConfig.defaultColor;
+      int stroke = CanvasConfig.defaultStroke;
+      long period = (strokeRate > 0) ? (long) (1e9 / strokeRate) : 0;
+      for(long strokes = 0; System.nanoTime() < this.deadline; ++strokes) {
+        boolean change = changeEvery > 0 && strokes > 0 && strokes % changeEvery == 0;
+        if(change) {
+          color = palette[this.random.nextInt(palette.length)];
+          stroke = 2 + this.random.nextInt(9);
+        }
+        synchronized(this.turn) {
+          if(change) {
+            this.controller.viewUpdate(color);
+            this.controller.viewUpdate(stroke);
+          }
+          drawStroke(color, stroke);
+        }
+        if(period > 0) {
+          long wait = this.start + (strokes + 1) * period - System.nanoTime();
+          if(wait > 0) {
+            try {
+              TimeUnit.NANOSECONDS.sleep(Math.min(wait, this.deadline - System.nanoTime()));
+            } catch (InterruptedException e) {
+              return;
+            }
+          }
+        }
+      }
+    }
+
+    /**
+    * draws one stroke the way a view does: start point, then one segment per drag
+    */
+    private void drawStroke(Color color, int stroke) {
+      int x = this.random.nextInt(CanvasConfig.defaultWidth);
+      int y = this.random.nextInt(CanvasConfig.defaultHeight);
+      CanvasPoint startPoint = new CanvasPoint.Builder(x, y).pointWithColor(color).
+        pointWithStroke(stroke).build();
+      this.controller.segmentEnd();
+      this.controller.viewUpdate(startPoint);
+      for(int i = 0; i < strokeLength; ++i) {
+        x = Math.max(0, Math.min(CanvasConfig.defaultWidth - 1, x + this.random.nextInt(17) - 8));
+        y = Math.max(0, Math.min(CanvasConfig.defaultHeight - 1, y + this.random.nextInt(17) - 8));
+        CanvasPoint endPoint = new CanvasPoint.Builder(x, y).pointWithColor(color).
+          pointWithStroke(stroke).build();
+        this.submitted.put(endPoint, System.nanoTime());
+        this.controller.viewUpdate(startPoint, endPoint);
+        this.controller.segmentEnd();
+        startPoint = endPoint;
+      }
+      this.controller.viewStrokeEnd();
+    }
+  }
+
+  /**
+  * Observer that ignores every notification, standing in for a view
+  * @author abhishek
+  */
+  private static class HeadlessObserver implements CanvasObserver {
+    @Override
+    public void drawLine(CanvasPoint startPoint, CanvasPoint endPoint) {
+    }
+
+    @Override
+    public void changeColor(Color color) {
+    }
+
+    @Override
+    public void changeStroke(int stroke) {
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public void copyContent(ArrayList<CanvasPoint> allPoints) {
+    }
+
+    @Override
+    public void setStartPoint(CanvasPoint endPoint) {
+    }
+
+    @Override
+    public void repaintArea(Rectangle area, int layer, ArrayList<CanvasPoint> segments) {
+    }
+
+    @Override
+    public void changeLayers(List<CanvasLayer> layers, int activeLayer) {
+    }
+  }
+
+  /**
+  * Headless observer measuring the delivery latency of every segment. Samples beyond
+  * the sample limit replace random earlier ones, keeping the percentiles unbiased
+  * @author abhishek
+  */
+  private static class Probe extends HeadlessObserver {
+    private final ConcurrentHashMap<CanvasPoint, Long> submitted;
+    private final AtomicLong events;
+    private final Random random;
+    private long[] samples;
+    private int count;
+    //number of samples offered so far, kept or not
+    private long offered;
+
+    Probe(ConcurrentHashMap<CanvasPoint, Long> submitted) {
+      this.submitted = submitted;
+      this.events = new AtomicLong();
+      this.random = new Random(17);
+      this.samples = new long[1024];
+    }
+
+    @Override
+    public void drawLine(CanvasPoint startPoint, CanvasPoint endPoint) {
+      long now = System.nanoTime();
+      this.events.incrementAndGet();
+      Long sent = this.submitted.remove(endPoint);
+      if(sent != null) {
+        record(now - sent);
+      }
+    }
+
+    private synchronized void record(long latency) {
+      ++this.offered;
+      if(this.count < maxSamples) {
+        if(this.count == this.samples.length) {
+          this.samples = Arrays.copyOf(this.samples, this.count * 2);
+        }
+        this.samples[this.count++] = latency;
+        return;
+      }
+      long slot = (long) (this.random.nextDouble() * this.offered);
+      if(slot < maxSamples) {
+        this.samples[(int) slot] = latency;
+      }
+    }
+
+    long getEvents() {
+      return this.events.get();
+    }
+
+    synchronized long[] getLatencies() {
+      long[] sorted = Arrays.copyOf(this.samples, this.count);
+      Arrays.sort(sorted);
+      return sorted;
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+package edu.nyu.cs.canvas.load;
+
+/**
+ * Outcome of a load generator run: throughput, per event latency percentiles, heap growth,
+ * garbage collection time and, when the run went through the input pipeline, its
+ * backpressure
+ * @see CanvasLoadGenerator
+ * @author abhishek
+ */
+public final class CanvasLoadReport {
+  private final int users;
+  private final long events;
+  private final long elapsedNanos;
+  //sorted latencies of the sampled events in nanoseconds
+  private final long[] latencies;
+  private final long heapGrowth;
+  private final long gcMillis;
+  private final long gcCount;
+  private final long stalls;
+  private final int highWaterMark;
+
+  /**
+  * Constructor for a report, only the load generator creates reports
+  */
+  CanvasLoadReport(int users, long events, long elapsedNanos, long[] latencies, long heapGrowth,
+    long gcMillis, long gcCount, long stalls, int highWaterMark) {
+    this.users = users;
+    this.events = events;
+    this.elapsedNanos = elapsedNanos;
+    this.latencies = latencies;
+    this.heapGrowth = heapGrowth;
+    this.gcMillis = gcMillis;
+    this.gcCount = gcCount;
+    this.stalls = stalls;
+    this.highWaterMark = highWaterMark;
+  }
+
+  /**
+  * @return returns the number of virtual users of the run
+  */
+  public int getUsers() {
+    return this.users;
+  }
+
+  /**
+  * @return returns the number of segment events delivered to the observers
+  */
+  public long getEvents() {
+    return this.events;
+  }
+
+  /**
+  * @return returns the wall clock duration of the run in nanoseconds
+  */
+  public long getElapsedNanos() {
+    return this.elapsedNanos;
+  }
+
+  /**
+  * @return returns the delivered segment events per second
+  */
+  public double getThroughput() {
+    return (this.elapsedNanos == 0) ? 0 : this.events * 1e9 / this.elapsedNanos;
+  }
+
+  /**
+  * looks up a latency percentile, from the submission of a segment by a virtual user to
+  * its delivery to an observer
+  * @param percentile is the percentile, between 0 and 100
+  * @return returns the latency in nanoseconds, 0 if nothing was measured
+  */
+  public long getLatencyPercentile(double percentile) {
+    if(this.latencies.length == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(percentile / 100 * this.latencies.length) - 1;
+    return this.latencies[Math.max(0, Math.min(this.latencies.length - 1, rank))];
+  }
+
+  /**
+  * @return returns the growth of the used heap over the run in bytes, possibly negative
+  */
+  public long getHeapGrowth() {
+    return this.heapGrowth;
+  }
+
+  /**
+  * @return returns the time spent in garbage collection during the run in milliseconds
+  */
+  public long getGcMillis() {
+    return this.gcMillis;
+  }
+
+  /**
+  * @return returns the number of garbage collections during the run
+  */
+  public long getGcCount() {
+    return this.gcCount;
+  }
+
+  /**
+  * @return returns the number of times a virtual user found the input pipeline full
+  */
+  public long getStalls() {
+    return this.stalls;
+  }
+
+  /**
+  * @return returns the largest number of events waiting in the input pipeline at once
+  */
+  public int getHighWaterMark() {
+    return this.highWaterMark;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("users=%d events=%d elapsed=%.1fms throughput=%.0f/s " +
+      "latency p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus heapGrowth=%dKB gc=%dms/%d " +
+      "stalls=%d highWaterMark=%d", this.users, this.events, this.elapsedNanos / 1e6,
+      getThroughput(), getLatencyPercentile(50) / 1e3, getLatencyPercentile(90) / 1e3,
+      getLatencyPercentile(99) / 1e3, getLatencyPercentile(100) / 1e3, this.heapGrowth / 1024,
+      this.gcMillis, this.gcCount, this.stalls, this.highWaterMark);
+  }
+}
\ No newline at end of file
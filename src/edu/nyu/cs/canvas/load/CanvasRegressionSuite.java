@@ -0,0 +1,465 @@
+package edu.nyu.cs.canvas.load;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.controller.CanvasController;
+import edu.nyu.cs.canvas.model.CanvasLayer;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasSegmentVisitor;
+import edu.nyu.cs.canvas.model.CanvasStrokeBatch;
+import edu.nyu.cs.canvas.view.CanvasObserver;
+import edu.nyu.cs.canvas.view.CanvasStrokeRenderer;
+
+/**
+ * Performance regression suite replaying canonical pen workloads through a headless
+ * controller, model and renderer, the way a view feeds them: a start point, then one
+ * segment and end marker per drag, and a seal at the end of every stroke. The workloads
+ * are recorded once from seeded generators, so every run replays the same samples:
+ * - handwriting, words of cursive loops written line by line
+ * - scribble, long strokes zigzagging over and over a small area
+ * - shortStrokes, tens of thousands of taps and ticks all over the board
+ * - hugeStroke, a single stroke of hundreds of thousands of points
+ *
+ * Every workload is measured for replay throughput in points per second, including the
+ * incremental rasterization of a headless canvas, heap retained per point once the
+ * drawing is in, and the time to repaint the whole drawing from scratch, as a stateful
+ * fork or a redraw does. Each measure is the median over a number of rounds, after a
+ * round of warm up, and is checked against the budgets given as properties:
+ * {workload}.throughput.min, {workload}.bytesPerPoint.max and {workload}.repaintMillis.max
+ *
+ * The heap is best measured with soft references cleared at every collection, i.e. with
+ * -XX:SoftRefLRUPolicyMSPerMB=0 as the build does, otherwise soft caches of the graphics
+ * pipeline may or may not be counted along with the drawing
+ * @see CanvasStrokeRenderer
+ * @author abhishek
+ */
+public final class CanvasRegressionSuite {
+  static public final String[] WORKLOADS = {"handwriting", "scribble", "shortStrokes",
+    "hugeStroke"};
+  static public final String THROUGHPUT = "throughput";
+  static public final String BYTES_PER_POINT = "bytesPerPoint";
+  static public final String REPAINT_MILLIS = "repaintMillis";
+  //segments a headless canvas rasterizes at once, about a frame of fast drawing
+  private static final int FRAME_SEGMENTS = 128;
+  private final int rounds;
+  private final double scale;
+
+  /**
+  * Constructor for a suite
+  * @param rounds is the number of measured rounds per workload
+  * @param scale is the size of the workloads relative to the canonical ones
+  */
+  public CanvasRegressionSuite(int rounds, double scale) {
+    if(rounds < 1 || scale <= 0) {
+      throw new IllegalArgumentException("Expected positive rounds and scale, got " + rounds +
+        " and " + scale);
+    }
+    this.rounds = rounds;
+    this.scale = scale;
+  }
+
+  /**
+  * records a canonical workload
+  * @param workload is the name of the workload
+  * @param scale is the size of the workload relative to the canonical one
+  * @return returns the strokes of the workload in drawing order
+  */
+  public static CanvasStrokeBatch record(String workload, double scale) {
+    Random random = new Random(workload.hashCode());
+    int width = CanvasConfig.defaultWidth;
+    int height = CanvasConfig.defaultHeight;
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    int[] xs = new int[1024];
+    int[] ys = new int[1024];
+    if(workload.equals("handwriting")) {
+      int words = Math.max(1, (int) (600 * scale));
+      int x = 20;
+      int y = 40;
+      for(int i = 0; i < words; ++i) {
+        int length = 40 + random.nextInt(80);
+        double radius = 6 + random.nextInt(5);
+        double phase = random.nextDouble() * Math.PI;
+        for(int j = 0; j < length; ++j) {
+          double angle = phase + j * 0.35;
+          xs[j] = (int) Math.round(x + j * 0.9 + radius * Math.cos(angle)) + random.nextInt(2);
+          ys[j] = (int) Math.round(y + radius * Math.sin(angle) * 1.6) + random.nextInt(2);
+        }
+        batch.addStroke(xs, ys, length, Color.BLACK, 2);
+        x += length + 12;
+        if(x > width - 140) {
+          x = 20;
+          y = (y + 36 > height - 30) ? 40 : y + 36;
+        }
+      }
+    }
+    else if(workload.equals("scribble")) {
+      int strokes = Math.max(1, (int) (20 * scale));
+      Color[] colors = {Color.BLACK, Color.RED, Color.BLUE};
+      for(int i = 0; i < strokes; ++i) {
+        int length = 2000;
+        if(xs.length < length) {
+          xs = new int[length];
+          ys = new int[length];
+        }
+        int left = 300 + random.nextInt(40);
+        int top = 200 + random.nextInt(40);
+        for(int j = 0; j < length; ++j) {
+          //triangle wave across a 200 pixel box while drifting down and back up
+          int across = j % 80;
+          xs[j] = left + ((across < 40) ? across * 5 : (80 - across) * 5) + random.nextInt(3);
+          ys[j] = top + Math.abs((j / 4) % 400 - 200) + random.nextInt(3);
+        }
+        batch.addStroke(xs, ys, length, colors[i % colors.length], 3 + i % 4);
+      }
+    }
+    else if(workload.equals("shortStrokes")) {
+      int strokes = Math.max(1, (int) (15000 * scale));
+      for(int i = 0; i < strokes; ++i) {
+        int length = 2 + random.nextInt(3);
+        xs[0] = random.nextInt(width);
+        ys[0] = random.nextInt(height);
+        for(int j = 1; j < length; ++j) {
+          xs[j] = xs[j-1] + random.nextInt(7) - 3;
+          ys[j] = ys[j-1] + random.nextInt(7) - 3;
+        }
+        batch.addStroke(xs, ys, length, (i % 2 == 0) ? Color.BLACK : Color.RED, 1 + i % 3);
+      }
+    }
+    else if(workload.equals("hugeStroke")) {
+      int length = Math.max(2, (int) (200000 * scale));
+      xs = new int[length];
+      ys = new int[length];
+      for(int j = 0; j < length; ++j) {
+        //slow lissajous figure covering the board, about a pixel or two per sample
+        double t = j * 0.0021;
+        xs[j] = (int) Math.round(width / 2 + (width / 2 - 40) * Math.sin(3 * t + 0.5));
+        ys[j] = (int) Math.round(height / 2 + (height / 2 - 40) * Math.sin(2 * t));
+      }
+      batch.addStroke(xs, ys, length, Color.BLUE, 4);
+    }
+    else {
+      throw new IllegalArgumentException("Unknown workload " + workload + ", expected one of " +
+        Arrays.toString(WORKLOADS));
+    }
+    return batch;
+  }
+
+  /**
+  * measures a workload
+  * @param workload is the name of the workload
+  * @return returns the median measures by name: throughput in points per second, heap
+  * retained in bytes per point and repaint time in milliseconds
+  */
+  public Map<String, Double> run(String workload) {
+    CanvasStrokeBatch batch = record(workload, this.scale);
+    double[] throughput = new double[this.rounds];
+    double[] bytes = new double[this.rounds];
+    double[] repaint = new double[this.rounds];
+    measure(batch);
+    for(int round = 0; round < this.rounds; ++round) {
+      double[] measures = measure(batch);
+      throughput[round] = measures[0];
+      bytes[round] = measures[1];
+      repaint[round] = measures[2];
+    }
+    Map<String, Double> results = new LinkedHashMap<String, Double>();
+    results.put(THROUGHPUT, median(throughput));
+    results.put(BYTES_PER_POINT, median(bytes));
+    results.put(REPAINT_MILLIS, median(repaint));
+    return results;
+  }
+
+  /**
+  * replays a workload once into a fresh model. The heap retained by the drawing is the
+  * difference between the heap in use with and without the model, taken back to back so
+  * that caches of the graphics pipeline are the same in both
+  * @return returns the throughput, the bytes retained per point and the repaint time
+  */
+  private static double[] measure(CanvasStrokeBatch batch) {
+    HeadlessCanvas canvas = new HeadlessCanvas();
+    CanvasModel model = CanvasModel.createInstance();
+    CanvasController controller = CanvasController.createInstance(model);
+    controller.registerView(canvas);
+    long start = System.nanoTime();
+    replay(controller, batch);
+    canvas.flush();
+    long elapsed = System.nanoTime() - start;
+    canvas.release();
+    start = System.nanoTime();
+    repaintAll(model);
+    long repainted = System.nanoTime() - start;
+    long withDrawing = settledHeap();
+    //drops the only references to the drawing
+    model = null;
+    controller = null;
+    long retained = withDrawing - settledHeap();
+    return new double[] {batch.getPointCount() / (elapsed / 1e9),
+      Math.max(0, retained) / (double) batch.getPointCount(), repainted / 1e6};
+  }
+
+  /**
+  * checks measures against budgets, a measure without a budget always passes
+  * @param workload is the name of the measured workload
+  * @param results is the measures of the workload
+  * @param budgets is the budgets by key
+  * @return returns a description of every budget exceeded, empty if none is
+  */
+  public static List<String> check(String workload, Map<String, Double> results,
+    Properties budgets) {
+    List<String> violations = new ArrayList<String>();
+    for(Map.Entry<String, Double> result : results.entrySet()) {
+      String key = workload + "." + result.getKey();
+      String min = budgets.getProperty(key + ".min");
+      String max = budgets.getProperty(key + ".max");
+      if(min != null && result.getValue() < Double.parseDouble(min.trim())) {
+        violations.add(String.format("%s is %.2f, below its budget of %s", key, result.getValue(),
+          min.trim()));
+      }
+      if(max != null && result.getValue() > Double.parseDouble(max.trim())) {
+        violations.add(String.format("%s is %.2f, above its budget of %s", key, result.getValue(),
+          max.trim()));
+      }
+    }
+    return violations;
+  }
+
+  /**
+  * feeds the strokes of a workload to a controller the way a view does
+  */
+  private static void replay(CanvasController controller, CanvasStrokeBatch batch) {
+    for(int i = 0; i < batch.getStrokeCount(); ++i) {
+      Color color = new Color(batch.getStrokeColor(i), true);
+      int stroke = batch.getStrokeWidth(i);
+      int first = batch.getStrokeStart(i);
+      int end = first + batch.getStrokeLength(i);
+      CanvasPoint startPoint = new CanvasPoint.Builder(batch.getX(first), batch.getY(first)).
+        pointWithColor(color).pointWithStroke(stroke).build();
+      controller.segmentEnd();
+      controller.viewUpdate(startPoint);
+      for(int j = first + 1; j < end; ++j) {
+        CanvasPoint endPoint = new CanvasPoint.Builder(batch.getX(j), batch.getY(j)).
+          pointWithColor(color).pointWithStroke(stroke).build();
+        controller.viewUpdate(startPoint, endPoint);
+        controller.segmentEnd();
+        startPoint = endPoint;
+      }
+      controller.viewStrokeEnd();
+    }
+  }
+
+  /**
+  * rasterizes the whole drawing of a model into a fresh board sized image
+  */
+  private static void repaintAll(CanvasModel model) {
+    final ArrayList<CanvasPoint> segments = new ArrayList<CanvasPoint>();
+    model.walkSegments(new CanvasSegmentVisitor() {
+      @Override
+      public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+        segments.add(startPoint);
+        segments.add(endPoint);
+      }
+    });
+    BufferedImage image = new BufferedImage(CanvasConfig.defaultWidth, CanvasConfig.defaultHeight,
+      BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g2 = image.createGraphics();
+    try {
+      CanvasStrokeRenderer.configure(g2);
+      CanvasStrokeRenderer.paintSegments(g2, segments);
+    } finally {
+      g2.dispose();
+    }
+  }
+
+  private static double median(double[] values) {
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  /**
+  * @return returns the heap in use once garbage has been collected. Weakly reachable
+  * objects may only be freed some time after a collection, so collections are repeated
+  * until the heap stops shrinking
+  */
+  private static long settledHeap() {
+    System.gc();
+    long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    for(int i = 0; i < 20; ++i) {
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      System.gc();
+      long current = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+      if(current > used - 65536) {
+        return Math.min(used, current);
+      }
+      used = current;
+    }
+    return used;
+  }
+
+  /**
+  * Headless stand in for a canvas: segments are rasterized into a board sized image in
+  * batches of about a frame, and sealed areas are redrawn from the segments given
+  * @author abhishek
+  */
+  private static final class HeadlessCanvas implements CanvasObserver {
+    private BufferedImage image;
+    private Graphics2D g2;
+    private final ArrayList<CanvasPoint> pending;
+
+    HeadlessCanvas() {
+      this.image = new BufferedImage(CanvasConfig.defaultWidth, CanvasConfig.defaultHeight,
+        BufferedImage.TYPE_INT_ARGB);
+      this.g2 = this.image.createGraphics();
+      CanvasStrokeRenderer.configure(this.g2);
+      this.pending = new ArrayList<CanvasPoint>(FRAME_SEGMENTS * 2);
+    }
+
+    @Override
+    public void drawLine(CanvasPoint startPoint, CanvasPoint endPoint) {
+      this.pending.add(startPoint);
+      this.pending.add(endPoint);
+      if(this.pending.size() >= FRAME_SEGMENTS * 2) {
+        flush();
+      }
+    }
+
+    @Override
+    public void repaintArea(Rectangle area, int layer, ArrayList<CanvasPoint> segments) {
+      flush();
+      Graphics2D clipped = (Graphics2D) this.g2.create();
+      try {
+        clipped.setComposite(AlphaComposite.Clear);
+        clipped.fill(area);
+        clipped.setComposite(AlphaComposite.SrcOver);
+        clipped.clip(area);
+        CanvasStrokeRenderer.paintSegments(clipped, segments);
+      } finally {
+        clipped.dispose();
+      }
+    }
+
+    @Override
+    public void copyContent(ArrayList<CanvasPoint> allPoints) {
+    }
+
+    @Override
+    public void reset() {
+      this.pending.clear();
+    }
+
+    @Override
+    public void changeColor(Color color) {
+    }
+
+    @Override
+    public void changeStroke(int stroke) {
+    }
+
+    @Override
+    public void setStartPoint(CanvasPoint endPoint) {
+    }
+
+    @Override
+    public void changeLayers(List<CanvasLayer> layers, int activeLayer) {
+    }
+
+    /**
+    * rasterizes the segments waiting for the next frame
+    */
+    void flush() {
+      if(!this.pending.isEmpty()) {
+        CanvasStrokeRenderer.paintSegments(this.g2, this.pending);
+        this.pending.clear();
+      }
+    }
+
+    /**
+    * releases the image once the replay is over
+    */
+    void release() {
+      this.g2.dispose();
+      this.g2 = null;
+      this.image = null;
+    }
+  }
+
+  /**
+  * Command line entry point, settings are passed as key=value: rounds, scale, workloads as
+  * a comma separated list and budgets as the path of a properties file. Exits with status
+  * 1 if any budget is exceeded, so that a build running the suite fails
+  * @param argv is the settings
+  * @throws IOException if the budgets can not be read
+  */
+  public static void main(String[] argv) throws IOException {
+    int rounds = 3;
+    double scale = 1;
+    String[] workloads = WORKLOADS;
+    Properties budgets = new Properties();
+    for(String arg : argv) {
+      int split = arg.indexOf('=');
+      if(split <= 0) {
+        throw new IllegalArgumentException("Expected key=value, got " + arg);
+      }
+      String key = arg.substring(0, split);
+      String value = arg.substring(split + 1);
+      if(key.equals("rounds")) {
+        rounds = Integer.parseInt(value);
+      }
+      else if(key.equals("scale")) {
+        scale = Double.parseDouble(value);
+      }
+      else if(key.equals("workloads")) {
+        workloads = value.split(",");
+      }
+      else if(key.equals("budgets")) {
+        InputStream in = new FileInputStream(new File(value));
+        try {
+          budgets.load(in);
+        } finally {
+          in.close();
+        }
+      }
+      else {
+        throw new IllegalArgumentException("Unknown setting " + key);
+      }
+    }
+    CanvasRegressionSuite suite = new CanvasRegressionSuite(rounds, scale);
+    List<String> violations = new ArrayList<String>();
+    for(String workload : workloads) {
+      Map<String, Double> results = suite.run(workload);
+      for(Map.Entry<String, Double> result : results.entrySet()) {
+        System.out.println(String.format("%-40s %14.2f", workload + "." + result.getKey(),
+          result.getValue()));
+      }
+      violations.addAll(check(workload, results, budgets));
+    }
+    for(String violation : violations) {
+      System.out.println("Budget exceeded: " + violation);
+    }
+    if(!violations.isEmpty()) {
+      System.exit(1);
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+package edu.nyu.cs.canvas.load;
+
+import java.awt.GraphicsEnvironment;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import javax.swing.SwingUtilities;
+import edu.nyu.cs.canvas.CanvasApp;
+import edu.nyu.cs.canvas.controller.CanvasController;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.view.CanvasObserver;
+import edu.nyu.cs.canvas.view.CanvasView;
+
+/**
+ * Measures application startup: launches the application the way its main method does,
+ * waits for the first paint of every default view, then forks a stateful view and waits
+ * for its first paint too. Times are reported from the start of the JVM, so that class
+ * loading, which a class data sharing archive cuts down, is included. The process exits
+ * once done, which also lets it be used to dump such an archive
+ * @see CanvasApp
+ * @author abhishek
+ */
+public final class CanvasStartupBenchmark {
+  private static final long paintTimeout = 30000;
+
+  private CanvasStartupBenchmark() {
+  }
+
+  /**
+  * Command line entry point, prints the startup times and exits
+  * @param argv is not used
+  * @throws InterruptedException if interrupted while waiting for a paint
+  * @throws InvocationTargetException if launching the application fails
+  */
+  public static void main(String[] argv) throws InterruptedException, InvocationTargetException {
+    if(GraphicsEnvironment.isHeadless()) {
+      System.err.println("Startup benchmark needs a display");
+      System.exit(1);
+    }
+    //nanoTime of the start of the JVM, estimated from its uptime
+    final long jvmStart = System.nanoTime() -
+      ManagementFactory.getRuntimeMXBean().getUptime() * 1000000L;
+    long mainStart = System.nanoTime();
+    final CanvasView[][] launched = new CanvasView[1][];
+    SwingUtilities.invokeAndWait(new Runnable() {
+      @Override
+      public void run() {
+        launched[0] = CanvasApp.launch();
+      }
+    });
+    long built = System.nanoTime();
+    long firstPaint = 0;
+    for(CanvasView view : launched[0]) {
+      firstPaint = Math.max(firstPaint, awaitFirstPaint(view));
+    }
+    final CanvasController controller = CanvasController.getInstance(CanvasModel.getInstance());
+    long forkStart = System.nanoTime();
+    SwingUtilities.invokeAndWait(new Runnable() {
+      @Override
+      public void run() {
+        controller.viewAddCanvas();
+      }
+    });
+    List<CanvasObserver> observers = controller.getObservers();
+    long forkPaint = awaitFirstPaint((CanvasView) observers.get(observers.size() - 1));
+    System.out.println(String.format("jvm to main=%.1fms views built=%.1fms " +
+      "time to first paint=%.1fms fork to first paint=%.1fms", (mainStart - jvmStart) / 1e6,
+      (built - mainStart) / 1e6, (firstPaint - jvmStart) / 1e6, (forkPaint - forkStart) / 1e6));
+    System.exit(0);
+  }
+
+  private static long awaitFirstPaint(CanvasView view) throws InterruptedException {
+    long painted = view.awaitFirstPaint(paintTimeout);
+    if(painted < 0) {
+      System.err.println("Canvas " + view.getID() + " was not painted within " + paintTimeout +
+        "ms");
+      System.exit(1);
+    }
+    return painted;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,217 @@
+package edu.nyu.cs.canvas.merge;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import edu.nyu.cs.canvas.model.CanvasLayer;
+import edu.nyu.cs.canvas.model.CanvasModelSnapshot;
+
+/**
+ * Stroke level difference between two states of a drawing: the ids of the elements to
+ * remove from the older state and the elements to add, each anchored after the elements
+ * kept before it, along with the layers and paint properties of the newer state. Only
+ * the elements that differ travel, the ones both sides have are named by id at most
+ *
+ * A diff can be computed against the ids of the other side alone, so two copies of a
+ * large drawing are synced by exchanging the ids of their elements first and then just
+ * the diffs. Computing and applying a diff is linear in the number of elements
+ * @see CanvasStroke
+ * @author abhishek
+ */
+public final class CanvasDrawingDiff {
+  private final int baseCount;
+  private final long[] removed;
+  private final List<CanvasStroke> added;
+  //number of kept elements preceding each added element
+  private final int[] anchors;
+  private final List<CanvasLayer> layers;
+  private final int activeLayer;
+  private final Color color;
+  private final int stroke;
+
+  private CanvasDrawingDiff(int baseCount, long[] removed, List<CanvasStroke> added,
+    int[] anchors, CanvasModelSnapshot target) {
+    this.baseCount = baseCount;
+    this.removed = removed;
+    this.added = Collections.unmodifiableList(added);
+    this.anchors = anchors;
+    this.layers = target.getLayers();
+    this.activeLayer = target.getActiveLayer();
+    this.color = target.getColor();
+    this.stroke = target.getStroke();
+  }
+
+  /**
+  * Computes the changes turning one state of a drawing into another
+  * @param base is the older state
+  * @param target is the newer state
+  * @return returns the diff
+  */
+  public static CanvasDrawingDiff compute(CanvasModelSnapshot base, CanvasModelSnapshot target) {
+    return compute(CanvasStroke.ids(CanvasStroke.split(base.getPoints())), target);
+  }
+
+  /**
+  * Computes the changes turning a drawing known only by the ids of its elements into
+  * another state
+  * @param baseIds is the ids of the elements of the older state, in drawing order
+  * @param target is the newer state
+  * @return returns the diff
+  */
+  public static CanvasDrawingDiff compute(long[] baseIds, CanvasModelSnapshot target) {
+    List<CanvasStroke> strokes = CanvasStroke.split(target.getPoints());
+    Map<Long, int[]> counts = count(baseIds);
+    Map<Long, int[]> targetCounts = count(CanvasStroke.ids(strokes));
+    //the first surplus occurrences of an id in the base go, the last ones of the target come
+    long[] removed = new long[baseIds.length];
+    int removedCount = 0;
+    Map<Long, int[]> seen = new HashMap<Long, int[]>();
+    for(long id : baseIds) {
+      int[] targetCount = targetCounts.get(id);
+      int surplus = counts.get(id)[0] - ((targetCount == null) ? 0 : targetCount[0]);
+      if(occurrence(seen, id) < surplus) {
+        removed[removedCount++] = id;
+      }
+    }
+    ArrayList<CanvasStroke> added = new ArrayList<CanvasStroke>();
+    int[] anchors = new int[strokes.size()];
+    int kept = 0;
+    seen.clear();
+    for(CanvasStroke stroke : strokes) {
+      int[] baseCount = counts.get(stroke.getId());
+      int keep = (baseCount == null) ? 0 : baseCount[0];
+      if(occurrence(seen, stroke.getId()) < keep) {
+        kept++;
+      }
+      else {
+        anchors[added.size()] = kept;
+        added.add(stroke);
+      }
+    }
+    long[] trimmed = new long[removedCount];
+    System.arraycopy(removed, 0, trimmed, 0, removedCount);
+    int[] trimmedAnchors = new int[added.size()];
+    System.arraycopy(anchors, 0, trimmedAnchors, 0, added.size());
+    return new CanvasDrawingDiff(baseIds.length, trimmed, added, trimmedAnchors, target);
+  }
+
+  /**
+  * Applies the diff to the state it was computed from
+  * @param base is the older state
+  * @return returns the newer state
+  * @throws IllegalArgumentException if the diff was computed from another state
+  */
+  public CanvasModelSnapshot applyTo(CanvasModelSnapshot base) {
+    List<CanvasStroke> strokes = CanvasStroke.split(base.getPoints());
+    if(strokes.size() != this.baseCount) {
+      throw new IllegalArgumentException("Diff computed from " + this.baseCount +
+        " elements applied to " + strokes.size());
+    }
+    Map<Long, int[]> removals = count(this.removed);
+    ArrayList<CanvasStroke> kept = new ArrayList<CanvasStroke>(strokes.size());
+    for(CanvasStroke stroke : strokes) {
+      int[] left = removals.get(stroke.getId());
+      if(left != null && left[0] > 0) {
+        left[0]--;
+      }
+      else {
+        kept.add(stroke);
+      }
+    }
+    for(int[] left : removals.values()) {
+      if(left[0] != 0) {
+        throw new IllegalArgumentException("Diff removes elements the drawing does not have");
+      }
+    }
+    return new CanvasModelSnapshot(CanvasStroke.join(weave(kept, this.added, this.anchors)),
+      this.layers, this.activeLayer, this.color, this.stroke);
+  }
+
+  /**
+  * @return returns the ids of the elements removed, an id occurring as many times as
+  * copies of the element are removed
+  */
+  public long[] getRemoved() {
+    return this.removed.clone();
+  }
+
+  /**
+  * @return returns the elements added, in drawing order
+  */
+  public List<CanvasStroke> getAdded() {
+    return this.added;
+  }
+
+  /**
+  * @return returns true if the two states have the same elements
+  */
+  public boolean isEmpty() {
+    return this.removed.length == 0 && this.added.isEmpty();
+  }
+
+  /**
+  * interleaves added elements with kept ones
+  * @param kept is the kept elements in drawing order
+  * @param added is the added elements
+  * @param anchors is, for every added element, the number of kept elements before it
+  * @return returns the combined elements, added ones sharing an anchor keep their order
+  */
+  static ArrayList<CanvasStroke> weave(List<CanvasStroke> kept, List<CanvasStroke> added,
+    final int[] anchors) {
+    List<Integer> order = new ArrayList<Integer>(added.size());
+    for(int i = 0; i < added.size(); ++i) {
+      order.add(i);
+    }
+    //stable, so only needed when anchors are out of order
+    Collections.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return (anchors[a] < anchors[b]) ? -1 : ((anchors[a] == anchors[b]) ? 0 : 1);
+      }
+    });
+    ArrayList<CanvasStroke> woven = new ArrayList<CanvasStroke>(kept.size() + added.size());
+    int next = 0;
+    for(int k = 0; k <= kept.size(); ++k) {
+      while(next < order.size() && anchors[order.get(next)] <= k) {
+        woven.add(added.get(order.get(next++)));
+      }
+      if(k < kept.size()) {
+        woven.add(kept.get(k));
+      }
+    }
+    return woven;
+  }
+
+  /**
+  * @return returns the number of occurrences of every id
+  */
+  static Map<Long, int[]> count(long[] ids) {
+    Map<Long, int[]> counts = new HashMap<Long, int[]>(ids.length * 2);
+    for(long id : ids) {
+      int[] count = counts.get(id);
+      if(count == null) {
+        counts.put(id, new int[] {1});
+      }
+      else {
+        count[0]++;
+      }
+    }
+    return counts;
+  }
+
+  /**
+  * @return returns how many times an id was seen before, and counts this occurrence
+  */
+  static int occurrence(Map<Long, int[]> seen, long id) {
+    int[] count = seen.get(id);
+    if(count == null) {
+      seen.put(id, new int[] {1});
+      return 0;
+    }
+    return count[0]++;
+  }
+}
\ No newline at end of file
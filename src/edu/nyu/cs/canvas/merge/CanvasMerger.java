@@ -0,0 +1,175 @@
+package edu.nyu.cs.canvas.merge;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import edu.nyu.cs.canvas.model.CanvasLayer;
+import edu.nyu.cs.canvas.model.CanvasModelSnapshot;
+
+/**
+ * Three way merge of two states of a drawing edited apart from a common base, e.g. a copy
+ * edited offline and the shared drawing it reconnects to. Elements are merged as a
+ * multiset by id: an element removed on either side is removed, an element added on
+ * either side is added, and one added (or removed) on both sides only once. "Ours" keeps
+ * its drawing order, the elements added by "theirs" are placed right after the element
+ * they follow on their side. Layers are merged by id and, like the paint properties,
+ * take the side that changed them, "ours" winning when both did
+ *
+ * Merging is linear in the number of elements, so it can run on every reconnect
+ * @see CanvasStroke
+ * @author abhishek
+ */
+public final class CanvasMerger {
+  private CanvasMerger() {
+  }
+
+  /**
+  * Merges two states of a drawing
+  * @param base is the common ancestor of both states
+  * @param ours is the local state
+  * @param theirs is the remote state
+  * @return returns the merged state
+  */
+  public static CanvasModelSnapshot merge(CanvasModelSnapshot base, CanvasModelSnapshot ours,
+    CanvasModelSnapshot theirs) {
+    List<CanvasStroke> ourStrokes = CanvasStroke.split(ours.getPoints());
+    List<CanvasStroke> theirStrokes = CanvasStroke.split(theirs.getPoints());
+    Map<Long, int[]> baseCounts = CanvasDrawingDiff.count(CanvasStroke.ids(
+      CanvasStroke.split(base.getPoints())));
+    Map<Long, int[]> ourCounts = CanvasDrawingDiff.count(CanvasStroke.ids(ourStrokes));
+    Map<Long, int[]> theirCounts = CanvasDrawingDiff.count(CanvasStroke.ids(theirStrokes));
+    //drop the first surplus occurrences of our elements
+    ArrayList<CanvasStroke> kept = new ArrayList<CanvasStroke>(ourStrokes.size());
+    Map<Long, List<Integer>> positions = new HashMap<Long, List<Integer>>();
+    Map<Long, int[]> seen = new HashMap<Long, int[]>();
+    for(CanvasStroke stroke : ourStrokes) {
+      long id = stroke.getId();
+      int o = ourCounts.get(id)[0];
+      int merged = merged(get(baseCounts, id), o, get(theirCounts, id));
+      if(CanvasDrawingDiff.occurrence(seen, id) < o - merged) {
+        continue;
+      }
+      List<Integer> at = positions.get(id);
+      if(at == null) {
+        at = new ArrayList<Integer>(1);
+        positions.put(id, at);
+      }
+      at.add(kept.size());
+      kept.add(stroke);
+    }
+    //add the last missing occurrences of their elements after the element they follow
+    ArrayList<CanvasStroke> added = new ArrayList<CanvasStroke>();
+    int[] anchors = new int[theirStrokes.size()];
+    int anchor = 0;
+    seen.clear();
+    for(CanvasStroke stroke : theirStrokes) {
+      long id = stroke.getId();
+      int t = theirCounts.get(id)[0];
+      int o = get(ourCounts, id);
+      int missing = merged(get(baseCounts, id), o, t) - o;
+      int occurrence = CanvasDrawingDiff.occurrence(seen, id);
+      if(occurrence >= t - missing) {
+        anchors[added.size()] = anchor;
+        added.add(stroke);
+        continue;
+      }
+      List<Integer> at = positions.get(id);
+      if(at != null) {
+        anchor = at.get(Math.min(occurrence, at.size() - 1)) + 1;
+      }
+    }
+    ArrayList<CanvasStroke> strokes = CanvasDrawingDiff.weave(kept, added, anchors);
+    List<CanvasLayer> layers = mergeLayers(base.getLayers(), ours.getLayers(),
+      theirs.getLayers());
+    int activeLayer = pick(base.getActiveLayer(), ours.getActiveLayer(), theirs.getActiveLayer());
+    Color color = pick(base.getColor(), ours.getColor(), theirs.getColor());
+    int stroke = pick(base.getStroke(), ours.getStroke(), theirs.getStroke());
+    return new CanvasModelSnapshot(CanvasStroke.join(strokes), layers, activeLayer, color, stroke);
+  }
+
+  /**
+  * @return returns the merged number of occurrences of an element: the most of both sides
+  * if both kept or added copies, the fewest if both removed copies, the combined change
+  * otherwise
+  */
+  private static int merged(int base, int ours, int theirs) {
+    if(ours >= base && theirs >= base) {
+      return Math.max(ours, theirs);
+    }
+    if(ours <= base && theirs <= base) {
+      return Math.min(ours, theirs);
+    }
+    return ours + theirs - base;
+  }
+
+  private static int get(Map<Long, int[]> counts, long id) {
+    int[] count = counts.get(id);
+    return (count == null) ? 0 : count[0];
+  }
+
+  /**
+  * @return returns the value of the side that changed it, ours if both did
+  */
+  private static <T> T pick(T base, T ours, T theirs) {
+    return ours.equals(base) ? theirs : ours;
+  }
+
+  /**
+  * merges layers by id. Layers are never deleted, so the merge holds every layer of both
+  * sides; the stacking order is the one of theirs if ours kept the base order, and each
+  * layer takes the name and visibility of the side that changed them
+  */
+  private static List<CanvasLayer> mergeLayers(List<CanvasLayer> base, List<CanvasLayer> ours,
+    List<CanvasLayer> theirs) {
+    Map<Integer, CanvasLayer> baseById = byId(base);
+    Map<Integer, CanvasLayer> oursById = byId(ours);
+    Map<Integer, CanvasLayer> theirsById = byId(theirs);
+    List<Integer> ourOrder = ids(ours);
+    ourOrder.retainAll(baseById.keySet());
+    boolean oursReordered = !ourOrder.equals(ids(base));
+    List<List<CanvasLayer>> sides = new ArrayList<List<CanvasLayer>>(2);
+    sides.add(oursReordered ? ours : theirs);
+    sides.add(oursReordered ? theirs : ours);
+    List<CanvasLayer> merged = new ArrayList<CanvasLayer>(ours.size() + theirs.size());
+    Map<Integer, CanvasLayer> done = new HashMap<Integer, CanvasLayer>();
+    for(List<CanvasLayer> side : sides) {
+      for(CanvasLayer layer : side) {
+        if(done.containsKey(layer.getId())) {
+          continue;
+        }
+        CanvasLayer ourLayer = oursById.get(layer.getId());
+        CanvasLayer theirLayer = theirsById.get(layer.getId());
+        CanvasLayer baseLayer = baseById.get(layer.getId());
+        CanvasLayer chosen = layer;
+        if(ourLayer != null && theirLayer != null) {
+          chosen = (baseLayer != null && sameLayer(ourLayer, baseLayer)) ? theirLayer : ourLayer;
+        }
+        done.put(layer.getId(), chosen);
+        merged.add(chosen);
+      }
+    }
+    return merged;
+  }
+
+  private static boolean sameLayer(CanvasLayer a, CanvasLayer b) {
+    return a.getName().equals(b.getName()) && a.isVisible() == b.isVisible();
+  }
+
+  private static Map<Integer, CanvasLayer> byId(List<CanvasLayer> layers) {
+    Map<Integer, CanvasLayer> byId = new HashMap<Integer, CanvasLayer>();
+    for(CanvasLayer layer : layers) {
+      byId.put(layer.getId(), layer);
+    }
+    return byId;
+  }
+
+  private static List<Integer> ids(List<CanvasLayer> layers) {
+    List<Integer> ids = new ArrayList<Integer>(layers.size());
+    for(CanvasLayer layer : layers) {
+      ids.add(layer.getId());
+    }
+    return ids;
+  }
+}
\ No newline at end of file
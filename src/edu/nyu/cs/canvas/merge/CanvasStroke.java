@@ -0,0 +1,136 @@
+package edu.nyu.cs.canvas.merge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+
+/**
+ * A drawing element cut out of the flat entity list of a model, identified by a hash of
+ * its content. Elements are delimited by two end markers in a row, exactly where the
+ * segment walk of the model starts over, so an element renders the same wherever it is
+ * placed and cutting and joining a drawing is lossless (apart from closing an open element)
+ *
+ * The model keeps no ids for its elements, and two offline copies of a drawing could not
+ * agree on them anyway. The content hash serves as the stable id instead: the same
+ * element gets the same id in every copy and in every process, identical elements are
+ * told apart by their multiplicity. Editing an element (erasing, moving) gives it a new id,
+ * which a diff sees as the old element removed and a new one added
+ * @see CanvasDrawingDiff
+ * @see CanvasMerger
+ * @author abhishek
+ */
+public final class CanvasStroke {
+  private final long id;
+  private final List<CanvasPoint> points;
+
+  private CanvasStroke(long id, List<CanvasPoint> points) {
+    this.id = id;
+    this.points = points;
+  }
+
+  /**
+  * @return returns the content hash identifying the element
+  */
+  public long getId() {
+    return this.id;
+  }
+
+  /**
+  * @return returns the entities of the element, including the single end markers inside it
+  */
+  public List<CanvasPoint> getPoints() {
+    return this.points;
+  }
+
+  /**
+  * Cuts a drawing into its elements
+  * @param points is the entities of the drawing, end markers included
+  * @return returns the elements in drawing order
+  */
+  public static ArrayList<CanvasStroke> split(List<CanvasPoint> points) {
+    ArrayList<CanvasStroke> strokes = new ArrayList<CanvasStroke>();
+    int size = points.size();
+    int start = 0;
+    while(start < size) {
+      while(start < size && points.get(start).isEndMarker()) {
+        start++;
+      }
+      if(start == size) {
+        break;
+      }
+      //the element ends before the next pair of end markers, or before trailing markers
+      int end = start + 1;
+      while(end < size && !(points.get(end).isEndMarker() &&
+        (end + 1 == size || points.get(end + 1).isEndMarker()))) {
+        end++;
+      }
+      List<CanvasPoint> content = new ArrayList<CanvasPoint>(points.subList(start, end));
+      strokes.add(new CanvasStroke(hash(content), Collections.unmodifiableList(content)));
+      start = end;
+    }
+    return strokes;
+  }
+
+  /**
+  * Lays elements out the way the model seals them: every element is preceded and followed
+  * by an end marker, so that two of them separate consecutive elements
+  * @param strokes is the elements in drawing order
+  * @return returns the entities of the drawing
+  */
+  public static ArrayList<CanvasPoint> join(List<CanvasStroke> strokes) {
+    int size = 0;
+    for(CanvasStroke stroke : strokes) {
+      size += stroke.points.size() + 2;
+    }
+    ArrayList<CanvasPoint> points = new ArrayList<CanvasPoint>(size);
+    CanvasPoint endMarker = CanvasConfig.getEndMarker();
+    for(CanvasStroke stroke : strokes) {
+      points.add(endMarker);
+      points.addAll(stroke.points);
+      points.add(endMarker);
+    }
+    return points;
+  }
+
+  /**
+  * @param strokes is a list of elements
+  * @return returns the ids of the elements, in the same order
+  */
+  public static long[] ids(List<CanvasStroke> strokes) {
+    long[] ids = new long[strokes.size()];
+    for(int i = 0; i < ids.length; ++i) {
+      ids[i] = strokes.get(i).id;
+    }
+    return ids;
+  }
+
+  /**
+  * hashes every property of the entities of an element into 64 bits
+  */
+  private static long hash(List<CanvasPoint> points) {
+    long h = 0xcbf29ce484222325L;
+    for(CanvasPoint point : points) {
+      h = mix(h, ((long) point.getX() << 32) | (point.getY() & 0xffffffffL));
+      if(point.isEndMarker()) {
+        continue;
+      }
+      h = mix(h, ((long) point.getColor().getRGB() << 32) |
+        ((long) point.getLayer() << 16) | (point.getStroke() & 0xffff));
+      if(point.hasControls()) {
+        h = mix(h, ((long) Float.floatToIntBits(point.getControlX1()) << 32) |
+          (Float.floatToIntBits(point.getControlY1()) & 0xffffffffL));
+        h = mix(h, ((long) Float.floatToIntBits(point.getControlX2()) << 32) |
+          (Float.floatToIntBits(point.getControlY2()) & 0xffffffffL));
+      }
+    }
+    return mix(h, points.size());
+  }
+
+  private static long mix(long h, long value) {
+    h ^= value;
+    h *= 0x9e3779b97f4a7c15L;
+    return h ^ (h >>> 29);
+  }
+}
\ No newline at end of file
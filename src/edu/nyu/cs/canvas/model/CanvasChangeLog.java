@@ -0,0 +1,59 @@
+package edu.nyu.cs.canvas.model;
+
+import java.awt.Color;
+import java.util.List;
+
+/**
+ * Receives every change of a model as an edit of its whole list of 'model entities',
+ * spilled ones included, so that replaying the edits on a copy of the drawing yields the
+ * drawing. Calls are made on the thread mutating the model, right after the change
+ * @see CanvasModel#setChangeLog(CanvasChangeLog)
+ * @author abhishek
+ */
+public interface CanvasChangeLog {
+
+  /**
+  * an entity was appended at the end of the drawing
+  * @param point is the appended entity
+  */
+  public void appended(CanvasPoint point);
+
+  /**
+  * entities were appended at the end of the drawing at once, e.g. whole imported strokes
+  * @param points is the appended entities, in order
+  */
+  public void appendedAll(List<CanvasPoint> points);
+
+  /**
+  * an entity was replaced, e.g. moved or erased
+  * @param index is the position of the entity in the drawing
+  * @param point is the new entity
+  */
+  public void replaced(int index, CanvasPoint point);
+
+  /**
+  * the drawing was cut down to its first entities
+  * @param size is the number of entities kept
+  */
+  public void truncated(int size);
+
+  /**
+  * the model was reset: no entities, a single base layer and the default paint properties
+  * @see edu.nyu.cs.canvas.CanvasConfig
+  */
+  public void cleared();
+
+  /**
+  * layers were added, reordered, shown or hidden, or another layer became active
+  * @param layers is the layers ordered from bottom to top
+  * @param activeLayer is the id of the active layer
+  */
+  public void layersChanged(List<CanvasLayer> layers, int activeLayer);
+
+  /**
+  * the paint properties of the model changed
+  * @param color is the current color
+  * @param stroke is the current stroke
+  */
+  public void paintChanged(Color color, int stroke);
+}
\ No newline at end of file
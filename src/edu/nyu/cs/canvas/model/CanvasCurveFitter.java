@@ -0,0 +1,222 @@
+package edu.nyu.cs.canvas.model;
+
+import java.util.Arrays;
+
+/**
+ * Fits a polyline of raw samples with a piecewise cubic Bezier curve, following
+ * Schneider's algorithm ("An Algorithm for Automatically Fitting Digitized Curves",
+ * Graphics Gems). Samples are chord length parameterized, a single cubic is fitted by
+ * least squares with fixed end tangents, the parameters are refined a few times with
+ * Newton-Raphson, and the samples are split at the worst fitted one while the error
+ * bound is still exceeded
+ * @author abhishek
+ */
+public final class CanvasCurveFitter {
+  private static final int maxIterations = 4;
+  private final double[] xs;
+  private final double[] ys;
+  private final double errorSquared;
+  //fitted curve: start point followed by (c1x, c1y, c2x, c2y, x, y) per piece
+  private float[] curve;
+  private int length;
+
+  private CanvasCurveFitter(double[] xs, double[] ys, double error) {
+    this.xs = xs;
+    this.ys = ys;
+    this.errorSquared = error * error;
+    this.curve = new float[2 + 6 * 8];
+  }
+
+  /**
+  * fits a polyline with cubic Bezier pieces
+  * @param xs is the array of x coordinates of the samples
+  * @param ys is the array of y coordinates of the samples
+  * @param count is the number of samples, at least two
+  * @param error is the maximum distance allowed between a sample and the curve
+  * @return returns the start point followed by (c1x, c1y, c2x, c2y, x, y) per piece
+  */
+  public static float[] fit(int[] xs, int[] ys, int count, double error) {
+    if(count < 2) {
+      throw new IllegalArgumentException("At least two samples are required, got " + count);
+    }
+    double[] px = new double[count];
+    double[] py = new double[count];
+    for(int i = 0; i < count; ++i) {
+      px[i] = xs[i];
+      py[i] = ys[i];
+    }
+    CanvasCurveFitter fitter = new CanvasCurveFitter(px, py, error);
+    fitter.curve[0] = xs[0];
+    fitter.curve[1] = ys[0];
+    fitter.length = 2;
+    double[] left = fitter.tangent(0, 1);
+    double[] right = fitter.tangent(count - 1, count - 2);
+    fitter.fitCubic(0, count - 1, left, right);
+    return Arrays.copyOf(fitter.curve, fitter.length);
+  }
+
+  /**
+  * fits the samples [first, last] with one or more pieces between the given tangents
+  */
+  private void fitCubic(int first, int last, double[] left, double[] right) {
+    if(last - first == 1) {
+      double dist = Math.hypot(this.xs[last] - this.xs[first], this.ys[last] - this.ys[first]) / 3;
+      append(this.xs[first] + left[0] * dist, this.ys[first] + left[1] * dist,
+        this.xs[last] + right[0] * dist, this.ys[last] + right[1] * dist, last);
+      return;
+    }
+    double[] u = chordLengthParameterize(first, last);
+    double[] bezier = generateBezier(first, last, u, left, right);
+    int[] split = new int[1];
+    double maxError = computeMaxError(first, last, bezier, u, split);
+    if(maxError < this.errorSquared) {
+      append(bezier[2], bezier[3], bezier[4], bezier[5], last);
+      return;
+    }
+    if(maxError < 4 * this.errorSquared) {
+      for(int i = 0; i < maxIterations; ++i) {
+        u = reparameterize(first, last, u, bezier);
+        bezier = generateBezier(first, last, u, left, right);
+        maxError = computeMaxError(first, last, bezier, u, split);
+        if(maxError < this.errorSquared) {
+          append(bezier[2], bezier[3], bezier[4], bezier[5], last);
+          return;
+        }
+      }
+    }
+    int middle = Math.max(first + 1, Math.min(last - 1, split[0]));
+    double[] center = centerTangent(middle);
+    fitCubic(first, middle, left, center);
+    fitCubic(middle, last, new double[] {-center[0], -center[1]}, right);
+  }
+
+  /**
+  * least squares fit of the inner control points given the end tangents, the result
+  * holds the four control points as (x0, y0, x1, y1, x2, y2, x3, y3)
+  */
+  private double[] generateBezier(int first, int last, double[] u, double[] left, double[] right) {
+    double c00 = 0, c01 = 0, c11 = 0, x0 = 0, x1 = 0;
+    double fx = this.xs[first], fy = this.ys[first], lx = this.xs[last], ly = this.ys[last];
+    for(int i = 0; i <= last - first; ++i) {
+      double t = u[i];
+      double b0 = (1 - t) * (1 - t) * (1 - t);
+      double b1 = 3 * t * (1 - t) * (1 - t);
+      double b2 = 3 * t * t * (1 - t);
+      double b3 = t * t * t;
+      double a1x = left[0] * b1, a1y = left[1] * b1;
+      double a2x = right[0] * b2, a2y = right[1] * b2;
+      c00 += a1x * a1x + a1y * a1y;
+      c01 += a1x * a2x + a1y * a2y;
+      c11 += a2x * a2x + a2y * a2y;
+      double tx = this.xs[first + i] - (fx * (b0 + b1) + lx * (b2 + b3));
+      double ty = this.ys[first + i] - (fy * (b0 + b1) + ly * (b2 + b3));
+      x0 += a1x * tx + a1y * ty;
+      x1 += a2x * tx + a2y * ty;
+    }
+    double det = c00 * c11 - c01 * c01;
+    double alphaL = (det == 0) ? 0 : (x0 * c11 - c01 * x1) / det;
+    double alphaR = (det == 0) ? 0 : (c00 * x1 - c01 * x0) / det;
+    double segLength = Math.hypot(lx - fx, ly - fy);
+    double epsilon = 1.0e-6 * segLength;
+    if(alphaL < epsilon || alphaR < epsilon) {
+      alphaL = segLength / 3;
+      alphaR = segLength / 3;
+    }
+    return new double[] {fx, fy, fx + left[0] * alphaL, fy + left[1] * alphaL,
+      lx + right[0] * alphaR, ly + right[1] * alphaR, lx, ly};
+  }
+
+  /**
+  * improves the parameter of every sample with one Newton-Raphson step
+  */
+  private double[] reparameterize(int first, int last, double[] u, double[] bezier) {
+    double[] result = new double[u.length];
+    for(int i = 0; i <= last - first; ++i) {
+      result[i] = newtonRaphson(bezier, this.xs[first + i], this.ys[first + i], u[i]);
+    }
+    return result;
+  }
+
+  private static double newtonRaphson(double[] q, double px, double py, double t) {
+    double qx = evaluate(q, 0, t), qy = evaluate(q, 1, t);
+    double mt = 1 - t;
+    //first derivative
+    double d1x = 3 * (mt * mt * (q[2] - q[0]) + 2 * mt * t * (q[4] - q[2]) + t * t * (q[6] - q[4]));
+    double d1y = 3 * (mt * mt * (q[3] - q[1]) + 2 * mt * t * (q[5] - q[3]) + t * t * (q[7] - q[5]));
+    //second derivative
+    double d2x = 6 * (mt * (q[4] - 2 * q[2] + q[0]) + t * (q[6] - 2 * q[4] + q[2]));
+    double d2y = 6 * (mt * (q[5] - 2 * q[3] + q[1]) + t * (q[7] - 2 * q[5] + q[3]));
+    double numerator = (qx - px) * d1x + (qy - py) * d1y;
+    double denominator = d1x * d1x + d1y * d1y + (qx - px) * d2x + (qy - py) * d2y;
+    if(denominator == 0) {
+      return t;
+    }
+    return Math.max(0, Math.min(1, t - numerator / denominator));
+  }
+
+  /**
+  * finds the largest squared distance between a sample and the fitted cubic
+  */
+  private double computeMaxError(int first, int last, double[] bezier, double[] u, int[] split) {
+    double maxDist = 0;
+    split[0] = (first + last + 1) / 2;
+    for(int i = first + 1; i < last; ++i) {
+      double dx = evaluate(bezier, 0, u[i - first]) - this.xs[i];
+      double dy = evaluate(bezier, 1, u[i - first]) - this.ys[i];
+      double dist = dx * dx + dy * dy;
+      if(dist >= maxDist) {
+        maxDist = dist;
+        split[0] = i;
+      }
+    }
+    return maxDist;
+  }
+
+  private double[] chordLengthParameterize(int first, int last) {
+    double[] u = new double[last - first + 1];
+    for(int i = first + 1; i <= last; ++i) {
+      u[i - first] = u[i - first - 1] + Math.hypot(this.xs[i] - this.xs[i - 1],
+        this.ys[i] - this.ys[i - 1]);
+    }
+    double total = u[last - first];
+    for(int i = first + 1; i <= last; ++i) {
+      u[i - first] = (total == 0) ? (double) (i - first) / (last - first) : u[i - first] / total;
+    }
+    return u;
+  }
+
+  private static double evaluate(double[] q, int axis, double t) {
+    double mt = 1 - t;
+    return mt * mt * mt * q[axis] + 3 * mt * mt * t * q[2 + axis] +
+      3 * mt * t * t * q[4 + axis] + t * t * t * q[6 + axis];
+  }
+
+  /**
+  * unit tangent pointing from one sample towards another
+  */
+  private double[] tangent(int from, int to) {
+    return normalize(this.xs[to] - this.xs[from], this.ys[to] - this.ys[from]);
+  }
+
+  private double[] centerTangent(int center) {
+    return normalize(this.xs[center - 1] - this.xs[center + 1],
+      this.ys[center - 1] - this.ys[center + 1]);
+  }
+
+  private static double[] normalize(double dx, double dy) {
+    double length = Math.hypot(dx, dy);
+    return (length == 0) ? new double[] {0, 0} : new double[] {dx / length, dy / length};
+  }
+
+  private void append(double c1x, double c1y, double c2x, double c2y, int last) {
+    if(this.length + 6 > this.curve.length) {
+      this.curve = Arrays.copyOf(this.curve, this.curve.length * 2);
+    }
+    this.curve[this.length++] = (float) c1x;
+    this.curve[this.length++] = (float) c1y;
+    this.curve[this.length++] = (float) c2x;
+    this.curve[this.length++] = (float) c2y;
+    this.curve[this.length++] = (float) this.xs[last];
+    this.curve[this.length++] = (float) this.ys[last];
+  }
+}
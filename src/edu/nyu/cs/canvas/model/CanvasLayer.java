@@ -0,0 +1,61 @@
+package edu.nyu.cs.canvas.model;
+
+/**
+ * Immutable description of a layer of the drawing. Every 'model entity' names the layer it
+ * is drawn on by id; the model keeps the layers ordered from bottom to top, and views
+ * composite them in that order, skipping the hidden ones
+ * @see CanvasModel#getLayers()
+ * @author abhishek
+ */
+public final class CanvasLayer {
+  private final int id;
+  private final String name;
+  private final boolean visible;
+
+  /**
+  * Constructor for a layer. Layers of a drawing are created by its model, other code
+  * only builds them to describe a persisted drawing
+  * @param id is the id of the layer
+  * @param name is the display name of the layer
+  * @param visible is the visibility of the layer
+  */
+  public CanvasLayer(int id, String name, boolean visible) {
+    this.id = id;
+    this.name = name;
+    this.visible = visible;
+  }
+
+  /**
+  * @return returns the id of the layer, as carried by its entities
+  */
+  public int getId() {
+    return this.id;
+  }
+
+  /**
+  * @return returns the display name of the layer
+  */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+  * @return true if the layer is composited into the canvas
+  */
+  public boolean isVisible() {
+    return this.visible;
+  }
+
+  /**
+  * @param visible is the new visibility
+  * @return returns a copy of the layer with the given visibility
+  */
+  CanvasLayer withVisible(boolean visible) {
+    return new CanvasLayer(this.id, this.name, visible);
+  }
+
+  @Override
+  public String toString() {
+    return this.name;
+  }
+}
\ No newline at end of file
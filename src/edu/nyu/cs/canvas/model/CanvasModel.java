@@ -1,64 +1,1210 @@
 package edu.nyu.cs.canvas.model;
 
 import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
 import edu.nyu.cs.canvas.CanvasConfig;
 
 /**
  * Model class for the Canvas. Model contains entities capturing both geometry
  * and paint properties, and method to manipulate geometry
+ *
+ * The application uses a single shared model, independent documents (for example
+ * the boards hosted by a session manager) each create their own instance
+ *
+ * With a heap budget set, older sealed drawing elements are spilled to a file backed
+ * store once the resident entities exceed the budget. Views already hold them in their
+ * rendered backing images, so they are only paged back in for export or stateful forks
+ *
+ * Resident entities are kept in a spatial index so that erasing and redrawing an area
+ * only touch the segments around it, and in a bounding volume hierarchy so that the
+ * stroke under a point is found in logarithmic time
+ *
+ * The drawing is organized in layers. Entities carry the id of their layer, new elements
+ * go to the active layer and editing (erase, lasso) only ever touches the active layer
+ *
+ * Every change can be reported to a change log, e.g. for journaling, and the whole state
+ * can be copied into a snapshot and restored from one
+ *
+ * A reset does not clear the drawing in place, it swaps in a fresh, empty store along
+ * with fresh indices, so it takes constant time however large the drawing is. The
+ * replaced drawing is kept as it is until the next reset, so that the reset can be undone
+ * by swapping it back
+ * @see CanvasChangeLog
+ * @see CanvasModelSnapshot
+ * @see CanvasSpillStore
+ * @see CanvasSpatialIndex
+ * @see CanvasStrokeTree
  * @author abhishek
  */
 public final class CanvasModel {
   private Color color;
   private int stroke;
+  private ArrayList<CanvasPoint> allPoints;
+  //sequence number of the drawing content, bumped once per mutation
+  private long version;
+  //bumped whenever resident indices are invalidated (spill, reset)
+  private long layoutEpoch;
+  //maximum heap footprint of the resident entities in bytes, 0 disables spilling
+  private long heapBudget;
+  //approximate heap footprint of the resident entities in bytes
+  private long residentBytes;
+  //resident footprint at which the next spill is attempted
+  private long spillThreshold;
+  private CanvasSpillStore spillStore;
+  private CanvasSpatialIndex spatialIndex;
+  private CanvasStrokeTree strokeTree;
+  //resident index of the last entity of the open drawing element, -1 if there is none
+  private int strokeTail;
+  //number of consecutive end markers at the end of the resident entities
+  private int markerRun;
+  //raw samples of fitted drawing elements, kept for replay when retention is on
+  private boolean retainRawSamples;
+  private ArrayList<CanvasPoint> rawSamples;
+  //layers ordered from bottom to top
+  private ArrayList<CanvasLayer> layers;
+  private int activeLayer;
+  private int nextLayerId;
+  //drawing replaced by the last reset, kept so that the reset can be undone, null if none
+  private Epoch resetEpoch;
+  //receives every change of the model, null if none
+  private CanvasChangeLog changeLog;
   private static CanvasModel model = null;
-  private static ArrayList<CanvasPoint> allPoints;
+
+  /**
+  * The drawing held by a model at some point: its store of entities and the indices
+  * built over it, along with its layers and paint properties
+  */
+  private static final class Epoch {
+    private final ArrayList<CanvasPoint> allPoints;
+    private final ArrayList<CanvasPoint> rawSamples;
+    private final CanvasSpatialIndex spatialIndex;
+    private final CanvasStrokeTree strokeTree;
+    private final CanvasSpillStore spillStore;
+    private final long residentBytes;
+    private final int strokeTail;
+    private final int markerRun;
+    private final ArrayList<CanvasLayer> layers;
+    private final int activeLayer;
+    private final int nextLayerId;
+    private final Color color;
+    private final int stroke;
+
+    Epoch(CanvasModel model) {
+      this.allPoints = model.allPoints;
+      this.rawSamples = model.rawSamples;
+      this.spatialIndex = model.spatialIndex;
+      this.strokeTree = model.strokeTree;
+      this.spillStore = model.spillStore;
+      this.residentBytes = model.residentBytes;
+      this.strokeTail = model.strokeTail;
+      this.markerRun = model.markerRun;
+      this.layers = model.layers;
+      this.activeLayer = model.activeLayer;
+      this.nextLayerId = model.nextLayerId;
+      this.color = model.color;
+      this.stroke = model.stroke;
+    }
+
+    /**
+    * makes this drawing the one held by a model
+    */
+    void swapInto(CanvasModel model) {
+      model.allPoints = this.allPoints;
+      model.rawSamples = this.rawSamples;
+      model.spatialIndex = this.spatialIndex;
+      model.strokeTree = this.strokeTree;
+      model.spillStore = this.spillStore;
+      model.residentBytes = this.residentBytes;
+      model.strokeTail = this.strokeTail;
+      model.markerRun = this.markerRun;
+      model.layers = this.layers;
+      model.activeLayer = this.activeLayer;
+      model.nextLayerId = this.nextLayerId;
+      model.color = this.color;
+      model.stroke = this.stroke;
+    }
+
+    /**
+    * releases the drawing, the heap is reclaimed by the collector and the spill file, if
+    * any, is removed in the background
+    */
+    void release() {
+      if(this.spillStore != null) {
+        this.spillStore.release();
+      }
+    }
+  }
 
   /**
   * static getter for model object
   * @return singleton model object
   */
-  public static CanvasModel getInstance() {
+  public static synchronized CanvasModel getInstance() {
     if(model == null) {
       model = new CanvasModel();
-      allPoints = new ArrayList<CanvasPoint>();
     }
     return model;
   }
 
+  /**
+  * creates a model independent of the shared one, for hosting a separate document
+  * @return a new, empty model object
+  */
+  public static CanvasModel createInstance() {
+    return new CanvasModel();
+  }
+
   /**
   * Add a model entity to the list of existing entities in model
   * @param point is a model entity
   */
   public void addPoint(CanvasPoint point) {
     if(point != null) {
-      allPoints.add(point);
+      this.allPoints.add(point);
+      this.residentBytes += point.getHeapSize();
+      indexEntity(this.allPoints.size() - 1);
+      this.version++;
+      if(this.changeLog != null) {
+        this.changeLog.appended(point);
+      }
+      if(this.heapBudget > 0 && this.residentBytes > this.spillThreshold) {
+        spillSealed();
+      }
+    }
+  }
+
+  /**
+  * Adds a whole batch of drawing elements to the active layer at once. Capacity is reserved
+  * once, every stroke is sealed off by end markers the same way mouse drawn elements
+  * are, and the content version is bumped a single time for the whole batch
+  * @param batch is the batch of strokes to add
+  * @return returns the model entities appended to the model, end markers included
+  */
+  public ArrayList<CanvasPoint> addStrokes(CanvasStrokeBatch batch) {
+    ArrayList<CanvasPoint> added = new ArrayList<CanvasPoint>();
+    if(batch == null || batch.getStrokeCount() == 0) {
+      return added;
+    }
+    CanvasPoint endMarker = CanvasConfig.getEndMarker();
+    added.ensureCapacity(batch.getPointCount() + batch.getStrokeCount() + 2);
+    if(!this.allPoints.isEmpty() && !this.allPoints.get(this.allPoints.size() - 1).isEndMarker()) {
+      added.add(endMarker);
+    }
+    for(int i = 0; i < batch.getStrokeCount(); ++i) {
+      Color color = new Color(batch.getStrokeColor(i), true);
+      int stroke = batch.getStrokeWidth(i);
+      added.add(endMarker);
+      int end = batch.getStrokeStart(i) + batch.getStrokeLength(i);
+      for(int j = batch.getStrokeStart(i); j < end; ++j) {
+        added.add(new CanvasPoint.Builder(batch.getX(j), batch.getY(j)).pointWithColor(color).
+          pointWithStroke(stroke).pointWithLayer(this.activeLayer).build());
+      }
+      added.add(endMarker);
+    }
+    appendSealed(added);
+    return added;
+  }
+
+  /**
+  * Adds a shape primitive to the active layer as a single sealed drawing element
+  * @param shape is the kind of primitive
+  * @param x1 is the x coordinate of the corner where the drag started
+  * @param y1 is the y coordinate of the corner where the drag started
+  * @param x2 is the x coordinate of the corner where the drag ended
+  * @param y2 is the y coordinate of the corner where the drag ended
+  * @param color is the color of the primitive
+  * @param stroke is the stroke of the primitive
+  * @return returns the model entities appended to the model, end markers included
+  */
+  public ArrayList<CanvasPoint> addShape(CanvasShape shape, int x1, int y1, int x2, int y2,
+    Color color, int stroke) {
+    CanvasPoint endMarker = CanvasConfig.getEndMarker();
+    ArrayList<CanvasPoint> added = new ArrayList<CanvasPoint>(8);
+    if(!this.allPoints.isEmpty() && !this.allPoints.get(this.allPoints.size() - 1).isEndMarker()) {
+      added.add(endMarker);
     }
+    added.add(endMarker);
+    added.addAll(shape.toPoints(x1, y1, x2, y2, color, stroke, this.activeLayer));
+    added.add(endMarker);
+    appendSealed(added);
+    return added;
+  }
+
+  /**
+  * appends whole drawing elements at once, bumping the content version a single time
+  * @param added is the entities to append, each element sealed off by end markers
+  */
+  private void appendSealed(ArrayList<CanvasPoint> added) {
+    int from = this.allPoints.size();
+    this.allPoints.addAll(added);
+    for(int i = from; i < this.allPoints.size(); ++i) {
+      this.residentBytes += this.allPoints.get(i).getHeapSize();
+    }
+    indexEntities(from);
+    this.version++;
+    if(this.changeLog != null) {
+      this.changeLog.appendedAll(added);
+    }
+    if(this.heapBudget > 0 && this.residentBytes > this.spillThreshold) {
+      spillSealed();
+    }
+  }
+
+  /**
+  * @return returns the sequence number of the drawing content, which changes
+  * whenever model entities are added or released
+  */
+  public long getVersion() {
+    return this.version;
   }
 
   /**
-  * @return returns list of model entities currently stored in model
+  * @return returns list of model entities currently resident in model, which is the
+  * whole drawing unless older elements have been spilled
+  * @see #setHeapBudget(long)
   */
   public ArrayList<CanvasPoint> getAllPoints() {
-    return allPoints;
+    return this.allPoints;
+  }
+
+  /**
+  * pages spilled model entities back in and returns the whole drawing
+  * @return returns all model entities, spilled ones included
+  */
+  public ArrayList<CanvasPoint> loadAllPoints() {
+    if(getSpilledCount() == 0) {
+      return this.allPoints;
+    }
+    ArrayList<CanvasPoint> points = new ArrayList<CanvasPoint>(getSpilledCount() +
+      this.allPoints.size());
+    points.addAll(this.spillStore.asList());
+    points.addAll(this.allPoints);
+    return points;
+  }
+
+  /**
+  * @return returns the number of model entities spilled out of the heap
+  */
+  public int getSpilledCount() {
+    return (this.spillStore == null) ? 0 : this.spillStore.size();
+  }
+
+  /**
+  * sets the heap budget of the resident model entities. Once exceeded, the oldest sealed
+  * drawing elements are spilled to a file backed store until half the budget is used
+  * @param bytes is the budget in bytes, 0 keeps the whole drawing in heap
+  */
+  public void setHeapBudget(long bytes) {
+    if(bytes >= 0) {
+      this.heapBudget = bytes;
+      this.spillThreshold = bytes;
+    }
+  }
+
+  /**
+  * walks all segments of the drawing, spilled elements first
+  * @param visitor receives every segment in drawing order
+  */
+  public void walkSegments(CanvasSegmentVisitor visitor) {
+    if(getSpilledCount() > 0) {
+      walkSegments(this.spillStore.asList(), visitor);
+    }
+    walkSegments(this.allPoints, visitor);
+  }
+
+  /**
+  * moves the oldest sealed drawing elements to the spill store. The cut is made between
+  * two consecutive end markers so that no element is split across heap and store
+  */
+  private void spillSealed() {
+    int target = this.allPoints.size();
+    long kept = 0;
+    while(target > 0 && kept < this.heapBudget / 2) {
+      kept += this.allPoints.get(--target).getHeapSize();
+    }
+    int cut = -1;
+    for(int i = Math.min(target, this.allPoints.size() - 1); i > 0; --i) {
+      if(this.allPoints.get(i).isEndMarker() && this.allPoints.get(i-1).isEndMarker()) {
+        cut = i;
+        break;
+      }
+    }
+    if(cut <= 0) {
+      //a single element is larger than the budget, retry once it has grown further
+      this.spillThreshold = this.residentBytes + this.heapBudget / 2;
+      return;
+    }
+    try {
+      if(this.spillStore == null) {
+        this.spillStore = new CanvasSpillStore();
+      }
+      this.spillStore.append(this.allPoints, 0, cut);
+    } catch (IOException e) {
+      //keep everything resident rather than losing the drawing
+      this.heapBudget = 0;
+      return;
+    }
+    for(int i = 0; i < cut; ++i) {
+      this.residentBytes -= this.allPoints.get(i).getHeapSize();
+    }
+    this.allPoints.subList(0, cut).clear();
+    this.spillThreshold = this.heapBudget;
+    this.layoutEpoch++;
+    rebuildIndex();
+  }
+
+  /**
+  * Seals the drawing element being drawn, i.e. the one ending the resident entities, and
+  * replaces its raw samples by a fitted piecewise cubic Bezier curve. Only the anchors of
+  * the curve are stored, each carrying the control points of its incoming piece.
+  * Elements mixing paint properties, or that would not get smaller, are left as they are
+  * @param tolerance is the maximum distance allowed between a raw sample and the curve
+  * @return returns the area covered by the element before and after, null if unchanged
+  */
+  public Rectangle sealStroke(double tolerance) {
+    if(this.strokeTail == -1 || tolerance <= 0) {
+      return null;
+    }
+    int count = 0;
+    for(int i = this.strokeTail; i != -1; i = this.spatialIndex.getPrev(i)) {
+      count++;
+    }
+    int[] indices = new int[count];
+    for(int i = this.strokeTail, k = count - 1; i != -1; i = this.spatialIndex.getPrev(i), --k) {
+      indices[k] = i;
+    }
+    CanvasPoint first = this.allPoints.get(indices[0]);
+    int[] xs = new int[count];
+    int[] ys = new int[count];
+    int samples = 0;
+    for(int index : indices) {
+      CanvasPoint point = this.allPoints.get(index);
+      if(point.isEndMarker() || point.hasControls() || point.getStroke() != first.getStroke() ||
+        point.getLayer() != first.getLayer() || !point.getColor().equals(first.getColor())) {
+        return null;
+      }
+      if(samples == 0 || xs[samples - 1] != point.getX() || ys[samples - 1] != point.getY()) {
+        xs[samples] = point.getX();
+        ys[samples] = point.getY();
+        samples++;
+      }
+    }
+    if(samples < 3) {
+      return null;
+    }
+    float[] curve = CanvasCurveFitter.fit(xs, ys, samples, tolerance);
+    int anchors = 1 + (curve.length - 2) / 6;
+    if(anchors >= count) {
+      return null;
+    }
+    int start = indices[0];
+    Rectangle dirty = null;
+    for(int k = 0; k < count; ++k) {
+      CanvasPoint point = this.allPoints.get(indices[k]);
+      Rectangle area = segmentBounds((k == 0) ? point : this.allPoints.get(indices[k-1]), point);
+      dirty = (dirty == null) ? area : dirty.union(area);
+    }
+    if(this.retainRawSamples) {
+      if(!this.rawSamples.isEmpty()) {
+        this.rawSamples.add(CanvasConfig.getEndMarker());
+        this.rawSamples.add(CanvasConfig.getEndMarker());
+      }
+      this.rawSamples.addAll(this.allPoints.subList(start, this.allPoints.size()));
+    }
+    int trailing = this.allPoints.size() - 1 - this.strokeTail;
+    ArrayList<CanvasPoint> fitted = new ArrayList<CanvasPoint>(anchors + trailing);
+    fitted.add(new CanvasPoint.Builder((int) curve[0], (int) curve[1]).
+      pointWithColor(first.getColor()).pointWithStroke(first.getStroke()).
+      pointWithLayer(first.getLayer()).build());
+    for(int i = 2; i < curve.length; i += 6) {
+      fitted.add(new CanvasPoint.Builder((int) curve[i+4], (int) curve[i+5]).
+        pointWithColor(first.getColor()).pointWithStroke(first.getStroke()).
+        pointWithLayer(first.getLayer()).pointWithControls(curve[i], curve[i+1], curve[i+2], curve[i+3]).build());
+    }
+    for(int i = 0; i < trailing; ++i) {
+      fitted.add(CanvasConfig.getEndMarker());
+    }
+    rewriteFrom(start, fitted);
+    for(int i = start + 1; i < this.allPoints.size(); ++i) {
+      CanvasPoint point = this.allPoints.get(i);
+      if(!point.isEndMarker()) {
+        dirty = dirty.union(segmentBounds(this.allPoints.get(i-1), point));
+      }
+    }
+    this.version++;
+    return dirty;
+  }
+
+  /**
+  * replaces the resident entities at and past an index, registering the new ones as if
+  * they had just been appended. Resident indices past the cut may shift, so selections
+  * and hits made before are invalidated
+  * @param start is the resident index of the first replaced entity
+  * @param tail is the entities replacing them
+  */
+  private void rewriteFrom(int start, List<CanvasPoint> tail) {
+    for(int i = start; i < this.allPoints.size(); ++i) {
+      this.residentBytes -= this.allPoints.get(i).getHeapSize();
+    }
+    this.allPoints.subList(start, this.allPoints.size()).clear();
+    this.spatialIndex.truncate(start);
+    this.strokeTree.truncate(start);
+    restoreTail();
+    this.allPoints.addAll(tail);
+    for(int i = start; i < this.allPoints.size(); ++i) {
+      this.residentBytes += this.allPoints.get(i).getHeapSize();
+    }
+    indexEntities(start);
+    this.layoutEpoch++;
+    if(this.changeLog != null) {
+      this.changeLog.truncated(getSpilledCount() + start);
+      this.changeLog.appendedAll(tail);
+    }
+  }
+
+  /**
+  * @return returns the raw samples of the fitted drawing elements, in the same encoding
+  * as the resident entities, empty unless raw samples are retained
+  * @see #setRetainRawSamples(boolean)
+  */
+  public ArrayList<CanvasPoint> getRawSamples() {
+    return this.rawSamples;
+  }
+
+  /**
+  * sets whether the raw samples of elements replaced by fitted curves are kept for replay
+  * @param retain is true to keep the raw samples
+  */
+  public void setRetainRawSamples(boolean retain) {
+    this.retainRawSamples = retain;
+  }
+
+  /**
+  * Selects every drawing element of the active layer having at least one entity inside
+  * a lasso
+  * @param lasso is the closed lasso outline
+  * @return returns the selection of whole elements, possibly empty
+  */
+  public CanvasSelection select(Shape lasso) {
+    int[] candidates = this.spatialIndex.query(lasso.getBounds());
+    int[] indices = new int[16];
+    int count = 0;
+    int coveredTo = -1;
+    for(int index : candidates) {
+      CanvasPoint point = this.allPoints.get(index);
+      if(index < coveredTo || point.isEndMarker() || point.getLayer() != this.activeLayer ||
+        !lasso.contains(point.getX(), point.getY())) {
+        continue;
+      }
+      int start = getElementStart(index);
+      int end = getElementEnd(index);
+      for(int i = Math.max(start, coveredTo); i < end; ++i) {
+        if(!this.allPoints.get(i).isEndMarker()) {
+          if(count == indices.length) {
+            indices = Arrays.copyOf(indices, count * 2);
+          }
+          indices[count++] = i;
+        }
+      }
+      coveredTo = end;
+    }
+    int[] xs = new int[count];
+    int[] ys = new int[count];
+    ArrayList<CanvasPoint> segments = new ArrayList<CanvasPoint>(2 * count);
+    Rectangle bounds = null;
+    for(int k = 0; k < count; ++k) {
+      CanvasPoint point = this.allPoints.get(indices[k]);
+      xs[k] = point.getX();
+      ys[k] = point.getY();
+      CanvasPoint from = getIndexedPrev(indices[k]);
+      from = (from == null) ? point : from;
+      segments.add(from);
+      segments.add(point);
+      Rectangle area = segmentBounds(from, point);
+      bounds = (bounds == null) ? area : bounds.union(area);
+    }
+    return new CanvasSelection(Arrays.copyOf(indices, count), xs, ys, segments,
+      bounds, this.activeLayer, this.layoutEpoch);
+  }
+
+  /**
+  * Finds the drawing element under a point: the one of a visible layer whose painted
+  * outline is nearest to the point, within a tolerance. Resident segments are looked up
+  * in the bounding volume hierarchy instead of being scanned, spilled ones are not
+  * considered, as for erasing
+  * @param x is the x coordinate of the point
+  * @param y is the y coordinate of the point
+  * @param tolerance is the maximum distance from the point to the painted outline
+  * @return returns the nearest element, the most recently drawn one on ties, null if
+  * none is within the tolerance
+  */
+  public CanvasStrokeHit findStroke(int x, int y, double tolerance) {
+    if(tolerance < 0) {
+      return null;
+    }
+    BitSet hidden = new BitSet();
+    for(CanvasLayer layer : this.layers) {
+      if(!layer.isVisible()) {
+        hidden.set(layer.getId());
+      }
+    }
+    int index = this.strokeTree.nearest(x, y, tolerance, hidden);
+    if(index == -1) {
+      return null;
+    }
+    return new CanvasStrokeHit(index, getElementStart(index), getElementEnd(index),
+      this.allPoints.get(index).getLayer(), this.strokeTree.getNearestDistance(),
+      this.layoutEpoch);
+  }
+
+  /**
+  * @return returns the resident index of the first entity of the drawing element holding
+  * an entity, elements being bounded by two end markers in a row, or by end markers
+  * opening or closing the resident entities
+  */
+  private int getElementStart(int index) {
+    int start = index;
+    while(start > 0 && !(this.allPoints.get(start - 1).isEndMarker() &&
+      (start == 1 || this.allPoints.get(start - 2).isEndMarker()))) {
+      start--;
+    }
+    return start;
+  }
+
+  /**
+  * @return returns the resident index past the last entity of the drawing element holding
+  * an entity
+  */
+  private int getElementEnd(int index) {
+    int end = index + 1;
+    while(end < this.allPoints.size() && !(this.allPoints.get(end).isEndMarker() &&
+      (end + 1 == this.allPoints.size() || this.allPoints.get(end + 1).isEndMarker()))) {
+      end++;
+    }
+    return end;
+  }
+
+  /**
+  * Applies a transform to all entities of a selection in a single pass over their
+  * coordinates, then writes the moved entities back in place. Stroke widths are scaled
+  * by the area scale of the transform, as the dragged preview of the selection is
+  * @param selection is a selection made on this model
+  * @param transform is the transform to apply, e.g. a move, scale or rotation
+  * @return returns the area affected by the transform, null if nothing changed or the
+  * selection is stale because the drawing was reset or spilled in the meantime
+  */
+  public Rectangle transform(CanvasSelection selection, AffineTransform transform) {
+    if(selection == null || selection.isEmpty() || transform == null ||
+      transform.isIdentity() || selection.getEpoch() != this.layoutEpoch) {
+      return null;
+    }
+    int[] indices = selection.getIndices();
+    int[] xs = selection.getXs();
+    int[] ys = selection.getYs();
+    int count = indices.length;
+    double[] m = new double[6];
+    transform.getMatrix(m);
+    int[] nxs = new int[count];
+    int[] nys = new int[count];
+    for(int k = 0; k < count; ++k) {
+      double x = xs[k];
+      double y = ys[k];
+      nxs[k] = (int) Math.round(m[0] * x + m[2] * y + m[4]);
+      nys[k] = (int) Math.round(m[1] * x + m[3] * y + m[5]);
+    }
+    double scale = Math.sqrt(Math.abs(transform.getDeterminant()));
+    //unregister the segments as they are before any of their ends moves
+    for(int k = 0; k < count; ++k) {
+      CanvasPoint point = this.allPoints.get(indices[k]);
+      if(!point.isEndMarker()) {
+        this.spatialIndex.remove(indices[k], point, getIndexedPrev(indices[k]));
+      }
+    }
+    Rectangle dirty = selection.getBounds();
+    for(int k = 0; k < count; ++k) {
+      CanvasPoint point = this.allPoints.get(indices[k]);
+      if(point.isEndMarker()) {
+        continue;
+      }
+      int stroke = point.getStroke();
+      if(Math.abs(scale - 1) > 1e-9) {
+        stroke = Math.max(1, (int) Math.round(stroke * scale));
+      }
+      CanvasPoint.Builder builder = new CanvasPoint.Builder(nxs[k], nys[k]).
+        pointWithColor(point.getColor()).pointWithStroke(stroke).
+        pointWithLayer(point.getLayer());
+      if(point.hasControls()) {
+        float[] controls = {point.getControlX1(), point.getControlY1(),
+          point.getControlX2(), point.getControlY2()};
+        transform.transform(controls, 0, controls, 0, 2);
+        builder.pointWithControls(controls[0], controls[1], controls[2], controls[3]);
+      }
+      CanvasPoint moved = builder.build();
+      this.allPoints.set(indices[k], moved);
+      this.residentBytes += moved.getHeapSize() - point.getHeapSize();
+      if(this.changeLog != null) {
+        this.changeLog.replaced(getSpilledCount() + indices[k], moved);
+      }
+      int prev = this.spatialIndex.getPrev(indices[k]);
+      CanvasPoint from = getIndexedPrev(indices[k]);
+      this.spatialIndex.add(indices[k], moved, (from == null) ? -1 : prev, from);
+      this.strokeTree.touch(indices[k]);
+      dirty = dirty.union(segmentBounds((from == null) ? moved : from, moved));
+    }
+    this.version++;
+    return dirty;
+  }
+
+  /**
+  * Erases the drawn entities of the active layer under a round eraser. Every entity
+  * whose incoming segment
+  * passes under the eraser is replaced by an end marker, which removes the segments
+  * around it and splits its drawing element in two. A single end marker is skipped over
+  * by the segment walk, so where the erased entity sat between two drawn ones another
+  * end marker is inserted next to it, shifting the entities after it. Only resident
+  * entities can be erased
+  * @param x is the x coordinate of the eraser center
+  * @param y is the y coordinate of the eraser center
+  * @param radius is the radius of the eraser
+  * @return returns the area of the canvas affected by the erasure, null if nothing was erased
+  */
+  public Rectangle erase(int x, int y, int radius) {
+    int pad = radius + this.spatialIndex.getMaxStroke() / 2 + 1;
+    int[] candidates = this.spatialIndex.query(new Rectangle(x - pad, y - pad, 2*pad, 2*pad));
+    CanvasPoint endMarker = CanvasConfig.getEndMarker();
+    Rectangle dirty = null;
+    int[] erased = new int[candidates.length];
+    int count = 0;
+    for(int index : candidates) {
+      CanvasPoint point = this.allPoints.get(index);
+      if(point.isEndMarker() || point.getLayer() != this.activeLayer) {
+        continue;
+      }
+      CanvasPoint from = getIndexedPrev(index);
+      if(from == null) {
+        from = point;
+      }
+      double reach = radius + Math.max(from.getStroke(), point.getStroke()) / 2.0;
+      if(Line2D.ptSegDist(from.getX(), from.getY(), point.getX(), point.getY(), x, y) > reach) {
+        continue;
+      }
+      Rectangle area = segmentBounds(from, point);
+      int next = getIndexedNext(index);
+      if(next != -1) {
+        area = area.union(segmentBounds(point, this.allPoints.get(next)));
+      }
+      dirty = (dirty == null) ? area : dirty.union(area);
+      this.allPoints.set(index, endMarker);
+      this.residentBytes += endMarker.getHeapSize() - point.getHeapSize();
+      erased[count++] = index;
+      if(this.changeLog != null) {
+        this.changeLog.replaced(getSpilledCount() + index, endMarker);
+      }
+    }
+    if(dirty == null) {
+      return null;
+    }
+    splitErased(erased, count);
+    this.version++;
+    return dirty;
+  }
+
+  /**
+  * doubles the end markers left by erased entities that sit alone between two drawn
+  * entities, so that the segment walk splits the element there as the index does
+  * @param erased is the resident indices of the erased entities, in ascending order
+  * @param count is the number of erased entities
+  */
+  private void splitErased(int[] erased, int count) {
+    int size = this.allPoints.size();
+    int k = 0;
+    while(k < count && !isLoneMarker(erased[k], size)) {
+      k++;
+    }
+    if(k == count) {
+      return;
+    }
+    int start = erased[k];
+    ArrayList<CanvasPoint> tail = new ArrayList<CanvasPoint>(size - start + count - k);
+    for(int i = start; i < size; ++i) {
+      tail.add(this.allPoints.get(i));
+      if(k < count && erased[k] == i) {
+        if(isLoneMarker(i, size)) {
+          tail.add(CanvasConfig.getEndMarker());
+        }
+        k++;
+      }
+    }
+    rewriteFrom(start, tail);
+  }
+
+  /**
+  * @return returns true if the resident entity is an end marker between two drawn entities
+  */
+  private boolean isLoneMarker(int index, int size) {
+    return index > 0 && index + 1 < size && !this.allPoints.get(index - 1).isEndMarker() &&
+      !this.allPoints.get(index + 1).isEndMarker();
+  }
+
+  /**
+  * collects the segments of the drawing intersecting an area, in drawing order, so that
+  * a view can redraw just that area. Resident segments are looked up in the spatial index,
+  * spilled ones (if any) are paged in and filtered
+  * @param area is the area to redraw
+  * @return returns the segments of all layers as consecutive start/end pairs
+  */
+  public ArrayList<CanvasPoint> getSegments(Rectangle area) {
+    return collectSegments(area, 0, true);
+  }
+
+  /**
+  * collects the segments of one layer intersecting an area, in drawing order
+  * @param area is the area to redraw
+  * @param layer is the id of the layer
+  * @return returns the segments as consecutive start/end pairs
+  * @see #getSegments(Rectangle)
+  */
+  public ArrayList<CanvasPoint> getSegments(Rectangle area, int layer) {
+    return collectSegments(area, layer, false);
+  }
+
+  private ArrayList<CanvasPoint> collectSegments(final Rectangle area, final int layer,
+    final boolean allLayers) {
+    final ArrayList<CanvasPoint> segments = new ArrayList<CanvasPoint>();
+    if(getSpilledCount() > 0) {
+      walkSegments(this.spillStore.asList(), new CanvasSegmentVisitor() {
+        @Override
+        public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+          if((allLayers || endPoint.getLayer() == layer) &&
+            area.intersects(segmentBounds(startPoint, endPoint))) {
+            segments.add(startPoint);
+            segments.add(endPoint);
+          }
+        }
+      });
+    }
+    int pad = this.spatialIndex.getMaxStroke() / 2 + 1;
+    Rectangle padded = new Rectangle(area.x - pad, area.y - pad, area.width + 2*pad,
+      area.height + 2*pad);
+    for(int index : this.spatialIndex.query(padded)) {
+      CanvasPoint point = this.allPoints.get(index);
+      if(point.isEndMarker() || (!allLayers && point.getLayer() != layer)) {
+        continue;
+      }
+      CanvasPoint from = getIndexedPrev(index);
+      if(from == null) {
+        from = point;
+      }
+      if(area.intersects(segmentBounds(from, point))) {
+        segments.add(from);
+        segments.add(point);
+      }
+    }
+    return segments;
+  }
+
+  /**
+  * computes the area touched by a segment, padded by its stroke
+  * @param startPoint is the staring point of the segment
+  * @param endPoint is the terminating point of the segment
+  * @return returns the bounds of the segment
+  */
+  public static Rectangle segmentBounds(CanvasPoint startPoint, CanvasPoint endPoint) {
+    int pad = Math.max(startPoint.getStroke(), endPoint.getStroke()) / 2 + 2;
+    int minX = Math.min(startPoint.getX(), endPoint.getX());
+    int maxX = Math.max(startPoint.getX(), endPoint.getX());
+    int minY = Math.min(startPoint.getY(), endPoint.getY());
+    int maxY = Math.max(startPoint.getY(), endPoint.getY());
+    if(endPoint.hasControls()) {
+      //a cubic piece lies within the hull of its control points
+      minX = (int) Math.floor(Math.min(minX, Math.min(endPoint.getControlX1(), endPoint.getControlX2())));
+      maxX = (int) Math.ceil(Math.max(maxX, Math.max(endPoint.getControlX1(), endPoint.getControlX2())));
+      minY = (int) Math.floor(Math.min(minY, Math.min(endPoint.getControlY1(), endPoint.getControlY2())));
+      maxY = (int) Math.ceil(Math.max(maxY, Math.max(endPoint.getControlY1(), endPoint.getControlY2())));
+    }
+    return new Rectangle(minX - pad, minY - pad, maxX - minX + 2*pad, maxY - minY + 2*pad);
+  }
+
+  /**
+  * @param index is the resident index of an indexed entity
+  * @return returns the previous entity of its drawing element, null if there is none
+  * or it has been erased
+  */
+  private CanvasPoint getIndexedPrev(int index) {
+    int prev = this.spatialIndex.getPrev(index);
+    if(prev == -1 || this.allPoints.get(prev).isEndMarker()) {
+      return null;
+    }
+    return this.allPoints.get(prev);
+  }
+
+  /**
+  * @param index is the resident index of an indexed entity
+  * @return returns the resident index of the next entity of its drawing element, or -1
+  */
+  private int getIndexedNext(int index) {
+    for(int i = index + 1; i < this.allPoints.size() && i <= index + 2; ++i) {
+      if(!this.allPoints.get(i).isEndMarker()) {
+        return (this.spatialIndex.getPrev(i) == index) ? i : -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+  * registers a newly appended resident entity in the spatial index, following the
+  * same rules as the segment walk: two end markers in a row close a drawing element
+  * @param index is the resident index of the entity
+  */
+  private void indexEntity(int index) {
+    CanvasPoint point = this.allPoints.get(index);
+    if(point.isEndMarker()) {
+      if(++this.markerRun >= 2) {
+        this.strokeTail = -1;
+      }
+      return;
+    }
+    this.markerRun = 0;
+    this.spatialIndex.add(index, point, this.strokeTail,
+      (this.strokeTail == -1) ? null : this.allPoints.get(this.strokeTail));
+    this.strokeTail = index;
+  }
+
+  /**
+  * registers a batch of newly appended resident entities in the spatial index at once,
+  * following the same rules as indexEntity
+  * @param from is the resident index of the first appended entity
+  */
+  private void indexEntities(int from) {
+    int size = this.allPoints.size();
+    int[] indices = new int[size - from];
+    int[] prevIndices = new int[size - from];
+    int count = 0;
+    for(int i = from; i < size; ++i) {
+      if(this.allPoints.get(i).isEndMarker()) {
+        if(++this.markerRun >= 2) {
+          this.strokeTail = -1;
+        }
+        continue;
+      }
+      this.markerRun = 0;
+      indices[count] = i;
+      prevIndices[count++] = this.strokeTail;
+      this.strokeTail = i;
+    }
+    this.spatialIndex.addAll(this.allPoints, indices, prevIndices, count);
+  }
+
+  /**
+  * recovers the open drawing element state after the resident entities were truncated
+  */
+  private void restoreTail() {
+    int last = this.allPoints.size() - 1;
+    this.markerRun = 0;
+    while(last >= 0 && this.allPoints.get(last).isEndMarker()) {
+      this.markerRun++;
+      last--;
+    }
+    this.strokeTail = (last < 0 || this.markerRun >= 2) ? -1 : last;
+  }
+
+  /**
+  * rebuilds the spatial index from scratch after resident entities moved
+  */
+  private void rebuildIndex() {
+    this.spatialIndex.clear();
+    this.strokeTree.clear();
+    this.strokeTail = -1;
+    this.markerRun = 2;
+    indexEntities(0);
+  }
+
+  /**
+  * walks the segments encoded in a list of model entities. Two consecutive end markers
+  * separate disjoint drawing elements, a single end marker is skipped over
+  * @param points is the list of model entities, including end markers
+  * @param visitor receives every segment in drawing order
+  */
+  public static void walkSegments(List<CanvasPoint> points, CanvasSegmentVisitor visitor) {
+    CanvasPoint endMarker = CanvasConfig.getEndMarker();
+    CanvasPoint start = endMarker;
+    CanvasPoint end = endMarker;
+    for(int i = 0; i < points.size() - 1; ++i) {
+      CanvasPoint prev = points.get(i);
+      CanvasPoint next = points.get(i+1);
+      if(prev.isEndMarker() && next.isEndMarker()) {
+        start = endMarker;
+        end = endMarker;
+      }
+      else {
+        if (start.isEndMarker()) {
+          start = (prev.isEndMarker() ? next : prev);
+        }
+        if (end.isEndMarker()) {
+          end = (prev.isEndMarker() ? next : prev);
+        }
+        if (!start.isEndMarker() && !end.isEndMarker()) {
+          visitor.visitSegment(start, end);
+          start = end;
+          end = endMarker;
+        }
+      }
+    }
   }
 
   /**
   * private constructor to disable external instantiation and enforce singleton pattern
   */
   private CanvasModel() {
-    this.stroke = CanvasConfig.defaultStroke;
-    this.color = CanvasConfig.defaultColor;
+    this.retainRawSamples = CanvasConfig.retainRawSamples;
+    startEpoch();
+    setHeapBudget(CanvasConfig.heapBudget);
   }
 
   /**
-  * resets the model and releases all held model entities
+  * resets the model to a blank drawing in constant time: a fresh store is swapped in and
+  * the replaced drawing is kept until the next reset, so that the reset can be undone
+  * @see #undoReset()
   */
   public void resetModel() {
+    Epoch replaced = new Epoch(this);
+    startEpoch();
+    releaseResetEpoch();
+    this.resetEpoch = replaced;
+    this.version++;
+    this.layoutEpoch++;
+    if(this.changeLog != null) {
+      this.changeLog.cleared();
+    }
+  }
+
+  /**
+  * @return true if the last reset can be undone
+  */
+  public boolean canUndoReset() {
+    return this.resetEpoch != null;
+  }
+
+  /**
+  * Undoes the last reset by swapping the drawing it replaced back in, anything drawn since
+  * the reset is dropped. The change log, if any, is told about a reset followed by the
+  * whole drawing swapped back in
+  * @return true if there was a reset to undo
+  */
+  public boolean undoReset() {
+    if(this.resetEpoch == null) {
+      return false;
+    }
+    Epoch dropped = new Epoch(this);
+    this.resetEpoch.swapInto(this);
+    this.resetEpoch = null;
+    dropped.release();
+    this.spillThreshold = this.heapBudget;
+    this.version++;
+    this.layoutEpoch++;
+    if(this.changeLog != null) {
+      this.changeLog.cleared();
+      logLayers();
+      this.changeLog.paintChanged(this.color, this.stroke);
+      this.changeLog.appendedAll(loadAllPoints());
+    }
+    return true;
+  }
+
+  /**
+  * swaps in a blank drawing: empty store and indices, a single layer and default paint
+  */
+  private void startEpoch() {
+    this.allPoints = new ArrayList<CanvasPoint>();
+    this.rawSamples = new ArrayList<CanvasPoint>();
+    this.spatialIndex = new CanvasSpatialIndex(CanvasConfig.indexCellSize);
+    this.strokeTree = new CanvasStrokeTree(this.allPoints, this.spatialIndex);
+    this.spillStore = null;
+    this.residentBytes = 0;
+    this.spillThreshold = this.heapBudget;
+    this.strokeTail = -1;
+    this.markerRun = 2;
+    this.layers = new ArrayList<CanvasLayer>();
+    resetLayers();
     this.stroke = CanvasConfig.defaultStroke;
     this.color = CanvasConfig.defaultColor;
-    allPoints.clear();
+  }
+
+  /**
+  * drops the drawing kept by the last reset, if any
+  */
+  private void releaseResetEpoch() {
+    if(this.resetEpoch != null) {
+      this.resetEpoch.release();
+      this.resetEpoch = null;
+    }
+  }
+
+  /**
+  * sets the log receiving every change of the model from now on
+  * @param changeLog is the log, null to stop logging
+  */
+  public void setChangeLog(CanvasChangeLog changeLog) {
+    this.changeLog = changeLog;
+  }
+
+  /**
+  * copies the state of the model, paging spilled entities back in. The entity list is
+  * copied once, which takes time linear in the size of the drawing
+  * @return returns the snapshot
+  */
+  public CanvasModelSnapshot snapshot() {
+    //with spilled entities loadAllPoints already returns a new list
+    ArrayList<CanvasPoint> points = (getSpilledCount() == 0) ?
+      new ArrayList<CanvasPoint>(this.allPoints) : loadAllPoints();
+    return new CanvasModelSnapshot(points, this.layers, this.activeLayer, this.color,
+      this.stroke, false);
+  }
+
+  /**
+  * replaces the state of the model by the one of a snapshot, which can not be undone. The
+  * change log, if any, is told about the reset followed by the restored layers, paint
+  * properties and entities
+  * @param snapshot is the state to restore
+  */
+  public void restore(CanvasModelSnapshot snapshot) {
+    Epoch replaced = new Epoch(this);
+    startEpoch();
+    replaced.release();
+    releaseResetEpoch();
+    this.version++;
+    this.layoutEpoch++;
+    if(this.changeLog != null) {
+      this.changeLog.cleared();
+    }
+    this.layers.clear();
+    this.layers.addAll(snapshot.getLayers());
+    for(CanvasLayer layer : this.layers) {
+      this.nextLayerId = Math.max(this.nextLayerId, layer.getId() + 1);
+    }
+    this.activeLayer = (findLayer(snapshot.getActiveLayer()) == -1) ? this.layers.get(0).getId() :
+      snapshot.getActiveLayer();
+    logLayers();
+    setColor(snapshot.getColor());
+    setStroke(snapshot.getStroke());
+    for(CanvasPoint point : snapshot.getPoints()) {
+      addPoint(point);
+    }
+  }
+
+  /**
+  * leaves a single, visible and active base layer
+  */
+  private void resetLayers() {
+    this.layers.clear();
+    this.layers.add(new CanvasLayer(0, "Layer 1", true));
+    this.activeLayer = 0;
+    this.nextLayerId = 1;
+  }
+
+  /**
+  * @return returns the layers of the drawing ordered from bottom to top
+  */
+  public List<CanvasLayer> getLayers() {
+    return Collections.unmodifiableList(new ArrayList<CanvasLayer>(this.layers));
+  }
+
+  /**
+  * @return returns the id of the layer new drawing elements go to
+  */
+  public int getActiveLayer() {
+    return this.activeLayer;
+  }
+
+  /**
+  * Adds a new layer on top of the others and makes it the active layer
+  * @param name is the display name of the layer, a default one is used if null
+  * @return returns the new layer
+  */
+  public CanvasLayer addLayer(String name) {
+    int id = this.nextLayerId++;
+    CanvasLayer layer = new CanvasLayer(id, (name == null) ? "Layer " + (id + 1) : name, true);
+    this.layers.add(layer);
+    this.activeLayer = id;
+    logLayers();
+    return layer;
+  }
+
+  /**
+  * sets the layer new drawing elements go to and editing applies to
+  * @param id is the id of the layer
+  * @return true if the layer exists
+  */
+  public boolean setActiveLayer(int id) {
+    if(findLayer(id) == -1) {
+      return false;
+    }
+    this.activeLayer = id;
+    logLayers();
+    return true;
+  }
+
+  /**
+  * shows or hides a layer, its entities are kept either way
+  * @param id is the id of the layer
+  * @param visible is the new visibility
+  * @return true if the visibility of the layer changed
+  */
+  public boolean setLayerVisible(int id, boolean visible) {
+    int position = findLayer(id);
+    if(position == -1 || this.layers.get(position).isVisible() == visible) {
+      return false;
+    }
+    this.layers.set(position, this.layers.get(position).withVisible(visible));
+    logLayers();
+    return true;
+  }
+
+  /**
+  * moves a layer to another position in the stacking order
+  * @param id is the id of the layer
+  * @param position is the new position, 0 being the bottom
+  * @return true if the layer moved
+  */
+  public boolean moveLayer(int id, int position) {
+    int from = findLayer(id);
+    if(from == -1 || position < 0 || position >= this.layers.size() || position == from) {
+      return false;
+    }
+    this.layers.add(position, this.layers.remove(from));
+    logLayers();
+    return true;
+  }
+
+  /**
+  * reports the current layers to the change log, if any
+  */
+  private void logLayers() {
+    if(this.changeLog != null) {
+      this.changeLog.layersChanged(getLayers(), this.activeLayer);
+    }
+  }
+
+  /**
+  * @return returns the position of a layer in the stacking order, -1 if it does not exist
+  */
+  private int findLayer(int id) {
+    for(int i = 0; i < this.layers.size(); ++i) {
+      if(this.layers.get(i).getId() == id) {
+        return i;
+      }
+    }
+    return -1;
   }
 
   /**
@@ -68,6 +1214,9 @@ public final class CanvasModel {
   public void setColor(Color color) {
     if(color != null) {
       this.color = color;
+      if(this.changeLog != null) {
+        this.changeLog.paintChanged(this.color, this.stroke);
+      }
     }
   }
 
@@ -86,6 +1235,9 @@ public final class CanvasModel {
   public void setStroke(int stroke) {
     if(stroke > 0) {
       this.stroke = stroke;
+      if(this.changeLog != null) {
+        this.changeLog.paintChanged(this.color, this.stroke);
+      }
     }
   }
 
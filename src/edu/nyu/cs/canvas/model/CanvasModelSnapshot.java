@@ -0,0 +1,89 @@
+package edu.nyu.cs.canvas.model;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable copy of the state of a model: all of its 'model entities', spilled ones
+ * included, its layers and its paint properties. Entities are immutable themselves, so
+ * the snapshot can be encoded on any thread while the model moves on. Taking it copies
+ * the entity list once while input is held back, and with a heap budget set also pages
+ * the spilled entities back in, so that pause grows with the drawing
+ * @see CanvasModel#snapshot()
+ * @see CanvasModel#restore(CanvasModelSnapshot)
+ * @author abhishek
+ */
+public final class CanvasModelSnapshot {
+  private final List<CanvasPoint> points;
+  private final List<CanvasLayer> layers;
+  private final int activeLayer;
+  private final Color color;
+  private final int stroke;
+
+  /**
+  * Constructor for a snapshot, the lists are copied
+  * @param points is the entities of the drawing
+  * @param layers is the layers ordered from bottom to top, at least one
+  * @param activeLayer is the id of the active layer
+  * @param color is the paint property 'color'
+  * @param stroke is the paint property 'stroke'
+  */
+  public CanvasModelSnapshot(List<CanvasPoint> points, List<CanvasLayer> layers, int activeLayer,
+    Color color, int stroke) {
+    this(points, layers, activeLayer, color, stroke, true);
+  }
+
+  /**
+  * Constructor for a snapshot, used as is by the model which already copied the entities
+  * @param copy is false to take over the list of entities, which no one else may hold
+  */
+  CanvasModelSnapshot(List<CanvasPoint> points, List<CanvasLayer> layers, int activeLayer,
+    Color color, int stroke, boolean copy) {
+    if(layers.isEmpty()) {
+      throw new IllegalArgumentException("A snapshot needs at least one layer");
+    }
+    this.points = Collections.unmodifiableList(copy ? new ArrayList<CanvasPoint>(points) :
+      points);
+    this.layers = Collections.unmodifiableList(new ArrayList<CanvasLayer>(layers));
+    this.activeLayer = activeLayer;
+    this.color = color;
+    this.stroke = stroke;
+  }
+
+  /**
+  * @return returns the entities of the drawing
+  */
+  public List<CanvasPoint> getPoints() {
+    return this.points;
+  }
+
+  /**
+  * @return returns the layers ordered from bottom to top
+  */
+  public List<CanvasLayer> getLayers() {
+    return this.layers;
+  }
+
+  /**
+  * @return returns the id of the active layer
+  */
+  public int getActiveLayer() {
+    return this.activeLayer;
+  }
+
+  /**
+  * @return returns the paint property 'color'
+  */
+  public Color getColor() {
+    return this.color;
+  }
+
+  /**
+  * @return returns the paint property 'stroke'
+  */
+  public int getStroke() {
+    return this.stroke;
+  }
+}
\ No newline at end of file
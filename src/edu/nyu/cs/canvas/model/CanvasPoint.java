@@ -1,17 +1,35 @@
 package edu.nyu.cs.canvas.model;
 
 import java.awt.Color;
+import java.io.Serializable;
 import edu.nyu.cs.canvas.CanvasConfig;
 
 /**
  * This class designs the custom 'model entity' used by the model of the Canvas App
+ *
+ * An entity may carry the two control points of a cubic Bezier piece, in which case the
+ * segment ending on it is a curve from the previous entity rather than a straight line
+ *
+ * Entities are serializable for general purpose use, the compact binary form used on the
+ * wire and in files is the one of the codec
+ * @see edu.nyu.cs.canvas.codec.CanvasCodec
+ * @see CanvasCurveFitter
  * @author abhishek
  */
-public class CanvasPoint {
+public class CanvasPoint implements Serializable {
+  private static final long serialVersionUID = 1L;
+  //approximate heap footprint of a straight entity including its reference in a list, in bytes
+  public static final int HEAP_SIZE = 48;
+  //approximate heap footprint of the control points carried by a curved entity, in bytes
+  public static final int CONTROLS_HEAP_SIZE = 32;
   private final int X;
   private final int Y;
   private final Color color;
   private final int stroke;
+  //id of the layer the entity is drawn on
+  private final int layer;
+  //control points of the incoming cubic piece (x1, y1, x2, y2), null for a straight segment
+  private final float[] controls;
 
   /**
   * Builder class for model entity
@@ -24,6 +42,8 @@ public class CanvasPoint {
     //optional parameters
     private Color color = CanvasConfig.defaultColor;
     private int stroke = CanvasConfig.defaultStroke;
+    private int layer = 0;
+    private float[] controls = null;
 
     /**
     * Builder constructor
@@ -55,6 +75,29 @@ public class CanvasPoint {
       return this;
     }
 
+    /**
+    * Builds a builder entity drawn on a given layer
+    * @param layer is the id of the layer of the point in canvas
+    * @return returns an instance reference of model entity
+    */
+    public Builder pointWithLayer(int layer) {
+      this.layer = layer;
+      return this;
+    }
+
+    /**
+    * Builds a builder entity ending a cubic Bezier piece
+    * @param x1 is the x coordinate of the first control point
+    * @param y1 is the y coordinate of the first control point
+    * @param x2 is the x coordinate of the second control point
+    * @param y2 is the y coordinate of the second control point
+    * @return returns an instance reference of model entity
+    */
+    public Builder pointWithControls(float x1, float y1, float x2, float y2) {
+      this.controls = new float[] {x1, y1, x2, y2};
+      return this;
+    }
+
     /**
     * build method for actually creating the 'CanvasPoint' model entity
     * by calling the private constructor of 'CanvasPoint'
@@ -99,6 +142,58 @@ public class CanvasPoint {
     return this.stroke;
   }
 
+  /**
+  * getter for the id of the layer the 'CanvasPoint' model entity is drawn on
+  * @return returns the layer id
+  * @see CanvasLayer
+  */
+  public int getLayer() {
+    return this.layer;
+  }
+
+  /**
+  * @return returns the approximate heap footprint of this entity including its reference
+  * in a list, in bytes
+  */
+  public int getHeapSize() {
+    return (this.controls == null) ? HEAP_SIZE : HEAP_SIZE + CONTROLS_HEAP_SIZE;
+  }
+
+  /**
+  * @return true if the segment ending on this entity is a cubic Bezier piece
+  */
+  public boolean hasControls() {
+    return this.controls != null;
+  }
+
+  /**
+  * @return returns the x coordinate of the first control point of the incoming piece
+  */
+  public float getControlX1() {
+    return this.controls[0];
+  }
+
+  /**
+  * @return returns the y coordinate of the first control point of the incoming piece
+  */
+  public float getControlY1() {
+    return this.controls[1];
+  }
+
+  /**
+  * @return returns the x coordinate of the second control point of the incoming piece
+  */
+  public float getControlX2() {
+    return this.controls[2];
+  }
+
+  /**
+  * @return returns the y coordinate of the second control point of the incoming piece
+  */
+  public float getControlY2() {
+    return this.controls[3];
+  }
+
   /**
   * method check if this 'CanvasPoint' model entity marks the separation of two
   * disjoint line segments
@@ -120,5 +215,7 @@ public class CanvasPoint {
     this.Y = builder.Y;
     this.color = builder.color;
     this.stroke = builder.stroke;
+    this.layer = builder.layer;
+    this.controls = builder.controls;
   }
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package edu.nyu.cs.canvas.model;
+
+/**
+ * Callback interface for walking the drawable segments stored in a list of
+ * 'model entities'. End markers are never passed to a visitor, they only decide
+ * which consecutive points are joined by a segment
+ * @see CanvasModel#walkSegments(java.util.List, CanvasSegmentVisitor)
+ * @author abhishek
+ */
+public interface CanvasSegmentVisitor {
+
+  /**
+  * receives one segment of the drawing, in drawing order. The paint properties of
+  * a segment are the ones of its start point
+  * @param startPoint marks the start position of the segment
+  * @param endPoint marks the end position of the segment
+  */
+  public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint);
+}
@@ -0,0 +1,108 @@
+package edu.nyu.cs.canvas.model;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A group of whole drawing elements picked with a lasso. The selection keeps the
+ * resident indices of the selected 'model entities' and a copy of their coordinates in
+ * primitive arrays, so that a transform can be applied to all of them in one loop
+ * @see CanvasModel#select(java.awt.Shape)
+ * @see CanvasModel#transform(CanvasSelection, java.awt.geom.AffineTransform)
+ * @author abhishek
+ */
+public final class CanvasSelection {
+  private final int[] indices;
+  private final int[] xs;
+  private final int[] ys;
+  private final ArrayList<CanvasPoint> segments;
+  //selected entities, compared by identity
+  private final Set<CanvasPoint> members;
+  private final Rectangle bounds;
+  //id of the layer the selected elements are drawn on
+  private final int layer;
+  //layout epoch of the model when the selection was made
+  private final long epoch;
+
+  /**
+  * Constructor for a selection, only the model creates selections
+  */
+  CanvasSelection(int[] indices, int[] xs, int[] ys, ArrayList<CanvasPoint> segments,
+    Rectangle bounds, int layer, long epoch) {
+    this.indices = indices;
+    this.xs = xs;
+    this.ys = ys;
+    this.segments = segments;
+    this.bounds = bounds;
+    this.layer = layer;
+    this.epoch = epoch;
+    this.members = Collections.newSetFromMap(new IdentityHashMap<CanvasPoint, Boolean>());
+    for(int i = 1; i < segments.size(); i += 2) {
+      this.members.add(segments.get(i));
+    }
+  }
+
+  /**
+  * @return true if the lasso did not catch any drawing element
+  */
+  public boolean isEmpty() {
+    return this.indices.length == 0;
+  }
+
+  /**
+  * @return returns the number of selected model entities
+  */
+  public int size() {
+    return this.indices.length;
+  }
+
+  /**
+  * @return returns the area covered by the selected drawing elements, null if empty
+  */
+  public Rectangle getBounds() {
+    return (this.bounds == null) ? null : new Rectangle(this.bounds);
+  }
+
+  /**
+  * @return returns the id of the layer the selection was made on
+  */
+  public int getLayer() {
+    return this.layer;
+  }
+
+  /**
+  * @return returns the segments of the selected elements as consecutive start/end pairs
+  */
+  public List<CanvasPoint> getSegments() {
+    return this.segments;
+  }
+
+  /**
+  * checks if a segment belongs to the selection
+  * @param endPoint is the terminating point of the segment
+  * @return true if the segment ends on a selected model entity
+  */
+  public boolean containsSegment(CanvasPoint endPoint) {
+    return this.members.contains(endPoint);
+  }
+
+  int[] getIndices() {
+    return this.indices;
+  }
+
+  int[] getXs() {
+    return this.xs;
+  }
+
+  int[] getYs() {
+    return this.ys;
+  }
+
+  long getEpoch() {
+    return this.epoch;
+  }
+}
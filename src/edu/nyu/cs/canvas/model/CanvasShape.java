@@ -0,0 +1,98 @@
+package edu.nyu.cs.canvas.model;
+
+import java.awt.Color;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+
+/**
+ * Shape primitives drawn by dragging from one corner to the opposite one. A primitive is
+ * stored as a handful of 'model entities' instead of hundreds of freehand samples: two for
+ * a line, the four corners of a closed rectangle, and four cubic Bezier quarters for an
+ * ellipse. Being ordinary entities, primitives are selected, spilled and exported like any
+ * other drawing element. Their entities follow each other with no end marker in between,
+ * so erasing one needs the model to split the element with a double end marker, as it
+ * does for imported and fitted strokes
+ * @see CanvasModel#addShape(CanvasShape, int, int, int, int, Color, int)
+ * @author abhishek
+ */
+public enum CanvasShape {
+  LINE, RECTANGLE, ELLIPSE;
+
+  //distance of the control points of a quarter ellipse from its anchors, relative to the radius
+  private static final float kappa = 0.5522848f;
+
+  /**
+  * builds the entities of the primitive dragged between two corners
+  * @param x1 is the x coordinate of the corner where the drag started
+  * @param y1 is the y coordinate of the corner where the drag started
+  * @param x2 is the x coordinate of the corner where the drag ended
+  * @param y2 is the y coordinate of the corner where the drag ended
+  * @param color is the color of the primitive
+  * @param stroke is the stroke of the primitive
+  * @param layer is the id of the layer of the primitive
+  * @return returns the entities of the primitive, without end markers
+  */
+  public ArrayList<CanvasPoint> toPoints(int x1, int y1, int x2, int y2, Color color, int stroke,
+    int layer) {
+    ArrayList<CanvasPoint> points = new ArrayList<CanvasPoint>(5);
+    int left = Math.min(x1, x2), right = Math.max(x1, x2);
+    int top = Math.min(y1, y2), bottom = Math.max(y1, y2);
+    switch(this) {
+    case LINE:
+      points.add(point(x1, y1, color, stroke, layer).build());
+      points.add(point(x2, y2, color, stroke, layer).build());
+      break;
+    case RECTANGLE:
+      points.add(point(left, top, color, stroke, layer).build());
+      points.add(point(right, top, color, stroke, layer).build());
+      points.add(point(right, bottom, color, stroke, layer).build());
+      points.add(point(left, bottom, color, stroke, layer).build());
+      points.add(point(left, top, color, stroke, layer).build());
+      break;
+    case ELLIPSE:
+      float cx = (left + right) / 2f, cy = (top + bottom) / 2f;
+      float kx = kappa * (right - left) / 2f, ky = kappa * (bottom - top) / 2f;
+      int midX = Math.round(cx), midY = Math.round(cy);
+      points.add(point(right, midY, color, stroke, layer).build());
+      points.add(point(midX, bottom, color, stroke, layer).
+        pointWithControls(right, cy + ky, cx + kx, bottom).build());
+      points.add(point(left, midY, color, stroke, layer).
+        pointWithControls(cx - kx, bottom, left, cy + ky).build());
+      points.add(point(midX, top, color, stroke, layer).
+        pointWithControls(left, cy - ky, cx - kx, top).build());
+      points.add(point(right, midY, color, stroke, layer).
+        pointWithControls(cx + kx, top, right, cy - ky).build());
+      break;
+    }
+    return points;
+  }
+
+  /**
+  * builds the geometry of the primitive, used to preview it while it is dragged
+  * @param x1 is the x coordinate of the corner where the drag started
+  * @param y1 is the y coordinate of the corner where the drag started
+  * @param x2 is the x coordinate of the corner where the drag ended
+  * @param y2 is the y coordinate of the corner where the drag ended
+  * @return returns the outline of the primitive
+  */
+  public Shape toShape(int x1, int y1, int x2, int y2) {
+    switch(this) {
+    case LINE:
+      return new Line2D.Float(x1, y1, x2, y2);
+    case RECTANGLE:
+      return new Rectangle2D.Float(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1),
+        Math.abs(y2 - y1));
+    default:
+      return new Ellipse2D.Float(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1),
+        Math.abs(y2 - y1));
+    }
+  }
+
+  private static CanvasPoint.Builder point(int x, int y, Color color, int stroke, int layer) {
+    return new CanvasPoint.Builder(x, y).pointWithColor(color).pointWithStroke(stroke).
+      pointWithLayer(layer);
+  }
+}
\ No newline at end of file
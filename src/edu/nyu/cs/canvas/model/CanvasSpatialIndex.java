@@ -0,0 +1,274 @@
+package edu.nyu.cs.canvas.model;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid over the resident 'model entities' of a model. Every drawn entity is
+ * registered in each cell touched by the bounding box of its incoming segment, so the
+ * segments around a point or inside an area are found by looking at a handful of cells
+ * instead of scanning the whole drawing. Entities are identified by their index in the
+ * resident list of the model
+ * @see CanvasModel#erase(int, int, int)
+ * @author abhishek
+ */
+final class CanvasSpatialIndex {
+  private final int cellSize;
+  private final HashMap<Long, int[]> cells;
+  //index of the previous entity of the same drawing element, -1 for the first one
+  private int[] prev;
+  //query stamps used to report every entity once per query
+  private int[] seen;
+  private int stamp;
+  private int maxStroke;
+
+  /**
+  * Constructor for an empty index
+  * @param cellSize is the side of a grid cell in pixels
+  */
+  CanvasSpatialIndex(int cellSize) {
+    this.cellSize = Math.max(1, cellSize);
+    this.cells = new HashMap<Long, int[]>();
+    this.prev = new int[256];
+    this.seen = new int[256];
+  }
+
+  /**
+  * registers a drawn entity
+  * @param index is the resident index of the entity
+  * @param point is the entity
+  * @param prevIndex is the resident index of the previous entity of the element, or -1
+  * @param prevPoint is the previous entity of the element, or null
+  */
+  void add(int index, CanvasPoint point, int prevIndex, CanvasPoint prevPoint) {
+    ensureCapacity(index);
+    int[] range = register(index, point, prevIndex, prevPoint);
+    for(int cx = range[0]; cx <= range[1]; ++cx) {
+      for(int cy = range[2]; cy <= range[3]; ++cy) {
+        Long key = key(cx, cy);
+        int[] bucket = this.cells.get(key);
+        if(bucket == null) {
+          bucket = new int[4];
+          this.cells.put(key, bucket);
+        }
+        else if(bucket[0] + 1 == bucket.length) {
+          bucket = Arrays.copyOf(bucket, bucket.length * 2);
+          this.cells.put(key, bucket);
+        }
+        //keep the bucket in ascending order, entities moved by a transform come back late
+        int at = ++bucket[0];
+        while(at > 1 && bucket[at - 1] > index) {
+          bucket[at] = bucket[at - 1];
+          at--;
+        }
+        bucket[at] = index;
+      }
+    }
+  }
+
+  /**
+  * registers a batch of drawn entities appended at once, past every registered one. The
+  * cells touched by the batch are collected first, then each is looked up and grown once
+  * for the whole batch instead of once per entity
+  * @param points is the resident entities
+  * @param indices is the resident indices of the drawn entities of the batch, ascending
+  * @param prevIndices is the resident index of the previous entity of the element of
+  * each one, or -1
+  * @param count is the number of entities in the batch
+  */
+  void addAll(List<CanvasPoint> points, int[] indices, int[] prevIndices, int count) {
+    if(count == 0) {
+      return;
+    }
+    ensureCapacity(indices[count - 1]);
+    //indices of the batch by cell, in the same layout as the buckets
+    HashMap<Long, int[]> added = new HashMap<Long, int[]>();
+    for(int k = 0; k < count; ++k) {
+      int index = indices[k];
+      int prevIndex = prevIndices[k];
+      int[] range = register(index, points.get(index), prevIndex,
+        (prevIndex == -1) ? null : points.get(prevIndex));
+      for(int cx = range[0]; cx <= range[1]; ++cx) {
+        for(int cy = range[2]; cy <= range[3]; ++cy) {
+          Long key = key(cx, cy);
+          int[] bucket = added.get(key);
+          if(bucket == null) {
+            bucket = new int[4];
+            added.put(key, bucket);
+          }
+          else if(bucket[0] + 1 == bucket.length) {
+            bucket = Arrays.copyOf(bucket, bucket.length * 2);
+            added.put(key, bucket);
+          }
+          bucket[++bucket[0]] = index;
+        }
+      }
+    }
+    for(Map.Entry<Long, int[]> entry : added.entrySet()) {
+      int[] fresh = entry.getValue();
+      int[] bucket = this.cells.get(entry.getKey());
+      if(bucket == null) {
+        this.cells.put(entry.getKey(), fresh);
+        continue;
+      }
+      int size = bucket[0] + fresh[0];
+      if(size >= bucket.length) {
+        bucket = Arrays.copyOf(bucket, Math.max(size + 1, bucket.length * 2));
+        this.cells.put(entry.getKey(), bucket);
+      }
+      System.arraycopy(fresh, 1, bucket, bucket[0] + 1, fresh[0]);
+      bucket[0] = size;
+    }
+  }
+
+  /**
+  * grows the per entity arrays to hold a resident index
+  */
+  private void ensureCapacity(int index) {
+    if(index >= this.prev.length) {
+      int capacity = Math.max(index + 1, this.prev.length * 2);
+      this.prev = Arrays.copyOf(this.prev, capacity);
+      this.seen = Arrays.copyOf(this.seen, capacity);
+    }
+  }
+
+  /**
+  * records the element link and stroke of an entity being registered
+  * @return returns the range of cells touched by its incoming segment
+  */
+  private int[] register(int index, CanvasPoint point, int prevIndex, CanvasPoint prevPoint) {
+    this.prev[index] = prevIndex;
+    this.seen[index] = this.stamp;
+    this.maxStroke = Math.max(this.maxStroke, point.getStroke());
+    CanvasPoint from = (prevPoint == null) ? point : prevPoint;
+    this.maxStroke = Math.max(this.maxStroke, from.getStroke());
+    return cells(point, from);
+  }
+
+  /**
+  * unregisters a drawn entity from the cells of its incoming segment, before the entity
+  * is rewritten and registered again. Buckets keep their ascending order
+  * @param index is the resident index of the entity
+  * @param point is the entity as it was registered
+  * @param prevPoint is the previous entity of the element as it was registered, or null
+  */
+  void remove(int index, CanvasPoint point, CanvasPoint prevPoint) {
+    int[] range = cells(point, (prevPoint == null) ? point : prevPoint);
+    for(int cx = range[0]; cx <= range[1]; ++cx) {
+      for(int cy = range[2]; cy <= range[3]; ++cy) {
+        int[] bucket = this.cells.get(key(cx, cy));
+        if(bucket == null) {
+          continue;
+        }
+        int kept = 0;
+        for(int i = 1; i <= bucket[0]; ++i) {
+          if(bucket[i] != index) {
+            bucket[++kept] = bucket[i];
+          }
+        }
+        bucket[0] = kept;
+      }
+    }
+  }
+
+  /**
+  * @return returns the first and last column, then the first and last row, of the cells
+  * touched by the bounding box of a segment
+  */
+  private int[] cells(CanvasPoint point, CanvasPoint from) {
+    int minX = Math.min(from.getX(), point.getX());
+    int maxX = Math.max(from.getX(), point.getX());
+    int minY = Math.min(from.getY(), point.getY());
+    int maxY = Math.max(from.getY(), point.getY());
+    if(point.hasControls()) {
+      Rectangle hull = CanvasModel.segmentBounds(from, point);
+      minX = Math.min(minX, hull.x);
+      maxX = Math.max(maxX, hull.x + hull.width);
+      minY = Math.min(minY, hull.y);
+      maxY = Math.max(maxY, hull.y + hull.height);
+    }
+    return new int[] {cell(minX), cell(maxX), cell(minY), cell(maxY)};
+  }
+
+  /**
+  * @param index is the resident index of a registered entity
+  * @return returns the resident index of the previous entity of its element, or -1
+  */
+  int getPrev(int index) {
+    return (index < this.prev.length) ? this.prev[index] : -1;
+  }
+
+  /**
+  * @return returns the widest stroke registered, used to pad queries
+  */
+  int getMaxStroke() {
+    return this.maxStroke;
+  }
+
+  /**
+  * finds all entities whose incoming segment may intersect an area
+  * @param area is the area to look in
+  * @return returns the candidate resident indices in ascending order
+  */
+  int[] query(Rectangle area) {
+    if(++this.stamp == 0) {
+      Arrays.fill(this.seen, 0);
+      this.stamp = 1;
+    }
+    int[] found = new int[16];
+    int count = 0;
+    for(int cx = cell(area.x); cx <= cell(area.x + area.width); ++cx) {
+      for(int cy = cell(area.y); cy <= cell(area.y + area.height); ++cy) {
+        int[] bucket = this.cells.get(key(cx, cy));
+        if(bucket == null) {
+          continue;
+        }
+        for(int i = 1; i <= bucket[0]; ++i) {
+          int index = bucket[i];
+          if(this.seen[index] != this.stamp) {
+            this.seen[index] = this.stamp;
+            if(count == found.length) {
+              found = Arrays.copyOf(found, count * 2);
+            }
+            found[count++] = index;
+          }
+        }
+      }
+    }
+    found = Arrays.copyOf(found, count);
+    Arrays.sort(found);
+    return found;
+  }
+
+  /**
+  * drops the entities at or past a resident index. Buckets are kept in ascending index
+  * order, so the dropped entries are always at the end of their buckets
+  * @param size is the number of resident entities kept
+  */
+  void truncate(int size) {
+    for(int[] bucket : this.cells.values()) {
+      while(bucket[0] > 0 && bucket[bucket[0]] >= size) {
+        bucket[0]--;
+      }
+    }
+  }
+
+  /**
+  * drops all registered entities
+  */
+  void clear() {
+    this.cells.clear();
+    this.maxStroke = 0;
+  }
+
+  private int cell(int coordinate) {
+    return Math.floorDiv(coordinate, this.cellSize);
+  }
+
+  private static Long key(int cx, int cy) {
+    return Long.valueOf(((long) cx << 32) | (cy & 0xffffffffL));
+  }
+}
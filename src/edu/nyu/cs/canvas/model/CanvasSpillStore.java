@@ -0,0 +1,195 @@
+package edu.nyu.cs.canvas.model;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Append only, file backed store for 'model entities' spilled out of the heap.
+ * Every entity is a fixed size record (x, y, argb color, stroke and layer packed in one
+ * int, and the four control
+ * point coordinates of a curved segment, NaN for a straight one), so the store is
+ * read back through a memory mapped view of the file without loading it into the heap.
+ * Spilled entities are only paged back in when the full history is needed, e.g. for
+ * export or for rasterizing a stateful fork
+ * @see CanvasModel#setHeapBudget(long)
+ * @author abhishek
+ */
+final class CanvasSpillStore {
+  static final int RECORD_SIZE = 32;
+  private final File file;
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  private int count;
+  //read only mapping of the file, remapped lazily after appends
+  private MappedByteBuffer mapped;
+  private int mappedCount = -1;
+  private static Executor releaser;
+
+  /**
+  * Constructor for the store, backed by a temporary file removed on exit
+  * @throws IOException if the backing file can not be created
+  */
+  CanvasSpillStore() throws IOException {
+    this.file = File.createTempFile("canvas-spill", ".bin");
+    this.file.deleteOnExit();
+    this.raf = new RandomAccessFile(this.file, "rw");
+    this.channel = this.raf.getChannel();
+  }
+
+  /**
+  * @return returns the number of entities in the store
+  */
+  int size() {
+    return this.count;
+  }
+
+  /**
+  * appends a run of entities at the end of the store
+  * @param points is the list holding the entities
+  * @param from is the index of the first entity to append
+  * @param to is the index after the last entity to append
+  * @throws IOException if writing fails
+  */
+  void append(List<CanvasPoint> points, int from, int to) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(Math.min(to - from, 4096) * RECORD_SIZE);
+    long position = (long) this.count * RECORD_SIZE;
+    for(int i = from; i < to; ++i) {
+      CanvasPoint point = points.get(i);
+      buffer.putInt(point.getX()).putInt(point.getY()).
+        putInt(point.getColor().getRGB()).
+        putInt((point.getLayer() << 16) | (point.getStroke() & 0xffff));
+      if(point.hasControls()) {
+        buffer.putFloat(point.getControlX1()).putFloat(point.getControlY1()).
+          putFloat(point.getControlX2()).putFloat(point.getControlY2());
+      }
+      else {
+        buffer.putFloat(Float.NaN).putFloat(Float.NaN).putFloat(Float.NaN).putFloat(Float.NaN);
+      }
+      if(!buffer.hasRemaining() || i == to - 1) {
+        buffer.flip();
+        while(buffer.hasRemaining()) {
+          position += this.channel.write(buffer, position);
+        }
+        buffer.clear();
+      }
+    }
+    this.count += to - from;
+  }
+
+  /**
+  * decodes one spilled entity
+  * @param index is the position of the entity in the store
+  * @return returns the entity
+  */
+  CanvasPoint get(int index) {
+    if(index < 0 || index >= this.count) {
+      throw new IndexOutOfBoundsException("Spilled index: " + index + ", size: " + this.count);
+    }
+    MappedByteBuffer buffer = map();
+    int offset = index * RECORD_SIZE;
+    int x = buffer.getInt(offset);
+    int y = buffer.getInt(offset + 4);
+    if(x == -1 && y == -1) {
+      return new CanvasPoint.Builder(-1, -1).build();
+    }
+    int packed = buffer.getInt(offset + 12);
+    CanvasPoint.Builder builder = new CanvasPoint.Builder(x, y).
+      pointWithColor(new Color(buffer.getInt(offset + 8), true)).
+      pointWithStroke(packed & 0xffff).pointWithLayer(packed >>> 16);
+    float x1 = buffer.getFloat(offset + 16);
+    if(!Float.isNaN(x1)) {
+      builder.pointWithControls(x1, buffer.getFloat(offset + 20), buffer.getFloat(offset + 24),
+        buffer.getFloat(offset + 28));
+    }
+    return builder.build();
+  }
+
+  /**
+  * @return returns a read only list view over the spilled entities, decoding on access
+  */
+  List<CanvasPoint> asList() {
+    return new SpilledList();
+  }
+
+  /**
+  * releases the store: the backing file is closed and removed in the background, so that
+  * a reset does not wait on the file system. The store must not be used afterwards
+  */
+  void release() {
+    this.mapped = null;
+    this.mappedCount = -1;
+    releaser().execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          CanvasSpillStore.this.raf.close();
+        } catch (IOException e) {
+          //the file is removed on exit anyway
+        }
+        CanvasSpillStore.this.file.delete();
+      }
+    });
+  }
+
+  /**
+  * @return returns the thread releasing stores, started on first use
+  */
+  private static synchronized Executor releaser() {
+    if(releaser == null) {
+      releaser = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable task) {
+          Thread thread = new Thread(task, "canvas-spill-release");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return releaser;
+  }
+
+  /**
+  * maps the current content of the file if it changed since the last mapping
+  * @return returns the mapped content
+  */
+  private MappedByteBuffer map() {
+    if(this.mappedCount != this.count) {
+      try {
+        this.mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          (long) this.count * RECORD_SIZE);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Failed to map spill file " + this.file, e);
+      }
+      this.mappedCount = this.count;
+    }
+    return this.mapped;
+  }
+
+  /**
+  * List view over the spilled entities
+  * @author abhishek
+  */
+  private class SpilledList extends AbstractList<CanvasPoint> implements RandomAccess {
+    @Override
+    public CanvasPoint get(int index) {
+      return CanvasSpillStore.this.get(index);
+    }
+
+    @Override
+    public int size() {
+      return count;
+    }
+  }
+}
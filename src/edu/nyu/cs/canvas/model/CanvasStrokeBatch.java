@@ -0,0 +1,194 @@
+package edu.nyu.cs.canvas.model;
+
+import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A batch of drawing elements (strokes) held in primitive arrays, used for bulk
+ * ingestion into the model from files, replays or remote peers. Coordinates of all
+ * strokes are packed back to back, each stroke recording its offset, color and stroke
+ * @see CanvasModel#addStrokes(CanvasStrokeBatch)
+ * @author abhishek
+ */
+public final class CanvasStrokeBatch {
+  private int[] xs;
+  private int[] ys;
+  private int pointCount;
+  //per stroke properties, a stroke spans [offsets[i], offsets[i+1]) of the coordinates
+  private int[] offsets;
+  private int[] colors;
+  private int[] strokes;
+  private int strokeCount;
+
+  /**
+  * Constructor for an empty batch
+  */
+  public CanvasStrokeBatch() {
+    this(16, 256);
+  }
+
+  /**
+  * Constructor for an empty batch with reserved capacity
+  * @param strokeCapacity is the expected number of strokes
+  * @param pointCapacity is the expected number of points over all strokes
+  */
+  public CanvasStrokeBatch(int strokeCapacity, int pointCapacity) {
+    this.xs = new int[Math.max(1, pointCapacity)];
+    this.ys = new int[Math.max(1, pointCapacity)];
+    this.offsets = new int[Math.max(1, strokeCapacity) + 1];
+    this.colors = new int[Math.max(1, strokeCapacity)];
+    this.strokes = new int[Math.max(1, strokeCapacity)];
+  }
+
+  /**
+  * appends a stroke to the batch, empty strokes are ignored
+  * @param xs is the array of x coordinates
+  * @param ys is the array of y coordinates
+  * @param count is the number of points of the stroke, read from the start of both arrays
+  * @param color is the paint property 'color' of the stroke
+  * @param stroke is the paint property 'stroke' of the stroke
+  * @return returns this batch
+  */
+  public CanvasStrokeBatch addStroke(int[] xs, int[] ys, int count, Color color, int stroke) {
+    if(count <= 0 || color == null || stroke <= 0) {
+      return this;
+    }
+    if(count > xs.length || count > ys.length) {
+      throw new IllegalArgumentException("Stroke of " + count + " points exceeds coordinates");
+    }
+    reservePoints(count);
+    reserveStroke();
+    System.arraycopy(xs, 0, this.xs, this.pointCount, count);
+    System.arraycopy(ys, 0, this.ys, this.pointCount, count);
+    this.colors[this.strokeCount] = color.getRGB();
+    this.strokes[this.strokeCount] = stroke;
+    this.pointCount += count;
+    this.strokeCount++;
+    this.offsets[this.strokeCount] = this.pointCount;
+    return this;
+  }
+
+  /**
+  * appends a stroke read straight from a buffer, without any intermediate array: its x
+  * coordinates followed by its y coordinates, as ints in the byte order of the buffer
+  * @param in is the buffer, read from its position which is advanced past the stroke
+  * @param count is the number of points of the stroke, at least one
+  * @param color is the paint property 'color' of the stroke as ARGB
+  * @param stroke is the paint property 'stroke' of the stroke
+  * @return returns this batch
+  */
+  public CanvasStrokeBatch addStroke(ByteBuffer in, int count, int color, int stroke) {
+    if(count <= 0 || stroke <= 0 || count > in.remaining() / 8) {
+      throw new IllegalArgumentException("Invalid stroke of " + count + " points");
+    }
+    reservePoints(count);
+    reserveStroke();
+    for(int i = 0; i < count; ++i) {
+      this.xs[this.pointCount + i] = in.getInt();
+    }
+    for(int i = 0; i < count; ++i) {
+      this.ys[this.pointCount + i] = in.getInt();
+    }
+    this.colors[this.strokeCount] = color;
+    this.strokes[this.strokeCount] = stroke;
+    this.pointCount += count;
+    this.strokeCount++;
+    this.offsets[this.strokeCount] = this.pointCount;
+    return this;
+  }
+
+  /**
+  * @return returns the number of strokes in the batch
+  */
+  public int getStrokeCount() {
+    return this.strokeCount;
+  }
+
+  /**
+  * @return returns the number of points over all strokes in the batch
+  */
+  public int getPointCount() {
+    return this.pointCount;
+  }
+
+  /**
+  * @param index is the index of a stroke
+  * @return returns the index of the first point of the stroke
+  */
+  public int getStrokeStart(int index) {
+    return this.offsets[index];
+  }
+
+  /**
+  * @param index is the index of a stroke
+  * @return returns the number of points of the stroke
+  */
+  public int getStrokeLength(int index) {
+    return this.offsets[index + 1] - this.offsets[index];
+  }
+
+  /**
+  * @param index is the index of a stroke
+  * @return returns the paint property 'color' of the stroke as ARGB
+  */
+  public int getStrokeColor(int index) {
+    return this.colors[index];
+  }
+
+  /**
+  * @param index is the index of a stroke
+  * @return returns the paint property 'stroke' of the stroke
+  */
+  public int getStrokeWidth(int index) {
+    return this.strokes[index];
+  }
+
+  /**
+  * @param index is the index of a point over all strokes
+  * @return returns the x coordinate of the point
+  */
+  public int getX(int index) {
+    return this.xs[index];
+  }
+
+  /**
+  * @param index is the index of a point over all strokes
+  * @return returns the y coordinate of the point
+  */
+  public int getY(int index) {
+    return this.ys[index];
+  }
+
+  /**
+  * empties the batch, keeping its capacity for reuse
+  */
+  public void clear() {
+    this.pointCount = 0;
+    this.strokeCount = 0;
+  }
+
+  /**
+  * grows the per stroke arrays to hold one more stroke
+  */
+  private void reserveStroke() {
+    if(this.strokeCount + 1 >= this.offsets.length) {
+      int capacity = this.offsets.length * 2;
+      this.offsets = Arrays.copyOf(this.offsets, capacity);
+      this.colors = Arrays.copyOf(this.colors, capacity);
+      this.strokes = Arrays.copyOf(this.strokes, capacity);
+    }
+  }
+
+  /**
+  * grows the coordinate arrays to hold extra points
+  * @param extra is the number of points to be appended
+  */
+  private void reservePoints(int extra) {
+    if(this.pointCount + extra > this.xs.length) {
+      int capacity = Math.max(this.pointCount + extra, this.xs.length * 2);
+      this.xs = Arrays.copyOf(this.xs, capacity);
+      this.ys = Arrays.copyOf(this.ys, capacity);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package edu.nyu.cs.canvas.model;
+
+/**
+ * The drawing element found under a point, e.g. to select it, describe it in a tooltip or
+ * erase it. Positions are resident indices of 'model entities', valid as long as the
+ * layout epoch of the model has not changed
+ * @see CanvasModel#findStroke(int, int, double)
+ * @author abhishek
+ */
+public final class CanvasStrokeHit {
+  private final int index;
+  private final int start;
+  private final int end;
+  private final int layer;
+  private final double distance;
+  //layout epoch of the model when the element was found
+  private final long epoch;
+
+  /**
+  * Constructor for a hit, only the model creates hits
+  */
+  CanvasStrokeHit(int index, int start, int end, int layer, double distance, long epoch) {
+    this.index = index;
+    this.start = start;
+    this.end = end;
+    this.layer = layer;
+    this.distance = distance;
+    this.epoch = epoch;
+  }
+
+  /**
+  * @return returns the resident index of the entity whose incoming segment is nearest
+  */
+  public int getIndex() {
+    return this.index;
+  }
+
+  /**
+  * @return returns the resident index of the first entity of the element
+  */
+  public int getStart() {
+    return this.start;
+  }
+
+  /**
+  * @return returns the resident index past the last entity of the element
+  */
+  public int getEnd() {
+    return this.end;
+  }
+
+  /**
+  * @return returns the id of the layer the element is drawn on
+  */
+  public int getLayer() {
+    return this.layer;
+  }
+
+  /**
+  * @return returns the distance from the point to the painted outline of the element,
+  * 0 if the point is on it
+  */
+  public double getDistance() {
+    return this.distance;
+  }
+
+  /**
+  * @return returns the layout epoch of the model the positions refer to
+  */
+  public long getEpoch() {
+    return this.epoch;
+  }
+}
\ No newline at end of file
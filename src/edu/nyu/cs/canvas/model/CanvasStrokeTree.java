@@ -0,0 +1,438 @@
+package edu.nyu.cs.canvas.model;
+
+import java.awt.Rectangle;
+import java.awt.geom.CubicCurve2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Bounding volume hierarchy over the segments of the resident 'model entities' of a model,
+ * answering nearest stroke queries. Runs of consecutive entities of a drawing element are
+ * grouped into chunks, each bounded by the padded bounds of the incoming segments of its
+ * entities, and chunks are grouped into trees of axis aligned boxes split at the median
+ * of the longest axis
+ *
+ * The drawing only grows at its end, so the hierarchy follows the logarithmic method: new
+ * chunks are searched linearly until a batch is full, which is then built into a tree
+ * along with every tree not larger than itself. Like the digits of a binary counter, a
+ * chunk is rebuilt a logarithmic number of times and a query looks at a logarithmic
+ * number of trees, while a bulk import is built into a single tree at once. Entities
+ * rewritten in place are covered by new chunks, the old chunks are left behind as their
+ * distances are always measured on the current entities, and the whole hierarchy is
+ * rebuilt once such leftovers outnumber the live chunks
+ * @see CanvasModel#findStroke(int, int, double)
+ * @author abhishek
+ */
+final class CanvasStrokeTree {
+  //entities per chunk
+  private static final int CHUNK = 8;
+  //chunks per leaf
+  private static final int LEAF = 4;
+  //chunks searched linearly before being built into a tree
+  private static final int BATCH = 64;
+  //flatness used to measure the distance to curved segments
+  private static final double FLATNESS = 0.25;
+  private final ArrayList<CanvasPoint> points;
+  private final CanvasSpatialIndex spatialIndex;
+  //chunks: resident entity range and bounds
+  private int[] from;
+  private int[] to;
+  private int[] minX;
+  private int[] minY;
+  private int[] maxX;
+  private int[] maxY;
+  private int count;
+  //chunks past this one are not part of any tree yet
+  private int batchStart;
+  //trees from the largest to the smallest
+  private final ArrayList<Tree> levels;
+  //resident entities before this index are covered by chunks
+  private int coveredTo;
+  //state of the running query
+  private double bestDistance;
+  private int bestIndex;
+  private int[] stack;
+
+  /**
+  * A static tree over a set of chunks, nodes stored in flat arrays
+  */
+  private final class Tree {
+    private final int[] chunks;
+    private final int[] nodeMinX;
+    private final int[] nodeMinY;
+    private final int[] nodeMaxX;
+    private final int[] nodeMaxY;
+    //children of inner nodes, -1 for leaves
+    private final int[] left;
+    private final int[] right;
+    //chunk range of leaves
+    private final int[] start;
+    private final int[] end;
+    private int nodes;
+
+    Tree(int[] chunks) {
+      this.chunks = chunks;
+      //split nodes hold more than LEAF chunks, so leaves hold at least half as many
+      int capacity = 2 * (chunks.length / (LEAF / 2)) + 1;
+      this.nodeMinX = new int[capacity];
+      this.nodeMinY = new int[capacity];
+      this.nodeMaxX = new int[capacity];
+      this.nodeMaxY = new int[capacity];
+      this.left = new int[capacity];
+      this.right = new int[capacity];
+      this.start = new int[capacity];
+      this.end = new int[capacity];
+      build(0, chunks.length);
+    }
+
+    private int build(int lo, int hi) {
+      int node = this.nodes++;
+      int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE;
+      int x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+      //bounds of the chunk centers, doubled, to pick the split axis
+      long cx0 = Long.MAX_VALUE, cy0 = Long.MAX_VALUE, cx1 = Long.MIN_VALUE, cy1 = Long.MIN_VALUE;
+      for(int i = lo; i < hi; ++i) {
+        int chunk = this.chunks[i];
+        x0 = Math.min(x0, CanvasStrokeTree.this.minX[chunk]);
+        y0 = Math.min(y0, CanvasStrokeTree.this.minY[chunk]);
+        x1 = Math.max(x1, CanvasStrokeTree.this.maxX[chunk]);
+        y1 = Math.max(y1, CanvasStrokeTree.this.maxY[chunk]);
+        long cx = centerX(chunk);
+        long cy = centerY(chunk);
+        cx0 = Math.min(cx0, cx);
+        cx1 = Math.max(cx1, cx);
+        cy0 = Math.min(cy0, cy);
+        cy1 = Math.max(cy1, cy);
+      }
+      this.nodeMinX[node] = x0;
+      this.nodeMinY[node] = y0;
+      this.nodeMaxX[node] = x1;
+      this.nodeMaxY[node] = y1;
+      if(hi - lo <= LEAF) {
+        this.left[node] = -1;
+        this.right[node] = -1;
+        this.start[node] = lo;
+        this.end[node] = hi;
+        return node;
+      }
+      int mid = (lo + hi) >>> 1;
+      select(this.chunks, lo, hi, mid, cx1 - cx0 >= cy1 - cy0);
+      this.left[node] = build(lo, mid);
+      this.right[node] = build(mid, hi);
+      return node;
+    }
+
+    /**
+    * searches the tree for entities nearer than the best one found so far
+    */
+    private void search(int x, int y, BitSet hidden) {
+      int[] stack = CanvasStrokeTree.this.stack;
+      int top = 0;
+      stack[top++] = 0;
+      while(top > 0) {
+        int node = stack[--top];
+        if(boxDistance(x, y, this.nodeMinX[node], this.nodeMinY[node], this.nodeMaxX[node],
+          this.nodeMaxY[node]) > CanvasStrokeTree.this.bestDistance) {
+          continue;
+        }
+        if(this.left[node] == -1) {
+          for(int i = this.start[node]; i < this.end[node]; ++i) {
+            searchChunk(this.chunks[i], x, y, hidden);
+          }
+          continue;
+        }
+        if(top + 2 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length * 2);
+          CanvasStrokeTree.this.stack = stack;
+        }
+        int near = this.left[node];
+        int far = this.right[node];
+        if(boxDistance(x, y, this.nodeMinX[far], this.nodeMinY[far], this.nodeMaxX[far],
+          this.nodeMaxY[far]) < boxDistance(x, y, this.nodeMinX[near], this.nodeMinY[near],
+          this.nodeMaxX[near], this.nodeMaxY[near])) {
+          near = far;
+          far = this.left[node];
+        }
+        //the nearer child is searched first, which tightens the bound for the other one
+        stack[top++] = far;
+        stack[top++] = near;
+      }
+    }
+  }
+
+  /**
+  * Constructor for an empty hierarchy
+  * @param points is the resident entities of the model
+  * @param spatialIndex is the spatial index of the model, linking entities to their
+  * previous entity
+  */
+  CanvasStrokeTree(ArrayList<CanvasPoint> points, CanvasSpatialIndex spatialIndex) {
+    this.points = points;
+    this.spatialIndex = spatialIndex;
+    this.levels = new ArrayList<Tree>();
+    this.stack = new int[64];
+    allocate(256);
+  }
+
+  /**
+  * finds the entity whose painted segment is nearest to a point. Entities not covered yet
+  * are chunked first
+  * @param x is the x coordinate of the point
+  * @param y is the y coordinate of the point
+  * @param tolerance is the maximum distance to the painted segment
+  * @param hidden is the ids of the layers to skip
+  * @return returns the resident index of the entity, the most recent one on ties, -1 if no
+  * segment is within the tolerance
+  */
+  int nearest(int x, int y, double tolerance, BitSet hidden) {
+    sync();
+    this.bestDistance = tolerance;
+    this.bestIndex = -1;
+    for(int chunk = this.batchStart; chunk < this.count; ++chunk) {
+      if(boxDistance(x, y, this.minX[chunk], this.minY[chunk], this.maxX[chunk],
+        this.maxY[chunk]) <= this.bestDistance) {
+        searchChunk(chunk, x, y, hidden);
+      }
+    }
+    for(Tree tree : this.levels) {
+      tree.search(x, y, hidden);
+    }
+    return this.bestIndex;
+  }
+
+  /**
+  * @return returns the distance of the entity found by the last query
+  */
+  double getNearestDistance() {
+    return this.bestDistance;
+  }
+
+  /**
+  * covers an entity rewritten in place, along with the segments leaving it
+  * @param index is the resident index of the entity
+  */
+  void touch(int index) {
+    if(index < this.coveredTo) {
+      addChunk(index, Math.min(index + 3, this.coveredTo));
+      if(this.count - this.batchStart >= BATCH) {
+        buildBatch();
+      }
+    }
+  }
+
+  /**
+  * uncovers the entities at or past a resident index, which are about to be replaced
+  * @param size is the number of resident entities kept
+  */
+  void truncate(int size) {
+    this.coveredTo = Math.min(this.coveredTo, size);
+  }
+
+  /**
+  * drops all chunks, e.g. after resident entities moved
+  */
+  void clear() {
+    this.count = 0;
+    this.batchStart = 0;
+    this.levels.clear();
+    this.coveredTo = 0;
+  }
+
+  /**
+  * covers the entities appended since the last query, starting over if leftovers of
+  * rewritten entities outnumber the live chunks
+  */
+  private void sync() {
+    int size = this.points.size();
+    if(this.count > 2 * (size / CHUNK) + 2 * BATCH) {
+      clear();
+    }
+    //chunks never span two drawing elements, whose bounds would cover the gap between them
+    int start = this.coveredTo;
+    int entities = 0;
+    for(int i = this.coveredTo; i < size; ++i) {
+      if(this.points.get(i).isEndMarker()) {
+        continue;
+      }
+      if(entities > 0 && this.spatialIndex.getPrev(i) == -1) {
+        addChunk(start, i);
+        start = i;
+        entities = 0;
+      }
+      if(++entities == CHUNK) {
+        addChunk(start, i + 1);
+        start = i + 1;
+        entities = 0;
+      }
+    }
+    if(start < size) {
+      addChunk(start, size);
+    }
+    this.coveredTo = size;
+    if(this.count - this.batchStart >= BATCH) {
+      buildBatch();
+    }
+  }
+
+  private void addChunk(int start, int end) {
+    Rectangle bounds = null;
+    for(int i = start; i < end; ++i) {
+      CanvasPoint point = this.points.get(i);
+      if(!point.isEndMarker()) {
+        Rectangle area = CanvasModel.segmentBounds(previous(i, point), point);
+        bounds = (bounds == null) ? area : bounds.union(area);
+      }
+    }
+    if(bounds == null) {
+      return;
+    }
+    if(this.count == this.from.length) {
+      allocate(this.count * 2);
+    }
+    this.from[this.count] = start;
+    this.to[this.count] = end;
+    this.minX[this.count] = bounds.x;
+    this.minY[this.count] = bounds.y;
+    this.maxX[this.count] = bounds.x + bounds.width;
+    this.maxY[this.count] = bounds.y + bounds.height;
+    this.count++;
+  }
+
+  /**
+  * builds the full batch into a tree, along with the trees not larger than itself
+  */
+  private void buildBatch() {
+    int[] chunks = new int[this.count - this.batchStart];
+    for(int i = 0; i < chunks.length; ++i) {
+      chunks[i] = this.batchStart + i;
+    }
+    while(!this.levels.isEmpty() &&
+      this.levels.get(this.levels.size() - 1).chunks.length <= chunks.length) {
+      int[] other = this.levels.remove(this.levels.size() - 1).chunks;
+      int[] merged = Arrays.copyOf(chunks, chunks.length + other.length);
+      System.arraycopy(other, 0, merged, chunks.length, other.length);
+      chunks = merged;
+    }
+    this.levels.add(new Tree(chunks));
+    this.batchStart = this.count;
+  }
+
+  private void searchChunk(int chunk, int x, int y, BitSet hidden) {
+    int end = Math.min(this.to[chunk], this.points.size());
+    for(int i = this.from[chunk]; i < end; ++i) {
+      CanvasPoint point = this.points.get(i);
+      if(point.isEndMarker() || hidden.get(point.getLayer())) {
+        continue;
+      }
+      double distance = distance(previous(i, point), point, x, y);
+      if(distance < this.bestDistance || (distance == this.bestDistance && i > this.bestIndex)) {
+        this.bestDistance = distance;
+        this.bestIndex = i;
+      }
+    }
+  }
+
+  /**
+  * @return returns the start of the incoming segment of an entity, the entity itself if
+  * it starts its drawing element
+  */
+  private CanvasPoint previous(int index, CanvasPoint point) {
+    int prev = this.spatialIndex.getPrev(index);
+    if(prev == -1 || this.points.get(prev).isEndMarker()) {
+      return point;
+    }
+    return this.points.get(prev);
+  }
+
+  /**
+  * @return returns the distance from a point to the painted outline of a segment
+  */
+  private static double distance(CanvasPoint startPoint, CanvasPoint endPoint, int x, int y) {
+    double distance;
+    if(endPoint.hasControls() && startPoint != endPoint) {
+      PathIterator iterator = new CubicCurve2D.Float(startPoint.getX(), startPoint.getY(),
+        endPoint.getControlX1(), endPoint.getControlY1(), endPoint.getControlX2(),
+        endPoint.getControlY2(), endPoint.getX(), endPoint.getY()).getPathIterator(null, FLATNESS);
+      double[] coords = new double[6];
+      double lastX = startPoint.getX();
+      double lastY = startPoint.getY();
+      distance = Double.MAX_VALUE;
+      for(; !iterator.isDone(); iterator.next()) {
+        iterator.currentSegment(coords);
+        distance = Math.min(distance, Line2D.ptSegDist(lastX, lastY, coords[0], coords[1], x, y));
+        lastX = coords[0];
+        lastY = coords[1];
+      }
+    }
+    else {
+      distance = Line2D.ptSegDist(startPoint.getX(), startPoint.getY(), endPoint.getX(),
+        endPoint.getY(), x, y);
+    }
+    return Math.max(0, distance - Math.max(startPoint.getStroke(), endPoint.getStroke()) / 2.0);
+  }
+
+  /**
+  * @return returns the distance from a point to a box, a lower bound of the distance to
+  * any segment it bounds as segment bounds are padded by more than half their stroke
+  */
+  private static double boxDistance(int x, int y, int x0, int y0, int x1, int y1) {
+    long dx = Math.max(0, Math.max(x0 - (long) x, x - (long) x1));
+    long dy = Math.max(0, Math.max(y0 - (long) y, y - (long) y1));
+    return Math.sqrt((double) (dx * dx + dy * dy));
+  }
+
+  private long centerX(int chunk) {
+    return (long) this.minX[chunk] + this.maxX[chunk];
+  }
+
+  private long centerY(int chunk) {
+    return (long) this.minY[chunk] + this.maxY[chunk];
+  }
+
+  /**
+  * partially orders chunks so that the one at k is where it would be if they were sorted
+  * by center, smaller ones before it and larger ones after it
+  */
+  private void select(int[] chunks, int lo, int hi, int k, boolean byX) {
+    hi--;
+    while(lo < hi) {
+      long pivot = byX ? centerX(chunks[(lo + hi) >>> 1]) : centerY(chunks[(lo + hi) >>> 1]);
+      int i = lo;
+      int j = hi;
+      while(i <= j) {
+        while((byX ? centerX(chunks[i]) : centerY(chunks[i])) < pivot) {
+          i++;
+        }
+        while((byX ? centerX(chunks[j]) : centerY(chunks[j])) > pivot) {
+          j--;
+        }
+        if(i <= j) {
+          int swap = chunks[i];
+          chunks[i++] = chunks[j];
+          chunks[j--] = swap;
+        }
+      }
+      if(k <= j) {
+        hi = j;
+      }
+      else if(k >= i) {
+        lo = i;
+      }
+      else {
+        return;
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    this.from = (this.from == null) ? new int[capacity] : Arrays.copyOf(this.from, capacity);
+    this.to = (this.to == null) ? new int[capacity] : Arrays.copyOf(this.to, capacity);
+    this.minX = (this.minX == null) ? new int[capacity] : Arrays.copyOf(this.minX, capacity);
+    this.minY = (this.minY == null) ? new int[capacity] : Arrays.copyOf(this.minY, capacity);
+    this.maxX = (this.maxX == null) ? new int[capacity] : Arrays.copyOf(this.maxX, capacity);
+    this.maxY = (this.maxY == null) ? new int[capacity] : Arrays.copyOf(this.maxY, capacity);
+  }
+}
\ No newline at end of file
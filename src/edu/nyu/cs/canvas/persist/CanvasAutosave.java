@@ -0,0 +1,350 @@
+package edu.nyu.cs.canvas.persist;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import edu.nyu.cs.canvas.controller.CanvasController;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasModelSnapshot;
+
+/**
+ * Crash consistent autosave of a model. Every change of the model is appended to a
+ * journal, and a background thread periodically forces the journal to disk and, once it
+ * holds enough records, checkpoints: it takes a snapshot of the model while input is held
+ * back, switches to a new journal, and then encodes and writes the snapshot off the input
+ * path. Taking the snapshot copies the list of resident entities and pages the spilled
+ * ones back in, so that pause grows with the drawing, more so with a heap budget set.
+ * Once the snapshot is safely on disk the older snapshots and journals
+ * are deleted.
+ *
+ * Files are numbered by generation: the journal of a generation holds the changes made
+ * after the snapshot of the same generation. Recovery loads the newest snapshot that
+ * verifies and replays its journal followed by the journals chained to it, so the replay
+ * is bounded by the journal limit even for large drawings
+ * @see CanvasSnapshotFile
+ * @see CanvasJournal
+ * @author abhishek
+ */
+public final class CanvasAutosave {
+  private final CanvasController controller;
+  private final CanvasModel model;
+  private final File directory;
+  private final long journalLimit;
+  private final ScheduledThreadPoolExecutor worker;
+  //the fields below are set up by start and then only used on the worker
+  private CanvasJournal journal;
+  private long generation;
+  //snapshot taken when the journal was switched, until it is on disk
+  private CanvasModelSnapshot pending;
+  private boolean snapshotPending;
+  private volatile long snapshots;
+  private volatile IOException failure;
+  private volatile Listener listener;
+
+  /**
+  * Receives the steps of a checkpoint in the order they reach the disk, e.g. to check
+  * that no file is deleted before the snapshot replacing it is durable
+  * @author abhishek
+  */
+  public interface Listener {
+    /**
+    * called on the autosave thread once a snapshot and its name are forced to disk
+    * @param generation is the generation of the snapshot
+    */
+    void snapshotDurable(long generation);
+
+    /**
+    * called on the autosave thread for every file deleted as obsolete
+    * @param file is the deleted file
+    */
+    void fileDeleted(File file);
+  }
+
+  private CanvasAutosave(CanvasController controller, CanvasModel model, File directory,
+    long journalLimit) {
+    this.controller = controller;
+    this.model = model;
+    this.directory = directory;
+    this.journalLimit = journalLimit;
+    this.worker = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "canvas-autosave");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+  * Starts autosaving a model. A first snapshot is written right away, so the model should
+  * already hold the recovered drawing, if any
+  * @see #recover(File)
+  * @param controller is the controller guarding the model
+  * @param model is the model to save
+  * @param directory is the autosave directory, created if needed
+  * @param intervalMillis is the period at which the journal is forced to disk
+  * @param journalLimit is the number of journal records after which a snapshot is taken
+  * @return returns the running autosave
+  * @throws IOException if the directory or the first journal can not be created
+  */
+  public static CanvasAutosave start(CanvasController controller, CanvasModel model,
+    File directory, long intervalMillis, long journalLimit) throws IOException {
+    if(!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Can not create autosave directory " + directory);
+    }
+    final CanvasAutosave autosave = new CanvasAutosave(controller, model, directory,
+      journalLimit);
+    List<Long> snapshots = generations(directory, CanvasSnapshotFile.PREFIX,
+      CanvasSnapshotFile.SUFFIX);
+    List<Long> journals = generations(directory, CanvasJournal.PREFIX, CanvasJournal.SUFFIX);
+    long latest = -1;
+    if(!snapshots.isEmpty()) {
+      latest = snapshots.get(snapshots.size() - 1);
+    }
+    if(!journals.isEmpty()) {
+      latest = Math.max(latest, journals.get(journals.size() - 1));
+    }
+    autosave.generation = latest;
+    autosave.switchJournal(false);
+    autosave.worker.execute(new Runnable() {
+      @Override
+      public void run() {
+        autosave.writeSnapshot();
+      }
+    });
+    autosave.worker.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        autosave.tick();
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    return autosave;
+  }
+
+  /**
+  * Recovers the drawing saved in an autosave directory
+  * @param directory is the autosave directory
+  * @return returns the recovered state, null if there is no snapshot to start from
+  * @throws IOException if a journal chained to the snapshot can not be read
+  */
+  public static CanvasModelSnapshot recover(File directory) throws IOException {
+    List<Long> snapshots = generations(directory, CanvasSnapshotFile.PREFIX,
+      CanvasSnapshotFile.SUFFIX);
+    for(int i = snapshots.size() - 1; i >= 0; --i) {
+      long base = snapshots.get(i);
+      CanvasModelSnapshot snapshot;
+      try {
+        snapshot = CanvasSnapshotFile.read(CanvasSnapshotFile.fileOf(directory, base));
+      } catch (IOException e) {
+        //torn or corrupt, fall back to the previous one
+        continue;
+      }
+      CanvasJournal.State state = new CanvasJournal.State(snapshot);
+      File journal = CanvasJournal.fileOf(directory, base);
+      for(long next = base + 1; journal.isFile(); ++next) {
+        CanvasJournal.replay(journal, state);
+        journal = CanvasJournal.fileOf(directory, next);
+        if(journal.isFile() && CanvasJournal.readPrevious(journal) != next - 1) {
+          break;
+        }
+      }
+      return state.toSnapshot();
+    }
+    return null;
+  }
+
+  /**
+  * takes a snapshot now and waits until it is on disk
+  * @throws IOException if the snapshot could not be written
+  * @throws InterruptedException if interrupted while waiting
+  */
+  public void snapshotNow() throws IOException, InterruptedException {
+    try {
+      this.worker.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          checkpoint();
+          if(failure != null) {
+            throw failure;
+          }
+          return null;
+        }
+      }).get();
+    } catch (ExecutionException e) {
+      throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() :
+        new IOException(e.getCause());
+    }
+  }
+
+  /**
+  * stops autosaving once the journal is forced to disk, the model is no longer logged
+  * @throws InterruptedException if interrupted while waiting for the autosave thread
+  */
+  public void stop() throws InterruptedException {
+    this.worker.shutdown();
+    this.worker.awaitTermination(10, TimeUnit.SECONDS);
+    this.controller.runCommitted(new Runnable() {
+      @Override
+      public void run() {
+        model.setChangeLog(null);
+      }
+    });
+    this.journal.close();
+  }
+
+  /**
+  * @param listener is the listener to the steps of checkpoints, null for none
+  */
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+  * @return returns the number of snapshots written since the start
+  */
+  public long getSnapshots() {
+    return this.snapshots;
+  }
+
+  /**
+  * @return returns the last failure, null if the last snapshot and journal sync succeeded
+  */
+  public IOException getFailure() {
+    return this.failure;
+  }
+
+  /**
+  * periodic work: forces the journal to disk and checkpoints when it grew too long,
+  * failed, or when the last snapshot could not be written
+  */
+  private void tick() {
+    this.journal.sync();
+    if(this.snapshotPending) {
+      writeSnapshot();
+    }
+    else if(this.journal.getFailure() != null || this.journal.getRecords() >= this.journalLimit) {
+      checkpoint();
+    }
+  }
+
+  private void checkpoint() {
+    try {
+      //a journal missing records must not be replayed past
+      switchJournal(this.journal.getFailure() == null);
+    } catch (IOException e) {
+      this.failure = e;
+      return;
+    }
+    writeSnapshot();
+  }
+
+  /**
+  * opens the journal of the next generation and, holding back input, attaches it to the
+  * model and takes the snapshot it starts from
+  * @param continues is true if the new journal continues the current one
+  */
+  private void switchJournal(boolean continues) throws IOException {
+    final long next = this.generation + 1;
+    final CanvasJournal fresh = new CanvasJournal(this.directory, next,
+      continues ? this.generation : -1);
+    final CanvasModelSnapshot[] taken = new CanvasModelSnapshot[1];
+    this.controller.runCommitted(new Runnable() {
+      @Override
+      public void run() {
+        model.setChangeLog(fresh);
+        taken[0] = model.snapshot();
+      }
+    });
+    CanvasJournal old = this.journal;
+    this.journal = fresh;
+    this.generation = next;
+    this.pending = taken[0];
+    this.snapshotPending = true;
+    if(old != null) {
+      old.close();
+    }
+  }
+
+  /**
+  * writes the pending snapshot and deletes the files it makes obsolete
+  */
+  private void writeSnapshot() {
+    try {
+      CanvasSnapshotFile.write(this.directory, this.generation, this.pending);
+    } catch (IOException e) {
+      this.failure = e;
+      return;
+    }
+    this.pending = null;
+    this.snapshotPending = false;
+    this.snapshots++;
+    this.failure = null;
+    Listener listener = this.listener;
+    if(listener != null) {
+      listener.snapshotDurable(this.generation);
+    }
+    //only now that the new snapshot is durable
+    compact(this.generation);
+  }
+
+  /**
+  * deletes the snapshots and journals older than a generation, and stray temporary files
+  */
+  private void compact(long generation) {
+    for(long old : generations(this.directory, CanvasSnapshotFile.PREFIX,
+      CanvasSnapshotFile.SUFFIX)) {
+      if(old < generation) {
+        delete(CanvasSnapshotFile.fileOf(this.directory, old));
+      }
+    }
+    for(long old : generations(this.directory, CanvasJournal.PREFIX, CanvasJournal.SUFFIX)) {
+      if(old < generation) {
+        delete(CanvasJournal.fileOf(this.directory, old));
+      }
+    }
+    for(long old : generations(this.directory, CanvasSnapshotFile.PREFIX, ".tmp")) {
+      if(old < generation) {
+        delete(new File(this.directory, CanvasSnapshotFile.PREFIX + old + ".tmp"));
+      }
+    }
+  }
+
+  private void delete(File file) {
+    Listener listener = this.listener;
+    if(file.delete() && listener != null) {
+      listener.fileDeleted(file);
+    }
+  }
+
+  /**
+  * @return returns the sorted generations of the files named prefix + generation + suffix
+  */
+  private static List<Long> generations(File directory, String prefix, String suffix) {
+    List<Long> found = new ArrayList<Long>();
+    String[] names = directory.list();
+    if(names == null) {
+      return found;
+    }
+    for(String name : names) {
+      if(name.startsWith(prefix) && name.endsWith(suffix) &&
+        name.length() > prefix.length() + suffix.length()) {
+        try {
+          found.add(Long.parseLong(name.substring(prefix.length(),
+            name.length() - suffix.length())));
+        } catch (NumberFormatException e) {
+          //not one of ours
+        }
+      }
+    }
+    Collections.sort(found);
+    return found;
+  }
+}
\ No newline at end of file
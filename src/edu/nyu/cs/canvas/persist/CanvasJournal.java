@@ -0,0 +1,458 @@
+package edu.nyu.cs.canvas.persist;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.codec.CanvasEntityFormat;
+import edu.nyu.cs.canvas.model.CanvasChangeLog;
+import edu.nyu.cs.canvas.model.CanvasLayer;
+import edu.nyu.cs.canvas.model.CanvasModelSnapshot;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+
+/**
+ * Journal of the changes of a model since a snapshot. The header names the generation
+ * of the journal and the generation it continues, -1 if it starts from the snapshot of
+ * its own generation only. Every change is one record: an opcode, its payload and the
+ * CRC32 of both, so that replay stops cleanly at a record torn by a crash.
+ *
+ * Records are appended on the thread mutating the model, into a buffer which the autosave
+ * thread flushes and forces to disk periodically. The buffer is swapped for an empty one
+ * under the monitor of the journal, and written and forced outside of it, so appending
+ * never waits for the disk. A failed write disables the journal, the autosave then starts
+ * over with a fresh snapshot
+ * @see CanvasAutosave
+ * @author abhishek
+ */
+final class CanvasJournal implements CanvasChangeLog {
+  static final int MAGIC = 0x434e564a;
+  //version 2 added batch appends, version 1 journals are still replayed
+  static final int FORMAT_VERSION = 2;
+  static final String PREFIX = "journal-";
+  static final String SUFFIX = ".cvj";
+  //opcodes of the records
+  private static final int APPEND = 1;
+  private static final int REPLACE = 2;
+  private static final int TRUNCATE = 3;
+  private static final int CLEAR = 4;
+  private static final int LAYERS = 5;
+  private static final int PAINT = 6;
+  private static final int APPEND_ALL = 7;
+
+  private final FileOutputStream file;
+  //records appended since the last sync, swapped for the spare buffer by sync
+  private ByteArrayOutputStream buffered;
+  //empty buffer swapped in by the next sync, only used while holding the file lock
+  private ByteArrayOutputStream spare;
+  //orders the writes and forces of sync and close, which run outside the monitor
+  private final Object fileLock;
+  //record being encoded, and its checksum
+  private final ByteArrayOutputStream recordBytes;
+  private final DataOutputStream record;
+  private final ByteBuffer scratch;
+  private final CRC32 crc;
+  private long records;
+  private IOException failure;
+
+  /**
+  * Creates the journal file of a generation
+  * @param directory is the autosave directory
+  * @param generation is the generation of the journal
+  * @param previous is the generation of the journal continued by this one, -1 if none
+  * @throws IOException if the file can not be created
+  */
+  CanvasJournal(File directory, long generation, long previous) throws IOException {
+    this.file = new FileOutputStream(fileOf(directory, generation));
+    this.buffered = new ByteArrayOutputStream(1 << 16);
+    this.spare = new ByteArrayOutputStream(1 << 16);
+    this.fileLock = new Object();
+    this.recordBytes = new ByteArrayOutputStream(64);
+    this.record = new DataOutputStream(this.recordBytes);
+    this.scratch = CanvasEntityFormat.createScratch();
+    this.crc = new CRC32();
+    this.record.writeInt(MAGIC);
+    this.record.writeInt(FORMAT_VERSION);
+    this.record.writeLong(generation);
+    this.record.writeLong(previous);
+    this.recordBytes.writeTo(this.buffered);
+    this.recordBytes.reset();
+    sync();
+    if(getFailure() != null) {
+      throw getFailure();
+    }
+  }
+
+  /**
+  * @return returns the journal file of a generation
+  */
+  static File fileOf(File directory, long generation) {
+    return new File(directory, PREFIX + generation + SUFFIX);
+  }
+
+  @Override
+  public synchronized void appended(CanvasPoint point) {
+    try {
+      this.record.writeByte(APPEND);
+      CanvasRecords.writePoint(this.record, point, this.scratch);
+      writeRecord();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public synchronized void appendedAll(List<CanvasPoint> points) {
+    try {
+      this.record.writeByte(APPEND_ALL);
+      this.record.writeInt(points.size());
+      for(CanvasPoint point : points) {
+        CanvasRecords.writePoint(this.record, point, this.scratch);
+      }
+      writeRecord();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public synchronized void replaced(int index, CanvasPoint point) {
+    try {
+      this.record.writeByte(REPLACE);
+      this.record.writeInt(index);
+      CanvasRecords.writePoint(this.record, point, this.scratch);
+      writeRecord();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public synchronized void truncated(int size) {
+    try {
+      this.record.writeByte(TRUNCATE);
+      this.record.writeInt(size);
+      writeRecord();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public synchronized void cleared() {
+    try {
+      this.record.writeByte(CLEAR);
+      writeRecord();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public synchronized void layersChanged(List<CanvasLayer> layers, int activeLayer) {
+    try {
+      this.record.writeByte(LAYERS);
+      CanvasRecords.writeLayers(this.record, layers, activeLayer);
+      writeRecord();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public synchronized void paintChanged(Color color, int stroke) {
+    try {
+      this.record.writeByte(PAINT);
+      this.record.writeInt(color.getRGB());
+      this.record.writeInt(stroke);
+      writeRecord();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /**
+  * appends the encoded record followed by its checksum
+  */
+  private void writeRecord() throws IOException {
+    if(this.failure != null) {
+      this.recordBytes.reset();
+      return;
+    }
+    this.crc.reset();
+    byte[] bytes = this.recordBytes.toByteArray();
+    this.crc.update(bytes, 0, bytes.length);
+    this.record.writeInt((int) this.crc.getValue());
+    this.recordBytes.writeTo(this.buffered);
+    this.recordBytes.reset();
+    this.records++;
+  }
+
+  private synchronized void fail(IOException e) {
+    this.recordBytes.reset();
+    if(this.failure == null) {
+      this.failure = e;
+    }
+  }
+
+  /**
+  * @return returns the number of records written
+  */
+  synchronized long getRecords() {
+    return this.records;
+  }
+
+  /**
+  * @return returns the first write failure, null if none
+  */
+  synchronized IOException getFailure() {
+    return this.failure;
+  }
+
+  /**
+  * writes the buffered records and forces them to disk. Only swapping the buffer holds
+  * the monitor, records keep being appended while the disk is busy
+  */
+  void sync() {
+    synchronized(this.fileLock) {
+      ByteArrayOutputStream pending;
+      synchronized(this) {
+        if(this.failure != null) {
+          return;
+        }
+        pending = this.buffered;
+        this.buffered = this.spare;
+      }
+      try {
+        pending.writeTo(this.file);
+        this.file.getFD().sync();
+      } catch (IOException e) {
+        fail(e);
+      }
+      pending.reset();
+      this.spare = pending;
+    }
+  }
+
+  /**
+  * syncs and closes the journal, later changes are dropped
+  */
+  void close() {
+    sync();
+    synchronized(this) {
+      if(this.failure == null) {
+        this.failure = new IOException("Journal closed");
+      }
+    }
+    synchronized(this.fileLock) {
+      try {
+        this.file.close();
+      } catch (IOException e) {
+        //the records were synced already
+      }
+    }
+  }
+
+  /**
+  * @return returns the generation the journal in a file continues, -1 if none
+  * @throws IOException if the header can not be read
+  */
+  static long readPrevious(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      readHeader(in, file);
+      return in.readLong();
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void readHeader(DataInputStream in, File file) throws IOException {
+    if(in.readInt() != MAGIC) {
+      throw new IOException("Not a journal: " + file);
+    }
+    int format = in.readInt();
+    if(format < 1 || format > FORMAT_VERSION) {
+      throw new IOException("Unsupported journal format " + format + ": " + file);
+    }
+    in.readLong();
+  }
+
+  /**
+  * Replays the records of a journal file on a recovered state, stopping at the first
+  * torn or corrupt record
+  * @param file is the journal file
+  * @param state is the state to update
+  * @return returns the number of records replayed
+  * @throws IOException if the header can not be read
+  */
+  static long replay(File file, State state) throws IOException {
+    InputStream raw = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    try {
+      DataInputStream in = new DataInputStream(raw);
+      readHeader(in, file);
+      in.readLong();
+      CRC32 crc = new CRC32();
+      //the payload is read through the checksum, the stored checksum around it
+      DataInputStream checked = new DataInputStream(new CheckedInputStream(in, crc));
+      ByteBuffer scratch = CanvasEntityFormat.createScratch();
+      long replayed = 0;
+      while(true) {
+        crc.reset();
+        try {
+          int opcode = checked.readUnsignedByte();
+          Runnable change = decode(opcode, checked, state, scratch);
+          if(change == null || in.readInt() != (int) crc.getValue()) {
+            return replayed;
+          }
+          change.run();
+          replayed++;
+        } catch (EOFException e) {
+          return replayed;
+        }
+      }
+    } finally {
+      raw.close();
+    }
+  }
+
+  /**
+  * decodes the payload of a record into the change it makes, null for an unknown opcode
+  */
+  private static Runnable decode(int opcode, DataInputStream in, final State state,
+    ByteBuffer scratch) throws IOException {
+    switch(opcode) {
+    case APPEND:
+      final CanvasPoint appended = CanvasRecords.readPoint(in, scratch);
+      return new Runnable() {
+        @Override
+        public void run() {
+          state.points.add(appended);
+        }
+      };
+    case APPEND_ALL:
+      int count = in.readInt();
+      if(count < 0) {
+        return null;
+      }
+      //a corrupt count runs into the end of the file before allocating much
+      final ArrayList<CanvasPoint> batch = new ArrayList<CanvasPoint>(Math.min(count, 4096));
+      for(int i = 0; i < count; ++i) {
+        batch.add(CanvasRecords.readPoint(in, scratch));
+      }
+      return new Runnable() {
+        @Override
+        public void run() {
+          state.points.addAll(batch);
+        }
+      };
+    case REPLACE:
+      final int index = in.readInt();
+      final CanvasPoint replacement = CanvasRecords.readPoint(in, scratch);
+      return new Runnable() {
+        @Override
+        public void run() {
+          if(index >= 0 && index < state.points.size()) {
+            state.points.set(index, replacement);
+          }
+        }
+      };
+    case TRUNCATE:
+      final int size = in.readInt();
+      return new Runnable() {
+        @Override
+        public void run() {
+          if(size >= 0 && size < state.points.size()) {
+            state.points.subList(size, state.points.size()).clear();
+          }
+        }
+      };
+    case CLEAR:
+      return new Runnable() {
+        @Override
+        public void run() {
+          state.clear();
+        }
+      };
+    case LAYERS:
+      final int[] activeLayer = new int[1];
+      final List<CanvasLayer> layers = CanvasRecords.readLayers(in, activeLayer);
+      return new Runnable() {
+        @Override
+        public void run() {
+          state.layers = layers;
+          state.activeLayer = activeLayer[0];
+        }
+      };
+    case PAINT:
+      final Color color = new Color(in.readInt(), true);
+      final int stroke = in.readInt();
+      return new Runnable() {
+        @Override
+        public void run() {
+          state.color = color;
+          state.stroke = stroke;
+        }
+      };
+    default:
+      return null;
+    }
+  }
+
+  /**
+  * Mutable state of a drawing being recovered, starting from a snapshot
+  * @author abhishek
+  */
+  static final class State {
+    private final ArrayList<CanvasPoint> points;
+    private List<CanvasLayer> layers;
+    private int activeLayer;
+    private Color color;
+    private int stroke;
+
+    /**
+    * @param snapshot is the snapshot to start from, null for an empty drawing
+    */
+    State(CanvasModelSnapshot snapshot) {
+      this.points = new ArrayList<CanvasPoint>();
+      if(snapshot == null) {
+        clear();
+        return;
+      }
+      this.points.addAll(snapshot.getPoints());
+      this.layers = snapshot.getLayers();
+      this.activeLayer = snapshot.getActiveLayer();
+      this.color = snapshot.getColor();
+      this.stroke = snapshot.getStroke();
+    }
+
+    private void clear() {
+      this.points.clear();
+      this.layers = new ArrayList<CanvasLayer>();
+      this.layers.add(new CanvasLayer(0, "Layer 1", true));
+      this.activeLayer = 0;
+      this.color = CanvasConfig.defaultColor;
+      this.stroke = CanvasConfig.defaultStroke;
+    }
+
+    /**
+    * @return returns the recovered state as a snapshot
+    */
+    CanvasModelSnapshot toSnapshot() {
+      return new CanvasModelSnapshot(this.points, this.layers, this.activeLayer, this.color,
+        this.stroke);
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,66 @@
+package edu.nyu.cs.canvas.persist;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import edu.nyu.cs.canvas.codec.CanvasEntityFormat;
+import edu.nyu.cs.canvas.model.CanvasLayer;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+
+/**
+ * Binary encoding of 'model entities' and layers shared by snapshots and journals.
+ * Entities use the layout of codec frames, so that both stay one format
+ * @see CanvasEntityFormat
+ * @author abhishek
+ */
+final class CanvasRecords {
+  private CanvasRecords() {
+  }
+
+  /**
+  * writes an entity in the layout of CanvasEntityFormat
+  * @param scratch is a buffer made by CanvasEntityFormat.createScratch
+  */
+  static void writePoint(DataOutput out, CanvasPoint point, ByteBuffer scratch)
+    throws IOException {
+    CanvasEntityFormat.write(out, point, scratch);
+  }
+
+  /**
+  * reads an entity written by writePoint
+  * @param scratch is a buffer made by CanvasEntityFormat.createScratch
+  */
+  static CanvasPoint readPoint(DataInput in, ByteBuffer scratch) throws IOException {
+    return CanvasEntityFormat.read(in, scratch);
+  }
+
+  static void writeLayers(DataOutput out, List<CanvasLayer> layers, int activeLayer)
+    throws IOException {
+    out.writeInt(activeLayer);
+    out.writeInt(layers.size());
+    for(CanvasLayer layer : layers) {
+      out.writeInt(layer.getId());
+      out.writeUTF(layer.getName());
+      out.writeBoolean(layer.isVisible());
+    }
+  }
+
+  /**
+  * reads layers written by writeLayers, the id of the active layer goes to activeLayer[0]
+  */
+  static List<CanvasLayer> readLayers(DataInput in, int[] activeLayer) throws IOException {
+    activeLayer[0] = in.readInt();
+    int count = in.readInt();
+    if(count < 1 || count > Short.MAX_VALUE) {
+      throw new IOException("Invalid layer count " + count);
+    }
+    List<CanvasLayer> layers = new ArrayList<CanvasLayer>(count);
+    for(int i = 0; i < count; ++i) {
+      layers.add(new CanvasLayer(in.readInt(), in.readUTF(), in.readBoolean()));
+    }
+    return layers;
+  }
+}
\ No newline at end of file
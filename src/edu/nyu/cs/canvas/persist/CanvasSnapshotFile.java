@@ -0,0 +1,168 @@
+package edu.nyu.cs.canvas.persist;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import edu.nyu.cs.canvas.codec.CanvasEntityFormat;
+import edu.nyu.cs.canvas.model.CanvasLayer;
+import edu.nyu.cs.canvas.model.CanvasModelSnapshot;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+
+/**
+ * Snapshot file of a drawing. A plain header (magic, format version, generation) is
+ * followed by the deflated body: paint properties, layers and all 'model entities',
+ * then the CRC32 of the uncompressed body. A snapshot is written to a temporary file,
+ * forced to disk and only then atomically renamed, so a crash leaves either the complete
+ * previous snapshot or the complete new one, never a torn file under the final name. The
+ * directory is forced to disk after the rename, older files may only be deleted after
+ * that, otherwise a power loss could keep the deletions but not the rename
+ * @see CanvasAutosave
+ * @author abhishek
+ */
+final class CanvasSnapshotFile {
+  static final int MAGIC = 0x434e5653;
+  static final int FORMAT_VERSION = 1;
+  static final String PREFIX = "snapshot-";
+  static final String SUFFIX = ".cvs";
+
+  private CanvasSnapshotFile() {
+  }
+
+  /**
+  * @return returns the file holding the snapshot of a generation
+  */
+  static File fileOf(File directory, long generation) {
+    return new File(directory, PREFIX + generation + SUFFIX);
+  }
+
+  /**
+  * writes a snapshot crash consistently
+  * @param directory is the autosave directory
+  * @param generation is the generation of the snapshot
+  * @param snapshot is the state to write
+  * @throws IOException if writing, renaming or forcing the directory fails, the previous
+  * snapshots are untouched
+  */
+  static void write(File directory, long generation, CanvasModelSnapshot snapshot)
+    throws IOException {
+    File target = fileOf(directory, generation);
+    File temp = new File(directory, PREFIX + generation + ".tmp");
+    FileOutputStream file = new FileOutputStream(temp);
+    try {
+      DataOutputStream header = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+      header.writeInt(MAGIC);
+      header.writeInt(FORMAT_VERSION);
+      header.writeLong(generation);
+      DeflaterOutputStream deflated = new DeflaterOutputStream(header,
+        new Deflater(Deflater.BEST_SPEED), 1 << 16);
+      //the checksum sits above the buffer so that it covers exactly the body
+      BufferedOutputStream buffered = new BufferedOutputStream(deflated, 1 << 16);
+      CRC32 crc = new CRC32();
+      DataOutputStream body = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+      body.writeInt(snapshot.getColor().getRGB());
+      body.writeInt(snapshot.getStroke());
+      CanvasRecords.writeLayers(body, snapshot.getLayers(), snapshot.getActiveLayer());
+      List<CanvasPoint> points = snapshot.getPoints();
+      body.writeInt(points.size());
+      ByteBuffer scratch = CanvasEntityFormat.createScratch();
+      for(CanvasPoint point : points) {
+        CanvasRecords.writePoint(body, point, scratch);
+      }
+      new DataOutputStream(buffered).writeInt((int) crc.getValue());
+      buffered.flush();
+      deflated.finish();
+      header.flush();
+      file.getFD().sync();
+    } catch (IOException e) {
+      file.close();
+      temp.delete();
+      throw e;
+    }
+    file.close();
+    Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+      StandardCopyOption.REPLACE_EXISTING);
+    syncDirectory(directory);
+  }
+
+  /**
+  * forces the entries of a directory, e.g. a rename, to disk. Windows can not open a
+  * directory, its renames are durable once they return
+  */
+  static void syncDirectory(File directory) throws IOException {
+    if(File.separatorChar == '\\') {
+      return;
+    }
+    FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+    try {
+      channel.force(true);
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+  * reads and verifies a snapshot
+  * @param file is the snapshot file
+  * @return returns the snapshot
+  * @throws IOException if the file can not be read or fails verification
+  */
+  static CanvasModelSnapshot read(File file) throws IOException {
+    InputStream raw = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    try {
+      DataInputStream header = new DataInputStream(raw);
+      if(header.readInt() != MAGIC) {
+        throw new IOException("Not a snapshot: " + file);
+      }
+      int format = header.readInt();
+      if(format != FORMAT_VERSION) {
+        throw new IOException("Unsupported snapshot format " + format + ": " + file);
+      }
+      header.readLong();
+      BufferedInputStream inflated = new BufferedInputStream(new InflaterInputStream(raw,
+        new Inflater(), 1 << 16), 1 << 16);
+      CRC32 crc = new CRC32();
+      DataInputStream body = new DataInputStream(new CheckedInputStream(inflated, crc));
+      Color color = new Color(body.readInt(), true);
+      int stroke = body.readInt();
+      int[] activeLayer = new int[1];
+      List<CanvasLayer> layers = CanvasRecords.readLayers(body, activeLayer);
+      int count = body.readInt();
+      if(count < 0) {
+        throw new IOException("Invalid entity count " + count + ": " + file);
+      }
+      List<CanvasPoint> points = new ArrayList<CanvasPoint>(Math.min(count, 1 << 20));
+      ByteBuffer scratch = CanvasEntityFormat.createScratch();
+      for(int i = 0; i < count; ++i) {
+        points.add(CanvasRecords.readPoint(body, scratch));
+      }
+      int expected = new DataInputStream(inflated).readInt();
+      if(expected != (int) crc.getValue()) {
+        throw new IOException("Snapshot checksum mismatch: " + file);
+      }
+      return new CanvasModelSnapshot(points, layers, activeLayer[0], color, stroke);
+    } finally {
+      raw.close();
+    }
+  }
+}
\ No newline at end of file
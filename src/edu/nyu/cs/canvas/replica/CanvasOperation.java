@@ -0,0 +1,118 @@
+package edu.nyu.cs.canvas.replica;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+
+/**
+ * Immutable operation on a replicated drawing, issued by one replica and delivered to all
+ * the others. Operations may be delivered in any order and more than once, applying them
+ * is commutative and idempotent
+ * @see CanvasReplica
+ * @author abhishek
+ */
+public final class CanvasOperation {
+  /**
+  * kinds of operations
+  */
+  public enum Kind {
+    //adds a drawing element under a new id
+    ADD,
+    //removes a drawing element for good
+    REMOVE,
+    //changes the paint properties of a drawing element, the latest change wins
+    STYLE
+  }
+
+  private final Kind kind;
+  private final CanvasStrokeId target;
+  private final CanvasStrokeId stamp;
+  private final List<CanvasPoint> points;
+  private final Color color;
+  private final int stroke;
+
+  private CanvasOperation(Kind kind, CanvasStrokeId target, CanvasStrokeId stamp,
+    List<CanvasPoint> points, Color color, int stroke) {
+    this.kind = kind;
+    this.target = target;
+    this.stamp = stamp;
+    this.points = points;
+    this.color = color;
+    this.stroke = stroke;
+  }
+
+  /**
+  * @param id is the id of the new element, also the timestamp of the operation
+  * @param points is the entities of the element, without end markers around it
+  * @return returns an operation adding a drawing element
+  */
+  public static CanvasOperation add(CanvasStrokeId id, List<CanvasPoint> points) {
+    return new CanvasOperation(Kind.ADD, id, id,
+      Collections.unmodifiableList(new ArrayList<CanvasPoint>(points)), null, 0);
+  }
+
+  /**
+  * @param target is the id of the element
+  * @param stamp is the timestamp of the operation
+  * @return returns an operation removing a drawing element
+  */
+  public static CanvasOperation remove(CanvasStrokeId target, CanvasStrokeId stamp) {
+    return new CanvasOperation(Kind.REMOVE, target, stamp, null, null, 0);
+  }
+
+  /**
+  * @param target is the id of the element
+  * @param stamp is the timestamp of the operation
+  * @param color is the new paint property 'color'
+  * @param stroke is the new paint property 'stroke'
+  * @return returns an operation changing the paint properties of a drawing element
+  */
+  public static CanvasOperation style(CanvasStrokeId target, CanvasStrokeId stamp, Color color,
+    int stroke) {
+    return new CanvasOperation(Kind.STYLE, target, stamp, null, color, stroke);
+  }
+
+  /**
+  * @return returns the kind of the operation
+  */
+  public Kind getKind() {
+    return this.kind;
+  }
+
+  /**
+  * @return returns the id of the element the operation applies to
+  */
+  public CanvasStrokeId getTarget() {
+    return this.target;
+  }
+
+  /**
+  * @return returns the timestamp of the operation
+  */
+  public CanvasStrokeId getStamp() {
+    return this.stamp;
+  }
+
+  /**
+  * @return returns the entities of the added element, null unless an ADD
+  */
+  public List<CanvasPoint> getPoints() {
+    return this.points;
+  }
+
+  /**
+  * @return returns the new color, null unless a STYLE
+  */
+  public Color getColor() {
+    return this.color;
+  }
+
+  /**
+  * @return returns the new stroke, 0 unless a STYLE
+  */
+  public int getStroke() {
+    return this.stroke;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,251 @@
+package edu.nyu.cs.canvas.replica;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.model.CanvasModelSnapshot;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+
+/**
+ * One replica of a drawing edited concurrently from several places, e.g. the views of
+ * several JVMs. The drawing is an operation based CRDT over whole drawing elements: every
+ * element gets a unique id made of a Lamport clock and the id of the replica adding it,
+ * and is then only ever removed or restyled. Elements are kept sorted by id, which is the
+ * drawing order on every replica, removals are permanent (a tombstone stays behind) and
+ * the latest restyle wins. Applying operations therefore commutes, and replicas that
+ * received the same operations hold the same drawing, whatever the order and number of
+ * deliveries and without any lock shared between replicas
+ *
+ * The flat entity list rendered by a model is materialized from the replica on demand
+ * @see CanvasOperation
+ * @author abhishek
+ */
+public final class CanvasReplica {
+  private final int actor;
+  private long clock;
+  //every element ever seen, removed ones as tombstones
+  private final TreeMap<CanvasStrokeId, Entry> entries;
+  private int visible;
+  //materialized drawing, null when stale
+  private ArrayList<CanvasPoint> points;
+
+  /**
+  * State of one element. Parts of it may arrive before the element itself
+  */
+  private static final class Entry {
+    private List<CanvasPoint> points;
+    //timestamp of the removal, null while the element is not removed
+    private CanvasStrokeId removed;
+    private CanvasStrokeId styleStamp;
+    private Color color;
+    private int stroke;
+
+    private boolean isVisible() {
+      return this.points != null && this.removed == null;
+    }
+  }
+
+  /**
+  * Constructor for a replica
+  * @param actor is the id of the replica, unique among the replicas of the drawing
+  */
+  public CanvasReplica(int actor) {
+    this.actor = actor;
+    this.entries = new TreeMap<CanvasStrokeId, Entry>();
+  }
+
+  /**
+  * @return returns the id of the replica
+  */
+  public int getActor() {
+    return this.actor;
+  }
+
+  /**
+  * Adds a drawing element made on this replica
+  * @param points is the entities of the element, without end markers around it
+  * @return returns the operation to send to the other replicas
+  */
+  public synchronized CanvasOperation addStroke(List<CanvasPoint> points) {
+    CanvasOperation operation = CanvasOperation.add(tick(), points);
+    apply(operation);
+    return operation;
+  }
+
+  /**
+  * Removes a drawing element
+  * @param id is the id of the element
+  * @return returns the operation to send to the other replicas, null if the element is
+  * not part of the drawing
+  */
+  public synchronized CanvasOperation removeStroke(CanvasStrokeId id) {
+    Entry entry = this.entries.get(id);
+    if(entry == null || !entry.isVisible()) {
+      return null;
+    }
+    CanvasOperation operation = CanvasOperation.remove(id, tick());
+    apply(operation);
+    return operation;
+  }
+
+  /**
+  * Changes the paint properties of a drawing element
+  * @param id is the id of the element
+  * @param color is the new paint property 'color'
+  * @param stroke is the new paint property 'stroke'
+  * @return returns the operation to send to the other replicas, null if the element is
+  * not part of the drawing
+  */
+  public synchronized CanvasOperation restyleStroke(CanvasStrokeId id, Color color,
+    int stroke) {
+    Entry entry = this.entries.get(id);
+    if(entry == null || !entry.isVisible()) {
+      return null;
+    }
+    CanvasOperation operation = CanvasOperation.style(id, tick(), color, stroke);
+    apply(operation);
+    return operation;
+  }
+
+  /**
+  * Applies an operation issued by any replica, this one included
+  * @param operation is the operation
+  * @return returns true if the drawing changed
+  */
+  public synchronized boolean apply(CanvasOperation operation) {
+    this.clock = Math.max(this.clock, operation.getStamp().getCounter());
+    Entry entry = this.entries.get(operation.getTarget());
+    if(entry == null) {
+      entry = new Entry();
+      this.entries.put(operation.getTarget(), entry);
+    }
+    boolean wasVisible = entry.isVisible();
+    switch(operation.getKind()) {
+    case ADD:
+      if(entry.points != null || entry.removed != null) {
+        return false;
+      }
+      entry.points = operation.getPoints();
+      break;
+    case REMOVE:
+      if(entry.removed != null) {
+        return false;
+      }
+      entry.removed = operation.getStamp();
+      //the tombstone is enough from now on
+      entry.points = null;
+      entry.color = null;
+      break;
+    case STYLE:
+      if(entry.removed != null || (entry.styleStamp != null &&
+        entry.styleStamp.compareTo(operation.getStamp()) >= 0)) {
+        return false;
+      }
+      entry.styleStamp = operation.getStamp();
+      entry.color = operation.getColor();
+      entry.stroke = operation.getStroke();
+      break;
+    }
+    this.visible += (entry.isVisible() ? 1 : 0) - (wasVisible ? 1 : 0);
+    boolean changed = wasVisible || entry.isVisible();
+    if(changed) {
+      this.points = null;
+    }
+    return changed;
+  }
+
+  /**
+  * @return returns the operations rebuilding the state of this replica, e.g. to bring up
+  * a new replica
+  */
+  public synchronized List<CanvasOperation> getOperations() {
+    List<CanvasOperation> operations = new ArrayList<CanvasOperation>();
+    for(Map.Entry<CanvasStrokeId, Entry> element : this.entries.entrySet()) {
+      Entry entry = element.getValue();
+      if(entry.points != null) {
+        operations.add(CanvasOperation.add(element.getKey(), entry.points));
+      }
+      if(entry.removed != null) {
+        operations.add(CanvasOperation.remove(element.getKey(), entry.removed));
+      }
+      else if(entry.styleStamp != null) {
+        operations.add(CanvasOperation.style(element.getKey(), entry.styleStamp, entry.color,
+          entry.stroke));
+      }
+    }
+    return operations;
+  }
+
+  /**
+  * @return returns the ids of the elements of the drawing, in drawing order
+  */
+  public synchronized List<CanvasStrokeId> getStrokeIds() {
+    List<CanvasStrokeId> ids = new ArrayList<CanvasStrokeId>(this.visible);
+    for(Map.Entry<CanvasStrokeId, Entry> element : this.entries.entrySet()) {
+      if(element.getValue().isVisible()) {
+        ids.add(element.getKey());
+      }
+    }
+    return ids;
+  }
+
+  /**
+  * @return returns the current value of the Lamport clock of the replica
+  */
+  public synchronized long getClock() {
+    return this.clock;
+  }
+
+  /**
+  * Materializes the drawing as the flat entity list of a model, every element sealed off
+  * by end markers and restyled as requested
+  * @return returns the entities of the drawing, not to be modified
+  */
+  public synchronized ArrayList<CanvasPoint> getPoints() {
+    if(this.points != null) {
+      return this.points;
+    }
+    ArrayList<CanvasPoint> points = new ArrayList<CanvasPoint>();
+    CanvasPoint endMarker = CanvasConfig.getEndMarker();
+    for(Entry entry : this.entries.values()) {
+      if(!entry.isVisible()) {
+        continue;
+      }
+      points.add(endMarker);
+      for(CanvasPoint point : entry.points) {
+        points.add((entry.color == null || point.isEndMarker()) ? point :
+          restyle(point, entry.color, entry.stroke));
+      }
+      points.add(endMarker);
+    }
+    this.points = points;
+    return points;
+  }
+
+  /**
+  * Materializes the drawing as the state of a model
+  * @param settings is the state giving the layers and paint properties
+  * @return returns the state holding the drawing of the replica
+  */
+  public CanvasModelSnapshot toSnapshot(CanvasModelSnapshot settings) {
+    return new CanvasModelSnapshot(getPoints(), settings.getLayers(), settings.getActiveLayer(),
+      settings.getColor(), settings.getStroke());
+  }
+
+  private CanvasStrokeId tick() {
+    return new CanvasStrokeId(++this.clock, this.actor);
+  }
+
+  private static CanvasPoint restyle(CanvasPoint point, Color color, int stroke) {
+    CanvasPoint.Builder builder = new CanvasPoint.Builder(point.getX(), point.getY()).
+      pointWithColor(color).pointWithStroke(stroke).pointWithLayer(point.getLayer());
+    if(point.hasControls()) {
+      builder.pointWithControls(point.getControlX1(), point.getControlY1(),
+        point.getControlX2(), point.getControlY2());
+    }
+    return builder.build();
+  }
+}
\ No newline at end of file
@@ -0,0 +1,65 @@
+package edu.nyu.cs.canvas.replica;
+
+/**
+ * Globally unique id of a drawing element of a replicated drawing, and the timestamp of an
+ * operation: the Lamport clock of the replica that issued it, ties broken by the id of
+ * that replica. Ids are totally ordered consistently with causality, every replica sorts
+ * the drawing by them and so ends up with the same drawing order
+ * @see CanvasReplica
+ * @author abhishek
+ */
+public final class CanvasStrokeId implements Comparable<CanvasStrokeId> {
+  private final long counter;
+  private final int actor;
+
+  /**
+  * Constructor for an id
+  * @param counter is the Lamport clock of the issuing replica
+  * @param actor is the id of the issuing replica
+  */
+  public CanvasStrokeId(long counter, int actor) {
+    this.counter = counter;
+    this.actor = actor;
+  }
+
+  /**
+  * @return returns the Lamport clock of the issuing replica
+  */
+  public long getCounter() {
+    return this.counter;
+  }
+
+  /**
+  * @return returns the id of the issuing replica
+  */
+  public int getActor() {
+    return this.actor;
+  }
+
+  @Override
+  public int compareTo(CanvasStrokeId other) {
+    if(this.counter != other.counter) {
+      return (this.counter < other.counter) ? -1 : 1;
+    }
+    return (this.actor < other.actor) ? -1 : ((this.actor == other.actor) ? 0 : 1);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if(!(other instanceof CanvasStrokeId)) {
+      return false;
+    }
+    CanvasStrokeId id = (CanvasStrokeId) other;
+    return this.counter == id.counter && this.actor == id.actor;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (this.counter ^ (this.counter >>> 32)) * 31 + this.actor;
+  }
+
+  @Override
+  public String toString() {
+    return this.counter + "@" + this.actor;
+  }
+}
\ No newline at end of file
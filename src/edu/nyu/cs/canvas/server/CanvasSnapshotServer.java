@@ -0,0 +1,344 @@
+package edu.nyu.cs.canvas.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.controller.CanvasController;
+import edu.nyu.cs.canvas.export.CanvasPngExporter;
+import edu.nyu.cs.canvas.export.CanvasSvgExporter;
+import edu.nyu.cs.canvas.model.CanvasLayer;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasModelSnapshot;
+import edu.nyu.cs.canvas.session.CanvasSession;
+import edu.nyu.cs.canvas.session.CanvasSessionManager;
+
+/**
+ * Read only HTTP service rendering boards, e.g. to embed them in dashboards without any
+ * Swing client. GET /boards/{name}.svg and GET /boards/{name}.png return the current
+ * drawing of a board, HEAD is supported as well
+ *
+ * Renders are cached per board and format, keyed by the content version of the model
+ * and its layers, and served with an ETag. A poll revalidating with If-None-Match gets a
+ * 304 until the drawing changes, and any poll between two changes is served from the
+ * cache, so polling costs a version check only. On a change, a snapshot is taken while
+ * input is held back and rendered off the input path. Taking it copies the entity list
+ * and pages spilled entities back in, so it holds input back for a time linear in the
+ * size of the drawing
+ * @see CanvasSvgExporter
+ * @see CanvasPngExporter
+ * @author abhishek
+ */
+public final class CanvasSnapshotServer {
+  private static final String PREFIX = "/boards/";
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Map<String, Board> boards;
+  private final CanvasSessionManager sessions;
+  //renders by board and format
+  private final Map<String, Render> renders;
+  //distinguishes the ETags of this server from those of an earlier run
+  private final String instance;
+  private final AtomicLong renderCount;
+
+  /**
+  * Read access to the model of a board in a consistent state
+  */
+  private interface Board {
+    <T> T read(Callable<T> task) throws Exception;
+    CanvasModel getModel();
+  }
+
+  /**
+  * A cached render and the state of the board it was made from
+  */
+  private static final class Render {
+    private final String key;
+    private final byte[] bytes;
+
+    Render(String key, byte[] bytes) {
+      this.key = key;
+      this.bytes = bytes;
+    }
+  }
+
+  private CanvasSnapshotServer(InetSocketAddress address, CanvasSessionManager sessions)
+    throws IOException {
+    this.boards = new ConcurrentHashMap<String, Board>();
+    this.renders = new ConcurrentHashMap<String, Render>();
+    this.sessions = sessions;
+    this.instance = Long.toString(System.currentTimeMillis(), 36);
+    this.renderCount = new AtomicLong();
+    final AtomicInteger threads = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(CanvasConfig.snapshotServerThreads,
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable task) {
+          Thread thread = new Thread(task, "canvas-snapshot-" + threads.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    this.server = HttpServer.create(address, 0);
+    this.server.setExecutor(this.executor);
+    this.server.createContext(PREFIX, new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          serve(exchange);
+        } finally {
+          exchange.close();
+        }
+      }
+    });
+  }
+
+  /**
+  * Starts a server without boards
+  * @param address is the address to listen on, port 0 picks a free port
+  * @return returns the running server
+  * @throws IOException if the address can not be bound
+  */
+  public static CanvasSnapshotServer start(InetSocketAddress address) throws IOException {
+    return start(address, null);
+  }
+
+  /**
+  * Starts a server also serving every session of a session manager, by session ID
+  * @param address is the address to listen on, port 0 picks a free port
+  * @param sessions is the session manager, null for none
+  * @return returns the running server
+  * @throws IOException if the address can not be bound
+  */
+  public static CanvasSnapshotServer start(InetSocketAddress address,
+    CanvasSessionManager sessions) throws IOException {
+    CanvasSnapshotServer snapshotServer = new CanvasSnapshotServer(address, sessions);
+    snapshotServer.server.start();
+    return snapshotServer;
+  }
+
+  /**
+  * Serves the model of a controller, read while no input is being committed
+  * @param name is the name of the board in the URL
+  * @param controller is the controller guarding the model
+  * @param model is the model of the board
+  */
+  public void addBoard(String name, final CanvasController controller, final CanvasModel model) {
+    this.boards.put(name, new Board() {
+      @Override
+      public <T> T read(final Callable<T> task) throws Exception {
+        final Object[] result = new Object[1];
+        final Exception[] failure = new Exception[1];
+        controller.runCommitted(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              result[0] = task.call();
+            } catch (Exception e) {
+              failure[0] = e;
+            }
+          }
+        });
+        if(failure[0] != null) {
+          throw failure[0];
+        }
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+      }
+
+      @Override
+      public CanvasModel getModel() {
+        return model;
+      }
+    });
+  }
+
+  /**
+  * stops serving a board
+  * @param name is the name of the board
+  */
+  public void removeBoard(String name) {
+    this.boards.remove(name);
+    this.renders.remove(name + ".svg");
+    this.renders.remove(name + ".png");
+  }
+
+  /**
+  * @return returns the port the server listens on
+  */
+  public int getPort() {
+    return this.server.getAddress().getPort();
+  }
+
+  /**
+  * @return returns the number of renders made, cache hits and revalidations excluded
+  */
+  public long getRenderCount() {
+    return this.renderCount.get();
+  }
+
+  /**
+  * stops the server, waiting at most a second for exchanges in progress
+  */
+  public void stop() {
+    this.server.stop(1);
+    this.executor.shutdown();
+  }
+
+  /**
+  * @return returns the board of a name, a session if there is no such board
+  */
+  private Board findBoard(String name) {
+    Board board = this.boards.get(name);
+    if(board != null || this.sessions == null) {
+      return board;
+    }
+    final CanvasSession session = this.sessions.getSession(name);
+    if(session == null) {
+      return null;
+    }
+    return new Board() {
+      @Override
+      public <T> T read(Callable<T> task) throws Exception {
+        return session.submit(task).get(CanvasConfig.snapshotServerTimeout,
+          TimeUnit.MILLISECONDS);
+      }
+
+      @Override
+      public CanvasModel getModel() {
+        return session.getModel();
+      }
+    };
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    String method = exchange.getRequestMethod();
+    boolean head = method.equals("HEAD");
+    if(!head && !method.equals("GET")) {
+      exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+      exchange.sendResponseHeaders(405, -1);
+      return;
+    }
+    String path = exchange.getRequestURI().getPath();
+    String resource = path.substring(PREFIX.length());
+    int dot = resource.lastIndexOf('.');
+    String format = (dot <= 0) ? "" : resource.substring(dot + 1);
+    Board board = (dot <= 0 || resource.indexOf('/') != -1) ? null :
+      findBoard(resource.substring(0, dot));
+    if(board == null || !(format.equals("svg") || format.equals("png"))) {
+      exchange.sendResponseHeaders(404, -1);
+      return;
+    }
+    Render render;
+    try {
+      render = getRender(resource, board, format);
+    } catch (Exception e) {
+      exchange.sendResponseHeaders(500, -1);
+      return;
+    }
+    String etag = "\"" + this.instance + "-" + render.key + "\"";
+    exchange.getResponseHeaders().set("ETag", etag);
+    exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+    if(matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+      exchange.sendResponseHeaders(304, -1);
+      return;
+    }
+    exchange.getResponseHeaders().set("Content-Type", format.equals("svg") ?
+      "image/svg+xml" : "image/png");
+    if(head) {
+      exchange.getResponseHeaders().set("Content-Length", String.valueOf(render.bytes.length));
+      exchange.sendResponseHeaders(200, -1);
+      return;
+    }
+    exchange.sendResponseHeaders(200, render.bytes.length);
+    OutputStream body = exchange.getResponseBody();
+    body.write(render.bytes);
+    body.close();
+  }
+
+  /**
+  * @return returns the render of the current state of a board, rendering it if the cached
+  * one is stale
+  */
+  private Render getRender(String resource, Board board, final String format) throws Exception {
+    final CanvasModel model = board.getModel();
+    String key = board.read(new Callable<String>() {
+      @Override
+      public String call() {
+        return stateKey(model);
+      }
+    });
+    Render render = this.renders.get(resource);
+    if(render != null && render.key.equals(key)) {
+      return render;
+    }
+    final String[] snapshotKey = new String[1];
+    CanvasModelSnapshot snapshot = board.read(new Callable<CanvasModelSnapshot>() {
+      @Override
+      public CanvasModelSnapshot call() {
+        snapshotKey[0] = stateKey(model);
+        return model.snapshot();
+      }
+    });
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+    if(format.equals("svg")) {
+      new CanvasSvgExporter(CanvasConfig.defaultWidth, CanvasConfig.defaultHeight).
+        export(snapshot, bytes);
+    }
+    else {
+      new CanvasPngExporter(CanvasConfig.defaultWidth, CanvasConfig.defaultHeight).
+        export(snapshot, bytes);
+    }
+    this.renderCount.incrementAndGet();
+    render = new Render(snapshotKey[0], bytes.toByteArray());
+    this.renders.put(resource, render);
+    return render;
+  }
+
+  /**
+  * @return returns a key changing whenever the rendering of the model may change: its
+  * content version and the stacking order and visibility of its layers
+  */
+  private static String stateKey(CanvasModel model) {
+    List<CanvasLayer> layers = model.getLayers();
+    int hash = 1;
+    for(CanvasLayer layer : layers) {
+      hash = hash * 31 + layer.getId() * 2 + (layer.isVisible() ? 1 : 0);
+    }
+    return Long.toString(model.getVersion(), 36) + "-" + Integer.toHexString(hash);
+  }
+
+  /**
+  * @return returns true if an If-None-Match header lists an ETag
+  */
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if(ifNoneMatch == null) {
+      return false;
+    }
+    for(String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if(candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+      if(candidate.equals(etag) || candidate.equals("*")) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
\ No newline at end of file
@@ -0,0 +1,105 @@
+package edu.nyu.cs.canvas.session;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import edu.nyu.cs.canvas.controller.CanvasController;
+import edu.nyu.cs.canvas.model.CanvasModel;
+
+/**
+ * A single hosted document. Each session owns its own model, controller (and
+ * through it, its own observers) and a single threaded executor. All work on the
+ * document is submitted to that executor, so the model is only ever touched by one
+ * thread while different sessions proceed in parallel without sharing any state
+ * @see CanvasSessionManager
+ * @author abhishek
+ */
+public final class CanvasSession {
+  private final String ID;
+  private final CanvasModel model;
+  private final CanvasController controller;
+  private final ExecutorService executor;
+
+  /**
+  * Constructor for a session, only the session manager opens sessions
+  * @param ID is the unique ID of the session
+  */
+  CanvasSession(final String ID) {
+    this.ID = ID;
+    this.model = CanvasModel.createInstance();
+    this.controller = CanvasController.createInstance(this.model);
+    this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "canvas-session-" + ID);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+  * getter for the ID of the session
+  * @return returns the session ID
+  */
+  public String getID() {
+    return this.ID;
+  }
+
+  /**
+  * getter for the model of the session, it must only be used from tasks
+  * submitted to this session
+  * @return returns the model of the session
+  */
+  public CanvasModel getModel() {
+    return this.model;
+  }
+
+  /**
+  * getter for the controller of the session, it must only be used from tasks
+  * submitted to this session
+  * @return returns the controller of the session
+  */
+  public CanvasController getController() {
+    return this.controller;
+  }
+
+  /**
+  * runs a task on the session thread
+  * @param task is the work to perform against this session's model/controller
+  * @return returns a future completing when the task has run
+  */
+  public Future<?> submit(Runnable task) {
+    return this.executor.submit(task);
+  }
+
+  /**
+  * runs a task computing a value on the session thread
+  * @param task is the work to perform against this session's model/controller
+  * @return returns a future holding the computed value
+  */
+  public <T> Future<T> submit(Callable<T> task) {
+    return this.executor.submit(task);
+  }
+
+  /**
+  * closes the session: pending tasks complete, observers are released and
+  * the session thread terminates
+  * @param timeoutMillis is the maximum time to wait for pending tasks
+  * @return true if the session thread terminated within the timeout
+  * @throws InterruptedException if interrupted while waiting
+  */
+  boolean close(long timeoutMillis) throws InterruptedException {
+    this.executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        controller.releaseObservers();
+      }
+    });
+    this.executor.shutdown();
+    return this.executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+  }
+}
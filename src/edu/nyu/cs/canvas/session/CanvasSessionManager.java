@@ -0,0 +1,96 @@
+package edu.nyu.cs.canvas.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hosts many independent documents in one process. Every document lives in its
+ * own session with its own model, controller, observers and executor, so boards
+ * are served in parallel without contending on shared state
+ * @see CanvasSession
+ * @author abhishek
+ */
+public final class CanvasSessionManager {
+  private final ConcurrentHashMap<String, CanvasSession> sessions;
+
+  /**
+  * Constructor for the session manager
+  */
+  public CanvasSessionManager() {
+    this.sessions = new ConcurrentHashMap<String, CanvasSession>();
+  }
+
+  /**
+  * opens the session with the given ID, creating it if it does not exist yet
+  * @param ID is the ID of the document
+  * @return returns the session, null for a null ID
+  */
+  public CanvasSession openSession(String ID) {
+    if(ID == null) {
+      return null;
+    }
+    CanvasSession session = this.sessions.get(ID);
+    if(session == null) {
+      CanvasSession created = new CanvasSession(ID);
+      session = this.sessions.putIfAbsent(ID, created);
+      if(session == null) {
+        session = created;
+      }
+      else {
+        closeQuietly(created);
+      }
+    }
+    return session;
+  }
+
+  /**
+  * getter for an already open session
+  * @param ID is the ID of the document
+  * @return returns the session, null if no such session is open
+  */
+  public CanvasSession getSession(String ID) {
+    return (ID == null) ? null : this.sessions.get(ID);
+  }
+
+  /**
+  * @return returns the IDs of all open sessions
+  */
+  public List<String> getSessionIDs() {
+    return new ArrayList<String>(this.sessions.keySet());
+  }
+
+  /**
+  * closes a session and releases its resources
+  * @param ID is the ID of the document
+  * @return returns the closed session, null if no such session was open
+  */
+  public CanvasSession closeSession(String ID) {
+    CanvasSession session = (ID == null) ? null : this.sessions.remove(ID);
+    if(session != null) {
+      closeQuietly(session);
+    }
+    return session;
+  }
+
+  /**
+  * closes all open sessions
+  */
+  public void shutdown() {
+    for(String ID : getSessionIDs()) {
+      closeSession(ID);
+    }
+  }
+
+  /**
+  * closes a session without waiting on its pending tasks
+  * @param session is the session to close
+  */
+  private static void closeQuietly(CanvasSession session) {
+    try {
+      session.close(0);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
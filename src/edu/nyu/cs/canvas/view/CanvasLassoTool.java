@@ -0,0 +1,145 @@
+package edu.nyu.cs.canvas.view;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import edu.nyu.cs.canvas.controller.CanvasController;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasSelection;
+
+/**
+ * Mouse handling of the lasso tool of a view. Dragging outside a selection draws a
+ * lasso; on release the caught drawing elements are lifted off the canvas into a cached
+ * raster. Dragging inside the selection moves it, with shift it scales and with control
+ * it rotates around the selection center. While dragging only the cached raster is
+ * transformed; the transform is applied to the model once, when the mouse is released
+ * @see CanvasPanel#liftSelection(CanvasSelection, ArrayList)
+ * @author abhishek
+ */
+class CanvasLassoTool {
+  private final CanvasController controller;
+  private final CanvasPanel canvas;
+  private Path2D lasso;
+  private CanvasSelection selection;
+  private Point anchor;
+  private AffineTransform transform;
+
+  /**
+  * Constructor for the tool
+  * @param controller is the controller of the view
+  * @param canvas is the canvas of the view
+  */
+  CanvasLassoTool(CanvasController controller, CanvasPanel canvas) {
+    this.controller = controller;
+    this.canvas = canvas;
+  }
+
+  /**
+  * starts either a transform of the current selection or a new lasso
+  * @param e is the mouse press event
+  */
+  void mousePressed(MouseEvent e) {
+    if(this.selection != null && this.selection.getBounds().contains(e.getPoint())) {
+      this.anchor = e.getPoint();
+      this.transform = new AffineTransform();
+      return;
+    }
+    cancel();
+    this.lasso = new Path2D.Float();
+    this.lasso.moveTo(e.getX(), e.getY());
+    this.canvas.setLasso(this.lasso);
+  }
+
+  /**
+  * extends the lasso or updates the transform of the lifted selection
+  * @param e is the mouse drag event
+  */
+  void mouseDragged(MouseEvent e) {
+    if(this.anchor != null) {
+      this.transform = dragTransform(e);
+      this.canvas.setSelectionTransform(this.transform);
+    }
+    else if(this.lasso != null) {
+      this.lasso.lineTo(e.getX(), e.getY());
+      this.canvas.setLasso(this.lasso);
+    }
+  }
+
+  /**
+  * closes the lasso and lifts the selection, or commits the transform of the selection
+  * @param e is the mouse release event
+  */
+  void mouseReleased(MouseEvent e) {
+    if(this.anchor != null) {
+      boolean changed = this.controller.viewTransform(this.selection, this.transform);
+      this.canvas.dropSelection(!changed);
+      this.selection = null;
+      this.anchor = null;
+    }
+    else if(this.lasso != null) {
+      this.lasso.closePath();
+      CanvasSelection selected = this.controller.viewSelect(this.lasso);
+      this.lasso = null;
+      this.canvas.setLasso(null);
+      if(!selected.isEmpty()) {
+        ArrayList<CanvasPoint> remaining = new ArrayList<CanvasPoint>();
+        ArrayList<CanvasPoint> segments = this.controller.viewSegments(selected.getBounds(),
+          selected.getLayer());
+        for(int i = 0; i < segments.size() - 1; i += 2) {
+          if(!selected.containsSegment(segments.get(i+1))) {
+            remaining.add(segments.get(i));
+            remaining.add(segments.get(i+1));
+          }
+        }
+        this.selection = selected;
+        this.canvas.liftSelection(selected, remaining);
+      }
+    }
+  }
+
+  /**
+  * puts back a lifted selection untouched and discards any lasso in progress
+  */
+  void cancel() {
+    if(this.selection != null) {
+      this.canvas.dropSelection(true);
+      this.selection = null;
+    }
+    this.anchor = null;
+    if(this.lasso != null) {
+      this.lasso = null;
+      this.canvas.setLasso(null);
+    }
+  }
+
+  /**
+  * computes the transform for the current drag from the anchor point
+  * @param e is the mouse drag event
+  * @return returns a move, a scale (shift) or a rotation (control) of the selection
+  */
+  private AffineTransform dragTransform(MouseEvent e) {
+    Rectangle bounds = this.selection.getBounds();
+    double cx = bounds.getCenterX();
+    double cy = bounds.getCenterY();
+    AffineTransform result = new AffineTransform();
+    if(e.isShiftDown()) {
+      double from = this.anchor.distance(cx, cy);
+      double scale = (from < 1) ? 1 : e.getPoint().distance(cx, cy) / from;
+      result.translate(cx, cy);
+      result.scale(scale, scale);
+      result.translate(-cx, -cy);
+    }
+    else if(e.isControlDown()) {
+      double angle = Math.atan2(e.getY() - cy, e.getX() - cx) -
+        Math.atan2(this.anchor.y - cy, this.anchor.x - cx);
+      result.rotate(angle, cx, cy);
+    }
+    else {
+      result.translate(e.getX() - this.anchor.x, e.getY() - this.anchor.y);
+    }
+    return result;
+  }
+}
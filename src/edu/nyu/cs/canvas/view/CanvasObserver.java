@@ -1,7 +1,10 @@
 package edu.nyu.cs.canvas.view;
 
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.List;
+import edu.nyu.cs.canvas.model.CanvasLayer;
 import edu.nyu.cs.canvas.model.CanvasPoint;
 
 /**
@@ -39,7 +42,8 @@ public interface CanvasObserver {
 
   /**
   * notifies a view that a stateful update is requested, so that the new view
-  * can copy the common drawing state of existing views
+  * can copy the common drawing state of existing views. It is also used to draw
+  * a bulk import in one go, in which case only the imported elements are passed
   * @param allPoints is the present common view state of all points/segments
   * with their geometric and paint properties. This parameter is passed from the
   * model through controller to the observer
@@ -53,4 +57,23 @@ public interface CanvasObserver {
   * @see CanvasPoint
   */
   public void setStartPoint(CanvasPoint endPoint);
+
+  /**
+  * notifies a view that ink of a layer changed in an area, so that it redraws only that
+  * area of that layer
+  * @param area is the area of the canvas affected by the change
+  * @param layer is the id of the layer affected by the change
+  * @param segments is the remaining segments of the layer intersecting the area, as
+  * consecutive start/end pairs in drawing order
+  */
+  public void repaintArea(Rectangle area, int layer, ArrayList<CanvasPoint> segments);
+
+  /**
+  * notifies a view that layers were added, reordered, shown or hidden, or that another
+  * layer became active
+  * @param layers is the layers of the drawing ordered from bottom to top
+  * @param activeLayer is the id of the layer new drawing elements go to
+  * @see CanvasLayer
+  */
+  public void changeLayers(List<CanvasLayer> layers, int activeLayer);
 }
\ No newline at end of file
@@ -1,47 +1,208 @@
 package edu.nyu.cs.canvas.view;
 
+import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
+import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.geom.Line2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import javax.swing.JPanel;
 import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.model.CanvasLayer;
+import edu.nyu.cs.canvas.model.CanvasModel;
 import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasSegmentVisitor;
+import edu.nyu.cs.canvas.model.CanvasSelection;
 
 /**
  * Custom JPanel for emulating a canvas with modified paint properties.
  * It is aware of observer updates, therefore can make stateful as well
  * as stateless updates
+ *
+ * Drawing is retained in backing images, one per layer: segments are queued on a frame
+ * paced scheduler and rasterized in batches into the image of their layer, and painting
+ * simply composites the images of the visible layers bottom to top. All rasterization
+ * runs on a render worker owned by the canvas, in the order it was requested, so the
+ * event dispatch thread merely blits the backing images. Each backing image is double
+ * buffered: the worker draws into a back image and then publishes it, so painting never
+ * waits for a rasterization to finish. Editing a layer
+ * only re-rasterizes that layer, showing, hiding or reordering layers re-rasterizes
+ * nothing. Transient feedback (lasso, lifted selection, shape preview) is drawn as an
+ * overlay above the layers and never touches them
+ *
+ * In the immediate rendering mode, segments skip the scheduler and every segment is
+ * handed to the render worker as soon as it arrives
+ * @see CanvasConfig#renderMode
+ * @see CanvasRepaintScheduler
+ * @see CanvasStrokeRenderer
  * @author abhishek
  */
 @SuppressWarnings("serial")
 public class CanvasPanel extends JPanel {
 
-  //stores points transferred from controller when a stateful update is requested
-  private ArrayList<CanvasPoint> allPoints;
+  //retained rasters of everything drawn on this canvas, by layer id, only changed by the
+  //render worker
+  private final ConcurrentHashMap<Integer, LayerRaster> rasters;
+  //layers in compositing order, bottom first
+  private volatile List<CanvasLayer> layers;
+  //single render thread, released after a while without work
+  private final ThreadPoolExecutor renderWorker;
+  private final CanvasRepaintScheduler scheduler;
+  private final boolean immediate;
+  //outlines of the runs drawn on this canvas, only used by the render worker
+  private final CanvasStrokeRenderer.OutlineCache outlines;
+  //largest size the canvas has had, the rasters grow to it, only used by the event
+  //dispatch thread
+  private int extentWidth;
+  private int extentHeight;
+  //lasso being drawn and the selection lifted off the backing image, if any
+  private Shape lasso;
+  private BufferedImage selectionImage;
+  private Rectangle selectionBounds;
+  private int selectionLayer;
+  private AffineTransform selectionTransform;
+  //shape primitive being dragged, previewed above the backing image
+  private Shape preview;
+  private Color previewColor;
+  private int previewStroke;
+  //released once the canvas has been painted for the first time
+  private final CountDownLatch firstPaint = new CountDownLatch(1);
+  private volatile long firstPaintNanos;
+  private static final BasicStroke lassoStroke = new BasicStroke(1, BasicStroke.CAP_BUTT,
+    BasicStroke.JOIN_MITER, 10, new float[] {4, 4}, 0);
 
   /**
-  * Reusable marker for skipping gaps between disjoint line segments
-  * Uses a static marker to prevent creating multiple markers, which are high in demand
+  * Constructor for custom Canvas
   */
-  private static CanvasPoint endMarker = CanvasConfig.getEndMarker();
+  protected CanvasPanel() {
+    this.scheduler = new CanvasRepaintScheduler(this, CanvasConfig.frameRate);
+    this.immediate = CanvasConfig.renderMode.equals(CanvasConfig.IMMEDIATE_RENDERING);
+    this.rasters = new ConcurrentHashMap<Integer, LayerRaster>();
+    this.outlines = new CanvasStrokeRenderer.OutlineCache(CanvasConfig.outlineCacheCapacity);
+    this.extentWidth = CanvasConfig.defaultWidth;
+    this.extentHeight = CanvasConfig.defaultHeight;
+    this.layers = Collections.emptyList();
+    this.renderWorker = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable task) {
+          Thread thread = new Thread(task, "canvas-render");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    this.renderWorker.allowCoreThreadTimeOut(true);
+  }
 
   /**
-  * Constructor for custom Canvas
+  * waits until the canvas has been painted for the first time
+  * @param timeoutMillis is the maximum time to wait
+  * @return returns the System.nanoTime() of the first paint, -1 on timeout
+  * @throws InterruptedException if interrupted while waiting
   */
-  protected CanvasPanel() {
-    allPoints = new ArrayList<CanvasPoint>();
+  protected long awaitFirstPaint(long timeoutMillis) throws InterruptedException {
+    return this.firstPaint.await(timeoutMillis, TimeUnit.MILLISECONDS) ? this.firstPaintNanos : -1;
+  }
+
+  /**
+  * Records a new size of the canvas. The rasters never shrink, so that nothing drawn is
+  * lost, and grow to the largest size the canvas has had the next time they are drawn
+  * into. The areas uncovered by growing were never rasterized, the caller has them
+  * redrawn
+  * @return returns the areas uncovered beyond the previous extent, empty if none
+  */
+  protected List<Rectangle> growExtent() {
+    List<Rectangle> uncovered = new ArrayList<Rectangle>(2);
+    int width = Math.max(this.extentWidth, getWidth());
+    int height = Math.max(this.extentHeight, getHeight());
+    if(width > this.extentWidth) {
+      uncovered.add(new Rectangle(this.extentWidth, 0, width - this.extentWidth, height));
+    }
+    if(height > this.extentHeight) {
+      uncovered.add(new Rectangle(0, this.extentHeight, this.extentWidth,
+        height - this.extentHeight));
+    }
+    this.extentWidth = width;
+    this.extentHeight = height;
+    return uncovered;
+  }
+
+  /**
+  * runs a raster update on the render worker
+  * @param task is the update to run
+  */
+  private void render(Runnable task) {
+    this.renderWorker.execute(task);
   }
 
   /**
-  * setter for carrying the stateful update from controller
+  * setter for carrying the stateful update from controller, rasterizes the
+  * shared drawing into this canvas
   * @param allPoints is the set of 'model entities' presently drawn and
   * shared by other canvases
   * @see CanvasPoint
   */
   protected void setPoints(ArrayList<CanvasPoint> allPoints) {
-    this.allPoints = allPoints;
+    final ArrayList<CanvasPoint> segments = new ArrayList<CanvasPoint>();
+    CanvasModel.walkSegments(allPoints, new CanvasSegmentVisitor() {
+      @Override
+      public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+        segments.add(startPoint);
+        segments.add(endPoint);
+      }
+    });
+    render(new Runnable() {
+      @Override
+      public void run() {
+        HashMap<Integer, ArrayList<CanvasPoint>> byLayer = splitByLayer(segments);
+        for(Map.Entry<Integer, ArrayList<CanvasPoint>> entry : byLayer.entrySet()) {
+          LayerRaster raster = getBacking(entry.getKey());
+          Graphics2D g2 = raster.createGraphics();
+          try {
+            CanvasStrokeRenderer.paintSegments(g2, entry.getValue(), outlines);
+          } finally {
+            g2.dispose();
+          }
+          raster.publish(null);
+        }
+        repaint();
+      }
+    });
+  }
+
+  /**
+  * updates the layers composited into the canvas, only a repaint is needed since every
+  * layer keeps its own raster. Rasters of layers that no longer exist are released
+  * @param layers is the layers ordered from bottom to top
+  */
+  protected void setLayers(List<CanvasLayer> layers) {
+    this.layers = layers;
+    final HashSet<Integer> ids = new HashSet<Integer>();
+    for(CanvasLayer layer : layers) {
+      ids.add(layer.getId());
+    }
+    render(new Runnable() {
+      @Override
+      public void run() {
+        rasters.keySet().retainAll(ids);
+      }
+    });
+    repaint();
   }
 
   /**
@@ -50,35 +211,159 @@ public class CanvasPanel extends JPanel {
   @Override
   public void paintComponent(final Graphics g) {
     super.paintComponent(g);
-    CanvasPoint start = endMarker;
-    CanvasPoint end = endMarker;
-    for(int i = 0; i < allPoints.size() - 1; ++i) {
-      CanvasPoint prev = allPoints.get(i);
-      CanvasPoint next = allPoints.get(i+1);
-      if((prev.getX() == -1) && (prev.getY() == -1) &&
-        (next.getX() == -1) && (next.getY() == -1)) {
-        start = endMarker;
-        end = endMarker;
+    if(this.firstPaintNanos == 0) {
+      this.firstPaintNanos = System.nanoTime();
+      this.firstPaint.countDown();
+    }
+    for(CanvasLayer layer : this.layers) {
+      LayerRaster raster = this.rasters.get(layer.getId());
+      if(raster != null && layer.isVisible()) {
+        g.drawImage(raster.front, 0, 0, null);
       }
-      else {
-        if (start.isEndMarker()) {
-          start = (prev.isEndMarker() ? next : prev);
-        }
-        if (end.isEndMarker()) {
-          end = (prev.isEndMarker() ? next : prev);
+    }
+    if(this.preview != null) {
+      Graphics2D g2 = (Graphics2D) g.create();
+      try {
+        CanvasStrokeRenderer.configure(g2);
+        g2.setColor(this.previewColor);
+        g2.setStroke(new BasicStroke(this.previewStroke, BasicStroke.CAP_ROUND,
+          BasicStroke.JOIN_ROUND));
+        g2.draw(this.preview);
+      } finally {
+        g2.dispose();
+      }
+    }
+    if(this.selectionImage != null || this.lasso != null) {
+      Graphics2D g2 = (Graphics2D) g.create();
+      try {
+        g2.setColor(Color.DARK_GRAY);
+        g2.setStroke(lassoStroke);
+        if(this.lasso != null) {
+          g2.draw(this.lasso);
         }
-        if (!start.isEndMarker() && !end.isEndMarker()) {
-          Graphics2D g2 = (Graphics2D) g;
-          g2.setStroke(new BasicStroke(start.getStroke()));
-          g2.setColor(start.getColor());
-          g2.draw(new Line2D.Float(start.getX(), start.getY(), end.getX(), end.getY()));
-          start = end;
-          end = endMarker;
+        if(this.selectionImage != null) {
+          g2.transform(this.selectionTransform);
+          g2.drawImage(this.selectionImage, this.selectionBounds.x, this.selectionBounds.y, null);
+          g2.draw(this.selectionBounds);
         }
+      } finally {
+        g2.dispose();
       }
     }
   }
 
+  /**
+  * shows the outline of a lasso being drawn
+  * @param lasso is the lasso outline, null to hide it
+  */
+  protected void setLasso(Shape lasso) {
+    this.lasso = lasso;
+    repaint();
+  }
+
+  /**
+  * shows the rubber band preview of a shape primitive being dragged. Only the area
+  * covered by the previous and the new preview is repainted
+  * @param preview is the outline of the primitive, null to hide it
+  * @param color is the color of the primitive
+  * @param stroke is the stroke of the primitive
+  */
+  protected void setPreview(Shape preview, Color color, int stroke) {
+    Rectangle dirty = previewBounds();
+    this.preview = preview;
+    this.previewColor = color;
+    this.previewStroke = stroke;
+    Rectangle bounds = previewBounds();
+    if(dirty == null) {
+      dirty = bounds;
+    }
+    else if(bounds != null) {
+      dirty = dirty.union(bounds);
+    }
+    if(dirty != null) {
+      repaint(dirty);
+    }
+  }
+
+  /**
+  * @return returns the area covered by the shape preview, null if there is none
+  */
+  private Rectangle previewBounds() {
+    if(this.preview == null) {
+      return null;
+    }
+    Rectangle bounds = this.preview.getBounds();
+    int pad = this.previewStroke / 2 + 2;
+    bounds.grow(pad, pad);
+    return bounds;
+  }
+
+  /**
+  * lifts a selection off the canvas: its segments are rasterized once into a cached
+  * image and removed from the backing image, so that dragging it only moves that image
+  * @param selection is the selection to lift
+  * @param remaining is the other segments intersecting the selection bounds
+  */
+  protected void liftSelection(CanvasSelection selection, ArrayList<CanvasPoint> remaining) {
+    Rectangle bounds = selection.getBounds();
+    BufferedImage image = new BufferedImage(Math.max(1, bounds.width), Math.max(1, bounds.height),
+      BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g2 = image.createGraphics();
+    try {
+      CanvasStrokeRenderer.configure(g2);
+      g2.translate(-bounds.x, -bounds.y);
+      CanvasStrokeRenderer.paintSegments(g2, selection.getSegments());
+    } finally {
+      g2.dispose();
+    }
+    repaintArea(bounds, selection.getLayer(), remaining);
+    this.selectionImage = image;
+    this.selectionBounds = bounds;
+    this.selectionLayer = selection.getLayer();
+    this.selectionTransform = new AffineTransform();
+    repaint();
+  }
+
+  /**
+  * updates the interactive transform of the lifted selection
+  * @param transform is the transform chosen so far
+  */
+  protected void setSelectionTransform(AffineTransform transform) {
+    this.selectionTransform = transform;
+    repaint();
+  }
+
+  /**
+  * discards the lifted selection
+  * @param restore is true to put the cached image back where it was lifted from,
+  * false when the model change has already been redrawn
+  */
+  protected void dropSelection(boolean restore) {
+    if(this.selectionImage == null) {
+      return;
+    }
+    if(restore) {
+      final BufferedImage image = this.selectionImage;
+      final Rectangle bounds = this.selectionBounds;
+      final int layer = this.selectionLayer;
+      render(new Runnable() {
+        @Override
+        public void run() {
+          LayerRaster raster = getBacking(layer);
+          Graphics2D g2 = raster.createGraphics();
+          g2.drawImage(image, bounds.x, bounds.y, null);
+          g2.dispose();
+          raster.publish(bounds);
+          repaint(bounds);
+        }
+      });
+    }
+    this.selectionImage = null;
+    this.selectionBounds = null;
+    this.selectionTransform = null;
+    repaint();
+  }
+
   /**
   * repaint the canvas when a visual update is required
   */
@@ -87,17 +372,236 @@ public class CanvasPanel extends JPanel {
   }
 
   /**
-  * draws a line segment on the custom canvas
-  * @see CanvasPanel
+  * clears the canvas along with any segments still waiting to be flushed, the rasters
+  * of all layers and the cached outlines are released
+  */
+  protected void clear() {
+    this.scheduler.cancel();
+    render(new Runnable() {
+      @Override
+      public void run() {
+        rasters.clear();
+        outlines.clear();
+        repaint();
+      }
+    });
+  }
+
+  /**
+  * queues a line segment to be drawn on the custom canvas in the next frame, or right away
+  * in the immediate rendering mode
+  * @see CanvasRepaintScheduler
   * @param startPoint is the staring point of the segment
   * @param endPoint is the terminating point of the segment
   */
   protected void drawLine(CanvasPoint startPoint, CanvasPoint endPoint) {
-    Graphics graphics = this.getGraphics();
-    graphics.setColor(startPoint.getColor());
-    Graphics2D g2D = (Graphics2D) graphics;
-    g2D.setStroke(new BasicStroke(startPoint.getStroke()));
-    g2D.draw(new Line2D.Float(startPoint.getX(), startPoint.getY(),
-      endPoint.getX(), endPoint.getY()));
+    if(this.immediate) {
+      ArrayList<CanvasPoint> segment = new ArrayList<CanvasPoint>(2);
+      segment.add(startPoint);
+      segment.add(endPoint);
+      paintSegments(segment, CanvasModel.segmentBounds(startPoint, endPoint));
+      return;
+    }
+    this.scheduler.schedule(startPoint, endPoint);
+  }
+
+  /**
+  * rasterizes a batch of flushed segments into the backing images on the render worker,
+  * then repaints the area they cover
+  * @param segments is the list of consecutive start/end pairs to draw
+  * @param area is the area covered by the segments
+  */
+  void paintSegments(final ArrayList<CanvasPoint> segments, final Rectangle area) {
+    render(new Runnable() {
+      @Override
+      public void run() {
+        rasterize(segments, area);
+        repaint(area);
+      }
+    });
+  }
+
+  /**
+  * draws segments one by one into the backing images of their layers, then publishes
+  * the images drawn into
+  * @param segments is the list of consecutive start/end pairs to draw
+  * @param area is the area covered by the segments
+  */
+  private void rasterize(ArrayList<CanvasPoint> segments, Rectangle area) {
+    HashSet<LayerRaster> drawn = new HashSet<LayerRaster>();
+    Graphics2D g2 = null;
+    int layer = 0;
+    try {
+      for(int i = 0; i < segments.size() - 1; i += 2) {
+        CanvasPoint endPoint = segments.get(i+1);
+        if(g2 == null || endPoint.getLayer() != layer) {
+          if(g2 != null) {
+            g2.dispose();
+          }
+          layer = endPoint.getLayer();
+          LayerRaster raster = getBacking(layer);
+          g2 = raster.createGraphics();
+          drawn.add(raster);
+        }
+        CanvasStrokeRenderer.paintSegment(g2, segments.get(i), endPoint);
+      }
+    } finally {
+      if(g2 != null) {
+        g2.dispose();
+      }
+      for(LayerRaster raster : drawn) {
+        raster.publish(area);
+      }
+    }
+  }
+
+  /**
+  * redraws an area of a layer from scratch with the given segments, used when ink of
+  * that layer changed in that area. Other layers are left untouched. Segments still
+  * queued for the next frame are rasterized first, otherwise they would be drawn over
+  * the redrawn area, e.g. the raw samples of a stroke over its fitted curve
+  * @param area is the area of the canvas to redraw
+  * @param layer is the id of the layer to redraw
+  * @param segments is the list of consecutive start/end pairs of the layer intersecting
+  * the area
+  */
+  protected void repaintArea(final Rectangle area, final int layer,
+    final ArrayList<CanvasPoint> segments) {
+    this.scheduler.flush();
+    render(new Runnable() {
+      @Override
+      public void run() {
+        LayerRaster raster = getBacking(layer);
+        outlines.invalidate(area);
+        Graphics2D g2 = raster.createGraphics();
+        try {
+          g2.setComposite(AlphaComposite.Clear);
+          g2.fill(area);
+          g2.setComposite(AlphaComposite.SrcOver);
+          g2.clip(area);
+          CanvasStrokeRenderer.paintSegments(g2, segments, outlines);
+        } finally {
+          g2.dispose();
+        }
+        raster.publish(area);
+        repaint(area);
+      }
+    });
+  }
+
+  /**
+  * lazily creates the backing raster of a layer with the extent of the canvas, or grows
+  * it to the extent, called by the render worker only
+  * @param layer is the id of the layer
+  * @return returns the backing raster
+  */
+  private LayerRaster getBacking(int layer) {
+    int width = Math.max(CanvasConfig.defaultWidth, getWidth());
+    int height = Math.max(CanvasConfig.defaultHeight, getHeight());
+    LayerRaster raster = this.rasters.get(layer);
+    if(raster == null) {
+      raster = new LayerRaster(width, height);
+      this.rasters.put(layer, raster);
+    }
+    else {
+      raster.ensureSize(width, height);
+    }
+    return raster;
+  }
+
+  /**
+  * splits segments by the layer they are drawn on, keeping the drawing order
+  * @param segments is the list of consecutive start/end pairs
+  * @return returns the segments of each layer
+  */
+  private static HashMap<Integer, ArrayList<CanvasPoint>> splitByLayer(
+    ArrayList<CanvasPoint> segments) {
+    HashMap<Integer, ArrayList<CanvasPoint>> byLayer =
+      new HashMap<Integer, ArrayList<CanvasPoint>>();
+    for(int i = 0; i < segments.size() - 1; i += 2) {
+      Integer layer = segments.get(i+1).getLayer();
+      ArrayList<CanvasPoint> list = byLayer.get(layer);
+      if(list == null) {
+        list = new ArrayList<CanvasPoint>();
+        byLayer.put(layer, list);
+      }
+      list.add(segments.get(i));
+      list.add(segments.get(i+1));
+    }
+    return byLayer;
+  }
+
+  /**
+  * Double buffered backing image of a layer. The render worker draws into the back image
+  * only and then swaps the two, so the event dispatch thread always paints a complete
+  * front image without waiting. The area drawn before a swap is copied over to the new
+  * back image before it is drawn into again
+  */
+  private static final class LayerRaster {
+    //image painted by the event dispatch thread
+    private volatile BufferedImage front;
+    //image drawn into by the render worker
+    private BufferedImage back;
+    //area of the front image the back image is missing, null if none
+    private Rectangle stale;
+
+    LayerRaster(int width, int height) {
+      this.front = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      this.back = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+    * @return returns a graphics drawing into the back image with the canvas rendering
+    * hints, brought up to date with the front image first, to be disposed by the caller
+    */
+    Graphics2D createGraphics() {
+      if(this.stale != null) {
+        Graphics2D g2 = this.back.createGraphics();
+        g2.setComposite(AlphaComposite.Src);
+        g2.setClip(this.stale);
+        g2.drawImage(this.front, 0, 0, null);
+        g2.dispose();
+        this.stale = null;
+      }
+      Graphics2D g2 = this.back.createGraphics();
+      CanvasStrokeRenderer.configure(g2);
+      return g2;
+    }
+
+    /**
+    * grows both images to at least a given size, keeping what was drawn
+    * @param width is the minimum width
+    * @param height is the minimum height
+    */
+    void ensureSize(int width, int height) {
+      if(width <= this.front.getWidth() && height <= this.front.getHeight()) {
+        return;
+      }
+      width = Math.max(width, this.front.getWidth());
+      height = Math.max(height, this.front.getHeight());
+      BufferedImage grown = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      BufferedImage spare = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+      Graphics2D g2 = grown.createGraphics();
+      g2.drawImage(this.front, 0, 0, null);
+      g2.dispose();
+      g2 = spare.createGraphics();
+      g2.drawImage(this.front, 0, 0, null);
+      g2.dispose();
+      this.back = spare;
+      this.front = grown;
+      this.stale = null;
+    }
+
+    /**
+    * makes the back image the one painted, once drawn into
+    * @param area is the area drawn into, null for the whole image
+    */
+    void publish(Rectangle area) {
+      BufferedImage drawn = this.back;
+      this.back = this.front;
+      this.front = drawn;
+      this.stale = (area == null) ? new Rectangle(0, 0, drawn.getWidth(), drawn.getHeight()) :
+        new Rectangle(area);
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package edu.nyu.cs.canvas.view;
+
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import javax.swing.Timer;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+
+/**
+ * Frame paced repaint scheduler for a single canvas. Segments received from the
+ * controller are queued along with the rectangle they dirty, and flushed at most
+ * once per frame: the queued segments are handed to the render worker of the canvas
+ * in one batch, which rasterizes them into the backing images and issues a single
+ * repaint for the union of their dirty rectangles.
+ *
+ * The timer only runs while there is pending work, so an idle canvas costs nothing
+ * and a segment never waits more than one frame before reaching the screen
+ * @see CanvasPanel
+ * @author abhishek
+ */
+class CanvasRepaintScheduler implements ActionListener {
+  private final CanvasPanel canvas;
+  private final Timer timer;
+  //queued segments stored as consecutive start/end pairs
+  private ArrayList<CanvasPoint> pending;
+  private Rectangle dirty;
+
+  /**
+  * Constructor for the scheduler
+  * @param canvas is the canvas whose segments are being scheduled
+  * @param frameRate is the maximum number of flushes per second
+  */
+  CanvasRepaintScheduler(CanvasPanel canvas, int frameRate) {
+    this.canvas = canvas;
+    this.pending = new ArrayList<CanvasPoint>();
+    this.timer = new Timer(1000 / Math.max(1, frameRate), this);
+    this.timer.setRepeats(false);
+    this.timer.setCoalesce(true);
+  }
+
+  /**
+  * queues a segment for the next frame and starts the frame timer if it is idle
+  * @param startPoint is the starting point of the segment
+  * @param endPoint is the terminating point of the segment
+  */
+  synchronized void schedule(CanvasPoint startPoint, CanvasPoint endPoint) {
+    this.pending.add(startPoint);
+    this.pending.add(endPoint);
+    Rectangle bounds = CanvasModel.segmentBounds(startPoint, endPoint);
+    this.dirty = (this.dirty == null) ? bounds : this.dirty.union(bounds);
+    if(!this.timer.isRunning()) {
+      this.timer.start();
+    }
+  }
+
+  /**
+  * drops all queued segments, used when the canvas is cleared before they are flushed
+  */
+  synchronized void cancel() {
+    this.pending.clear();
+    this.dirty = null;
+    this.timer.stop();
+  }
+
+  /**
+  * @return returns true if there are segments waiting for the next frame
+  */
+  synchronized boolean hasPending() {
+    return !this.pending.isEmpty();
+  }
+
+  /**
+  * flushes the queued segments to the render worker once per frame
+  */
+  @Override
+  public void actionPerformed(ActionEvent e) {
+    flush();
+  }
+
+  /**
+  * hands the queued segments to the render worker right away, ahead of any raster update
+  * requested after this call, e.g. before an area is redrawn from the model so that
+  * stale segments can not be drawn over it in a later frame
+  */
+  void flush() {
+    ArrayList<CanvasPoint> segments;
+    Rectangle area;
+    synchronized(this) {
+      if(this.pending.isEmpty()) {
+        return;
+      }
+      segments = this.pending;
+      area = this.dirty;
+      this.pending = new ArrayList<CanvasPoint>(segments.size());
+      this.dirty = null;
+    }
+    this.canvas.paintSegments(segments, area);
+  }
+}
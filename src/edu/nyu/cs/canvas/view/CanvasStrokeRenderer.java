@@ -0,0 +1,270 @@
+package edu.nyu.cs.canvas.view;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.CubicCurve2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+
+/**
+ * Anti-aliased stroke rendering shared by all canvases. Segments are drawn with round
+ * caps and joins so that consecutive segments meet without gaps or notches. When many
+ * segments are redrawn at once, connected runs of the same color are turned into a
+ * single outline shape which is cached by the canvas and simply filled on later redraws,
+ * instead of being stroked again. Runs whose samples carry different strokes get a variable width
+ * outline, each segment taking the mean stroke of its two samples. Segments ending on an
+ * entity with control points are drawn as cubic Bezier pieces
+ *
+ * Boards rendered off screen, e.g. exported as images, use the same rendering so that
+ * they look just like the canvases
+ * @author abhishek
+ */
+public final class CanvasStrokeRenderer {
+  //runs shorter than this are cheaper to stroke than to cache
+  private static final int minCachedSegments = 4;
+  //round capped/joined strokes of the common widths, shared by all threads
+  private static final BasicStroke[] strokes = new BasicStroke[33];
+
+  static {
+    for(int width = 0; width < strokes.length; ++width) {
+      strokes[width] = new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    }
+  }
+
+  private CanvasStrokeRenderer() {
+  }
+
+  /**
+  * turns on the rendering hints used for all canvas drawing
+  * @param g2 is the graphics to configure
+  */
+  public static void configure(Graphics2D g2) {
+    g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    g2.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+  }
+
+  /**
+  * draws a single segment with the paint properties of its start point
+  * @param g2 is the graphics to draw on
+  * @param startPoint is the staring point of the segment
+  * @param endPoint is the terminating point of the segment
+  */
+  static void paintSegment(Graphics2D g2, CanvasPoint startPoint, CanvasPoint endPoint) {
+    g2.setStroke(getStroke(startPoint.getStroke()));
+    g2.setColor(startPoint.getColor());
+    g2.draw(segmentShape(startPoint, endPoint));
+  }
+
+  /**
+  * draws a batch of segments once, e.g. into an exported image, connected runs are
+  * filled as outlines which are not kept
+  * @param g2 is the graphics to draw on
+  * @param segments is the list of consecutive start/end pairs, in drawing order
+  */
+  public static void paintSegments(Graphics2D g2, List<CanvasPoint> segments) {
+    paintSegments(g2, segments, null);
+  }
+
+  /**
+  * draws a batch of segments, filling cached outlines for connected runs
+  * @param g2 is the graphics to draw on
+  * @param segments is the list of consecutive start/end pairs, in drawing order
+  * @param cache is the outline cache of the canvas drawn on, null to cache nothing
+  */
+  public static void paintSegments(Graphics2D g2, List<CanvasPoint> segments,
+    OutlineCache cache) {
+    int runStart = 0;
+    for(int i = 2; i <= segments.size(); i += 2) {
+      if(i == segments.size() || !continues(segments, i)) {
+        paintRun(g2, segments, runStart, i, cache);
+        runStart = i;
+      }
+    }
+  }
+
+  /**
+  * checks if the segment at an index continues the run of the previous one
+  */
+  private static boolean continues(List<CanvasPoint> segments, int index) {
+    CanvasPoint previous = segments.get(index - 1);
+    CanvasPoint start = segments.get(index);
+    return previous.getX() == start.getX() && previous.getY() == start.getY() &&
+      segments.get(index - 2).getColor().equals(start.getColor());
+  }
+
+  /**
+  * draws the segments [from, to) of a list, which form a single connected run
+  */
+  private static void paintRun(Graphics2D g2, List<CanvasPoint> segments, int from, int to,
+    OutlineCache cache) {
+    int count = (to - from) / 2;
+    if(count < minCachedSegments) {
+      for(int i = from; i < to; i += 2) {
+        paintSegment(g2, segments.get(i), segments.get(i+1));
+      }
+      return;
+    }
+    CanvasPoint first = segments.get(from);
+    CanvasPoint last = segments.get(to - 1);
+    Outline outline = (cache == null) ? null : cache.outlines.get(last);
+    if(outline == null || outline.first.get() != first || outline.segments != count) {
+      outline = new Outline(first, count, buildOutline(segments, from, to));
+      if(cache != null) {
+        cache.outlines.put(last, outline);
+        ++cache.built;
+      }
+    }
+    g2.setColor(first.getColor());
+    g2.fill(outline.shape);
+  }
+
+  /**
+  * computes the filled outline of a run of segments
+  */
+  private static Shape buildOutline(List<CanvasPoint> segments, int from, int to) {
+    boolean uniform = true;
+    int width = segments.get(from).getStroke();
+    for(int i = from; i < to && uniform; ++i) {
+      uniform = segments.get(i).getStroke() == width;
+    }
+    if(uniform) {
+      Path2D.Float path = new Path2D.Float();
+      path.moveTo(segments.get(from).getX(), segments.get(from).getY());
+      for(int i = from + 1; i < to; i += 2) {
+        CanvasPoint end = segments.get(i);
+        if(end.hasControls()) {
+          path.curveTo(end.getControlX1(), end.getControlY1(), end.getControlX2(),
+            end.getControlY2(), end.getX(), end.getY());
+        }
+        else {
+          path.lineTo(end.getX(), end.getY());
+        }
+      }
+      return getStroke(width).createStrokedShape(path);
+    }
+    Path2D.Float outline = new Path2D.Float(Path2D.WIND_NON_ZERO);
+    for(int i = from; i < to; i += 2) {
+      CanvasPoint start = segments.get(i);
+      CanvasPoint end = segments.get(i+1);
+      float mean = (start.getStroke() + end.getStroke()) / 2f;
+      BasicStroke stroke = new BasicStroke(mean, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+      outline.append(stroke.createStrokedShape(segmentShape(start, end)), false);
+    }
+    return outline;
+  }
+
+  /**
+  * @return returns the geometry of a segment, a line or a cubic piece
+  */
+  private static Shape segmentShape(CanvasPoint startPoint, CanvasPoint endPoint) {
+    if(endPoint.hasControls()) {
+      return new CubicCurve2D.Float(startPoint.getX(), startPoint.getY(),
+        endPoint.getControlX1(), endPoint.getControlY1(), endPoint.getControlX2(),
+        endPoint.getControlY2(), endPoint.getX(), endPoint.getY());
+    }
+    return new Line2D.Float(startPoint.getX(), startPoint.getY(), endPoint.getX(), endPoint.getY());
+  }
+
+  /**
+  * returns a shared round capped/joined stroke of a given width
+  * @param width is the stroke width
+  * @return returns the stroke
+  */
+  private static BasicStroke getStroke(int width) {
+    if(width < 0 || width >= strokes.length) {
+      return new BasicStroke(width, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+    }
+    return strokes[width];
+  }
+
+  /**
+  * Outlines cached by a canvas, keyed by the last 'model entity' of their run. The least
+  * recently drawn outline is evicted once the cache is full, and outlines go away when ink
+  * changes under them. Not thread safe, a canvas only draws from its render worker
+  * @see CanvasConfig#outlineCacheCapacity
+  */
+  public static final class OutlineCache {
+    private final LinkedHashMap<CanvasPoint, Outline> outlines;
+    //number of outlines built for this cache, used by diagnostics
+    private long built;
+
+    /**
+    * @param capacity is the maximum number of cached outlines
+    */
+    @SuppressWarnings("serial")
+    public OutlineCache(final int capacity) {
+      this.outlines = new LinkedHashMap<CanvasPoint, Outline>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CanvasPoint, Outline> eldest) {
+          return size() > capacity;
+        }
+      };
+    }
+
+    /**
+    * drops the cached outlines of runs crossing an area whose ink changed, outlines
+    * elsewhere stay cached
+    * @param area is the damaged area of the canvas
+    */
+    public void invalidate(Rectangle area) {
+      Iterator<Outline> iterator = this.outlines.values().iterator();
+      while(iterator.hasNext()) {
+        if(iterator.next().bounds.intersects(area)) {
+          iterator.remove();
+        }
+      }
+    }
+
+    /**
+    * drops all cached outlines, once the canvas is cleared
+    */
+    public void clear() {
+      this.outlines.clear();
+    }
+
+    /**
+    * @return returns the number of cached outlines
+    */
+    public int size() {
+      return this.outlines.size();
+    }
+
+    /**
+    * @return returns the number of outlines built so far, i.e. the cache misses
+    */
+    public long getBuiltCount() {
+      return this.built;
+    }
+  }
+
+  /**
+  * A cached outline, valid as long as its run still starts on the same entity and
+  * has the same number of segments. The first entity is only weakly held: it is often
+  * the key of the outline of the previous run, which would otherwise be kept alive by
+  * this one
+  */
+  private static final class Outline {
+    private final WeakReference<CanvasPoint> first;
+    private final int segments;
+    private final Shape shape;
+    private final Rectangle bounds;
+
+    Outline(CanvasPoint first, int segments, Shape shape) {
+      this.first = new WeakReference<CanvasPoint>(first);
+      this.segments = segments;
+      this.shape = shape;
+      this.bounds = shape.getBounds();
+    }
+  }
+}
@@ -5,23 +5,47 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.GridLayout;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import javax.swing.BorderFactory;
+import javax.swing.ButtonGroup;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JButton;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
+import javax.swing.JToggleButton;
+import javax.swing.SwingUtilities;
 import javax.swing.border.EtchedBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import edu.nyu.cs.canvas.controller.CanvasController;
+import edu.nyu.cs.canvas.input.CanvasFilterChain;
+import edu.nyu.cs.canvas.input.CanvasInputFilter;
+import edu.nyu.cs.canvas.input.CanvasInputSink;
+import edu.nyu.cs.canvas.model.CanvasLayer;
 import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasShape;
 import edu.nyu.cs.canvas.CanvasConfig;
 
 /**
@@ -31,15 +55,21 @@ import edu.nyu.cs.canvas.CanvasConfig;
  * @see CanvasPanel
  * The bottom panel stores controls for adjusting paint properties
  *
+ * A minimized view tells its controller it is hidden, so that it stops drawing until it is
+ * restored
+ *
+ * Pen samples go through the input filter of the view, by default a smoothing filter,
+ * before they reach the controller, so the smoothed stroke is the one stored and drawn
+ * by every view
+ * @see CanvasInputFilter
+ *
  * NOTE: To close the current view, press the close view button in the top action panel.
  * To exit out of the application(and closing all views) use standard exit window
  *
  * @author abhishek
  */
 public class CanvasView implements CanvasObserver {
-  //stores the number of views currently in memory, goes to zero when all observers are released
-  public static int canvasCount;
-  //assigns different and strictly increasing IDs to a view
+  //assigns different and strictly increasing IDs to a view, issued by its controller
   private int ID;
   private JFrame frameMain;
   private JPanel centerPanel;
@@ -49,7 +79,35 @@ public class CanvasView implements CanvasObserver {
   private CanvasPoint startPoint;
   private CanvasPoint endPoint;
   private int stroke;
+  //tool currently driving the mouse on the canvas
+  private Tool tool = Tool.PEN;
+  private CanvasLassoTool lassoTool;
+  //filter of live pen input, null to commit raw samples, and the one of the element drawn
+  private CanvasInputFilter inputFilter = CanvasConfig.inputSmoothing ?
+    CanvasFilterChain.createSmoothing() : null;
+  private CanvasInputFilter strokeFilter;
+  private final CanvasPenSink penSink = new CanvasPenSink();
+  private final JCheckBox smoothingBox = new JCheckBox("Smooth", CanvasConfig.inputSmoothing);
+  //corner where the drag of a shape primitive started
+  private Point shapeAnchor;
   private final JSlider slider = new JSlider(JSlider.HORIZONTAL, 2, 10, 2);
+  //layers of the drawing, bottom first, and the one the pen draws on
+  private List<CanvasLayer> layers = Collections.emptyList();
+  private int activeLayer;
+  private final JComboBox<CanvasLayer> layerBox = new JComboBox<CanvasLayer>();
+  private final JCheckBox layerVisible = new JCheckBox("Visible", true);
+  //set while the layer controls are refreshed, so that they do not echo back
+  private boolean updatingLayers;
+  //component templates shared by all views
+  private static final Font labelFont = new Font("Arial", Font.BOLD, 20);
+  private static final Font actionFont = new Font("Arial", Font.BOLD, 12);
+  private static final Dimension actionButtonSize = new Dimension(CanvasConfig.defaultWidth/6,50);
+  private static final Dimension toolButtonSize = new Dimension(90, 40);
+  private static final Dimension colorButtonSize = new Dimension(50, 50);
+  private static final Color[] palette = {Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW,
+    Color.ORANGE, Color.BLACK, Color.GRAY};
+  //size of the dashboard, measured on the first view displayed
+  private static volatile Dimension dashBoardSize;
 
   /**
   * getter for the paint property 'stroke' in view
@@ -83,6 +141,23 @@ public class CanvasView implements CanvasObserver {
     return this.endPoint;
   }
 
+  /**
+  * sets the filter pen samples go through before reaching the controller, it applies from
+  * the next drawing element on
+  * @param inputFilter is the filter, null to commit raw samples
+  */
+  public void setInputFilter(CanvasInputFilter inputFilter) {
+    this.inputFilter = inputFilter;
+    this.smoothingBox.setSelected(inputFilter != null);
+  }
+
+  /**
+  * @return returns the filter pen samples go through, null if there is none
+  */
+  public CanvasInputFilter getInputFilter() {
+    return this.inputFilter;
+  }
+
   /**
   * Controller invokes this method to draw a line between current start
   * and end points
@@ -105,7 +180,8 @@ public class CanvasView implements CanvasObserver {
   @Override
   public void setStartPoint(CanvasPoint endPoint) {
     this.startPoint = new CanvasPoint.Builder(endPoint.getX(), endPoint.getY()).
-      pointWithColor(endPoint.getColor()).pointWithStroke(endPoint.getStroke()).build();
+      pointWithColor(endPoint.getColor()).pointWithStroke(endPoint.getStroke()).
+      pointWithLayer(endPoint.getLayer()).build();
   }
 
   /**
@@ -130,6 +206,62 @@ public class CanvasView implements CanvasObserver {
     this.canvas.draw();
   }
 
+  /**
+  * receives a notification from controller to redraw an area of a layer of the canvas
+  * after ink of that layer changed
+  * @param area is the area of the canvas to redraw
+  * @param layer is the id of the layer to redraw
+  * @param segments is the remaining segments of the layer intersecting the area
+  */
+  @Override
+  public void repaintArea(Rectangle area, int layer, ArrayList<CanvasPoint> segments) {
+    this.canvas.repaintArea(area, layer, segments);
+  }
+
+  /**
+  * receives a notification from controller that the layers changed, the canvas only
+  * composites its layer rasters again
+  * @param layers is the layers ordered from bottom to top
+  * @param activeLayer is the id of the layer the pen draws on
+  */
+  @Override
+  public void changeLayers(List<CanvasLayer> layers, int activeLayer) {
+    this.layers = layers;
+    this.activeLayer = activeLayer;
+    if(this.canvas != null) {
+      this.canvas.setLayers(layers);
+    }
+    this.updatingLayers = true;
+    this.layerBox.removeAllItems();
+    for(CanvasLayer layer : layers) {
+      this.layerBox.addItem(layer);
+      if(layer.getId() == activeLayer) {
+        this.layerBox.setSelectedItem(layer);
+        this.layerVisible.setSelected(layer.isVisible());
+      }
+    }
+    this.updatingLayers = false;
+  }
+
+  /**
+  * @return returns the position of the active layer in the stacking order
+  */
+  private int getActivePosition() {
+    for(int i = 0; i < this.layers.size(); ++i) {
+      if(this.layers.get(i).getId() == this.activeLayer) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+  * @return returns the radius of the eraser, which follows the current stroke
+  */
+  public int getEraserRadius() {
+    return 2 * this.stroke + 4;
+  }
+
   /**
   * whenever a reset is requested, controller notifies all view to reset
   * their paint properties and repaint.
@@ -138,7 +270,10 @@ public class CanvasView implements CanvasObserver {
   public void reset() {
     this.color = CanvasConfig.defaultColor;
     this.stroke = CanvasConfig.defaultStroke;
-    this.canvas.repaint();
+    this.lassoTool.cancel();
+    this.shapeAnchor = null;
+    this.canvas.setPreview(null, null, 0);
+    this.canvas.clear();
     this.slider.setValue(CanvasConfig.defaultStroke);
   }
 
@@ -150,6 +285,16 @@ public class CanvasView implements CanvasObserver {
     return this.frameMain;
   }
 
+  /**
+  * waits until the canvas of the displayed view has been painted for the first time
+  * @param timeoutMillis is the maximum time to wait
+  * @return returns the System.nanoTime() of the first paint, -1 on timeout
+  * @throws InterruptedException if interrupted while waiting
+  */
+  public long awaitFirstPaint(long timeoutMillis) throws InterruptedException {
+    return this.canvas.awaitFirstPaint(timeoutMillis);
+  }
+
   /**
   * getter for the ID of the current view
   * @return returns the ID of the current view
@@ -165,11 +310,71 @@ public class CanvasView implements CanvasObserver {
   */
   public CanvasView(CanvasController controller) {
     this.controller = controller;
-    canvasCount++;
-    this.ID = canvasCount;
+    this.ID = controller.nextViewID();
     this.controller.viewUpdate();
   }
 
+  /**
+  * Tools available on the canvas of a view, shape tools carry their primitive
+  */
+  private enum Tool {
+    PEN("Pen", null), ERASER("Eraser", null), LASSO("Lasso", null),
+    LINE("Line", CanvasShape.LINE), RECTANGLE("Rectangle", CanvasShape.RECTANGLE),
+    ELLIPSE("Ellipse", CanvasShape.ELLIPSE);
+
+    private final String label;
+    private final CanvasShape shape;
+
+    private Tool(String label, CanvasShape shape) {
+      this.label = label;
+      this.shape = shape;
+    }
+  }
+
+  /**
+  * switches the tool used on the canvas, dropping any pending lasso selection or
+  * shape preview
+  * @param tool is the newly selected tool
+  */
+  private void selectTool(Tool tool) {
+    if(this.tool == Tool.LASSO && tool != Tool.LASSO) {
+      this.lassoTool.cancel();
+    }
+    this.shapeAnchor = null;
+    this.canvas.setPreview(null, null, 0);
+    this.tool = tool;
+  }
+
+  /**
+  * Inner class declaring the view hidden while its window is minimized
+  * @author abhishek
+  */
+  private class CanvasWindowListener extends WindowAdapter {
+    @Override
+    public void windowIconified(WindowEvent e) {
+      controller.viewSetVisible(CanvasView.this, false);
+    }
+
+    @Override
+    public void windowDeiconified(WindowEvent e) {
+      controller.viewSetVisible(CanvasView.this, true);
+    }
+  }
+
+  /**
+  * Inner class redrawing the areas the canvas uncovers when it grows past its previous
+  * size, which were never rasterized
+  * @author abhishek
+  */
+  private class CanvasResizeListener extends ComponentAdapter {
+    @Override
+    public void componentResized(ComponentEvent e) {
+      for(Rectangle area : canvas.growExtent()) {
+        controller.viewRedraw(CanvasView.this, area);
+      }
+    }
+  }
+
   /**
   * Inner class for representing mouse press event and corresponding handler
   * @author abhishek
@@ -183,10 +388,53 @@ public class CanvasView implements CanvasObserver {
     */
     @Override
     public void mousePressed(MouseEvent e) {
-      controller.segmentEnd();
-      startPoint = new CanvasPoint.Builder(e.getX(), e.getY()).
-        pointWithColor(getColor()).pointWithStroke(getStroke()).build();
-      controller.viewUpdate(getStartPoint());
+      if(tool == Tool.ERASER) {
+        controller.viewErase(e.getX(), e.getY(), getEraserRadius());
+        return;
+      }
+      if(tool == Tool.LASSO) {
+        lassoTool.mousePressed(e);
+        return;
+      }
+      if(tool.shape != null) {
+        shapeAnchor = e.getPoint();
+        return;
+      }
+      penSink.first = true;
+      strokeFilter = inputFilter;
+      if(strokeFilter == null) {
+        penSink.emit(e.getX(), e.getY(), e.getWhen() * 1000000L);
+      }
+      else {
+        strokeFilter.start(e.getX(), e.getY(), e.getWhen() * 1000000L, penSink);
+      }
+    }
+
+    /**
+    * On mouse-release, completes a lasso or a selection transform, commits the shape
+    * primitive being dragged, or lets the controller seal the drawing element just
+    * drawn with the pen
+    */
+    @Override
+    public void mouseReleased(MouseEvent e) {
+      if(tool == Tool.LASSO) {
+        lassoTool.mouseReleased(e);
+      }
+      else if(tool.shape != null && shapeAnchor != null) {
+        canvas.setPreview(null, null, 0);
+        if(!shapeAnchor.equals(e.getPoint())) {
+          controller.viewAddShape(tool.shape, shapeAnchor.x, shapeAnchor.y, e.getX(), e.getY(),
+            getColor(), getStroke());
+        }
+        shapeAnchor = null;
+      }
+      else if(tool == Tool.PEN) {
+        if(strokeFilter != null) {
+          strokeFilter.finish(penSink);
+          strokeFilter = null;
+        }
+        controller.viewStrokeEnd();
+      }
     }
   }
 
@@ -204,10 +452,66 @@ public class CanvasView implements CanvasObserver {
     */
     @Override
       public void mouseDragged(MouseEvent e) {
-      endPoint = new CanvasPoint.Builder(e.getX(), e.getY()).pointWithColor(getColor())
-        .pointWithStroke(getStroke()).build();
-      controller.viewUpdate(getStartPoint(),getEndPoint());
-      controller.segmentEnd();
+      if(tool == Tool.ERASER) {
+        controller.viewErase(e.getX(), e.getY(), getEraserRadius());
+        return;
+      }
+      if(tool == Tool.LASSO) {
+        lassoTool.mouseDragged(e);
+        return;
+      }
+      if(tool.shape != null) {
+        if(shapeAnchor != null) {
+          canvas.setPreview(tool.shape.toShape(shapeAnchor.x, shapeAnchor.y, e.getX(), e.getY()),
+            getColor(), getStroke());
+        }
+        return;
+      }
+      if(strokeFilter == null) {
+        penSink.emit(e.getX(), e.getY(), e.getWhen() * 1000000L);
+      }
+      else {
+        strokeFilter.sample(e.getX(), e.getY(), e.getWhen() * 1000000L, penSink);
+      }
+    }
+  }
+
+  /**
+  * Inner class turning the pen samples coming out of the input filter into model
+  * entities: the first one starts a drawing element, the next ones each add a segment.
+  * Samples rounding to the pixel of the previous one are dropped
+  * @author abhishek
+  */
+  private class CanvasPenSink implements CanvasInputSink {
+    //true until the first sample of the element has been committed
+    private boolean first = true;
+    private int lastX;
+    private int lastY;
+
+    @Override
+    public void emit(float x, float y, long time) {
+      int px = Math.round(x);
+      int py = Math.round(y);
+      if(first) {
+        first = false;
+        controller.segmentEnd();
+        startPoint = new CanvasPoint.Builder(px, py).pointWithColor(getColor()).
+          pointWithStroke(getStroke()).pointWithLayer(activeLayer).build();
+        controller.viewUpdate(getStartPoint());
+      }
+      else {
+        if(px == lastX && py == lastY) {
+          return;
+        }
+        endPoint = new CanvasPoint.Builder(px, py).pointWithColor(getColor())
+          .pointWithStroke(getStroke()).pointWithLayer(activeLayer).build();
+        controller.viewUpdate(getStartPoint(),getEndPoint());
+        controller.segmentEnd();
+        //the next segment starts here even if the controller commits the input later
+        setStartPoint(endPoint);
+      }
+      lastX = px;
+      lastY = py;
     }
   }
 
@@ -216,7 +520,7 @@ public class CanvasView implements CanvasObserver {
   * @return returns the mail UI frame
   */
   private JPanel createCanvas() {
-    JPanel canvasFrame = new JPanel();
+    JPanel canvasFrame = new JPanel(new BorderLayout());
     this.canvas = new CanvasPanel();
     this.canvas.setPreferredSize(new Dimension(CanvasConfig.defaultWidth,
       CanvasConfig.defaultHeight));
@@ -224,6 +528,9 @@ public class CanvasView implements CanvasObserver {
     this.canvas.repaint();
     this.canvas.addMouseListener(new CanvasMousePressListener());
     this.canvas.addMouseMotionListener(new CanvasMouseMotionListener());
+    this.canvas.addComponentListener(new CanvasResizeListener());
+    this.lassoTool = new CanvasLassoTool(this.controller, this.canvas);
+    this.canvas.setLayers(this.layers);
     canvasFrame.add(canvas);
     canvasFrame.setBackground(Color.BLACK);
     canvasFrame.setBorder(BorderFactory.createEtchedBorder(EtchedBorder.LOWERED));
@@ -240,91 +547,118 @@ public class CanvasView implements CanvasObserver {
     JPanel foreGroundPanel = new JPanel();
     JLabel fgLabel = new JLabel();
     fgLabel.setText("Pick Pen Color: ");
-    fgLabel.setFont(new Font("Arial", Font.BOLD, 20));
-    JButton redForeground = new JButton();
-    redForeground.setPreferredSize(new Dimension(50, 50));
-    redForeground.setBackground(Color.RED);
-    redForeground.addActionListener(new ActionListener() {
-      @Override
-      public void actionPerformed(ActionEvent e) {
-        controller.viewUpdate(Color.RED);
-      }
-    });
-    JButton greenForeground = new JButton();
-    greenForeground.setPreferredSize(new Dimension(50, 50));
-    greenForeground.setBackground(Color.GREEN);
-    greenForeground.addActionListener(new ActionListener() {
+    fgLabel.setFont(labelFont);
+    foreGroundPanel.add(fgLabel);
+    ActionListener colorListener = new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
-        controller.viewUpdate(Color.GREEN);
+        controller.viewUpdate(((JButton) e.getSource()).getBackground());
       }
-    });
-    JButton blueForeground = new JButton();
-    blueForeground.setPreferredSize(new Dimension(50, 50));
-    blueForeground.setBackground(Color.BLUE);
-    blueForeground.addActionListener(new ActionListener() {
+    };
+    for(Color paletteColor : palette) {
+      JButton colorButton = new JButton();
+      colorButton.setPreferredSize(colorButtonSize);
+      colorButton.setBackground(paletteColor);
+      colorButton.addActionListener(colorListener);
+      foreGroundPanel.add(colorButton);
+    }
+    return foreGroundPanel;
+  }
+
+  /**
+  * creates the tool picker panel, a group of toggle buttons of which exactly one,
+  * the pen by default, is selected
+  * @return returns the tool panel
+  */
+  private JPanel getToolPicker() {
+    JPanel toolPanel = new JPanel();
+    JLabel toolLabel = new JLabel("Tool: ");
+    toolLabel.setFont(labelFont);
+    toolPanel.add(toolLabel);
+    ButtonGroup toolGroup = new ButtonGroup();
+    for(final Tool option : Tool.values()) {
+      JToggleButton toggle = new JToggleButton(option.label, option == this.tool);
+      toggle.setPreferredSize(toolButtonSize);
+      toggle.addActionListener(new ActionListener() {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+          selectTool(option);
+        }
+      });
+      toolGroup.add(toggle);
+      toolPanel.add(toggle);
+    }
+    return toolPanel;
+  }
+
+  /**
+  * creates the layer panel: a picker for the layer the pen draws on, its visibility,
+  * and buttons to add a layer or move the active one up or down the stacking order
+  * @return returns the layer panel
+  */
+  private JPanel getLayerPicker() {
+    JPanel layerPanel = new JPanel();
+    JLabel layerLabel = new JLabel("Layer: ");
+    layerLabel.setFont(labelFont);
+    this.layerBox.setPreferredSize(new Dimension(120, 30));
+    this.layerBox.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
-        controller.viewUpdate(Color.BLUE);
+        CanvasLayer layer = (CanvasLayer) layerBox.getSelectedItem();
+        if(!updatingLayers && layer != null) {
+          controller.viewSelectLayer(layer.getId());
+        }
       }
     });
-    JButton yellowForeground = new JButton();
-    yellowForeground.setPreferredSize(new Dimension(50, 50));
-    yellowForeground.setBackground(Color.YELLOW);
-    yellowForeground.addActionListener(new ActionListener() {
+    this.layerVisible.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
-        controller.viewUpdate(Color.YELLOW);
+        if(!updatingLayers) {
+          controller.viewSetLayerVisible(activeLayer, layerVisible.isSelected());
+        }
       }
     });
-    JButton orangeForeground = new JButton();
-    orangeForeground.setPreferredSize(new Dimension(50, 50));
-    orangeForeground.setBackground(Color.ORANGE);
-    orangeForeground.addActionListener(new ActionListener() {
+    JButton addLayerButton = new JButton("New Layer");
+    addLayerButton.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
-        controller.viewUpdate(Color.ORANGE);
+        controller.viewAddLayer();
       }
     });
-    JButton blackForeground = new JButton();
-    blackForeground.setPreferredSize(new Dimension(50, 50));
-    blackForeground.setBackground(Color.BLACK);
-    blackForeground.addActionListener(new ActionListener() {
+    JButton upButton = new JButton("Up");
+    upButton.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
-        controller.viewUpdate(Color.BLACK);
+        controller.viewMoveLayer(activeLayer, getActivePosition() + 1);
       }
     });
-    JButton greyForeground = new JButton();
-    greyForeground.setPreferredSize(new Dimension(50, 50));
-    greyForeground.setBackground(Color.GRAY);
-    greyForeground.addActionListener(new ActionListener() {
+    JButton downButton = new JButton("Down");
+    downButton.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
-        controller.viewUpdate(Color.GRAY);
+        controller.viewMoveLayer(activeLayer, getActivePosition() - 1);
       }
     });
-    foreGroundPanel.add(fgLabel);
-    foreGroundPanel.add(redForeground);
-    foreGroundPanel.add(greenForeground);
-    foreGroundPanel.add(blueForeground);
-    foreGroundPanel.add(yellowForeground);
-    foreGroundPanel.add(orangeForeground);
-    foreGroundPanel.add(blackForeground);
-    foreGroundPanel.add(greyForeground);
-    return foreGroundPanel;
+    layerPanel.add(layerLabel);
+    layerPanel.add(this.layerBox);
+    layerPanel.add(this.layerVisible);
+    layerPanel.add(addLayerButton);
+    layerPanel.add(upButton);
+    layerPanel.add(downButton);
+    return layerPanel;
   }
 
   /**
   * creates the stroke picker slider which is a slider
   * for selecting a stroke between 2 and 10. Moving the slider will update the controller
-  * to notify all views(including this one) to update their slider settings
+  * to notify all views(including this one) to update their slider settings. The smoothing
+  * of the pen input of this view is switched on and off next to it
   * @return returns the slider panel
   */
   private JPanel getStrokePicker() {
     JPanel strokePanel = new JPanel();
     JLabel strokeLabel = new JLabel("Stroke: ");
-    strokeLabel.setFont(new Font("Arial", Font.BOLD, 20));
+    strokeLabel.setFont(labelFont);
     this.slider.setMajorTickSpacing(8);
     this.slider.setMinorTickSpacing(1);
     this.slider.setPaintTicks(true);
@@ -335,82 +669,125 @@ public class CanvasView implements CanvasObserver {
         controller.viewUpdate(slider.getValue());
       }
     });
+    this.smoothingBox.addActionListener(new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        inputFilter = smoothingBox.isSelected() ? CanvasFilterChain.createSmoothing() : null;
+      }
+    });
     strokePanel.add(strokeLabel);
     strokePanel.add(slider);
+    strokePanel.add(this.smoothingBox);
     return strokePanel;
   }
 
   /**
   * creates the top panel with buttons for launching custom actions
   * 1. reset all views to blank
-  * 2. launch a black view
+  * 2. undo the last reset
   * 3. launch a stateful view
-  * 4. close the current view
+  * 4. launch a blank view
+  * 5. export the drawing as SVG
+  * 6. close the current view
   * @return returns the action buttons panel
   */
   private JPanel createTopPanel() {
-    JPanel buttonPanel = new JPanel(new GridLayout(1,4));
-    JButton resetButton = new JButton();
-    resetButton.setText("Reset All");
-    resetButton.setFont(new Font("Arial", Font.BOLD, 12));
-    resetButton.setPreferredSize(new Dimension(CanvasConfig.defaultWidth/4,50));
-    resetButton.addActionListener(new ActionListener() {
+    JPanel buttonPanel = new JPanel(new GridLayout(1,6));
+    buttonPanel.add(createActionButton("Reset All", new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
         controller.viewReset();
       }
-    });
-    JButton addButton = new JButton();
-    addButton.setText("Fork Stateful Canvas");
-    addButton.setFont(new Font("Arial", Font.BOLD, 12));
-    addButton.setPreferredSize(new Dimension(CanvasConfig.defaultWidth/4,50));
-    addButton.addActionListener(new ActionListener() {
+    }));
+    buttonPanel.add(createActionButton("Undo Reset", new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        controller.viewUndoReset();
+      }
+    }));
+    buttonPanel.add(createActionButton("Fork Stateful Canvas", new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
         controller.viewAddCanvas();
       }
-    });
-    JButton addBlankButton = new JButton();
-    addBlankButton.setText("Fork Blank Canvas");
-    addBlankButton.setFont(new Font("Arial", Font.BOLD, 12));
-    addBlankButton.setPreferredSize(new Dimension(CanvasConfig.defaultWidth/4,50));
-    addBlankButton.addActionListener(new ActionListener() {
+    }));
+    buttonPanel.add(createActionButton("Fork Blank Canvas", new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
         controller.viewAddBlankCanvas();
       }
-    });
-    JButton removeButton = new JButton();
-    removeButton.setText("Remove This");
-    removeButton.setForeground(Color.RED);
-    removeButton.setFont(new Font("Arial", Font.BOLD, 12));
-    removeButton.setPreferredSize(new Dimension(CanvasConfig.defaultWidth/4,50));
-    removeButton.addActionListener(new ActionListener() {
+    }));
+    buttonPanel.add(createActionButton("Export SVG", new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        exportDrawing();
+      }
+    }));
+    JButton removeButton = createActionButton("Remove This", new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
         controller.viewRemoveCanvas(ID);
       }
     });
-    buttonPanel.add(resetButton);
-    buttonPanel.add(addButton);
-    buttonPanel.add(addBlankButton);
+    removeButton.setForeground(Color.RED);
     buttonPanel.add(removeButton);
     return buttonPanel;
   }
 
   /**
-  * Combines color and strokepicker panels
+  * creates a button of the top panel from the shared template
+  * @param text is the label of the button
+  * @param listener is the action of the button
+  * @return returns the button
+  */
+  private static JButton createActionButton(String text, ActionListener listener) {
+    JButton button = new JButton(text);
+    button.setFont(actionFont);
+    button.setPreferredSize(actionButtonSize);
+    button.addActionListener(listener);
+    return button;
+  }
+
+  /**
+  * asks the user for a destination file and exports the shared drawing to it
+  */
+  private void exportDrawing() {
+    JFileChooser chooser = new JFileChooser();
+    if(chooser.showSaveDialog(this.frameMain) != JFileChooser.APPROVE_OPTION) {
+      return;
+    }
+    try {
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(chooser.getSelectedFile()));
+      try {
+        this.controller.viewExport(out);
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      JOptionPane.showMessageDialog(this.frameMain, "Export failed: " + e.getMessage(),
+        "Canvas " + this.ID, JOptionPane.ERROR_MESSAGE);
+    }
+  }
+
+  /**
+  * Combines tool, layer, color and strokepicker panels
   * @return returns the cmbined panel
   */
   private JPanel createDashBoard() {
     JPanel dashBoard = new JPanel(new BorderLayout());
+    JPanel toolBoard = new JPanel(new GridLayout(2, 1));
+    toolBoard.add(getToolPicker());
+    toolBoard.add(getLayerPicker());
+    dashBoard.add(toolBoard, BorderLayout.NORTH);
     dashBoard.add(getColorPicker(), BorderLayout.CENTER);
     dashBoard.add(getStrokePicker(), BorderLayout.SOUTH);
     return dashBoard;
   }
 
   /**
-  * makes the current view UI visible
+  * makes the current view UI visible. The first view builds all of its panels up front,
+  * later views show their canvas first and build the dashboard once the frame is up,
+  * in a placeholder of the size measured on the first view
   */
   public void displayView() {
     this.frameMain = new JFrame("Canvas " + this.ID);
@@ -421,10 +798,31 @@ public class CanvasView implements CanvasObserver {
     this.centerPanel = new JPanel(new BorderLayout());
     this.centerPanel.add(this.createTopPanel(), BorderLayout.NORTH);
     this.centerPanel.add(this.createCanvas(), BorderLayout.CENTER);
-    this.centerPanel.add(this.createDashBoard(), BorderLayout.SOUTH);
+    final JPanel dashBoardHolder = new JPanel(new BorderLayout());
+    Dimension knownSize = dashBoardSize;
+    if(knownSize == null) {
+      dashBoardHolder.add(this.createDashBoard(), BorderLayout.CENTER);
+    }
+    else {
+      dashBoardHolder.setPreferredSize(knownSize);
+    }
+    this.centerPanel.add(dashBoardHolder, BorderLayout.SOUTH);
     this.frameMain.add(this.centerPanel);
+    this.frameMain.addWindowListener(new CanvasWindowListener());
     this.frameMain.pack();
     this.frameMain.setVisible(true);
+    if(knownSize == null) {
+      dashBoardSize = dashBoardHolder.getSize();
+      return;
+    }
+    //the canvas is shown first, the dashboard is filled in right after
+    SwingUtilities.invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        dashBoardHolder.add(createDashBoard(), BorderLayout.CENTER);
+        dashBoardHolder.revalidate();
+      }
+    });
   }
 
   /**
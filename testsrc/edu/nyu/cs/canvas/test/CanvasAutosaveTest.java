@@ -0,0 +1,171 @@
+package edu.nyu.cs.canvas.test;
+
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import edu.nyu.cs.canvas.controller.CanvasController;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasModelSnapshot;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.persist.CanvasAutosave;
+
+public class CanvasAutosaveTest {
+  private File directory;
+  private CanvasModel model;
+  private CanvasController controller;
+
+  @Before
+  public void setUp() throws Exception {
+    this.directory = File.createTempFile("canvas-autosave", "");
+    this.directory.delete();
+    this.model = CanvasModel.createInstance();
+    this.controller = CanvasController.createInstance(this.model);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    File[] files = this.directory.listFiles();
+    if(files != null) {
+      for(File file : files) {
+        file.delete();
+      }
+    }
+    this.directory.delete();
+  }
+
+  private static void assertSameDrawing(List<CanvasPoint> expected, List<CanvasPoint> actual) {
+    assertEquals("Wrong number of entities", expected.size(), actual.size());
+    for(int i = 0; i < expected.size(); ++i) {
+      CanvasPoint e = expected.get(i), a = actual.get(i);
+      assertEquals("Wrong x at " + i, e.getX(), a.getX());
+      assertEquals("Wrong y at " + i, e.getY(), a.getY());
+      if(!e.isEndMarker()) {
+        assertEquals("Wrong color at " + i, e.getColor(), a.getColor());
+        assertEquals("Wrong stroke at " + i, e.getStroke(), a.getStroke());
+        assertEquals("Wrong layer at " + i, e.getLayer(), a.getLayer());
+        assertEquals("Wrong controls at " + i, e.hasControls(), a.hasControls());
+      }
+    }
+  }
+
+  @Test
+  public void testRecoverSnapshotAndJournalTail() throws Exception {
+    CanvasAutosave autosave = CanvasAutosave.start(this.controller, this.model, this.directory,
+      60000, 1000000);
+    this.controller.viewUpdate(Color.RED);
+    CanvasFixtures.drawStroke(this.controller, this.model, 10, 10, 30);
+    autosave.snapshotNow();
+    this.controller.viewAddLayer();
+    this.controller.viewUpdate(7);
+    CanvasFixtures.drawStroke(this.controller, this.model, 50, 80, 20);
+    this.controller.viewErase(60, 81, 3);
+    autosave.stop();
+    assertNull("Autosave should not have failed", autosave.getFailure());
+    assertTrue("Snapshots should be written", autosave.getSnapshots() >= 2);
+    //a crash while appending leaves a torn record at the end of the journal
+    for(File file : this.directory.listFiles()) {
+      if(file.getName().startsWith("journal-")) {
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[] {1, 0, 0});
+        out.close();
+      }
+    }
+    CanvasModelSnapshot recovered = CanvasAutosave.recover(this.directory);
+    assertNotNull("Drawing should be recovered", recovered);
+    CanvasModel restored = CanvasModel.createInstance();
+    restored.restore(recovered);
+    assertSameDrawing(this.model.loadAllPoints(), restored.loadAllPoints());
+    assertEquals("Layers should be recovered", 2, restored.getLayers().size());
+    assertEquals("Active layer should be recovered", this.model.getActiveLayer(),
+      restored.getActiveLayer());
+    assertEquals("Color should be recovered", Color.RED, restored.getColor());
+    assertEquals("Stroke should be recovered", 7, restored.getStroke());
+  }
+
+  @Test
+  public void testRecoveryKeepsInputDrawnMeanwhile() throws Exception {
+    CanvasFixtures.drawStroke(this.controller, this.model, 10, 10, 30);
+    CanvasAutosave autosave = CanvasAutosave.start(this.controller, this.model, this.directory,
+      60000, 1000000);
+    autosave.stop();
+    List<CanvasPoint> saved = this.model.loadAllPoints();
+    CanvasModel relaunched = CanvasModel.createInstance();
+    this.model = relaunched;
+    this.controller = CanvasController.createInstance(relaunched);
+    CanvasFixtures.drawStroke(this.controller, this.model, 200, 200, 10);
+    List<CanvasPoint> drawn = new ArrayList<CanvasPoint>(relaunched.loadAllPoints());
+    this.controller.viewRecover(CanvasAutosave.recover(this.directory));
+    List<CanvasPoint> merged = relaunched.loadAllPoints();
+    assertSameDrawing(saved, merged.subList(0, saved.size()));
+    assertSameDrawing(drawn, merged.subList(merged.size() - drawn.size(), merged.size()));
+  }
+
+  @Test
+  public void testSnapshotDurableBeforeCompaction() throws Exception {
+    CanvasFixtures.drawStroke(this.controller, this.model, 10, 10, 20);
+    CanvasAutosave autosave = CanvasAutosave.start(this.controller, this.model, this.directory,
+      60000, 1000000);
+    final List<String> steps = Collections.synchronizedList(new ArrayList<String>());
+    autosave.setListener(new CanvasAutosave.Listener() {
+      @Override
+      public void snapshotDurable(long generation) {
+        steps.add("durable " + generation);
+      }
+
+      @Override
+      public void fileDeleted(File file) {
+        steps.add("deleted " + file.getName());
+      }
+    });
+    autosave.snapshotNow();
+    CanvasFixtures.drawStroke(this.controller, this.model, 40, 40, 20);
+    autosave.snapshotNow();
+    autosave.stop();
+    assertNull("Autosave should not have failed", autosave.getFailure());
+    long durable = -1;
+    int deletions = 0;
+    for(String step : steps) {
+      if(step.startsWith("durable ")) {
+        durable = Long.parseLong(step.substring("durable ".length()));
+        continue;
+      }
+      ++deletions;
+      String name = step.substring("deleted ".length());
+      long generation = Long.parseLong(name.replaceAll("[^0-9]", ""));
+      assertTrue("File " + name + " deleted before a newer snapshot was durable, steps " +
+        steps, generation < durable);
+    }
+    assertTrue("Older generations should be deleted", deletions >= 2);
+    assertNotNull("Drawing should be recovered", CanvasAutosave.recover(this.directory));
+  }
+
+  @Test
+  public void testCorruptSnapshotRejected() throws Exception {
+    CanvasFixtures.drawStroke(this.controller, this.model, 10, 10, 200);
+    CanvasAutosave autosave = CanvasAutosave.start(this.controller, this.model, this.directory,
+      60000, 1000000);
+    autosave.snapshotNow();
+    autosave.stop();
+    this.controller.viewReset();
+    assertNotNull("Intact snapshot should be recovered", CanvasAutosave.recover(this.directory));
+    for(File file : this.directory.listFiles()) {
+      if(file.getName().startsWith("snapshot-")) {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(raf.length() / 2);
+        int b = raf.read();
+        raf.seek(raf.length() / 2);
+        raf.write(b ^ 0x5a);
+        raf.close();
+      }
+    }
+    assertNull("Corrupt snapshot should be rejected", CanvasAutosave.recover(this.directory));
+  }
+}
\ No newline at end of file
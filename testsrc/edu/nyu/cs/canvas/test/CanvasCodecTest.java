@@ -0,0 +1,241 @@
+package edu.nyu.cs.canvas.test;
+
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.codec.CanvasCodec;
+import edu.nyu.cs.canvas.codec.CanvasEntityFormat;
+import edu.nyu.cs.canvas.load.CanvasCodecBenchmark;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasStrokeBatch;
+
+public class CanvasCodecTest {
+  private static List<CanvasPoint> samplePoints() {
+    List<CanvasPoint> points = new ArrayList<CanvasPoint>();
+    points.add(CanvasConfig.getEndMarker());
+    for(int i = 0; i < 50; ++i) {
+      points.add(new CanvasPoint.Builder(i * 3, 100 - i).pointWithColor(new Color(i, 2 * i, 255 - i,
+        128)).pointWithStroke(1 + i % 7).pointWithLayer(i % 3).build());
+    }
+    points.add(new CanvasPoint.Builder(10, 20).pointWithColor(Color.RED).pointWithStroke(4).
+      pointWithControls(1.5f, 2.5f, 3.25f, -4.75f).build());
+    points.add(CanvasConfig.getEndMarker());
+    return points;
+  }
+
+  private static CanvasStrokeBatch sampleBatch(int strokes) {
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    int[] xs = new int[100];
+    int[] ys = new int[100];
+    for(int i = 0; i < strokes; ++i) {
+      for(int j = 0; j < xs.length; ++j) {
+        xs[j] = i + j;
+        ys[j] = i * 2 - j;
+      }
+      batch.addStroke(xs, ys, 1 + i % xs.length, (i % 2 == 0) ? Color.BLACK : Color.GREEN,
+        1 + i % 5);
+    }
+    return batch;
+  }
+
+  private static void assertSamePoints(List<CanvasPoint> expected, List<CanvasPoint> actual) {
+    assertEquals("Wrong number of entities", expected.size(), actual.size());
+    for(int i = 0; i < expected.size(); ++i) {
+      CanvasPoint e = expected.get(i), a = actual.get(i);
+      assertEquals("Wrong x at " + i, e.getX(), a.getX());
+      assertEquals("Wrong y at " + i, e.getY(), a.getY());
+      if(!e.isEndMarker()) {
+        assertEquals("Wrong color at " + i, e.getColor(), a.getColor());
+        assertEquals("Wrong stroke at " + i, e.getStroke(), a.getStroke());
+        assertEquals("Wrong layer at " + i, e.getLayer(), a.getLayer());
+        assertEquals("Wrong controls at " + i, e.hasControls(), a.hasControls());
+        if(e.hasControls()) {
+          assertEquals("Wrong control at " + i, e.getControlY2(), a.getControlY2(), 0);
+        }
+      }
+    }
+  }
+
+  private static void assertSameBatch(CanvasStrokeBatch expected, CanvasStrokeBatch actual) {
+    assertEquals("Wrong stroke count", expected.getStrokeCount(), actual.getStrokeCount());
+    assertEquals("Wrong point count", expected.getPointCount(), actual.getPointCount());
+    for(int i = 0; i < expected.getStrokeCount(); ++i) {
+      assertEquals("Wrong stroke length", expected.getStrokeLength(i), actual.getStrokeLength(i));
+      assertEquals("Wrong stroke color", expected.getStrokeColor(i), actual.getStrokeColor(i));
+      assertEquals("Wrong stroke width", expected.getStrokeWidth(i), actual.getStrokeWidth(i));
+    }
+    for(int i = 0; i < expected.getPointCount(); ++i) {
+      assertEquals("Wrong x", expected.getX(i), actual.getX(i));
+      assertEquals("Wrong y", expected.getY(i), actual.getY(i));
+    }
+  }
+
+  @Test
+  public void testPointsRoundTrip() throws Exception {
+    List<CanvasPoint> points = samplePoints();
+    CanvasCodec codec = new CanvasCodec(Integer.MAX_VALUE);
+    //a direct buffer in little endian order, the frame itself is big endian regardless
+    ByteBuffer buffer = ByteBuffer.allocateDirect(CanvasCodec.maxFrameSize(points) + 8).
+      order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(7);
+    codec.writePoints(points, buffer);
+    buffer.putInt(9);
+    buffer.flip();
+    assertEquals("Prefix should be untouched", 7, buffer.getInt());
+    assertEquals("Wrong frame type", CanvasCodec.POINTS, CanvasCodec.frameType(buffer));
+    assertEquals("Wrong frame size", CanvasCodec.maxFrameSize(points),
+      CanvasCodec.frameSize(buffer));
+    assertSamePoints(points, codec.readPoints(buffer));
+    assertEquals("Reading should stop at the end of the frame", 9, buffer.getInt());
+    assertEquals("Byte order of the buffer should be kept", ByteOrder.LITTLE_ENDIAN,
+      buffer.order());
+  }
+
+  @Test
+  public void testBatchRoundTripCompressed() throws Exception {
+    CanvasStrokeBatch batch = sampleBatch(300);
+    CanvasCodec codec = new CanvasCodec(1024);
+    ByteBuffer buffer = ByteBuffer.allocate(2 * CanvasCodec.maxFrameSize(batch));
+    codec.writeBatch(batch, buffer);
+    int compressedSize = buffer.position();
+    assertTrue("Large batch should be compressed", compressedSize <
+      CanvasCodec.maxFrameSize(batch));
+    codec.writeBatch(sampleBatch(3), buffer);
+    buffer.flip();
+    CanvasStrokeBatch decoded = new CanvasStrokeBatch();
+    assertSame("Batch should be decoded into the given one", decoded,
+      codec.readBatch(buffer, decoded));
+    assertSameBatch(batch, decoded);
+    assertEquals("Small batch should follow", compressedSize, buffer.position());
+    assertSameBatch(sampleBatch(3), codec.readBatch(buffer, decoded));
+    assertFalse("Both frames should be consumed", buffer.hasRemaining());
+  }
+
+  @Test
+  public void testIncompleteAndCorruptFrames() throws Exception {
+    CanvasCodec codec = new CanvasCodec(0);
+    ByteBuffer buffer = ByteBuffer.allocate(CanvasCodec.maxFrameSize(sampleBatch(50)));
+    codec.writeBatch(sampleBatch(50), buffer);
+    buffer.flip();
+    ByteBuffer header = buffer.duplicate();
+    header.limit(CanvasCodec.HEADER_SIZE - 1);
+    assertEquals("Partial header should be reported", -1, CanvasCodec.frameSize(header));
+    ByteBuffer partial = buffer.duplicate();
+    partial.limit(buffer.limit() - 1);
+    try {
+      codec.readBatch(partial, new CanvasStrokeBatch());
+      fail("Incomplete frame should be rejected");
+    } catch (IOException e) {
+      //expected
+    }
+    try {
+      codec.readPoints(buffer.duplicate());
+      fail("Frame of another type should be rejected");
+    } catch (IOException e) {
+      //expected
+    }
+    buffer.put(CanvasCodec.HEADER_SIZE + 10, (byte) (buffer.get(CanvasCodec.HEADER_SIZE + 10) ^ 0x55));
+    try {
+      codec.readBatch(buffer, new CanvasStrokeBatch());
+      fail("Corrupt payload should be rejected");
+    } catch (IOException e) {
+      //expected
+    }
+    buffer.putInt(0, 0);
+    try {
+      CanvasCodec.frameSize(buffer);
+      fail("Bad magic should be rejected");
+    } catch (IOException e) {
+      //expected
+    }
+  }
+
+  @Test
+  public void testCorruptInflatedLength() throws Exception {
+    CanvasCodec codec = new CanvasCodec(0);
+    ByteBuffer buffer = ByteBuffer.allocate(CanvasCodec.maxFrameSize(sampleBatch(50)));
+    codec.writeBatch(sampleBatch(50), buffer);
+    buffer.flip();
+    int length = buffer.getInt(16);
+    int validLength = buffer.getInt(12);
+    assertTrue("Frame should be compressed", length < validLength);
+    //a header claiming a huge payload must fail without allocating it
+    int[] rawLengths = {Integer.MAX_VALUE, CanvasCodec.MAX_PAYLOAD + 1, length * 2000, -1};
+    for(int rawLength : rawLengths) {
+      ByteBuffer frame = buffer.duplicate();
+      frame.putInt(12, rawLength);
+      try {
+        codec.readBatch(frame, new CanvasStrokeBatch());
+        fail("Inflated length " + rawLength + " should be rejected");
+      } catch (IOException e) {
+        assertTrue("Error should name the length", e.getMessage().contains("" + rawLength));
+      }
+    }
+    buffer.putInt(12, validLength);
+    assertEquals("Valid frame should still decode", 50,
+      codec.readBatch(buffer, new CanvasStrokeBatch()).getStrokeCount());
+  }
+
+  @Test
+  public void testFramesAndStreamsShareEntityLayout() throws Exception {
+    List<CanvasPoint> points = samplePoints();
+    ByteBuffer frame = ByteBuffer.allocate(CanvasCodec.maxFrameSize(points));
+    new CanvasCodec(Integer.MAX_VALUE).writePoints(points, frame);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    ByteBuffer scratch = CanvasEntityFormat.createScratch();
+    for(CanvasPoint point : points) {
+      CanvasEntityFormat.write(out, point, scratch);
+    }
+    out.close();
+    byte[] streamed = bytes.toByteArray();
+    assertEquals("Payload should be as long as the stream", frame.position() -
+      CanvasCodec.HEADER_SIZE, streamed.length);
+    for(int i = 0; i < streamed.length; ++i) {
+      assertEquals("Byte " + i + " should match", frame.get(CanvasCodec.HEADER_SIZE + i),
+        streamed[i]);
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(streamed));
+    List<CanvasPoint> read = new ArrayList<CanvasPoint>();
+    for(int i = 0; i < points.size(); ++i) {
+      read.add(CanvasEntityFormat.read(in, scratch));
+    }
+    assertSamePoints(points, read);
+    assertEquals("Stream should be consumed", -1, in.read());
+  }
+
+  @Test
+  public void testPointsAreSerializable() throws Exception {
+    List<CanvasPoint> points = samplePoints();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(new ArrayList<CanvasPoint>(points));
+    out.close();
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    @SuppressWarnings("unchecked")
+    List<CanvasPoint> read = (List<CanvasPoint>) in.readObject();
+    assertSamePoints(points, read);
+  }
+
+  @Test
+  public void testBenchmarkRuns() throws Exception {
+    Map<String, Double> results = new CanvasCodecBenchmark(50, 20, 2).run();
+    assertEquals("Codec points should take 16 bytes per point plus markers", 16.8,
+      results.get("codec points bytes"), 0.05);
+    assertTrue("Codec should be more compact than java serialization",
+      results.get("codec batch bytes") < results.get("java serialization bytes"));
+  }
+}
\ No newline at end of file
@@ -2,11 +2,18 @@ package edu.nyu.cs.canvas.test;
 
 import static org.junit.Assert.*;
 import java.awt.Color;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 import edu.nyu.cs.canvas.CanvasConfig;
 import edu.nyu.cs.canvas.controller.CanvasController;
+import edu.nyu.cs.canvas.controller.CanvasPipeline;
+import edu.nyu.cs.canvas.load.CanvasLoadGenerator;
+import edu.nyu.cs.canvas.load.CanvasLoadReport;
 import edu.nyu.cs.canvas.model.*;
+import edu.nyu.cs.canvas.view.CanvasObserver;
 import edu.nyu.cs.canvas.view.CanvasView;
 
 public class CanvasControllerTest {
@@ -154,4 +161,222 @@ public class CanvasControllerTest {
     this.model.resetModel();
     this.controller.releaseObservers();
   }
+
+  @Test
+  public void testBulkImport() {
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    batch.addStroke(new int[] {3, 4}, new int[] {5, 6}, 2, Color.RED, 2);
+    this.controller.viewImport(batch);
+    boolean found = false;
+    for(CanvasPoint p : this.model.getAllPoints()) {
+      if(p.getX() == 4 && p.getY() == 6 && p.getColor().equals(Color.RED)) {
+        found = true;
+        break;
+      }
+    }
+    assertTrue("Imported point not found in model", found);
+    this.model.resetModel();
+  }
+
+  @Test
+  public void testPipelineCommitsAllInput() throws Exception {
+    CanvasModel piped = CanvasModel.createInstance();
+    final CanvasController pipedController = CanvasController.createInstance(piped);
+    CanvasPipeline pipeline = pipedController.startPipeline(16);
+    Thread[] drawers = new Thread[4];
+    for(int t = 0; t < drawers.length; ++t) {
+      final int row = t * 10;
+      drawers[t] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for(int i = 0; i < 100; ++i) {
+            CanvasPoint start = new CanvasPoint.Builder(i, row).build();
+            CanvasPoint end = new CanvasPoint.Builder(i + 1, row).build();
+            pipedController.viewUpdate(start, end);
+          }
+        }
+      });
+      drawers[t].start();
+    }
+    for(Thread drawer : drawers) {
+      drawer.join();
+    }
+    assertEquals("Queued input should be committed before a query", 400 * 2,
+      pipedController.viewSegments(new Rectangle(0, 0, 200, 50), 0).size());
+    pipedController.stopPipeline();
+    assertTrue("Pipeline should be stopped", pipedController.getPipeline() == null);
+    assertEquals("Every event should be committed", 400, pipeline.getCommittedEvents());
+    assertTrue("High water mark should be bounded by the capacity",
+      pipeline.getHighWaterMark() <= pipeline.getCapacity());
+    assertTrue("Batches should be counted", pipeline.getCommittedBatches() > 0);
+  }
+
+  @Test
+  public void testPipelineLeavesStartPointsToViews() throws Exception {
+    CanvasController pipedController = CanvasController.createInstance(
+      CanvasModel.createInstance());
+    RecordingObserver observer = new RecordingObserver();
+    pipedController.registerView(observer);
+    pipedController.startPipeline(16);
+    CanvasPoint start = new CanvasPoint.Builder(10, 10).build();
+    for(int i = 1; i <= 50; ++i) {
+      CanvasPoint end = new CanvasPoint.Builder(10 + i, 10).build();
+      pipedController.viewUpdate(start, end);
+      start = end;
+    }
+    pipedController.stopPipeline();
+    assertEquals("Every segment should be drawn", 50, observer.lines);
+    assertEquals("Writer thread should not move start points", 0, observer.startPoints);
+    pipedController.viewUpdate(start, new CanvasPoint.Builder(100, 10).build());
+    assertEquals("Inline commit should move start points", 1, observer.startPoints);
+  }
+
+  @Test
+  public void testRemoveObserverWhileDrawing() throws Exception {
+    final CanvasController pipedController = CanvasController.createInstance(
+      CanvasModel.createInstance());
+    RecordingObserver kept = new RecordingObserver();
+    pipedController.registerView(kept);
+    //a view failing to draw from the writer thread must not stop the writer either
+    pipedController.registerView(new RecordingObserver() {
+      @Override
+      public void drawLine(CanvasPoint startPoint, CanvasPoint endPoint) {
+        if(Thread.currentThread().getName().equals("canvas-pipeline-writer")) {
+          throw new IllegalStateException("view is gone");
+        }
+      }
+    });
+    final CanvasPipeline pipeline = pipedController.startPipeline(8);
+    Thread drawer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        CanvasPoint start = new CanvasPoint.Builder(0, 0).build();
+        for(int i = 1; i <= 2000; ++i) {
+          CanvasPoint end = new CanvasPoint.Builder(i % 200, i / 200).build();
+          pipedController.viewUpdate(start, end);
+          start = end;
+        }
+      }
+    });
+    drawer.start();
+    while(drawer.isAlive()) {
+      RecordingObserver passing = new RecordingObserver();
+      pipedController.registerView(passing);
+      assertTrue("Observer should be removed", pipedController.deregisterObserver(passing));
+    }
+    drawer.join();
+    pipedController.stopPipeline();
+    assertEquals("Every event should be committed", 2000, pipeline.getCommittedEvents());
+    assertTrue("Kept view should have drawn", kept.lines > 0);
+  }
+
+  @Test
+  public void testLoadGeneratorReportsRun() throws InterruptedException {
+    CanvasLoadReport report = new CanvasLoadGenerator.Builder().loadWithUsers(3).
+      loadWithStrokeRate(0).loadWithStrokeLength(20).loadWithChangeEvery(2).
+      loadWithDuration(200).loadWithObservers(2).loadWithPipeline(64).build().run();
+    assertEquals("Every user should be reported", 3, report.getUsers());
+    assertTrue("Segments should be delivered", report.getEvents() > 0);
+    assertTrue("Throughput should be positive", report.getThroughput() > 0);
+    assertTrue("Percentiles should be ordered",
+      report.getLatencyPercentile(50) <= report.getLatencyPercentile(99));
+    assertTrue("High water mark should be bounded by the capacity",
+      report.getHighWaterMark() <= 64);
+  }
+
+  @Test
+  public void testHiddenViewCatchesUp() {
+    CanvasModel hiddenModel = CanvasModel.createInstance();
+    CanvasController hiddenController = CanvasController.createInstance(hiddenModel);
+    RecordingObserver observer = new RecordingObserver();
+    hiddenController.registerView(observer);
+    hiddenController.viewSetVisible(observer, false);
+    assertFalse("View should be hidden", hiddenController.isViewVisible(observer));
+    CanvasFixtures.drawStroke(hiddenController, hiddenModel, 10, 10, 40, false);
+    assertEquals("Hidden view should not draw", 0, observer.lines);
+    hiddenController.viewSetVisible(observer, true);
+    assertTrue("View should be visible", hiddenController.isViewVisible(observer));
+    assertEquals("Catch up should be one redraw per layer", 1, observer.repaints);
+    assertTrue("Redrawn area should cover the missed ink",
+      observer.area.contains(new Rectangle(10, 10, 100, 1)));
+    assertTrue("Redraw should carry the missed segments", observer.segments >= 40 * 2);
+    hiddenController.viewSetVisible(observer, false);
+    for(int i = 0; i <= CanvasConfig.catchUpLimit; ++i) {
+      hiddenController.viewUpdate(new CanvasPoint.Builder(1, 1).build());
+    }
+    //ink beyond the default size, on a canvas grown past it
+    CanvasPoint farPoint = new CanvasPoint.Builder(CanvasConfig.defaultWidth + 300,
+      CanvasConfig.defaultHeight + 200).build();
+    hiddenController.viewUpdate(new CanvasPoint.Builder(1, 1).build(), farPoint);
+    hiddenController.viewSetVisible(observer, true);
+    assertTrue("Far behind view should redraw the whole canvas", observer.area.contains(
+      new Rectangle(0, 0, CanvasConfig.defaultWidth, CanvasConfig.defaultHeight)));
+    assertTrue("Redraw should reach the ink beyond the default size",
+      observer.area.contains(farPoint.getX(), farPoint.getY()));
+  }
+
+  @Test
+  public void testRedrawUncoveredArea() {
+    CanvasModel redrawn = CanvasModel.createInstance();
+    CanvasController redrawController = CanvasController.createInstance(redrawn);
+    RecordingObserver observer = new RecordingObserver();
+    redrawController.registerView(observer);
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    batch.addStroke(new int[] {900, 1000}, new int[] {50, 50}, 2, Color.RED, 2);
+    redrawController.viewImport(batch);
+    redrawn.addLayer("Top");
+    Rectangle uncovered = new Rectangle(850, 0, 200, 100);
+    int repaints = observer.repaints;
+    redrawController.viewRedraw(observer, uncovered);
+    assertEquals("Every layer should be redrawn", repaints + 2, observer.repaints);
+    assertEquals("Uncovered area should be redrawn", uncovered, observer.area);
+  }
+
+  /**
+  * observer recording what it is asked to draw
+  */
+  private static class RecordingObserver implements CanvasObserver {
+    private int lines;
+    private int startPoints;
+    private int repaints;
+    private int segments;
+    private Rectangle area;
+
+    @Override
+    public void drawLine(CanvasPoint startPoint, CanvasPoint endPoint) {
+      this.lines++;
+    }
+
+    @Override
+    public void changeColor(Color color) {
+    }
+
+    @Override
+    public void changeStroke(int stroke) {
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public void copyContent(ArrayList<CanvasPoint> allPoints) {
+    }
+
+    @Override
+    public void setStartPoint(CanvasPoint endPoint) {
+      this.startPoints++;
+    }
+
+    @Override
+    public void repaintArea(Rectangle area, int layer, ArrayList<CanvasPoint> segments) {
+      this.repaints++;
+      this.segments = segments.size();
+      this.area = area;
+    }
+
+    @Override
+    public void changeLayers(List<CanvasLayer> layers, int activeLayer) {
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package edu.nyu.cs.canvas.test;
+
+import edu.nyu.cs.canvas.controller.CanvasController;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+
+/**
+ * Drawing helpers shared by the tests, they go through the controller the way a view does
+ * @author abhishek
+ */
+final class CanvasFixtures {
+  private CanvasFixtures() {
+  }
+
+  /**
+  * draws a sealed stroke with the paint properties and layer of the model
+  * @see #drawStroke(CanvasController, CanvasModel, int, int, int, boolean)
+  */
+  static void drawStroke(CanvasController controller, CanvasModel model, int x, int y,
+    int length) {
+    drawStroke(controller, model, x, y, length, true);
+  }
+
+  /**
+  * draws a stroke the way a view does: start point, then one segment per drag, 3 pixels
+  * apart to the right and slightly wavy
+  * @param controller is the controller of the model
+  * @param model is the model giving the paint properties and layer
+  * @param x is the x coordinate of the start point
+  * @param y is the y coordinate of the start point
+  * @param length is the number of segments
+  * @param seal is true to end the stroke as a mouse release does, fitting it
+  */
+  static void drawStroke(CanvasController controller, CanvasModel model, int x, int y,
+    int length, boolean seal) {
+    CanvasPoint startPoint = new CanvasPoint.Builder(x, y).pointWithColor(model.getColor()).
+      pointWithStroke(model.getStroke()).pointWithLayer(model.getActiveLayer()).build();
+    controller.segmentEnd();
+    controller.viewUpdate(startPoint);
+    for(int i = 1; i <= length; ++i) {
+      CanvasPoint endPoint = new CanvasPoint.Builder(x + 3 * i, y + (i % 4)).
+        pointWithColor(model.getColor()).pointWithStroke(model.getStroke()).
+        pointWithLayer(model.getActiveLayer()).build();
+      controller.viewUpdate(startPoint, endPoint);
+      controller.segmentEnd();
+      startPoint = endPoint;
+    }
+    if(seal) {
+      controller.viewStrokeEnd();
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,161 @@
+package edu.nyu.cs.canvas.test;
+
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.CubicCurve2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Test;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.load.CanvasHitBenchmark;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasStrokeBatch;
+import edu.nyu.cs.canvas.model.CanvasStrokeHit;
+
+public class CanvasHitTest {
+  private static void addRandomStrokes(CanvasModel model, Random random, int strokes) {
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    int[] xs = new int[30];
+    int[] ys = new int[30];
+    for(int i = 0; i < strokes; ++i) {
+      int length = 1 + random.nextInt(xs.length);
+      xs[0] = random.nextInt(1000);
+      ys[0] = random.nextInt(1000);
+      for(int j = 1; j < length; ++j) {
+        xs[j] = xs[j-1] + random.nextInt(21) - 10;
+        ys[j] = ys[j-1] + random.nextInt(21) - 10;
+      }
+      batch.addStroke(xs, ys, length, Color.BLACK, 1 + random.nextInt(6));
+    }
+    model.addStrokes(batch);
+  }
+
+  private static void addFittedArc(CanvasModel model, int cx, int cy) {
+    model.addPoint(CanvasConfig.getEndMarker());
+    model.addPoint(CanvasConfig.getEndMarker());
+    for(int i = 0; i <= 60; ++i) {
+      double angle = Math.PI * i / 60;
+      model.addPoint(new CanvasPoint.Builder(cx + (int) Math.round(50 * Math.cos(angle)),
+        cy - (int) Math.round(50 * Math.sin(angle))).pointWithLayer(model.getActiveLayer()).build());
+    }
+    model.sealStroke(CanvasConfig.curveTolerance);
+  }
+
+  /**
+  * nearest painted distance over the segments the model reports around a point, -1 if none
+  * is within the tolerance
+  */
+  private static double scan(CanvasModel model, int x, int y, double tolerance, int hiddenLayer) {
+    int reach = (int) Math.ceil(tolerance) + 64;
+    ArrayList<CanvasPoint> segments = model.getSegments(new Rectangle(x - reach, y - reach,
+      2 * reach, 2 * reach));
+    double best = -1;
+    for(int i = 0; i + 1 < segments.size(); i += 2) {
+      CanvasPoint from = segments.get(i);
+      CanvasPoint to = segments.get(i + 1);
+      if(to.getLayer() == hiddenLayer) {
+        continue;
+      }
+      double distance;
+      if(to.hasControls() && from != to) {
+        PathIterator iterator = new CubicCurve2D.Float(from.getX(), from.getY(),
+          to.getControlX1(), to.getControlY1(), to.getControlX2(), to.getControlY2(),
+          to.getX(), to.getY()).getPathIterator(null, 0.25);
+        double[] coords = new double[6];
+        double lastX = from.getX();
+        double lastY = from.getY();
+        distance = Double.MAX_VALUE;
+        for(; !iterator.isDone(); iterator.next()) {
+          iterator.currentSegment(coords);
+          distance = Math.min(distance, Line2D.ptSegDist(lastX, lastY, coords[0], coords[1], x, y));
+          lastX = coords[0];
+          lastY = coords[1];
+        }
+      }
+      else {
+        distance = Line2D.ptSegDist(from.getX(), from.getY(), to.getX(), to.getY(), x, y);
+      }
+      distance = Math.max(0, distance - Math.max(from.getStroke(), to.getStroke()) / 2.0);
+      if(distance <= tolerance && (best < 0 || distance < best)) {
+        best = distance;
+      }
+    }
+    return best;
+  }
+
+  private static void assertMatchesScan(CanvasModel model, Random random, int queries,
+    int hiddenLayer) {
+    for(int i = 0; i < queries; ++i) {
+      int x = random.nextInt(1100) - 50;
+      int y = random.nextInt(1100) - 50;
+      double tolerance = random.nextInt(12);
+      CanvasStrokeHit hit = model.findStroke(x, y, tolerance);
+      double expected = scan(model, x, y, tolerance, hiddenLayer);
+      if(expected < 0) {
+        assertNull("No stroke expected near " + x + "," + y, hit);
+        continue;
+      }
+      assertNotNull("Stroke expected near " + x + "," + y, hit);
+      assertEquals("Wrong distance near " + x + "," + y, expected, hit.getDistance(), 1e-9);
+      assertTrue("Element should hold the entity", hit.getStart() <= hit.getIndex() &&
+        hit.getIndex() < hit.getEnd());
+      assertFalse("Hidden layer should be skipped", hit.getLayer() == hiddenLayer);
+      assertEquals("Wrong layer", model.getAllPoints().get(hit.getIndex()).getLayer(),
+        hit.getLayer());
+    }
+  }
+
+  @Test
+  public void testNearestMatchesScan() {
+    Random random = new Random(3);
+    CanvasModel model = CanvasModel.createInstance();
+    addRandomStrokes(model, random, 300);
+    assertMatchesScan(model, random, 200, -1);
+    int hidden = model.addLayer(null).getId();
+    addRandomStrokes(model, random, 200);
+    addFittedArc(model, 500, 500);
+    assertMatchesScan(model, random, 200, -1);
+    model.setLayerVisible(hidden, false);
+    assertMatchesScan(model, random, 200, hidden);
+  }
+
+  @Test
+  public void testEditsAreFollowed() {
+    Random random = new Random(5);
+    CanvasModel model = CanvasModel.createInstance();
+    addRandomStrokes(model, random, 200);
+    assertMatchesScan(model, random, 50, -1);
+    for(int i = 0; i < 30; ++i) {
+      model.erase(random.nextInt(1000), random.nextInt(1000), 15);
+    }
+    assertMatchesScan(model, random, 200, -1);
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    batch.addStroke(new int[] {2000, 2040}, new int[] {2000, 2000}, 2, Color.RED, 2);
+    model.addStrokes(batch);
+    CanvasStrokeHit before = model.findStroke(2020, 2001, 2);
+    assertNotNull("New stroke should be found", before);
+    assertEquals("Whole element should be reported", 2, before.getEnd() - before.getStart());
+    model.transform(model.select(new Rectangle(1990, 1990, 60, 20)),
+      AffineTransform.getTranslateInstance(0, 300));
+    assertNull("Moved stroke should be gone", model.findStroke(2020, 2001, 2));
+    assertNotNull("Moved stroke should be found at its new place",
+      model.findStroke(2020, 2301, 2));
+    for(int i = 0; i < 5; ++i) {
+      addFittedArc(model, 200 * i + 100, 300);
+    }
+    assertMatchesScan(model, random, 200, -1);
+    model.resetModel();
+    assertNull("Reset drawing should have no strokes", model.findStroke(500, 500, 1000));
+  }
+
+  @Test
+  public void testBenchmarkRuns() {
+    assertEquals("Hierarchy and scan should agree", 0.0,
+      new CanvasHitBenchmark(2000, 4, 50).run().get("mismatches"), 0);
+  }
+}
\ No newline at end of file
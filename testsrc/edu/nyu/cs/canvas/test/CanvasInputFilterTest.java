@@ -0,0 +1,162 @@
+package edu.nyu.cs.canvas.test;
+
+import static org.junit.Assert.*;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import org.junit.Test;
+import edu.nyu.cs.canvas.input.CanvasCatmullRomFilter;
+import edu.nyu.cs.canvas.input.CanvasExponentialFilter;
+import edu.nyu.cs.canvas.input.CanvasFilterChain;
+import edu.nyu.cs.canvas.input.CanvasInputFilter;
+import edu.nyu.cs.canvas.input.CanvasInputSink;
+import edu.nyu.cs.canvas.input.CanvasOneEuroFilter;
+
+public class CanvasInputFilterTest {
+  //100 samples per second
+  private static final long STEP = 10000000L;
+
+  /**
+  * sink recording emitted samples into preallocated arrays
+  */
+  private static final class Recorder implements CanvasInputSink {
+    private final float[] xs = new float[100000];
+    private final float[] ys = new float[100000];
+    private final long[] times = new long[100000];
+    private int count;
+
+    @Override
+    public void emit(float x, float y, long time) {
+      if(this.count < this.xs.length) {
+        this.xs[this.count] = x;
+        this.ys[this.count] = y;
+        this.times[this.count] = time;
+      }
+      this.count++;
+    }
+  }
+
+  /**
+  * feeds a line drawn at a constant speed, with uniform jitter, through a filter
+  * @return returns the mean distance of the emitted samples to the line, after the first
+  * tenth of them
+  */
+  private static double jitter(CanvasInputFilter filter, double speed, double noise) {
+    Random random = new Random(11);
+    Recorder recorder = new Recorder();
+    filter.start(0, 100, 0, recorder);
+    for(int i = 1; i < 500; ++i) {
+      filter.sample((float) (speed * i / 100), (float) (100 + noise * (random.nextDouble() - 0.5)),
+        i * STEP, recorder);
+    }
+    filter.finish(recorder);
+    double error = 0;
+    int from = recorder.count / 10;
+    for(int i = from; i < recorder.count; ++i) {
+      error += Math.abs(recorder.ys[i] - 100);
+    }
+    return error / (recorder.count - from);
+  }
+
+  /**
+  * @return returns how far the last emitted sample trails a pen moving at a constant speed
+  */
+  private static double lag(CanvasInputFilter filter, double speed) {
+    Recorder recorder = new Recorder();
+    filter.start(0, 0, 0, recorder);
+    for(int i = 1; i < 100; ++i) {
+      filter.sample((float) (speed * i / 100), 0, i * STEP, recorder);
+    }
+    return speed * 99 / 100 - recorder.xs[recorder.count - 1];
+  }
+
+  @Test
+  public void testOneEuroSmoothsSlowAndFollowsFast() {
+    double raw = jitter(new CanvasFilterChain(), 20, 4);
+    double smoothed = jitter(new CanvasOneEuroFilter(1, 0.007, 1), 20, 4);
+    assertTrue("Slow strokes should be smoothed: " + smoothed + " vs " + raw, smoothed * 3 < raw);
+    double exponentialLag = lag(new CanvasExponentialFilter(0.1f), 2000);
+    double oneEuroLag = lag(new CanvasOneEuroFilter(1, 0.007, 1), 2000);
+    assertTrue("Fast strokes should lag less than with a fixed weight: " + oneEuroLag + " vs " +
+      exponentialLag, oneEuroLag * 3 < exponentialLag);
+    assertEquals("Unfiltered chain should not lag", 0, lag(new CanvasFilterChain(), 2000), 1e-3);
+  }
+
+  @Test
+  public void testCatmullRomPassesThroughSamples() {
+    float[][] samples = {{0, 0}, {40, 0}, {40, 40}, {0, 40}, {3, 41}};
+    Recorder recorder = new Recorder();
+    CanvasCatmullRomFilter filter = new CanvasCatmullRomFilter(2);
+    filter.start(samples[0][0], samples[0][1], 0, recorder);
+    for(int i = 1; i < samples.length; ++i) {
+      filter.sample(samples[i][0], samples[i][1], i * STEP, recorder);
+    }
+    assertTrue("Last piece should be held back", recorder.xs[recorder.count - 1] == 0 &&
+      recorder.ys[recorder.count - 1] == 40);
+    filter.finish(recorder);
+    int matched = 0;
+    for(int i = 0; i < recorder.count; ++i) {
+      for(float[] sample : samples) {
+        if(Math.abs(recorder.xs[i] - sample[0]) < 1e-3 && Math.abs(recorder.ys[i] - sample[1]) < 1e-3) {
+          matched++;
+          break;
+        }
+      }
+      if(i > 0) {
+        double step = Math.hypot(recorder.xs[i] - recorder.xs[i-1], recorder.ys[i] - recorder.ys[i-1]);
+        assertTrue("Step too long: " + step, step <= 4);
+        assertTrue("Times should not go back", recorder.times[i] >= recorder.times[i-1]);
+      }
+    }
+    assertEquals("Curve should pass through every sample", samples.length, matched);
+    assertEquals("Curve should end on the last sample", 3, recorder.xs[recorder.count - 1], 1e-3);
+    recorder.count = 0;
+    filter.start(10, 10, 0, recorder);
+    filter.sample(1000, 10, STEP, recorder);
+    filter.finish(recorder);
+    assertEquals("Work per sample should be bounded", 1 + 16, recorder.count);
+  }
+
+  @Test
+  public void testChainRestartsPerElement() {
+    Recorder recorder = new Recorder();
+    CanvasFilterChain chain = new CanvasFilterChain(new CanvasExponentialFilter(0.5f),
+      new CanvasCatmullRomFilter(1000));
+    chain.start(0, 0, 0, recorder);
+    chain.sample(10, 0, STEP, recorder);
+    chain.sample(20, 0, 2 * STEP, recorder);
+    chain.finish(recorder);
+    assertEquals("Wrong first sample", 0, recorder.xs[0], 0);
+    assertEquals("Smoothed samples should be interpolated", 12.5, recorder.xs[recorder.count - 1],
+      1e-3);
+    recorder.count = 0;
+    chain.start(100, 100, 10 * STEP, recorder);
+    assertEquals("New element should not carry state", 100, recorder.xs[0], 0);
+    assertEquals("Only the start should be emitted", 1, recorder.count);
+  }
+
+  @Test
+  public void testSmoothingDoesNotAllocate() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if(!(threads instanceof com.sun.management.ThreadMXBean) ||
+      !((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+      return;
+    }
+    com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+    CanvasFilterChain chain = CanvasFilterChain.createSmoothing();
+    Recorder recorder = new Recorder();
+    long id = Thread.currentThread().getId();
+    for(int round = 0; round < 3; ++round) {
+      long before = allocation.getThreadAllocatedBytes(id);
+      recorder.count = 0;
+      chain.start(0, 0, 0, recorder);
+      for(int i = 1; i < 10000; ++i) {
+        chain.sample(i % 700, (i * 7) % 500, i * STEP, recorder);
+      }
+      chain.finish(recorder);
+      long allocated = allocation.getThreadAllocatedBytes(id) - before;
+      if(round == 2) {
+        assertTrue("Filtering should not allocate, took " + allocated + " bytes", allocated < 4096);
+      }
+    }
+  }
+}
\ No newline at end of file
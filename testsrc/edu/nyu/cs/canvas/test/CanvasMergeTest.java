@@ -0,0 +1,140 @@
+package edu.nyu.cs.canvas.test;
+
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import edu.nyu.cs.canvas.controller.CanvasController;
+import edu.nyu.cs.canvas.merge.CanvasDrawingDiff;
+import edu.nyu.cs.canvas.merge.CanvasMerger;
+import edu.nyu.cs.canvas.merge.CanvasStroke;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasModelSnapshot;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasSegmentVisitor;
+
+public class CanvasMergeTest {
+  private CanvasModelSnapshot base;
+
+  @Before
+  public void setUp() throws Exception {
+    CanvasModel model = CanvasModel.createInstance();
+    CanvasController controller = CanvasController.createInstance(model);
+    CanvasFixtures.drawStroke(controller, model, 10, 10, 30);
+    CanvasFixtures.drawStroke(controller, model, 10, 100, 30);
+    CanvasFixtures.drawStroke(controller, model, 10, 300, 30);
+    this.base = model.snapshot();
+  }
+
+  private static List<Long> ids(CanvasModelSnapshot snapshot) {
+    List<Long> ids = new ArrayList<Long>();
+    for(long id : CanvasStroke.ids(CanvasStroke.split(snapshot.getPoints()))) {
+      ids.add(id);
+    }
+    return ids;
+  }
+
+  private CanvasModel copyOfBase() {
+    CanvasModel model = CanvasModel.createInstance();
+    model.restore(this.base);
+    return model;
+  }
+
+  @Test
+  public void testSplitJoinKeepsSegments() {
+    List<CanvasStroke> strokes = CanvasStroke.split(this.base.getPoints());
+    assertEquals("Wrong number of elements", 3, strokes.size());
+    final List<CanvasPoint> original = new ArrayList<CanvasPoint>();
+    final List<CanvasPoint> joined = new ArrayList<CanvasPoint>();
+    CanvasModel.walkSegments(this.base.getPoints(), new SegmentCollector(original));
+    CanvasModel.walkSegments(CanvasStroke.join(strokes), new SegmentCollector(joined));
+    assertEquals("Joined elements should draw the same segments", original, joined);
+    assertEquals("Ids should not depend on the copy", ids(this.base),
+      ids(copyOfBase().snapshot()));
+  }
+
+  @Test
+  public void testDiffCarriesOnlyChangedElements() {
+    CanvasModel model = copyOfBase();
+    CanvasController controller = CanvasController.createInstance(model);
+    controller.viewErase(10 + 45, 100 + 1, 2);
+    CanvasFixtures.drawStroke(controller, model, 10, 200, 20);
+    controller.viewUpdate(Color.BLUE);
+    CanvasModelSnapshot target = model.snapshot();
+    CanvasDrawingDiff diff = CanvasDrawingDiff.compute(this.base, target);
+    assertEquals("Only the erased element should be removed", 1, diff.getRemoved().length);
+    assertEquals("Only the pieces and the new element should be added",
+      ids(target).size() - 2, diff.getAdded().size());
+    CanvasModelSnapshot applied = diff.applyTo(this.base);
+    assertEquals("Applied diff should give the target elements", ids(target), ids(applied));
+    assertEquals("Applied diff should give the target paint", Color.BLUE, applied.getColor());
+    //the same diff from the ids alone, as exchanged when syncing
+    long[] baseIds = CanvasStroke.ids(CanvasStroke.split(this.base.getPoints()));
+    assertEquals("Diff from ids should match", ids(target),
+      ids(CanvasDrawingDiff.compute(baseIds, target).applyTo(this.base)));
+    assertTrue("Diff of a state with itself should be empty",
+      CanvasDrawingDiff.compute(target, target).isEmpty());
+    try {
+      diff.applyTo(target);
+      fail("Diff should not apply to another state");
+    } catch (IllegalArgumentException e) {
+      //expected
+    }
+  }
+
+  @Test
+  public void testThreeWayMerge() {
+    List<Long> baseIds = ids(this.base);
+    //ours splits the second element and adds one at the end
+    CanvasModel ours = copyOfBase();
+    CanvasController ourController = CanvasController.createInstance(ours);
+    ourController.viewErase(10 + 45, 100 + 1, 2);
+    CanvasFixtures.drawStroke(ourController, ours, 10, 400, 10);
+    CanvasModelSnapshot ourState = ours.snapshot();
+    List<Long> ourIds = ids(ourState);
+    //theirs erases the third element, adds a layer and an element on it, and paints red
+    CanvasModel theirs = copyOfBase();
+    CanvasController theirController = CanvasController.createInstance(theirs);
+    theirController.viewErase(55, 300, 100);
+    theirController.viewAddLayer();
+    theirController.viewUpdate(Color.RED);
+    CanvasFixtures.drawStroke(theirController, theirs, 200, 200, 10);
+    CanvasModelSnapshot theirState = theirs.snapshot();
+    List<Long> theirIds = ids(theirState);
+    assertEquals("Third element should be erased", 3, theirIds.size());
+    CanvasModelSnapshot merged = ourController.viewMerge(this.base, theirState);
+    List<Long> expected = new ArrayList<Long>();
+    expected.add(baseIds.get(0));
+    //their element follows the first one, the only one both sides kept
+    expected.add(theirIds.get(2));
+    expected.addAll(ourIds.subList(1, ourIds.size()));
+    expected.remove(baseIds.get(2));
+    assertEquals("Wrong merged elements", expected, ids(merged));
+    assertEquals("Model should hold the merge", expected, ids(ours.snapshot()));
+    assertEquals("Layer added by theirs should be merged", 2, ours.getLayers().size());
+    assertEquals("Active layer should come from theirs", theirs.getActiveLayer(),
+      ours.getActiveLayer());
+    assertEquals("Color should come from theirs", Color.RED, ours.getColor());
+    //merging the same changes again adds nothing
+    assertEquals("Merge should be idempotent", ids(merged),
+      ids(CanvasMerger.merge(this.base, merged, theirState)));
+    assertEquals("Changes made on both sides should be merged once", ourIds,
+      ids(CanvasMerger.merge(this.base, ourState, ourState)));
+  }
+
+  private static final class SegmentCollector implements CanvasSegmentVisitor {
+    private final List<CanvasPoint> segments;
+
+    SegmentCollector(List<CanvasPoint> segments) {
+      this.segments = segments;
+    }
+
+    @Override
+    public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+      this.segments.addAll(Arrays.asList(startPoint, endPoint));
+    }
+  }
+}
\ No newline at end of file
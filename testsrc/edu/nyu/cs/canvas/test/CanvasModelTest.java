@@ -4,9 +4,19 @@ import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
 import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.model.CanvasChangeLog;
+import edu.nyu.cs.canvas.model.CanvasLayer;
 import edu.nyu.cs.canvas.model.CanvasModel;
 import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.model.CanvasSegmentVisitor;
+import edu.nyu.cs.canvas.model.CanvasSelection;
+import edu.nyu.cs.canvas.model.CanvasShape;
+import edu.nyu.cs.canvas.model.CanvasStrokeBatch;
 import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CanvasModelTest {
   private CanvasModel model;
@@ -126,4 +136,412 @@ public class CanvasModelTest {
     assertTrue("Wrong model reset", this.model.getStroke() == CanvasConfig.defaultStroke);
     assertTrue("Wrong model reset", this.model.getAllPoints().size() == 0);
   }
+
+  @Test
+  public void testSpillKeepsWholeDrawing() {
+    CanvasModel spilling = CanvasModel.createInstance();
+    spilling.setHeapBudget(20 * CanvasPoint.HEAP_SIZE);
+    for(int i = 0; i < 50; ++i) {
+      spilling.addPoint(CanvasConfig.getEndMarker());
+      spilling.addPoint(new CanvasPoint.Builder(i, i).pointWithColor(Color.RED).build());
+      spilling.addPoint(CanvasConfig.getEndMarker());
+    }
+    assertTrue("Old elements should be spilled", spilling.getSpilledCount() > 0);
+    assertTrue("Resident entities exceed budget", spilling.getAllPoints().size() <= 20);
+    assertEquals("Wrong total entity count", 150, spilling.loadAllPoints().size());
+    CanvasPoint p = spilling.loadAllPoints().get(1);
+    assertTrue("Wrong spilled entity", p.getX() == 0 && p.getY() == 0 &&
+      p.getColor().equals(Color.RED) && p.getStroke() == CanvasConfig.defaultStroke);
+    spilling.resetModel();
+    assertEquals("Wrong model reset", 0, spilling.loadAllPoints().size());
+  }
+
+  @Test
+  public void testBulkStrokeImport() {
+    CanvasModel bulk = CanvasModel.createInstance();
+    bulk.addPoint(new CanvasPoint.Builder(1, 1).build());
+    long version = bulk.getVersion();
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    batch.addStroke(new int[] {10, 20, 30}, new int[] {10, 20, 30}, 3, Color.RED, 4);
+    batch.addStroke(new int[] {5, 6}, new int[] {7, 8}, 2, Color.GREEN, 3);
+    batch.addStroke(new int[] {}, new int[] {}, 0, Color.GREEN, 3);
+    assertEquals("Empty stroke should be ignored", 2, batch.getStrokeCount());
+    bulk.addStrokes(batch);
+    assertEquals("Batch should bump the version once", version + 1, bulk.getVersion());
+    final int[] segments = new int[1];
+    bulk.walkSegments(new CanvasSegmentVisitor() {
+      @Override
+      public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+        assertFalse("Imported strokes should not join", startPoint.getX() == 30 &&
+          endPoint.getX() == 5);
+        assertFalse("Imported strokes should not join existing ones", startPoint.getX() == 1 &&
+          endPoint.getX() == 10);
+        if(startPoint.getX() != endPoint.getX() || startPoint.getY() != endPoint.getY()) {
+          segments[0]++;
+        }
+      }
+    });
+    assertEquals("Wrong imported segment count", 3, segments[0]);
+    CanvasPoint p = bulk.getAllPoints().get(bulk.getAllPoints().size() - 2);
+    assertTrue("Wrong imported entity", p.getX() == 6 && p.getY() == 8 &&
+      p.getColor().equals(Color.GREEN) && p.getStroke() == 3);
+  }
+
+  @Test
+  public void testBulkImportLoggedAndIndexedOnce() {
+    CanvasModel bulk = CanvasModel.createInstance();
+    final List<Integer> logged = new ArrayList<Integer>();
+    bulk.setChangeLog(new CanvasChangeLog() {
+      @Override
+      public void appended(CanvasPoint point) {
+        logged.add(1);
+      }
+
+      @Override
+      public void appendedAll(List<CanvasPoint> points) {
+        logged.add(points.size());
+      }
+
+      @Override
+      public void replaced(int index, CanvasPoint point) {
+      }
+
+      @Override
+      public void truncated(int size) {
+      }
+
+      @Override
+      public void cleared() {
+      }
+
+      @Override
+      public void layersChanged(List<CanvasLayer> layers, int activeLayer) {
+      }
+
+      @Override
+      public void paintChanged(Color color, int stroke) {
+      }
+    });
+    CanvasModel single = CanvasModel.createInstance();
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    for(int s = 0; s < 20; ++s) {
+      int[] xs = new int[30];
+      int[] ys = new int[30];
+      for(int i = 0; i < xs.length; ++i) {
+        xs[i] = 10 + 7 * i;
+        ys[i] = 10 + 11 * s + (i % 3);
+      }
+      batch.addStroke(xs, ys, xs.length, Color.RED, 2);
+      single.addPoint(CanvasConfig.getEndMarker());
+      for(int i = 0; i < xs.length; ++i) {
+        single.addPoint(new CanvasPoint.Builder(xs[i], ys[i]).pointWithColor(Color.RED).
+          pointWithStroke(2).build());
+      }
+      single.addPoint(CanvasConfig.getEndMarker());
+    }
+    ArrayList<CanvasPoint> added = bulk.addStrokes(batch);
+    assertEquals("Batch should be logged as one entry", 1, logged.size());
+    assertEquals("Entry should hold the whole batch", added.size(), (int) logged.get(0));
+    Rectangle[] areas = {new Rectangle(0, 0, 400, 400), new Rectangle(40, 40, 20, 20),
+      new Rectangle(100, 150, 5, 60)};
+    for(Rectangle area : areas) {
+      assertEquals("Batch should be indexed like single appends",
+        single.getSegments(area).size(), bulk.getSegments(area).size());
+    }
+    bulk.setChangeLog(null);
+  }
+
+  @Test
+  public void testEraseSplitsStroke() {
+    CanvasModel erasing = CanvasModel.createInstance();
+    erasing.addPoint(CanvasConfig.getEndMarker());
+    for(int x = 0; x <= 200; x += 10) {
+      erasing.addPoint(new CanvasPoint.Builder(x, 50).build());
+      erasing.addPoint(CanvasConfig.getEndMarker());
+    }
+    assertTrue("Nothing should be erased away from the ink", erasing.erase(100, 150, 5) == null);
+    Rectangle area = erasing.erase(100, 50, 5);
+    assertTrue("Erased area not reported", area != null && area.contains(100, 50));
+    final int[] crossing = new int[1];
+    erasing.walkSegments(new CanvasSegmentVisitor() {
+      @Override
+      public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+        if(Math.min(startPoint.getX(), endPoint.getX()) < 100 &&
+          Math.max(startPoint.getX(), endPoint.getX()) > 100) {
+          crossing[0]++;
+        }
+      }
+    });
+    assertEquals("Stroke should be split under the eraser", 0, crossing[0]);
+    ArrayList<CanvasPoint> segments = erasing.getSegments(area);
+    assertTrue("Remaining segments around the erased area not found", segments.size() > 0);
+    for(CanvasPoint p : segments) {
+      assertFalse("Erased ink should not be redrawn", p.getX() == 100);
+    }
+  }
+
+  @Test
+  public void testEraseSplitsImportedStroke() {
+    CanvasModel erasing = CanvasModel.createInstance();
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    batch.addStroke(new int[] {50, 100, 150}, new int[] {50, 50, 50}, 3, Color.RED, 2);
+    batch.addStroke(new int[] {50, 150}, new int[] {80, 80}, 2, Color.BLUE, 2);
+    erasing.addStrokes(batch);
+    assertTrue("Middle entity should be erased", erasing.erase(100, 50, 1) != null);
+    final ArrayList<CanvasPoint> walked = new ArrayList<CanvasPoint>();
+    erasing.walkSegments(new CanvasSegmentVisitor() {
+      @Override
+      public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+        assertFalse("Erased entity should not be bridged", startPoint.getY() == 50 &&
+          startPoint.getX() != endPoint.getX());
+        if(startPoint != endPoint) {
+          walked.add(startPoint);
+          walked.add(endPoint);
+        }
+      }
+    });
+    assertEquals("Only the later element should be left with a segment", 2, walked.size());
+    assertEquals("Later element should be kept whole", 150, walked.get(1).getX());
+    ArrayList<CanvasPoint> indexed = erasing.getSegments(new Rectangle(0, 0, 200, 100));
+    for(int i = 0; i < indexed.size(); i += 2) {
+      if(indexed.get(i) != indexed.get(i+1)) {
+        assertTrue("Walk and index should agree", indexed.get(i) == walked.get(0) &&
+          indexed.get(i+1) == walked.get(1));
+      }
+    }
+  }
+
+  @Test
+  public void testLassoSelectAndTransform() {
+    CanvasModel selecting = CanvasModel.createInstance();
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    batch.addStroke(new int[] {10, 20, 30}, new int[] {10, 10, 10}, 3, Color.RED, 2);
+    batch.addStroke(new int[] {100, 110}, new int[] {100, 100}, 2, Color.BLUE, 2);
+    selecting.addStrokes(batch);
+    CanvasSelection selection = selecting.select(new Rectangle(5, 5, 10, 10));
+    assertEquals("Whole element should be selected", 3, selection.size());
+    Rectangle area = selecting.transform(selection, AffineTransform.getTranslateInstance(5, 50));
+    assertTrue("Transformed area not reported", area != null && area.contains(25, 60));
+    boolean moved = false;
+    for(CanvasPoint p : selecting.getAllPoints()) {
+      assertFalse("Selected entity should have moved", p.getY() == 10 && p.getX() < 50);
+      if(p.getX() == 35 && p.getY() == 60) {
+        moved = true;
+      }
+      if(!p.isEndMarker() && p.getColor().equals(Color.BLUE)) {
+        assertEquals("Unselected element should not move", 100, p.getY());
+      }
+    }
+    assertTrue("Transformed entity not found", moved);
+    assertTrue("Moved element should be found at its new place",
+      selecting.select(new Rectangle(30, 55, 10, 10)).size() == 3);
+    selecting.resetModel();
+    assertTrue("Stale selection should be ignored",
+      selecting.transform(selection, AffineTransform.getTranslateInstance(1, 1)) == null);
+  }
+
+  @Test
+  public void testSealStrokeFitsCurve() {
+    CanvasModel fitting = CanvasModel.createInstance();
+    fitting.setRetainRawSamples(true);
+    fitting.addPoint(CanvasConfig.getEndMarker());
+    for(int i = 0; i <= 100; ++i) {
+      double angle = Math.PI * i / 100;
+      fitting.addPoint(new CanvasPoint.Builder(200 + (int) Math.round(100 * Math.cos(angle)),
+        200 - (int) Math.round(100 * Math.sin(angle))).build());
+      fitting.addPoint(CanvasConfig.getEndMarker());
+    }
+    int raw = fitting.getAllPoints().size();
+    Rectangle area = fitting.sealStroke(CanvasConfig.curveTolerance);
+    assertTrue("Sealed area not reported", area != null && area.contains(200, 100));
+    ArrayList<CanvasPoint> stored = fitting.getAllPoints();
+    assertTrue("Fitted stroke should be much smaller", stored.size() * 5 <= raw);
+    assertEquals("Raw samples should be retained", raw - 1, fitting.getRawSamples().size());
+    assertEquals("Start point should be kept", 300, stored.get(1).getX());
+    CanvasPoint last = stored.get(stored.size() - 2);
+    assertEquals("End point should be kept", 100, last.getX());
+    assertTrue("Fitted segments should be curves", last.hasControls());
+    assertTrue("Sealing twice should not change anything",
+      fitting.sealStroke(CanvasConfig.curveTolerance) == null);
+    assertTrue("Curve should be found around its apex", fitting.getSegments(
+      new Rectangle(195, 95, 10, 10)).size() > 0);
+  }
+
+  @Test
+  public void testEraseFittedStroke() {
+    CanvasModel fitting = CanvasModel.createInstance();
+    fitting.addPoint(CanvasConfig.getEndMarker());
+    for(int i = 0; i <= 100; ++i) {
+      double angle = Math.PI * i / 100;
+      fitting.addPoint(new CanvasPoint.Builder(200 + (int) Math.round(100 * Math.cos(angle)),
+        200 - (int) Math.round(100 * Math.sin(angle))).build());
+      fitting.addPoint(CanvasConfig.getEndMarker());
+    }
+    assertTrue("Stroke should be fitted", fitting.sealStroke(CanvasConfig.curveTolerance) != null);
+    int anchor = -1;
+    ArrayList<CanvasPoint> stored = fitting.getAllPoints();
+    for(int i = 2; i < stored.size() - 2 && anchor == -1; ++i) {
+      if(!stored.get(i-1).isEndMarker() && !stored.get(i+1).isEndMarker()) {
+        anchor = i;
+      }
+    }
+    assertTrue("Fitted stroke should have inner anchors", anchor != -1);
+    final CanvasPoint erased = stored.get(anchor);
+    final CanvasPoint before = stored.get(anchor - 1);
+    final CanvasPoint after = stored.get(anchor + 1);
+    assertTrue("Anchor should be erased", fitting.erase(erased.getX(), erased.getY(), 1) != null);
+    fitting.walkSegments(new CanvasSegmentVisitor() {
+      @Override
+      public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+        assertFalse("Erased anchor should be drawn no more", endPoint == erased);
+        assertFalse("Neighbours of the erased anchor should not be joined",
+          startPoint == before && endPoint == after);
+      }
+    });
+  }
+
+  @Test
+  public void testSealStrokeAfterTransform() {
+    CanvasModel fitting = CanvasModel.createInstance();
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    batch.addStroke(new int[] {100, 130, 160}, new int[] {100, 100, 100}, 3, Color.RED, 2);
+    fitting.addStrokes(batch);
+    fitting.addPoint(CanvasConfig.getEndMarker());
+    for(int x = 100; x <= 160; x += 2) {
+      fitting.addPoint(new CanvasPoint.Builder(x, 105 + (x % 4)).build());
+      fitting.addPoint(CanvasConfig.getEndMarker());
+    }
+    CanvasSelection selection = fitting.select(new Rectangle(95, 98, 10, 4));
+    assertEquals("Imported element should be selected", 3, selection.size());
+    assertTrue("Element should move", fitting.transform(selection,
+      AffineTransform.getTranslateInstance(1, 0)) != null);
+    assertTrue("Open stroke should be fitted", fitting.sealStroke(10) != null);
+    assertTrue("Moved element should be found", fitting.getSegments(
+      new Rectangle(90, 90, 80, 30)).size() > 0);
+    assertTrue("Fitted stroke should be erasable", fitting.erase(130, 106, 4) != null);
+  }
+
+  @Test
+  public void testAddShapePrimitives() {
+    CanvasModel shapes = CanvasModel.createInstance();
+    ArrayList<CanvasPoint> added = shapes.addShape(CanvasShape.RECTANGLE, 60, 40, 10, 20,
+      Color.RED, 3);
+    assertEquals("Rectangle should be stored as its closed corners", 7, added.size());
+    assertEquals("Rectangle should start on its top left corner", 10, added.get(1).getX());
+    shapes.addShape(CanvasShape.ELLIPSE, 100, 100, 200, 150, Color.BLUE, 2);
+    int curved = 0;
+    for(CanvasPoint p : shapes.getAllPoints()) {
+      if(p.hasControls()) {
+        curved++;
+      }
+    }
+    assertEquals("Ellipse should be stored as four cubic quarters", 4, curved);
+    assertTrue("Ellipse should be found on its outline",
+      shapes.getSegments(new Rectangle(148, 146, 4, 8)).size() > 0);
+    CanvasSelection selection = shapes.select(new Rectangle(0, 0, 70, 50));
+    assertEquals("Whole rectangle should be selected", 5, selection.size());
+  }
+
+  @Test
+  public void testEraseShapeCorner() {
+    CanvasModel shapes = CanvasModel.createInstance();
+    shapes.addShape(CanvasShape.RECTANGLE, 10, 20, 60, 40, Color.RED, 2);
+    assertTrue("Corner should be erased", shapes.erase(60, 20, 1) != null);
+    final ArrayList<CanvasPoint> walked = new ArrayList<CanvasPoint>();
+    shapes.walkSegments(new CanvasSegmentVisitor() {
+      @Override
+      public void visitSegment(CanvasPoint startPoint, CanvasPoint endPoint) {
+        if(startPoint != endPoint) {
+          walked.add(startPoint);
+          walked.add(endPoint);
+        }
+      }
+    });
+    assertEquals("Bottom and left edges should be left", 4, walked.size());
+    assertTrue("Wrong edges left", walked.get(0).getX() == 60 && walked.get(0).getY() == 40 &&
+      walked.get(3).getX() == 10 && walked.get(3).getY() == 20);
+  }
+
+  @Test
+  public void testLayersIsolateEditing() {
+    CanvasModel layered = CanvasModel.createInstance();
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    batch.addStroke(new int[] {10, 50, 90}, new int[] {50, 50, 50}, 3, Color.RED, 2);
+    layered.addStrokes(batch);
+    CanvasLayer top = layered.addLayer("Top");
+    assertEquals("New layer should become active", top.getId(), layered.getActiveLayer());
+    layered.addStrokes(batch);
+    Rectangle area = new Rectangle(0, 40, 100, 20);
+    assertEquals("Each layer should only see its own segments",
+      layered.getSegments(area, 0).size(), layered.getSegments(area, top.getId()).size());
+    assertEquals("Lasso should only select the active layer", 3,
+      layered.select(new Rectangle(0, 40, 20, 20)).size());
+    assertTrue("Erasing should hit the active layer", layered.erase(50, 50, 3) != null);
+    assertTrue("Base layer should be untouched by the eraser",
+      layered.getSegments(area, 0).size() > layered.getSegments(area, top.getId()).size());
+    assertTrue("Layer should move to the bottom", layered.moveLayer(top.getId(), 0));
+    assertEquals("Wrong stacking order", top.getId(), layered.getLayers().get(0).getId());
+    assertTrue("Layer should be hidden", layered.setLayerVisible(top.getId(), false));
+    assertFalse("Layer should stay hidden", layered.getLayers().get(0).isVisible());
+    layered.resetModel();
+    assertEquals("Reset should leave a single layer", 1, layered.getLayers().size());
+  }
+
+  @Test
+  public void testUndoReset() {
+    CanvasModel undoing = CanvasModel.createInstance();
+    undoing.setHeapBudget(20 * CanvasPoint.HEAP_SIZE);
+    assertFalse("Nothing should be undoable before a reset", undoing.undoReset());
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    for(int i = 0; i < 30; ++i) {
+      batch.addStroke(new int[] {i * 10, i * 10 + 5}, new int[] {20, 20}, 2, Color.RED, 2);
+    }
+    undoing.addStrokes(batch);
+    CanvasLayer top = undoing.addLayer("Top");
+    undoing.setColor(Color.BLUE);
+    ArrayList<CanvasPoint> before = undoing.loadAllPoints();
+    assertTrue("Old elements should be spilled", undoing.getSpilledCount() > 0);
+    undoing.resetModel();
+    assertTrue("Reset should be undoable", undoing.canUndoReset());
+    assertEquals("Wrong model reset", 0, undoing.loadAllPoints().size());
+    assertEquals("Reset should leave a single layer", 1, undoing.getLayers().size());
+    undoing.addPoint(new CanvasPoint.Builder(500, 500).build());
+    long version = undoing.getVersion();
+    assertTrue("Reset should be undone", undoing.undoReset());
+    assertTrue("Undo should bump the version", undoing.getVersion() > version);
+    assertFalse("Reset should only be undone once", undoing.canUndoReset());
+    ArrayList<CanvasPoint> after = undoing.loadAllPoints();
+    assertEquals("Drawing should be swapped back", before.size(), after.size());
+    for(int i = 0; i < before.size(); ++i) {
+      assertTrue("Wrong swapped back entity", before.get(i).getX() == after.get(i).getX() &&
+        before.get(i).getY() == after.get(i).getY());
+    }
+    assertEquals("Layers should be swapped back", 2, undoing.getLayers().size());
+    assertEquals("Active layer should be swapped back", top.getId(), undoing.getActiveLayer());
+    assertEquals("Paint should be swapped back", Color.BLUE, undoing.getColor());
+    assertTrue("Indices should be swapped back", undoing.findStroke(292, 20, 1) != null);
+    undoing.resetModel();
+    undoing.restore(this.model.snapshot());
+    assertFalse("Restore should drop the kept drawing", undoing.canUndoReset());
+  }
+
+  @Test
+  public void testScaleTransformScalesStrokes() {
+    CanvasModel scaling = CanvasModel.createInstance();
+    CanvasStrokeBatch batch = new CanvasStrokeBatch();
+    batch.addStroke(new int[] {10, 20, 30}, new int[] {10, 10, 10}, 3, Color.RED, 4);
+    scaling.addStrokes(batch);
+    CanvasSelection selection = scaling.select(new Rectangle(0, 0, 40, 20));
+    assertTrue("Scaled area not reported",
+      scaling.transform(selection, AffineTransform.getScaleInstance(3, 3)) != null);
+    for(CanvasPoint p : scaling.getAllPoints()) {
+      if(!p.isEndMarker()) {
+        assertEquals("Stroke width should scale with the drawing", 12, p.getStroke());
+      }
+    }
+    assertEquals("Old place of the element should be empty", 0,
+      scaling.getSegments(new Rectangle(0, 0, 25, 20)).size());
+    assertEquals("Scaled element should be found at its new place", 6,
+      scaling.getSegments(new Rectangle(25, 25, 70, 10)).size());
+  }
 }
\ No newline at end of file
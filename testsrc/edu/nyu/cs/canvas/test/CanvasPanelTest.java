@@ -0,0 +1,140 @@
+package edu.nyu.cs.canvas.test;
+
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.SwingUtilities;
+import org.junit.Before;
+import org.junit.Test;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.model.CanvasLayer;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.view.CanvasPanel;
+
+public class CanvasPanelTest {
+  private RecordingPanel panel;
+
+  /**
+  * canvas recording the areas it is asked to repaint instead of repainting them
+  */
+  @SuppressWarnings("serial")
+  private static class RecordingPanel extends CanvasPanel {
+    private final List<Rectangle> repainted =
+      Collections.synchronizedList(new ArrayList<Rectangle>());
+
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+      //the panel constructor repaints before the list exists
+      if(this.repainted != null) {
+        this.repainted.add(new Rectangle(x, y, width, height));
+      }
+    }
+
+    void draw(CanvasPoint startPoint, CanvasPoint endPoint) {
+      drawLine(startPoint, endPoint);
+    }
+
+    List<Rectangle> grow() {
+      return growExtent();
+    }
+
+    void layers(List<CanvasLayer> layers) {
+      setLayers(layers);
+    }
+
+    /**
+    * waits until a number of areas have been repainted
+    */
+    void awaitRepaints(int count) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + 5000;
+      while(this.repainted.size() < count && System.currentTimeMillis() < deadline) {
+        Thread.sleep(5);
+      }
+      assertTrue("Canvas was not repainted", this.repainted.size() >= count);
+    }
+
+    /**
+    * composites the layers of the canvas onto a white image
+    */
+    BufferedImage render(int width, int height) {
+      BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      Graphics2D g2 = image.createGraphics();
+      g2.setColor(Color.WHITE);
+      g2.fillRect(0, 0, width, height);
+      setOpaque(false);
+      paintComponent(g2);
+      g2.dispose();
+      return image;
+    }
+  }
+
+  private static CanvasPoint point(int x, int y) {
+    return new CanvasPoint.Builder(x, y).pointWithColor(Color.BLACK).pointWithStroke(4).build();
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    this.panel = new RecordingPanel();
+    this.panel.layers(Collections.singletonList(new CanvasLayer(0, "Layer 1", true)));
+    this.panel.setSize(CanvasConfig.defaultWidth, CanvasConfig.defaultHeight);
+    this.panel.repainted.clear();
+  }
+
+  @Test
+  public void testDamageWithinFrameRepaintedOnce() throws Exception {
+    if(!CanvasConfig.renderMode.equals(CanvasConfig.RETAINED_RENDERING)) {
+      return;
+    }
+    final Rectangle union = CanvasModel.segmentBounds(point(10, 10), point(14, 30));
+    //the frame timer fires on the event dispatch thread, so it can not fire in between
+    SwingUtilities.invokeAndWait(new Runnable() {
+      @Override
+      public void run() {
+        for(int i = 0; i < 50; ++i) {
+          CanvasPoint start = point(10 + 4 * i, 10 + (i % 5) * 20);
+          CanvasPoint end = point(14 + 4 * i, 30 + (i % 5) * 20);
+          panel.draw(start, end);
+          union.add(CanvasModel.segmentBounds(start, end));
+        }
+      }
+    });
+    this.panel.awaitRepaints(1);
+    //a second frame would come at most a frame later
+    Thread.sleep(5000 / CanvasConfig.frameRate + 100);
+    assertEquals("Damage within a frame should be repainted once", 1,
+      this.panel.repainted.size());
+    assertEquals("Repaint should cover the union of the damage", union,
+      this.panel.repainted.get(0));
+  }
+
+  @Test
+  public void testGrowExtentKeepsInk() throws Exception {
+    int width = CanvasConfig.defaultWidth;
+    int height = CanvasConfig.defaultHeight;
+    this.panel.draw(point(20, 20), point(60, 20));
+    this.panel.awaitRepaints(1);
+    assertTrue("Nothing should be uncovered before growing", this.panel.grow().isEmpty());
+    this.panel.setSize(width + 200, height + 100);
+    List<Rectangle> uncovered = this.panel.grow();
+    assertEquals("Both strips should be uncovered", 2, uncovered.size());
+    assertTrue("Right strip should be uncovered",
+      uncovered.get(0).contains(width + 199, height + 99));
+    assertTrue("Bottom strip should be uncovered", uncovered.get(1).contains(0, height + 99));
+    //ink beyond the old bounds goes into the grown rasters
+    this.panel.draw(point(width + 100, height + 50), point(width + 150, height + 50));
+    this.panel.awaitRepaints(2);
+    this.panel.setSize(width, height);
+    assertTrue("Shrinking should uncover nothing", this.panel.grow().isEmpty());
+    BufferedImage image = this.panel.render(width + 200, height + 100);
+    assertEquals("Ink inside the old bounds should be kept", 0,
+      image.getRGB(40, 20) & 0xffffff);
+    assertEquals("Ink outside the old bounds should be kept", 0,
+      image.getRGB(width + 125, height + 50) & 0xffffff);
+  }
+}
\ No newline at end of file
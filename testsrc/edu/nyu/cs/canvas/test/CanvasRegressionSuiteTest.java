@@ -0,0 +1,67 @@
+package edu.nyu.cs.canvas.test;
+
+import static org.junit.Assert.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.Test;
+import edu.nyu.cs.canvas.load.CanvasRegressionSuite;
+import edu.nyu.cs.canvas.model.CanvasStrokeBatch;
+
+public class CanvasRegressionSuiteTest {
+
+  @Test
+  public void testWorkloadsAreRecordedOnce() {
+    for(String workload : CanvasRegressionSuite.WORKLOADS) {
+      CanvasStrokeBatch first = CanvasRegressionSuite.record(workload, 0.01);
+      CanvasStrokeBatch second = CanvasRegressionSuite.record(workload, 0.01);
+      assertTrue("Workload " + workload + " should not be empty", first.getPointCount() > 0);
+      assertEquals("Workload " + workload + " should replay the same strokes",
+        first.getPointCount(), second.getPointCount());
+      for(int i = 0; i < first.getPointCount(); ++i) {
+        assertTrue("Workload " + workload + " should replay the same samples",
+          first.getX(i) == second.getX(i) && first.getY(i) == second.getY(i));
+      }
+    }
+    try {
+      CanvasRegressionSuite.record("doodle", 1);
+      fail("Unknown workload should be rejected");
+    } catch (IllegalArgumentException e) {
+      assertTrue("Error should name the workload", e.getMessage().contains("doodle"));
+    }
+  }
+
+  @Test
+  public void testRunMeasuresEveryBudget() {
+    CanvasRegressionSuite suite = new CanvasRegressionSuite(1, 0.01);
+    Map<String, Double> results = suite.run("handwriting");
+    assertTrue("Throughput should be measured",
+      results.get(CanvasRegressionSuite.THROUGHPUT) > 0);
+    assertTrue("Heap per point should be measured",
+      results.get(CanvasRegressionSuite.BYTES_PER_POINT) >= 0);
+    assertTrue("Repaint time should be measured",
+      results.get(CanvasRegressionSuite.REPAINT_MILLIS) >= 0);
+  }
+
+  @Test
+  public void testBudgetsAreChecked() {
+    Map<String, Double> results = new LinkedHashMap<String, Double>();
+    results.put(CanvasRegressionSuite.THROUGHPUT, 1000.0);
+    results.put(CanvasRegressionSuite.BYTES_PER_POINT, 100.0);
+    results.put(CanvasRegressionSuite.REPAINT_MILLIS, 50.0);
+    Properties budgets = new Properties();
+    budgets.setProperty("scribble.throughput.min", "500");
+    budgets.setProperty("scribble.bytesPerPoint.max", "120");
+    assertTrue("Measures within budget should pass",
+      CanvasRegressionSuite.check("scribble", results, budgets).isEmpty());
+    budgets.setProperty("scribble.throughput.min", "2000");
+    budgets.setProperty("scribble.repaintMillis.max", "20");
+    List<String> violations = CanvasRegressionSuite.check("scribble", results, budgets);
+    assertEquals("Both exceeded budgets should be reported", 2, violations.size());
+    assertTrue("Violation should name the measure",
+      violations.get(0).contains("scribble.throughput"));
+    assertTrue("Budgets of other workloads should not apply",
+      CanvasRegressionSuite.check("hugeStroke", results, budgets).isEmpty());
+  }
+}
\ No newline at end of file
@@ -0,0 +1,270 @@
+package edu.nyu.cs.canvas.test;
+
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import org.junit.Test;
+import edu.nyu.cs.canvas.codec.CanvasCodec;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.replica.CanvasOperation;
+import edu.nyu.cs.canvas.replica.CanvasReplica;
+import edu.nyu.cs.canvas.replica.CanvasStrokeId;
+
+public class CanvasReplicaTest {
+  private static final Color[] colors = {Color.BLACK, Color.RED, Color.BLUE, Color.GREEN};
+
+  /**
+  * in-process network delivering every operation to every replica after a random delay,
+  * sometimes twice
+  */
+  private static final class Network {
+    private final PriorityQueue<long[]> queue;
+    private final List<CanvasOperation> sent;
+    private final Random random;
+
+    Network(Random random) {
+      this.random = random;
+      this.sent = new ArrayList<CanvasOperation>();
+      this.queue = new PriorityQueue<long[]>(64, new Comparator<long[]>() {
+        @Override
+        public int compare(long[] a, long[] b) {
+          return (a[0] < b[0]) ? -1 : ((a[0] == b[0]) ? 0 : 1);
+        }
+      });
+    }
+
+    void broadcast(CanvasOperation operation, int from, int replicas, long now) {
+      if(operation == null) {
+        return;
+      }
+      this.sent.add(operation);
+      for(int to = 0; to < replicas; ++to) {
+        if(to == from) {
+          continue;
+        }
+        int copies = (this.random.nextInt(10) == 0) ? 2 : 1;
+        for(int i = 0; i < copies; ++i) {
+          this.queue.add(new long[] {now + this.random.nextInt(50), to, this.sent.size() - 1});
+        }
+      }
+    }
+
+    void deliver(CanvasReplica[] replicas, long until) {
+      while(!this.queue.isEmpty() && this.queue.peek()[0] <= until) {
+        long[] message = this.queue.poll();
+        replicas[(int) message[1]].apply(this.sent.get((int) message[2]));
+      }
+    }
+  }
+
+  private static List<CanvasPoint> randomStroke(Random random) {
+    List<CanvasPoint> points = new ArrayList<CanvasPoint>();
+    int x = random.nextInt(500);
+    int y = random.nextInt(500);
+    Color color = colors[random.nextInt(colors.length)];
+    for(int i = 0, n = 2 + random.nextInt(10); i < n; ++i) {
+      points.add(new CanvasPoint.Builder(x + 3 * i, y + random.nextInt(5)).
+        pointWithColor(color).pointWithStroke(1 + random.nextInt(5)).build());
+    }
+    return points;
+  }
+
+  private static List<String> describe(List<CanvasPoint> points) {
+    List<String> description = new ArrayList<String>(points.size());
+    for(CanvasPoint point : points) {
+      description.add(point.isEndMarker() ? "-" : point.getX() + "," + point.getY() + "," +
+        point.getColor().getRGB() + "," + point.getStroke());
+    }
+    return description;
+  }
+
+  private static void simulate(long seed) {
+    Random random = new Random(seed);
+    CanvasReplica[] replicas = new CanvasReplica[4];
+    for(int i = 0; i < replicas.length; ++i) {
+      replicas[i] = new CanvasReplica(i);
+    }
+    Network network = new Network(random);
+    for(long now = 0; now < 400; ++now) {
+      network.deliver(replicas, now);
+      int from = random.nextInt(replicas.length);
+      CanvasReplica replica = replicas[from];
+      List<CanvasStrokeId> ids = replica.getStrokeIds();
+      int action = random.nextInt(10);
+      if(ids.isEmpty() || action < 5) {
+        network.broadcast(replica.addStroke(randomStroke(random)), from, replicas.length, now);
+      }
+      else if(action < 8) {
+        network.broadcast(replica.removeStroke(ids.get(random.nextInt(ids.size()))), from,
+          replicas.length, now);
+      }
+      else {
+        network.broadcast(replica.restyleStroke(ids.get(random.nextInt(ids.size())),
+          colors[random.nextInt(colors.length)], 1 + random.nextInt(9)), from,
+          replicas.length, now);
+      }
+    }
+    network.deliver(replicas, Long.MAX_VALUE);
+    List<String> expected = describe(replicas[0].getPoints());
+    assertFalse("Drawing should not be empty, seed " + seed, replicas[0].getStrokeIds().isEmpty());
+    for(int i = 1; i < replicas.length; ++i) {
+      assertEquals("Replica " + i + " should hold the same elements, seed " + seed,
+        replicas[0].getStrokeIds(), replicas[i].getStrokeIds());
+      assertEquals("Replica " + i + " should draw the same, seed " + seed, expected,
+        describe(replicas[i].getPoints()));
+    }
+  }
+
+  @Test
+  public void testReplicasConvergeUnderRandomDelays() {
+    for(long seed = 1; seed <= 20; ++seed) {
+      simulate(seed);
+    }
+  }
+
+  @Test
+  public void testOperationsCommute() {
+    CanvasReplica origin = new CanvasReplica(1);
+    Random random = new Random(7);
+    CanvasOperation add = origin.addStroke(randomStroke(random));
+    CanvasOperation style = origin.restyleStroke(add.getTarget(), Color.RED, 4);
+    CanvasOperation other = origin.addStroke(randomStroke(random));
+    CanvasOperation remove = origin.removeStroke(other.getTarget());
+    //delivered backwards, with a duplicate, to a replica that drew concurrently
+    CanvasReplica late = new CanvasReplica(2);
+    CanvasOperation concurrent = late.addStroke(randomStroke(random));
+    late.apply(remove);
+    late.apply(style);
+    late.apply(other);
+    late.apply(add);
+    late.apply(add);
+    origin.apply(concurrent);
+    assertEquals("Replicas should hold the same elements", origin.getStrokeIds(),
+      late.getStrokeIds());
+    assertEquals("Replicas should draw the same", describe(origin.getPoints()),
+      describe(late.getPoints()));
+    assertEquals("Removed element should stay removed", 2, late.getStrokeIds().size());
+    assertNull("Removed element can not be restyled", late.restyleStroke(other.getTarget(),
+      Color.BLUE, 1));
+    //a new replica is brought up from the state of another one
+    CanvasReplica fresh = new CanvasReplica(3);
+    for(CanvasOperation operation : late.getOperations()) {
+      fresh.apply(operation);
+    }
+    assertEquals("New replica should draw the same", describe(late.getPoints()),
+      describe(fresh.getPoints()));
+    assertTrue("New replica should move its clock past the others",
+      fresh.addStroke(randomStroke(random)).getStamp().getCounter() > late.getClock());
+    //the materialized drawing is a valid model drawing
+    CanvasModel model = CanvasModel.createInstance();
+    model.restore(late.toSnapshot(model.snapshot()));
+    assertEquals("Model should hold the drawing", late.getPoints().size(),
+      model.getAllPoints().size());
+    assertEquals("Restyle should be materialized", Color.RED,
+      model.getAllPoints().get(1).getColor());
+  }
+
+  /**
+  * sends an operation over a stream of frames, as another JVM would receive it
+  */
+  private static void send(CanvasCodec codec, CanvasOperation operation, ByteBuffer wire) {
+    if(operation != null) {
+      codec.writeOperation(operation, wire);
+    }
+  }
+
+  private static int receive(CanvasCodec codec, ByteBuffer wire, CanvasReplica replica)
+    throws IOException {
+    wire.flip();
+    int received = 0;
+    while(CanvasCodec.frameSize(wire) != -1) {
+      assertEquals("Frame should hold an operation", CanvasCodec.OPERATION,
+        CanvasCodec.frameType(wire));
+      replica.apply(codec.readOperation(wire));
+      ++received;
+    }
+    assertFalse("Wire should hold whole frames only", wire.hasRemaining());
+    wire.clear();
+    return received;
+  }
+
+  @Test
+  public void testReplicasConvergeOverEncodedOperations() throws IOException {
+    Random random = new Random(11);
+    CanvasReplica left = new CanvasReplica(1);
+    CanvasReplica right = new CanvasReplica(2);
+    //a low threshold so that larger strokes travel compressed
+    CanvasCodec leftCodec = new CanvasCodec(64);
+    CanvasCodec rightCodec = new CanvasCodec(64);
+    ByteBuffer toRight = ByteBuffer.allocate(1 << 16);
+    ByteBuffer toLeft = ByteBuffer.allocateDirect(1 << 16);
+    List<CanvasOperation> sent = new ArrayList<CanvasOperation>();
+    for(int round = 0; round < 30; ++round) {
+      CanvasOperation operation = left.addStroke(randomStroke(random));
+      sent.add(operation);
+      send(leftCodec, operation, toRight);
+      send(rightCodec, right.addStroke(randomStroke(random)), toLeft);
+      List<CanvasStrokeId> ids = left.getStrokeIds();
+      if(round % 3 == 0) {
+        send(leftCodec, left.removeStroke(ids.get(random.nextInt(ids.size()))), toRight);
+      }
+      ids = right.getStrokeIds();
+      if(round % 4 == 0) {
+        send(rightCodec, right.restyleStroke(ids.get(random.nextInt(ids.size())),
+          colors[random.nextInt(colors.length)], 1 + random.nextInt(9)), toLeft);
+      }
+      if(round % 5 == 4) {
+        receive(rightCodec, toRight, right);
+        receive(leftCodec, toLeft, left);
+      }
+    }
+    //a duplicate delivery changes nothing
+    send(leftCodec, sent.get(0), toRight);
+    receive(rightCodec, toRight, right);
+    receive(leftCodec, toLeft, left);
+    assertFalse("Drawing should not be empty", left.getStrokeIds().isEmpty());
+    assertEquals("Replicas should hold the same elements", left.getStrokeIds(),
+      right.getStrokeIds());
+    assertEquals("Replicas should draw the same", describe(left.getPoints()),
+      describe(right.getPoints()));
+    //a new replica is brought up from the encoded state of another one
+    CanvasReplica fresh = new CanvasReplica(3);
+    CanvasCodec codec = new CanvasCodec();
+    List<CanvasOperation> operations = right.getOperations();
+    for(CanvasOperation operation : operations) {
+      //the largest size is enough to hold the frame
+      codec.writeOperation(operation,
+        ByteBuffer.allocate(CanvasCodec.maxFrameSize(operation)));
+      send(codec, operation, toRight);
+    }
+    assertEquals("Every operation should be received", operations.size(),
+      receive(codec, toRight, fresh));
+    assertEquals("New replica should draw the same", describe(right.getPoints()),
+      describe(fresh.getPoints()));
+  }
+
+  @Test
+  public void testCorruptOperationFrame() {
+    CanvasReplica replica = new CanvasReplica(1);
+    CanvasCodec codec = new CanvasCodec(Integer.MAX_VALUE);
+    CanvasOperation operation = replica.addStroke(randomStroke(new Random(3)));
+    ByteBuffer frame = ByteBuffer.allocate(CanvasCodec.maxFrameSize(operation));
+    codec.writeOperation(operation, frame);
+    frame.flip();
+    //unknown operation kind
+    frame.putInt(CanvasCodec.HEADER_SIZE, 7);
+    try {
+      codec.readOperation(frame);
+      fail("Unknown operation kind should be rejected");
+    } catch (IOException e) {
+      assertTrue("Error should name the kind", e.getMessage().contains("7"));
+    }
+  }
+}
\ No newline at end of file
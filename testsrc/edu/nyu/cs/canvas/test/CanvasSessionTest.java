@@ -0,0 +1,76 @@
+package edu.nyu.cs.canvas.test;
+
+import static org.junit.Assert.*;
+import java.util.concurrent.Callable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.session.CanvasSession;
+import edu.nyu.cs.canvas.session.CanvasSessionManager;
+import edu.nyu.cs.canvas.view.CanvasView;
+
+public class CanvasSessionTest {
+  private CanvasSessionManager manager;
+
+  @Before
+  public void setUp() throws Exception {
+    this.manager = new CanvasSessionManager();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.manager.shutdown();
+  }
+
+  @Test
+  public void testOpenSessionIsIdempotent() {
+    CanvasSession session1 = this.manager.openSession("board");
+    CanvasSession session2 = this.manager.openSession("board");
+    assertTrue("Same ID should map to the same session", session1 == session2);
+    assertTrue("Null ID should not open a session", this.manager.openSession(null) == null);
+    assertEquals("Wrong session count", 1, this.manager.getSessionIDs().size());
+  }
+
+  @Test
+  public void testSessionsAreIndependent() throws Exception {
+    final CanvasSession session1 = this.manager.openSession("board1");
+    final CanvasSession session2 = this.manager.openSession("board2");
+    assertFalse("Sessions should not share the model", session1.getModel() == session2.getModel());
+    assertFalse("Sessions should not share the shared model",
+      session1.getModel() == CanvasModel.getInstance());
+    session1.submit(new Runnable() {
+      @Override
+      public void run() {
+        session1.getController().viewUpdate(new CanvasPoint.Builder(1, 2).build());
+      }
+    }).get();
+    int size2 = session2.submit(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return session2.getModel().getAllPoints().size();
+      }
+    }).get();
+    assertEquals("Wrong point count in first session", 1, session1.getModel().getAllPoints().size());
+    assertEquals("Second session should stay blank", 0, size2);
+  }
+
+  @Test
+  public void testViewIDsArePerSession() {
+    CanvasSession session1 = this.manager.openSession("board1");
+    CanvasSession session2 = this.manager.openSession("board2");
+    CanvasView view1 = new CanvasView(session1.getController());
+    CanvasView view2 = new CanvasView(session2.getController());
+    assertEquals("Wrong view ID", 1, view1.getID());
+    assertEquals("Wrong view ID", 1, view2.getID());
+  }
+
+  @Test
+  public void testCloseSession() {
+    CanvasSession session = this.manager.openSession("board");
+    assertTrue("Wrong session closed", this.manager.closeSession("board") == session);
+    assertTrue("Closed session should not be found", this.manager.getSession("board") == null);
+    assertTrue("Unknown session should not be closed", this.manager.closeSession("board") == null);
+  }
+}
@@ -0,0 +1,153 @@
+package edu.nyu.cs.canvas.test;
+
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import edu.nyu.cs.canvas.CanvasSettings;
+
+public class CanvasSettingsTest {
+  private File home;
+  private Properties system;
+  private Map<String, String> environment;
+
+  @Before
+  public void setUp() throws Exception {
+    this.home = File.createTempFile("canvas-home", "");
+    this.home.delete();
+    this.home.mkdirs();
+    this.system = new Properties();
+    this.system.setProperty("user.home", this.home.getPath());
+    this.environment = new HashMap<String, String>();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    File settings = new File(this.home, ".canvas" + File.separator + "canvas.properties");
+    settings.delete();
+    settings.getParentFile().delete();
+    this.home.delete();
+  }
+
+  @Test
+  public void testDefaultsWithoutSources() {
+    CanvasSettings settings = CanvasSettings.load(this.system, this.environment);
+    assertEquals("Wrong default profile", CanvasSettings.DEFAULT_PROFILE, settings.getProfile());
+    assertEquals("Unset setting should take its default", 60, settings.getInt("frameRate", 60));
+    assertEquals("Unset color should take its default", Color.BLUE,
+      settings.getColor("defaultColor", Color.BLUE));
+  }
+
+  @Test
+  public void testPrecedenceOfSources() throws Exception {
+    File file = new File(this.home, ".canvas" + File.separator + "canvas.properties");
+    file.getParentFile().mkdirs();
+    Properties content = new Properties();
+    content.setProperty("profile", CanvasSettings.LOW_LATENCY_PROFILE);
+    content.setProperty("frameRate", "90");
+    content.setProperty("pipelineCapacity", "256");
+    content.setProperty("defaultColor", "#ff0000");
+    FileOutputStream out = new FileOutputStream(file);
+    content.store(out, null);
+    out.close();
+    this.environment.put("CANVAS_PIPELINE_CAPACITY", "128");
+    this.environment.put("CANVAS_FRAME_RATE", "100");
+    this.system.setProperty("canvas.frameRate", "144");
+    CanvasSettings settings = CanvasSettings.load(this.system, this.environment);
+    assertEquals("User settings should be ignored unless asked for",
+      CanvasSettings.DEFAULT_PROFILE, settings.getProfile());
+    this.environment.put("CANVAS_USER_SETTINGS", "true");
+    settings = CanvasSettings.load(this.system, this.environment);
+    assertEquals("Profile should be read from the file", CanvasSettings.LOW_LATENCY_PROFILE,
+      settings.getProfile());
+    assertEquals("System property should win", 144, settings.getInt("frameRate", 60));
+    assertEquals("Environment should win over the file", 128,
+      settings.getInt("pipelineCapacity", 4096));
+    assertEquals("File should win over the default", Color.RED,
+      settings.getColor("defaultColor", Color.BLUE));
+    assertEquals("Profile should win over the default", "immediate",
+      settings.getChoice("renderMode", "retained", "retained", "immediate"));
+    assertFalse("Profile should turn metrics off", settings.getBoolean("metricsEnabled", true));
+  }
+
+  @Test
+  public void testLowMemoryProfile() {
+    this.environment.put("CANVAS_PROFILE", CanvasSettings.LOW_MEMORY_PROFILE);
+    CanvasSettings settings = CanvasSettings.load(this.system, this.environment);
+    assertTrue("Profile should bound the heap", settings.getLong("heapBudget", 0) > 0);
+    assertTrue("Profile should shrink the outline cache",
+      settings.getInt("outlineCacheCapacity", 4096) < 4096);
+  }
+
+  @Test
+  public void testOutOfRangeValuesAreReported() {
+    this.system.setProperty("canvas.indexCellSize", "0");
+    this.environment.put("CANVAS_PIPELINE_CAPACITY", "-5");
+    CanvasSettings settings = CanvasSettings.load(this.system, this.environment);
+    try {
+      settings.getInt("indexCellSize", 32, 1, Integer.MAX_VALUE);
+      fail("Zero cell size should be rejected");
+    } catch (IllegalArgumentException e) {
+      assertTrue("Error should name the key", e.getMessage().contains("canvas.indexCellSize"));
+    }
+    try {
+      settings.getLong("pipelineCapacity", 4096, 1, Long.MAX_VALUE);
+      fail("Negative capacity should be rejected");
+    } catch (IllegalArgumentException e) {
+      assertTrue("Error should name the key",
+        e.getMessage().contains("CANVAS_PIPELINE_CAPACITY"));
+      assertTrue("Error should name the value", e.getMessage().contains("-5"));
+    }
+    this.system.setProperty("canvas.smoothingBeta", "-0.5");
+    try {
+      settings.getDouble("smoothingBeta", 0.007, 0, Double.MAX_VALUE);
+      fail("Negative number should be rejected");
+    } catch (IllegalArgumentException e) {
+      assertTrue("Error should name the key", e.getMessage().contains("smoothingBeta"));
+    }
+    assertEquals("Unset setting should take its default", 60,
+      settings.getInt("frameRate", 60, 1, 1000));
+    this.system.setProperty("canvas.frameRate", "1000");
+    assertEquals("Bounds should be accepted", 1000, settings.getInt("frameRate", 60, 1, 1000));
+  }
+
+  @Test
+  public void testBadValuesAreReported() {
+    this.system.setProperty("canvas.frameRate", "fast");
+    this.system.setProperty("canvas.renderMode", "deferred");
+    CanvasSettings settings = CanvasSettings.load(this.system, this.environment);
+    try {
+      settings.getInt("frameRate", 60);
+      fail("Integer setting should be checked");
+    } catch (IllegalArgumentException e) {
+      assertTrue("Error should name the source", e.getMessage().contains("canvas.frameRate"));
+    }
+    try {
+      settings.getChoice("renderMode", "retained", "retained", "immediate");
+      fail("Choice setting should be checked");
+    } catch (IllegalArgumentException e) {
+      assertTrue("Error should name the value", e.getMessage().contains("deferred"));
+    }
+    this.system.setProperty("canvas.profile", "fastest");
+    try {
+      CanvasSettings.load(this.system, this.environment);
+      fail("Unknown profile should be rejected");
+    } catch (IllegalArgumentException e) {
+      assertTrue("Error should name the profile", e.getMessage().contains("fastest"));
+    }
+    this.system.remove("canvas.profile");
+    this.system.setProperty("canvas.settings", new File(this.home, "missing").getPath());
+    try {
+      CanvasSettings.load(this.system, this.environment);
+      fail("Missing settings file should be rejected");
+    } catch (IllegalArgumentException e) {
+      assertTrue("Error should name the file", e.getMessage().contains("missing"));
+    }
+  }
+}
\ No newline at end of file
@@ -0,0 +1,132 @@
+package edu.nyu.cs.canvas.test;
+
+import static org.junit.Assert.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import javax.imageio.ImageIO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import edu.nyu.cs.canvas.controller.CanvasController;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.server.CanvasSnapshotServer;
+import edu.nyu.cs.canvas.session.CanvasSession;
+import edu.nyu.cs.canvas.session.CanvasSessionManager;
+
+public class CanvasSnapshotServerTest {
+  private CanvasModel model;
+  private CanvasController controller;
+  private CanvasSessionManager sessions;
+  private CanvasSnapshotServer server;
+
+  @Before
+  public void setUp() throws Exception {
+    this.model = CanvasModel.createInstance();
+    this.controller = CanvasController.createInstance(this.model);
+    this.sessions = new CanvasSessionManager();
+    this.server = CanvasSnapshotServer.start(new InetSocketAddress(
+      InetAddress.getLoopbackAddress(), 0), this.sessions);
+    this.server.addBoard("main", this.controller, this.model);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.server.stop();
+    this.sessions.shutdown();
+  }
+
+  private HttpURLConnection open(String method, String path, String etag) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" +
+      this.server.getPort() + path).openConnection();
+    connection.setRequestMethod(method);
+    connection.setUseCaches(false);
+    if(etag != null) {
+      connection.setRequestProperty("If-None-Match", etag);
+    }
+    return connection;
+  }
+
+  private static byte[] readBody(HttpURLConnection connection) throws IOException {
+    InputStream in = connection.getInputStream();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    for(int read; (read = in.read(buffer)) != -1;) {
+      bytes.write(buffer, 0, read);
+    }
+    in.close();
+    return bytes.toByteArray();
+  }
+
+  @Test
+  public void testSvgRevalidation() throws Exception {
+    CanvasFixtures.drawStroke(this.controller, this.model, 10, 10, 20);
+    HttpURLConnection first = open("GET", "/boards/main.svg", null);
+    assertEquals("Board should be served", 200, first.getResponseCode());
+    assertEquals("Wrong content type", "image/svg+xml", first.getContentType());
+    String etag = first.getHeaderField("ETag");
+    assertNotNull("Render should carry an ETag", etag);
+    assertTrue("Body should hold the stroke", new String(readBody(first), "UTF-8").contains("<path"));
+    HttpURLConnection second = open("GET", "/boards/main.svg", etag);
+    assertEquals("Unchanged board should not be sent again", 304, second.getResponseCode());
+    assertEquals("Revalidation should not render", 1, this.server.getRenderCount());
+    CanvasFixtures.drawStroke(this.controller, this.model, 10, 100, 20);
+    HttpURLConnection third = open("GET", "/boards/main.svg", etag);
+    assertEquals("Changed board should be sent", 200, third.getResponseCode());
+    assertFalse("Changed board should get a new ETag", etag.equals(third.getHeaderField("ETag")));
+    readBody(third);
+    String hiddenEtag = third.getHeaderField("ETag");
+    this.controller.viewSetLayerVisible(this.model.getActiveLayer(), false);
+    HttpURLConnection fourth = open("HEAD", "/boards/main.svg", hiddenEtag);
+    assertEquals("Hiding a layer should change the render", 200, fourth.getResponseCode());
+    assertEquals("Wrong render count", 3, this.server.getRenderCount());
+  }
+
+  @Test
+  public void testPngRendersStrokes() throws Exception {
+    CanvasFixtures.drawStroke(this.controller, this.model, 50, 60, 30);
+    HttpURLConnection connection = open("GET", "/boards/main.png", null);
+    assertEquals("Board should be served", 200, connection.getResponseCode());
+    assertEquals("Wrong content type", "image/png", connection.getContentType());
+    BufferedImage image = ImageIO.read(connection.getInputStream());
+    assertNotNull("Body should be a PNG image", image);
+    //the stroke wavers by a few pixels around y=60
+    boolean painted = false;
+    for(int y = 58; y <= 66; ++y) {
+      painted |= (image.getRGB(80, y) & 0xffffff) != 0xffffff;
+    }
+    assertTrue("Stroke should be painted", painted);
+    assertEquals("Background should stay white", 0xffffff, image.getRGB(400, 400) & 0xffffff);
+  }
+
+  @Test
+  public void testUnknownResourcesAndMethods() throws Exception {
+    assertEquals("Unknown board", 404, open("GET", "/boards/other.svg", null).getResponseCode());
+    assertEquals("Unknown format", 404, open("GET", "/boards/main.gif", null).getResponseCode());
+    assertEquals("Missing format", 404, open("GET", "/boards/main", null).getResponseCode());
+    assertEquals("Writes are not served", 405, open("DELETE", "/boards/main.svg", null).
+      getResponseCode());
+  }
+
+  @Test
+  public void testSessionsAreServed() throws Exception {
+    final CanvasSession session = this.sessions.openSession("board1");
+    session.submit(new Runnable() {
+      @Override
+      public void run() {
+        CanvasFixtures.drawStroke(session.getController(), session.getModel(), 10, 10, 10);
+      }
+    }).get();
+    HttpURLConnection connection = open("GET", "/boards/board1.svg", null);
+    assertEquals("Session board should be served", 200, connection.getResponseCode());
+    assertTrue("Body should hold the stroke of the session",
+      new String(readBody(connection), "UTF-8").contains("<path"));
+    assertEquals("Unopened session should not be served", 404,
+      open("GET", "/boards/board2.svg", null).getResponseCode());
+  }
+}
\ No newline at end of file
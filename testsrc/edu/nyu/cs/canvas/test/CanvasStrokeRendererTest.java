@@ -0,0 +1,119 @@
+package edu.nyu.cs.canvas.test;
+
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+import edu.nyu.cs.canvas.view.CanvasStrokeRenderer;
+
+public class CanvasStrokeRendererTest {
+  /**
+  * connected run of horizontal segments starting at x, y
+  */
+  private static List<CanvasPoint> run(int x, int y, int count, Color color) {
+    List<CanvasPoint> segments = new ArrayList<CanvasPoint>();
+    CanvasPoint start = new CanvasPoint.Builder(x, y).pointWithColor(color).
+      pointWithStroke(3).build();
+    for(int i = 1; i <= count; ++i) {
+      CanvasPoint end = new CanvasPoint.Builder(x + 10 * i, y).pointWithColor(color).
+        pointWithStroke(3).build();
+      segments.add(start);
+      segments.add(end);
+      start = end;
+    }
+    return segments;
+  }
+
+  private static int[] paint(List<CanvasPoint> segments,
+    CanvasStrokeRenderer.OutlineCache cache) {
+    BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g2 = image.createGraphics();
+    try {
+      CanvasStrokeRenderer.configure(g2);
+      CanvasStrokeRenderer.paintSegments(g2, segments, cache);
+    } finally {
+      g2.dispose();
+    }
+    return image.getRGB(0, 0, 200, 200, null, 0, 200);
+  }
+
+  @Test
+  public void testCachedOutlineIsReused() {
+    CanvasStrokeRenderer.OutlineCache cache = new CanvasStrokeRenderer.OutlineCache(16);
+    List<CanvasPoint> segments = run(10, 20, 8, Color.RED);
+    int[] first = paint(segments, cache);
+    assertEquals("Long run should be cached", 1, cache.size());
+    int[] second = paint(segments, cache);
+    assertEquals("Cache hit should not build an outline", 1, cache.getBuiltCount());
+    assertTrue("Cached outline should draw the same", Arrays.equals(first, second));
+    assertTrue("Uncached drawing should look the same", Arrays.equals(first,
+      paint(segments, null)));
+    assertEquals("Run should be drawn", Color.RED.getRGB(), second[20 * 200 + 40]);
+    paint(run(10, 60, 2, Color.BLUE), cache);
+    assertEquals("Short run should not be cached", 1, cache.size());
+  }
+
+  @Test
+  public void testChangedRunIsRebuilt() {
+    CanvasStrokeRenderer.OutlineCache cache = new CanvasStrokeRenderer.OutlineCache(16);
+    List<CanvasPoint> segments = run(10, 100, 6, Color.GREEN);
+    paint(segments, cache);
+    //the same last entity now ends a shorter run, the outline must not be reused
+    List<CanvasPoint> shorter = new ArrayList<CanvasPoint>(segments.subList(4,
+      segments.size()));
+    int[] pixels = paint(shorter, cache);
+    assertEquals("Stale outline should be replaced", 1, cache.size());
+    assertEquals("Stale outline should be rebuilt", 2, cache.getBuiltCount());
+    assertEquals("Removed part should not be drawn", 0, pixels[100 * 200 + 15]);
+    assertEquals("Kept part should be drawn", Color.GREEN.getRGB(), pixels[100 * 200 + 45]);
+  }
+
+  @Test
+  public void testInvalidateEvictsDamagedAreaOnly() {
+    CanvasStrokeRenderer.OutlineCache cache = new CanvasStrokeRenderer.OutlineCache(16);
+    List<CanvasPoint> top = run(10, 10, 5, Color.BLACK);
+    List<CanvasPoint> bottom = run(10, 150, 5, Color.BLACK);
+    paint(top, cache);
+    paint(bottom, cache);
+    cache.invalidate(new Rectangle(0, 140, 200, 20));
+    assertEquals("Outline in the damaged area should be evicted", 1, cache.size());
+    paint(top, cache);
+    assertEquals("Outline elsewhere should stay cached", 2, cache.getBuiltCount());
+    paint(bottom, cache);
+    assertEquals("Evicted outline should be rebuilt", 3, cache.getBuiltCount());
+    assertEquals("Rebuilt outline should be cached again", 2, cache.size());
+  }
+
+  @Test
+  public void testLeastRecentlyDrawnOutlineIsEvicted() {
+    CanvasStrokeRenderer.OutlineCache cache = new CanvasStrokeRenderer.OutlineCache(2);
+    List<CanvasPoint> first = run(10, 10, 5, Color.BLACK);
+    List<CanvasPoint> second = run(10, 50, 5, Color.BLACK);
+    List<CanvasPoint> third = run(10, 90, 5, Color.BLACK);
+    paint(first, cache);
+    paint(second, cache);
+    //drawing the first run again makes the second one the least recently drawn
+    paint(first, cache);
+    paint(third, cache);
+    assertEquals("Cache should stay within its capacity", 2, cache.size());
+    assertEquals("Three outlines should have been built", 3, cache.getBuiltCount());
+    paint(first, cache);
+    assertEquals("Recently drawn outline should be kept", 3, cache.getBuiltCount());
+    paint(second, cache);
+    assertEquals("Least recently drawn outline should be evicted", 4, cache.getBuiltCount());
+  }
+
+  @Test
+  public void testClearDropsOutlines() {
+    CanvasStrokeRenderer.OutlineCache cache = new CanvasStrokeRenderer.OutlineCache(16);
+    paint(run(10, 10, 5, Color.BLACK), cache);
+    cache.clear();
+    assertEquals("Cleared cache should be empty", 0, cache.size());
+  }
+}
\ No newline at end of file
@@ -0,0 +1,112 @@
+package edu.nyu.cs.canvas.test;
+
+import static org.junit.Assert.*;
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import edu.nyu.cs.canvas.CanvasConfig;
+import edu.nyu.cs.canvas.export.CanvasSvgExporter;
+import edu.nyu.cs.canvas.model.CanvasModel;
+import edu.nyu.cs.canvas.model.CanvasPoint;
+
+public class CanvasSvgExporterTest {
+  private CanvasModel model;
+
+  @Before
+  public void setUp() throws Exception {
+    this.model = CanvasModel.getInstance();
+    this.model.resetModel();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.model.resetModel();
+  }
+
+  private String export() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new CanvasSvgExporter(CanvasConfig.defaultWidth, CanvasConfig.defaultHeight).export(model, out);
+    return out.toString("UTF-8");
+  }
+
+  private void drawStroke(Color color, int stroke, int... coords) {
+    model.addPoint(CanvasConfig.getEndMarker());
+    for(int i = 0; i < coords.length; i += 2) {
+      model.addPoint(new CanvasPoint.Builder(coords[i], coords[i+1]).pointWithColor(color).
+        pointWithStroke(stroke).build());
+      model.addPoint(CanvasConfig.getEndMarker());
+    }
+  }
+
+  @Test
+  public void testEmptyExport() throws Exception {
+    String svg = export();
+    assertTrue("Missing svg root", svg.contains("<svg") && svg.endsWith("</svg>\n"));
+    assertFalse("Empty drawing should not contain paths", svg.contains("<path"));
+  }
+
+  @Test
+  public void testStrokeMergedIntoSinglePath() throws Exception {
+    drawStroke(Color.RED, 4, 10, 10, 20, 20, 30, 25);
+    String svg = export();
+    assertEquals("Stroke should be a single path", 1, svg.split("<path").length - 1);
+    assertTrue("Wrong path geometry", svg.contains("d=\"M10 10 L20 20 L30 25\""));
+    assertTrue("Wrong path color", svg.contains("stroke=\"#ff0000\""));
+    assertTrue("Wrong path stroke", svg.contains("stroke-width=\"4\""));
+  }
+
+  @Test
+  public void testDisjointStrokesExportedSeparately() throws Exception {
+    drawStroke(Color.RED, 4, 10, 10, 20, 20);
+    drawStroke(Color.BLUE, 2, 50, 50, 60, 60);
+    String svg = export();
+    assertEquals("Each stroke should be its own path", 2, svg.split("<path").length - 1);
+    assertTrue("Wrong path color", svg.contains("stroke=\"#0000ff\""));
+  }
+
+  @Test
+  public void testHiddenLayerNotExported() throws Exception {
+    drawStroke(Color.RED, 4, 10, 10, 20, 20);
+    int hidden = model.addLayer("Hidden").getId();
+    model.addPoint(CanvasConfig.getEndMarker());
+    model.addPoint(new CanvasPoint.Builder(50, 50).pointWithLayer(hidden).build());
+    model.addPoint(CanvasConfig.getEndMarker());
+    model.addPoint(new CanvasPoint.Builder(60, 60).pointWithLayer(hidden).build());
+    assertEquals("Each layer should be its own group", 2, export().split("<g ").length - 1);
+    model.setLayerVisible(hidden, false);
+    String svg = export();
+    assertEquals("Hidden layer should not be exported", 1, svg.split("<path").length - 1);
+    assertTrue("Visible layer should be exported", svg.contains("stroke=\"#ff0000\""));
+  }
+
+  @Test
+  public void testSinglePointPainted() throws Exception {
+    drawStroke(Color.RED, 4, 40, 40);
+    assertTrue("Dot should be a zero length line", export().contains("d=\"M40 40 L40 40\""));
+  }
+
+  @Test
+  public void testLayersGroupedInOneWalk() throws Exception {
+    int top = model.addLayer("Top").getId();
+    //strokes of the two layers interleave in drawing order
+    drawStroke(Color.RED, 4, 10, 10, 20, 20);
+    model.addPoint(CanvasConfig.getEndMarker());
+    model.addPoint(new CanvasPoint.Builder(50, 50).pointWithColor(Color.BLUE).
+      pointWithLayer(top).build());
+    model.addPoint(CanvasConfig.getEndMarker());
+    model.addPoint(new CanvasPoint.Builder(60, 60).pointWithColor(Color.BLUE).
+      pointWithLayer(top).build());
+    model.addPoint(CanvasConfig.getEndMarker());
+    drawStroke(Color.GREEN, 4, 30, 30, 40, 40);
+    String svg = export();
+    int bottomGroup = svg.indexOf("<g id=\"layer-");
+    int topGroup = svg.indexOf("<g id=\"layer-" + top + "\"");
+    assertTrue("Bottom layer should come first", bottomGroup >= 0 && bottomGroup < topGroup);
+    assertTrue("Bottom layer strokes should be in its group",
+      svg.indexOf("#ff0000") < topGroup && svg.indexOf("#00ff00") < topGroup);
+    assertTrue("Top layer stroke should be in its group", svg.indexOf("#0000ff") > topGroup);
+    assertEquals("Every group should be closed", 2, svg.split("</g>").length - 1);
+  }
+}